@@ -0,0 +1,61 @@
+package com.magnoliales.handlebars.helpers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public final class AssetMetadata {
+
+    private final String itemKey;
+    private final String path;
+    private final String link;
+    private final String caption;
+    private final long width;
+    private final long height;
+    private final ConcurrentMap<String, String> renditionLinks;
+
+    public AssetMetadata(String itemKey, String path, String link, String caption, long width, long height) {
+        this.itemKey = itemKey;
+        this.path = path;
+        this.link = link;
+        this.caption = caption;
+        this.width = width;
+        this.height = height;
+        this.renditionLinks = new ConcurrentHashMap<String, String>();
+    }
+
+    public String getItemKey() {
+        return itemKey;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public String getCaption() {
+        return caption;
+    }
+
+    public long getWidth() {
+        return width;
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    public boolean hasDimensions() {
+        return width > 0 && height > 0;
+    }
+
+    String getRenditionLink(String renditionName) {
+        return renditionLinks.get(renditionName);
+    }
+
+    void putRenditionLink(String renditionName, String renditionLink) {
+        renditionLinks.put(renditionName, renditionLink);
+    }
+}
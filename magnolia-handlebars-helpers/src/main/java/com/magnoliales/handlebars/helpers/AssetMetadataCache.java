@@ -0,0 +1,108 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.magnoliales.handlebars.cache.ObservedCache;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import com.magnoliales.handlebars.cluster.InvalidationListener;
+import info.magnolia.dam.api.Asset;
+import info.magnolia.dam.api.AssetRendition;
+import info.magnolia.dam.api.metadata.MagnoliaAssetMetadata;
+import info.magnolia.dam.templating.functions.DamTemplatingFunctions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+
+public class AssetMetadataCache implements InvalidationListener {
+
+    public static final String DAM_WORKSPACE = "dam";
+    public static final String REGION = "dam-assets";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssetMetadataCache.class);
+
+    private static final int MAX_SIZE = 5000;
+
+    private final DamTemplatingFunctions damTemplatingFunctions;
+    private final ObservedCache<AssetMetadata> cache;
+
+    @Inject
+    public AssetMetadataCache(DamTemplatingFunctions damTemplatingFunctions, InvalidationBus invalidationBus) {
+        this(damTemplatingFunctions, invalidationBus, new ObservedCache<AssetMetadata>(DAM_WORKSPACE, MAX_SIZE));
+    }
+
+    /**
+     * @param cache where the metadata is kept, e.g. a cache that does not observe the workspace
+     */
+    protected AssetMetadataCache(DamTemplatingFunctions damTemplatingFunctions, InvalidationBus invalidationBus,
+                                 ObservedCache<AssetMetadata> cache) {
+        this.damTemplatingFunctions = damTemplatingFunctions;
+        this.cache = cache;
+        invalidationBus.register(REGION, this);
+    }
+
+    public AssetMetadata getAssetMetadata(String itemKey) {
+        if (itemKey == null) {
+            return null;
+        }
+        AssetMetadata metadata = cache.get(itemKey);
+        if (metadata == null) {
+            long generation = cache.getGeneration();
+            metadata = loadAssetMetadata(itemKey);
+            if (metadata == null) {
+                return null;
+            }
+            cache.put(itemKey, metadata.getPath(), metadata, generation);
+        }
+        return metadata;
+    }
+
+    public String getRenditionLink(AssetMetadata metadata, String renditionName) {
+        String renditionLink = metadata.getRenditionLink(renditionName);
+        if (renditionLink == null) {
+            renditionLink = loadRenditionLink(metadata.getItemKey(), renditionName);
+            if (renditionLink == null) {
+                LOGGER.warn("Could not get rendition {} of asset {}", renditionName, metadata.getItemKey());
+                return null;
+            }
+            metadata.putRenditionLink(renditionName, renditionLink);
+        }
+        return renditionLink;
+    }
+
+    /**
+     * @return the metadata of the asset read from the DAM, or null if there is no such asset
+     */
+    protected AssetMetadata loadAssetMetadata(String itemKey) {
+        Asset asset = damTemplatingFunctions.getAsset(itemKey);
+        if (asset == null) {
+            return null;
+        }
+        long width = 0;
+        long height = 0;
+        if (asset.supports(MagnoliaAssetMetadata.class)) {
+            MagnoliaAssetMetadata assetMetadata = asset.getMetadata(MagnoliaAssetMetadata.class);
+            width = assetMetadata.getWidth();
+            height = assetMetadata.getHeight();
+        }
+        return new AssetMetadata(itemKey, asset.getPath(), asset.getLink(), asset.getCaption(), width, height);
+    }
+
+    /**
+     * @return the link of the rendition read from the DAM, or null if there is no such rendition
+     */
+    protected String loadRenditionLink(String itemKey, String renditionName) {
+        AssetRendition rendition = damTemplatingFunctions.getRendition(itemKey, renditionName);
+        return rendition != null ? rendition.getLink() : null;
+    }
+
+    @Override
+    public void invalidate(String workspace, String path) {
+        if (DAM_WORKSPACE.equals(workspace)) {
+            cache.invalidate(path);
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+}
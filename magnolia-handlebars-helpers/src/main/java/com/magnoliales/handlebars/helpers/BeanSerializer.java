@@ -0,0 +1,251 @@
+package com.magnoliales.handlebars.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes the readable properties of a bean, and the maps, collections and arrays it holds, as {@code {name=value}}
+ * or as JSON. JSON strings escape {@code < > &} and the line and paragraph separators so the output can be embedded
+ * in a script element, and non-finite numbers are written as {@code null}.
+ */
+public final class BeanSerializer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanSerializer.class);
+
+    private static final ConcurrentMap<Class<?>, Accessor[]> ACCESSORS = new ConcurrentHashMap<Class<?>, Accessor[]>();
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int HEX_SHIFT = 4;
+    private static final int HEX_MASK = 0xf;
+    private static final int UNICODE_ESCAPE_SHIFT = 12;
+    private static final int LAST_CONTROL_CHARACTER = 0x1f;
+    private static final char LINE_SEPARATOR = '\u2028';
+    private static final char PARAGRAPH_SEPARATOR = '\u2029';
+
+    private final boolean json;
+    private final int maxDepth;
+
+    public BeanSerializer(boolean json, int maxDepth) {
+        this.json = json;
+        this.maxDepth = maxDepth;
+    }
+
+    public StringBuilder write(StringBuilder out, Object value) {
+        writeValue(out, value, 0);
+        return out;
+    }
+
+    private void writeValue(StringBuilder out, Object value, int depth) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof CharSequence || value instanceof Character || value instanceof Enum) {
+            writeString(out, value.toString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            if (json && !isFinite(value)) {
+                out.append("null");
+            } else {
+                out.append(value);
+            }
+        } else if (value instanceof Date || value instanceof Calendar) {
+            Date date = value instanceof Calendar ? ((Calendar) value).getTime() : (Date) value;
+            writeString(out, date.toString());
+        } else if (depth > 0 && depth >= maxDepth) {
+            writeString(out, value.toString());
+        } else if (value instanceof Map) {
+            writeMap(out, (Map<?, ?>) value, depth);
+        } else if (value instanceof Iterable) {
+            writeIterator(out, ((Iterable<?>) value).iterator(), depth);
+        } else if (value.getClass().isArray()) {
+            writeArray(out, value, depth);
+        } else {
+            writeBean(out, value, depth);
+        }
+    }
+
+    private void writeBean(StringBuilder out, Object bean, int depth) {
+        out.append('{');
+        boolean first = true;
+        for (Accessor accessor : accessors(bean.getClass())) {
+            if (!first) {
+                out.append(", ");
+            }
+            writeKey(out, accessor.name);
+            try {
+                writeValue(out, accessor.read(bean), depth + 1);
+            } catch (IllegalAccessException e) {
+                writeString(out, e.getMessage());
+            } catch (InvocationTargetException e) {
+                writeString(out, String.valueOf(e.getTargetException()));
+            }
+            first = false;
+        }
+        out.append('}');
+    }
+
+    private void writeMap(StringBuilder out, Map<?, ?> map, int depth) {
+        out.append('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                out.append(", ");
+            }
+            writeKey(out, String.valueOf(entry.getKey()));
+            writeValue(out, entry.getValue(), depth + 1);
+            first = false;
+        }
+        out.append('}');
+    }
+
+    private void writeIterator(StringBuilder out, Iterator<?> iterator, int depth) {
+        out.append('[');
+        boolean first = true;
+        while (iterator.hasNext()) {
+            if (!first) {
+                out.append(", ");
+            }
+            writeValue(out, iterator.next(), depth + 1);
+            first = false;
+        }
+        out.append(']');
+    }
+
+    private void writeArray(StringBuilder out, Object array, int depth) {
+        out.append('[');
+        int length = Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            writeValue(out, Array.get(array, i), depth + 1);
+        }
+        out.append(']');
+    }
+
+    private void writeKey(StringBuilder out, String key) {
+        if (json) {
+            writeString(out, key);
+            out.append(':');
+        } else {
+            out.append(key).append('=');
+        }
+    }
+
+    private void writeString(StringBuilder out, String value) {
+        if (!json) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '<':
+                case '>':
+                case '&':
+                case LINE_SEPARATOR:
+                case PARAGRAPH_SEPARATOR:
+                    appendUnicodeEscape(out, c);
+                    break;
+                default:
+                    if (c <= LAST_CONTROL_CHARACTER) {
+                        appendUnicodeEscape(out, c);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static void appendUnicodeEscape(StringBuilder out, char c) {
+        out.append("\\u");
+        for (int shift = UNICODE_ESCAPE_SHIFT; shift >= 0; shift -= HEX_SHIFT) {
+            out.append(HEX[(c >> shift) & HEX_MASK]);
+        }
+    }
+
+    private static boolean isFinite(Object number) {
+        if (number instanceof Double) {
+            return !((Double) number).isNaN() && !((Double) number).isInfinite();
+        }
+        if (number instanceof Float) {
+            return !((Float) number).isNaN() && !((Float) number).isInfinite();
+        }
+        return true;
+    }
+
+    private static Accessor[] accessors(Class<?> beanClass) {
+        Accessor[] accessors = ACCESSORS.get(beanClass);
+        if (accessors == null) {
+            accessors = introspect(beanClass);
+            ACCESSORS.putIfAbsent(beanClass, accessors);
+        }
+        return accessors;
+    }
+
+    private static Accessor[] introspect(Class<?> beanClass) {
+        List<Accessor> accessors = new ArrayList<Accessor>();
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(beanClass, Object.class)
+                    .getPropertyDescriptors()) {
+                Method readMethod = descriptor.getReadMethod();
+                if (readMethod == null) {
+                    continue;
+                }
+                if (!Modifier.isPublic(beanClass.getModifiers())) {
+                    readMethod.setAccessible(true);
+                }
+                accessors.add(new Accessor(descriptor.getName(), readMethod));
+            }
+        } catch (IntrospectionException e) {
+            LOGGER.error("Cannot introspect " + beanClass.getName(), e);
+        }
+        return accessors.toArray(new Accessor[accessors.size()]);
+    }
+
+    private static final class Accessor {
+
+        private final String name;
+        private final Method readMethod;
+
+        private Accessor(String name, Method readMethod) {
+            this.name = name;
+            this.readMethod = readMethod;
+        }
+
+        private Object read(Object bean) throws IllegalAccessException, InvocationTargetException {
+            return readMethod.invoke(bean);
+        }
+    }
+}
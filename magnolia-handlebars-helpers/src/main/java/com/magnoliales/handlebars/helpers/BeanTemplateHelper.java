@@ -1,47 +1,30 @@
 package com.magnoliales.handlebars.helpers;
 
+import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
-import info.magnolia.dam.api.Asset;
-import info.magnolia.dam.templating.functions.DamTemplatingFunctions;
-import info.magnolia.objectfactory.Components;
-import org.apache.commons.beanutils.BeanUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.magnoliales.handlebars.renderer.HtmlEscapingStrategy;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.Map;
 
 public class BeanTemplateHelper implements Helper<Object> {
 
-    private static final Logger log = LoggerFactory.getLogger(BeanTemplateHelper.class);
+    public static final String FORMAT_OPTION = "format";
+    public static final String DEPTH_OPTION = "depth";
+    public static final String JSON_FORMAT = "json";
 
-    private DamTemplatingFunctions damTemplatingFunctions;
-
-
-    public BeanTemplateHelper() {
-        this.damTemplatingFunctions = Components.getComponent(DamTemplatingFunctions.class);
-    }
+    private static final int DEFAULT_DEPTH = 1;
+    private static final int BUFFER_CAPACITY = 256;
 
     @Override
     public CharSequence apply(Object context, Options options) throws IOException {
-        String properties = "";
-        try {
-            Map propertiesMap = BeanUtils.describe(context);
-            properties = propertiesMap.toString();
-        } catch (IllegalAccessException e) {
-            properties = e.getMessage();
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            properties = e.getMessage();
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            properties = e.getMessage();
-            e.printStackTrace();
+        boolean json = JSON_FORMAT.equals(options.hash(FORMAT_OPTION));
+        Integer depth = options.hash(DEPTH_OPTION, DEFAULT_DEPTH);
+        StringBuilder out = new BeanSerializer(json, depth).write(new StringBuilder(BUFFER_CAPACITY), context);
+        if (json) {
+            return out;
         }
-        return properties;
-
+        // property values are HTML escaped even when the helper is used in a triple-stash
+        return new Handlebars.SafeString(HtmlEscapingStrategy.INSTANCE.escape(out));
     }
 }
@@ -0,0 +1,73 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.magnoliales.handlebars.cache.ObservedCache;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import com.magnoliales.handlebars.cluster.InvalidationListener;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.link.LinkUtil;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+public class DamLinkCache implements InvalidationListener {
+
+    public static final String REGION = "dam-links";
+
+    private static final int MAX_SIZE = 10000;
+
+    private final ObservedCache<Links> cache;
+
+    @Inject
+    public DamLinkCache(InvalidationBus invalidationBus) {
+        this.cache = new ObservedCache<Links>(AssetMetadataCache.DAM_WORKSPACE, MAX_SIZE);
+        invalidationBus.register(REGION, this);
+    }
+
+    public String getLink(String identifier, boolean absoluteUrl) throws RepositoryException {
+        Links links = cache.get(identifier);
+        if (links == null) {
+            long generation = cache.getGeneration();
+            Node node = NodeUtil.getNodeByIdentifier(AssetMetadataCache.DAM_WORKSPACE, identifier);
+            if (node == null) {
+                return null;
+            }
+            links = new Links(node.getPath(), LinkUtil.createLink(node), LinkUtil.createExternalLink(node));
+            cache.put(identifier, node.getPath(), links, generation);
+        }
+        return absoluteUrl ? links.externalLink : links.link;
+    }
+
+    /**
+     * @return the path of the item if its links are cached, otherwise null
+     */
+    public String getPath(String identifier) {
+        Links links = cache.get(identifier);
+        return links != null ? links.path : null;
+    }
+
+    @Override
+    public void invalidate(String workspace, String path) {
+        if (AssetMetadataCache.DAM_WORKSPACE.equals(workspace)) {
+            cache.invalidate(path);
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    private static final class Links {
+
+        private final String path;
+        private final String link;
+        private final String externalLink;
+
+        private Links(String path, String link, String externalLink) {
+            this.path = path;
+            this.link = link;
+            this.externalLink = externalLink;
+        }
+    }
+}
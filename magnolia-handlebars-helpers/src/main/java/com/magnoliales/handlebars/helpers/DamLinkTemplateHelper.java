@@ -2,22 +2,41 @@ package com.magnoliales.handlebars.helpers;
 
 import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
-import info.magnolia.link.LinkUtil;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import info.magnolia.objectfactory.Components;
 import javax.jcr.RepositoryException;
 import java.io.IOException;
 
 public class DamLinkTemplateHelper implements Helper<String> {
+
+    public static final String ABSOLUTE_URL_OPTION = "absoluteUrl";
+
+    private static final String ITEM_KEY_PREFIX = "jcr:";
+
+    private DamLinkCache damLinkCache;
+
+    public DamLinkTemplateHelper() {
+        this(Components.getComponent(DamLinkCache.class));
+    }
+
+    public DamLinkTemplateHelper(DamLinkCache damLinkCache) {
+        this.damLinkCache = damLinkCache;
+    }
+
     @Override
     public CharSequence apply(String context, Options options) throws IOException {
-        String id = context.replaceFirst("jcr:","");
+        if (context == null) {
+            return null;
+        }
+        String id = context.startsWith(ITEM_KEY_PREFIX) ? context.substring(ITEM_KEY_PREFIX.length()) : context;
+        boolean absoluteUrl = Boolean.TRUE.equals(options.hash(ABSOLUTE_URL_OPTION));
         try {
-//            if (absoluteUrl) {
-//                Node node = NodeUtil.getNodeByIdentifier(WORKSPACE, id);
-//
-//                return LinkUtil.createExternalLink(node);
-//            } else {
-                return LinkUtil.createLink("dam", id);
-//            }
+            String link = damLinkCache.getLink(id, absoluteUrl);
+            RenderScope scope = RenderScope.from(options);
+            if (scope != null && link != null) {
+                scope.record(AssetMetadataCache.DAM_WORKSPACE, damLinkCache.getPath(id));
+            }
+            return link;
         } catch (RepositoryException e) {
             return null;
         }
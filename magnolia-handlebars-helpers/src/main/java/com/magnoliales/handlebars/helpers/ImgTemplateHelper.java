@@ -2,57 +2,138 @@ package com.magnoliales.handlebars.helpers;
 
 import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
-import info.magnolia.dam.api.Asset;
-import info.magnolia.dam.templating.functions.DamTemplatingFunctions;
+import com.magnoliales.handlebars.renderer.RenderScope;
 import info.magnolia.objectfactory.Components;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 public class ImgTemplateHelper implements Helper<String> {
 
+    public static final String RENDITIONS_OPTION = "renditions";
+    public static final String DIMENSIONS_OPTION = "dimensions";
+
     private static final Logger log = LoggerFactory.getLogger(ImgTemplateHelper.class);
 
-    private DamTemplatingFunctions damTemplatingFunctions;
+    private static final int TAG_CAPACITY = 256;
+
+    private AssetMetadataCache assetMetadataCache;
 
 
     public ImgTemplateHelper() {
-        this.damTemplatingFunctions = Components.getComponent(DamTemplatingFunctions.class);
+        this(Components.getComponent(AssetMetadataCache.class));
+    }
+
+    public ImgTemplateHelper(AssetMetadataCache assetMetadataCache) {
+        this.assetMetadataCache = assetMetadataCache;
     }
 
     @Override
     public CharSequence apply(String context, Options options) throws IOException {
 
+        StringBuilder tag = new StringBuilder(TAG_CAPACITY);
+        tag.append("<img ");
 
-        String attributes = "";
-        Map<String, String> attributeMap = new HashMap<String,String>();
-        Asset asset = this.damTemplatingFunctions.getAsset(context);
-        if( asset != null) {
-            String src = asset.getLink();
-            String alt = asset.getCaption();
-            attributeMap.put("src", src);
-            attributeMap.put("alt", alt);
+        Map<String, Object> hash = options.hash;
+        AssetMetadata metadata = assetMetadataCache.getAssetMetadata(context);
+        if (metadata != null) {
+            RenderScope scope = RenderScope.from(options);
+            if (scope != null) {
+                scope.record(AssetMetadataCache.DAM_WORKSPACE, metadata.getPath());
+            }
+            if (!hash.containsKey("src")) {
+                appendAttribute(tag, "src", metadata.getLink());
+            }
+            if (!hash.containsKey("alt")) {
+                appendAttribute(tag, "alt", metadata.getCaption());
+            }
+            if (Boolean.TRUE.equals(hash.get(DIMENSIONS_OPTION)) && metadata.hasDimensions()) {
+                if (!hash.containsKey("width")) {
+                    appendAttribute(tag, "width", String.valueOf(metadata.getWidth()));
+                }
+                if (!hash.containsKey("height")) {
+                    appendAttribute(tag, "height", String.valueOf(metadata.getHeight()));
+                }
+            }
+            Object renditions = hash.get(RENDITIONS_OPTION);
+            if (renditions != null && !hash.containsKey("srcset")) {
+                appendSrcset(tag, metadata, renditions.toString());
+            }
         } else {
-            log.error("Could not get asset with itemKey " + context );
+            log.error("Could not get asset with itemKey " + context);
         }
 
-        for (Map.Entry<String, Object> entry : options.hash.entrySet())
-        {
-            if (entry.getValue() != null) {
-                attributeMap.put(entry.getKey(), entry.getValue().toString());
+        for (Map.Entry<String, Object> entry : hash.entrySet()) {
+            String name = entry.getKey();
+            if (entry.getValue() != null && !RENDITIONS_OPTION.equals(name) && !DIMENSIONS_OPTION.equals(name)) {
+                appendAttribute(tag, name, entry.getValue().toString());
             }
         }
 
-        for (Map.Entry<String, String> entry : attributeMap.entrySet())
-        {
-            if (entry.getValue() != null) {
-                attributes += String.format("%s=\"%s\" ", entry.getKey(), entry.getValue());
+        return tag.append("/>");
+    }
+
+    // renditions are given as "<rendition> <descriptor>" pairs, i.e. renditions="small 480w, large 1280w"
+    private void appendSrcset(StringBuilder tag, AssetMetadata metadata, String renditions) {
+        int start = tag.length();
+        tag.append("srcset=\"");
+        boolean empty = true;
+        for (String candidate : renditions.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.isEmpty()) {
+                continue;
             }
+            int separator = trimmed.indexOf(' ');
+            String renditionName = separator < 0 ? trimmed : trimmed.substring(0, separator);
+            String link = assetMetadataCache.getRenditionLink(metadata, renditionName);
+            if (link == null) {
+                continue;
+            }
+            if (!empty) {
+                tag.append(", ");
+            }
+            appendEscaped(tag, link);
+            if (separator > 0) {
+                tag.append(' ');
+                appendEscaped(tag, trimmed.substring(separator + 1).trim());
+            }
+            empty = false;
+        }
+        if (empty) {
+            tag.setLength(start);
+        } else {
+            tag.append("\" ");
         }
+    }
 
-        return String.format("<img %s/>", attributes);
+    private static void appendAttribute(StringBuilder tag, String name, String value) {
+        if (value != null) {
+            tag.append(name).append("=\"");
+            appendEscaped(tag, value);
+            tag.append("\" ");
+        }
+    }
 
+    private static void appendEscaped(StringBuilder tag, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    tag.append("&amp;");
+                    break;
+                case '"':
+                    tag.append("&quot;");
+                    break;
+                case '<':
+                    tag.append("&lt;");
+                    break;
+                case '>':
+                    tag.append("&gt;");
+                    break;
+                default:
+                    tag.append(c);
+            }
+        }
     }
 }
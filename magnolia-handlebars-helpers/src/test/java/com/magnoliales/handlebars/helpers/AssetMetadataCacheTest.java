@@ -0,0 +1,95 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.magnoliales.handlebars.cache.ObservedCache;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import info.magnolia.dam.api.Asset;
+import info.magnolia.dam.api.AssetRendition;
+import info.magnolia.dam.api.metadata.MagnoliaAssetMetadata;
+import info.magnolia.dam.templating.functions.DamTemplatingFunctions;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AssetMetadataCacheTest {
+
+    private static final String ITEM_KEY = "jcr:1";
+
+    private DamTemplatingFunctions damTemplatingFunctions;
+    private InvalidationBus invalidationBus;
+    private AssetMetadataCache cache;
+
+    @Before
+    public void setUp() {
+        damTemplatingFunctions = mock(DamTemplatingFunctions.class);
+        Asset asset = mock(Asset.class);
+        when(asset.getPath()).thenReturn("/images/fish.jpg");
+        when(asset.getLink()).thenReturn("/dam/jcr:1/fish.jpg");
+        when(asset.getCaption()).thenReturn("Fish");
+        when(asset.supports(MagnoliaAssetMetadata.class)).thenReturn(true);
+        MagnoliaAssetMetadata assetMetadata = mock(MagnoliaAssetMetadata.class);
+        when(assetMetadata.getWidth()).thenReturn(640L);
+        when(assetMetadata.getHeight()).thenReturn(480L);
+        when(asset.getMetadata(MagnoliaAssetMetadata.class)).thenReturn(assetMetadata);
+        when(damTemplatingFunctions.getAsset(ITEM_KEY)).thenReturn(asset);
+        invalidationBus = new InvalidationBus();
+        cache = new AssetMetadataCache(damTemplatingFunctions, invalidationBus,
+                new ObservedCache<AssetMetadata>(AssetMetadataCache.DAM_WORKSPACE, 10, false));
+    }
+
+    @Test
+    public void readsAnAssetOnce() {
+        AssetMetadata metadata = cache.getAssetMetadata(ITEM_KEY);
+
+        assertEquals("/images/fish.jpg", metadata.getPath());
+        assertEquals("/dam/jcr:1/fish.jpg", metadata.getLink());
+        assertEquals("Fish", metadata.getCaption());
+        assertEquals(640, metadata.getWidth());
+        assertEquals(480, metadata.getHeight());
+        assertSame(metadata, cache.getAssetMetadata(ITEM_KEY));
+        verify(damTemplatingFunctions, times(1)).getAsset(ITEM_KEY);
+    }
+
+    @Test
+    public void readsTheAssetAgainAfterItChanged() {
+        AssetMetadata metadata = cache.getAssetMetadata(ITEM_KEY);
+
+        cache.invalidate("website", "/images/fish.jpg");
+        assertSame(metadata, cache.getAssetMetadata(ITEM_KEY));
+
+        invalidationBus.invalidate(AssetMetadataCache.REGION, AssetMetadataCache.DAM_WORKSPACE, "/images");
+        AssetMetadata reloaded = cache.getAssetMetadata(ITEM_KEY);
+
+        assertEquals("/images/fish.jpg", reloaded.getPath());
+        verify(damTemplatingFunctions, times(2)).getAsset(ITEM_KEY);
+    }
+
+    @Test
+    public void doesNotCacheMissingAssets() {
+        assertNull(cache.getAssetMetadata("jcr:missing"));
+        assertNull(cache.getAssetMetadata("jcr:missing"));
+        assertNull(cache.getAssetMetadata(null));
+
+        verify(damTemplatingFunctions, times(2)).getAsset("jcr:missing");
+    }
+
+    @Test
+    public void keepsRenditionLinksWithTheMetadata() {
+        AssetRendition rendition = mock(AssetRendition.class);
+        when(rendition.getLink()).thenReturn("/small.jpg");
+        when(damTemplatingFunctions.getRendition(ITEM_KEY, "small")).thenReturn(rendition);
+        AssetMetadata metadata = cache.getAssetMetadata(ITEM_KEY);
+
+        assertEquals("/small.jpg", cache.getRenditionLink(metadata, "small"));
+        assertEquals("/small.jpg", cache.getRenditionLink(metadata, "small"));
+        assertNull(cache.getRenditionLink(metadata, "large"));
+
+        verify(damTemplatingFunctions, times(1)).getRendition(ITEM_KEY, "small");
+    }
+}
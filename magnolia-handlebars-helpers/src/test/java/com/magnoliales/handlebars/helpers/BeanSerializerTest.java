@@ -0,0 +1,80 @@
+package com.magnoliales.handlebars.helpers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class BeanSerializerTest {
+
+    @Test
+    public void writesReadablePropertiesByName() {
+        assertEquals("{count=3, title=Fish, visible=true}", write(false, 1, new Item("Fish", 3)));
+    }
+
+    @Test
+    public void expandsNestedValuesUpToTheDepth() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("items", Arrays.asList(1, 2));
+        map.put("item", new Item("Fish", 3));
+
+        assertEquals("{items=[1, 2], item=Item Fish}", write(false, 1, map));
+        assertEquals("{items=[1, 2], item={count=3, title=Fish, visible=true}}", write(false, 2, map));
+        assertEquals("[[1, 2], [3]]", write(false, 2, new int[][] {{1, 2}, {3}}));
+    }
+
+    @Test
+    public void writesJson() {
+        assertEquals("{\"count\":3, \"title\":\"Fish\", \"visible\":true}", write(true, 1, new Item("Fish", 3)));
+        assertEquals("[\"a\", null, 1.5]", write(true, 1, Arrays.<Object>asList("a", null, 1.5)));
+    }
+
+    @Test
+    public void escapesJsonStringsForScriptElements() {
+        assertEquals("{\"\\u003c/script\\u003e\":\"\\\"a\\\\b\\\" \\u0026 \\n\\t\\u0001 \\u2028\\u2029\"}",
+                write(true, 1, Collections.singletonMap("</script>", "\"a\\b\" & \n\t\u0001 \u2028\u2029")));
+    }
+
+    @Test
+    public void writesNonFiniteNumbersAsJsonNull() {
+        assertEquals("[null, null, null, null, 1.0]", write(true, 1,
+                Arrays.<Number>asList(Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN, 1.0)));
+        assertEquals("[NaN, Infinity]", write(false, 1, Arrays.asList(Double.NaN, Double.POSITIVE_INFINITY)));
+    }
+
+    private static String write(boolean json, int depth, Object value) {
+        return new BeanSerializer(json, depth).write(new StringBuilder(), value).toString();
+    }
+
+    public static final class Item {
+
+        private final String title;
+        private final int count;
+
+        private Item(String title, int count) {
+            this.title = title;
+            this.count = count;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean isVisible() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Item " + title;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Handlebars;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class BeanTemplateHelperTest {
+
+    private static final Map<String, Object> MODEL = Collections.<String, Object>singletonMap("bean",
+            Collections.singletonMap("title", "<b>\"Fish\" & 'chips'</b>"));
+
+    private Handlebars handlebars;
+
+    @Before
+    public void setUp() {
+        handlebars = new Handlebars();
+        handlebars.registerHelper("bean", new BeanTemplateHelper());
+    }
+
+    @Test
+    public void escapesPropertiesOnceInBothStashes() throws IOException {
+        String escaped = "{title=&lt;b&gt;&quot;Fish&quot; &amp; &#x27;chips&#x27;&lt;/b&gt;}";
+
+        assertEquals(escaped, render("{{bean bean}}"));
+        assertEquals(escaped, render("{{{bean bean}}}"));
+    }
+
+    @Test
+    public void writesJsonThatCanBeEmbeddedInAScriptElement() throws IOException {
+        assertEquals("{\"title\":\"\\u003cb\\u003e\\\"Fish\\\" \\u0026 'chips'\\u003c/b\\u003e\"}",
+                render("{{{bean bean format=\"json\"}}}"));
+    }
+
+    private String render(String template) throws IOException {
+        return handlebars.compileInline(template).apply(MODEL);
+    }
+}
@@ -0,0 +1,54 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Handlebars;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DamLinkTemplateHelperTest {
+
+    private static final String IDENTIFIER = "0b5a9c3e-3f0b-4d3c-9a4e-7c1d2e3f4a5b";
+
+    private DamLinkCache damLinkCache;
+    private Handlebars handlebars;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        damLinkCache = mock(DamLinkCache.class);
+        when(damLinkCache.getLink(IDENTIFIER, false)).thenReturn("/dam/fish.jpg");
+        when(damLinkCache.getLink(IDENTIFIER, true)).thenReturn("http://example.com/dam/fish.jpg");
+        handlebars = new Handlebars();
+        handlebars.registerHelper("damLink", new DamLinkTemplateHelper(damLinkCache));
+    }
+
+    @Test
+    public void resolvesItemKeysAndPlainIdentifiers() throws IOException {
+        assertEquals("/dam/fish.jpg", render("{{damLink key}}", "jcr:" + IDENTIFIER));
+        assertEquals("/dam/fish.jpg", render("{{damLink key}}", IDENTIFIER));
+    }
+
+    @Test
+    public void resolvesTheExternalLinkWhenAskedFor() throws IOException {
+        assertEquals("http://example.com/dam/fish.jpg",
+                render("{{damLink key absoluteUrl=true}}", "jcr:" + IDENTIFIER));
+    }
+
+    @Test
+    public void writesNothingForUnknownOrUnreadableItems() throws IOException, RepositoryException {
+        when(damLinkCache.getLink("broken", false)).thenThrow(new RepositoryException("broken"));
+
+        assertEquals("", render("{{damLink key}}", "jcr:missing"));
+        assertEquals("", render("{{damLink key}}", "jcr:broken"));
+    }
+
+    private String render(String template, String key) throws IOException {
+        return handlebars.compileInline(template).apply(Collections.singletonMap("key", key));
+    }
+}
@@ -0,0 +1,79 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Handlebars;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ImgTemplateHelperTest {
+
+    private static final String ITEM_KEY = "jcr:0b5a9c3e-3f0b-4d3c-9a4e-7c1d2e3f4a5b";
+
+    private AssetMetadataCache assetMetadataCache;
+    private AssetMetadata metadata;
+    private Handlebars handlebars;
+
+    @Before
+    public void setUp() {
+        assetMetadataCache = mock(AssetMetadataCache.class);
+        metadata = new AssetMetadata(ITEM_KEY, "/images/fish.jpg", "/dam/jcr:0b5a/fish.jpg", "Fish \"&\" chips",
+                640, 480);
+        when(assetMetadataCache.getAssetMetadata(ITEM_KEY)).thenReturn(metadata);
+        handlebars = new Handlebars();
+        handlebars.registerHelper("img", new ImgTemplateHelper(assetMetadataCache));
+    }
+
+    @Test
+    public void writesLinkCaptionAndHashAttributesEscaped() throws IOException {
+        assertEquals("<img src=\"/dam/jcr:0b5a/fish.jpg\" alt=\"Fish &quot;&amp;&quot; chips\" "
+                + "class=\"a&amp;b &lt;c&gt;\" />", render("{{{img key class=\"a&b <c>\"}}}"));
+    }
+
+    @Test
+    public void letsTheHashOverrideSourceAndAlternativeText() throws IOException {
+        assertEquals("<img src=\"/other.jpg\" alt=\"Other\" />",
+                render("{{{img key src=\"/other.jpg\" alt=\"Other\"}}}"));
+    }
+
+    @Test
+    public void addsDimensionsOnlyWhenAskedForAndKnown() throws IOException {
+        assertEquals("<img src=\"/dam/jcr:0b5a/fish.jpg\" alt=\"Fish &quot;&amp;&quot; chips\" width=\"640\" "
+                + "height=\"480\" />", render("{{{img key dimensions=true}}}"));
+
+        metadata = new AssetMetadata(ITEM_KEY, "/images/fish.svg", "/dam/fish.svg", null, 0, 0);
+        when(assetMetadataCache.getAssetMetadata(ITEM_KEY)).thenReturn(metadata);
+
+        assertEquals("<img src=\"/dam/fish.svg\" />", render("{{{img key dimensions=true}}}"));
+    }
+
+    @Test
+    public void buildsSrcsetFromTheRenditionsThatExist() throws IOException {
+        when(assetMetadataCache.getRenditionLink(metadata, "small")).thenReturn("/small.jpg?a=1&b=2");
+        when(assetMetadataCache.getRenditionLink(metadata, "large")).thenReturn("/large.jpg");
+
+        assertEquals("<img src=\"/dam/jcr:0b5a/fish.jpg\" alt=\"Fish &quot;&amp;&quot; chips\" "
+                + "srcset=\"/small.jpg?a=1&amp;b=2 480w, /large.jpg 1280w\" />",
+                render("{{{img key renditions=\"small 480w, missing 960w, large 1280w\"}}}"));
+    }
+
+    @Test
+    public void omitsSrcsetWithoutRenditions() throws IOException {
+        assertEquals("<img src=\"/dam/jcr:0b5a/fish.jpg\" alt=\"Fish &quot;&amp;&quot; chips\" />",
+                render("{{{img key renditions=\"missing 480w\"}}}"));
+    }
+
+    @Test
+    public void writesOnlyTheHashForUnknownAssets() throws IOException {
+        assertEquals("<img class=\"missing\" />", render("{{{img other class=\"missing\"}}}"));
+    }
+
+    private String render(String template) throws IOException {
+        return handlebars.compileInline(template).apply(Collections.singletonMap("key", ITEM_KEY));
+    }
+}
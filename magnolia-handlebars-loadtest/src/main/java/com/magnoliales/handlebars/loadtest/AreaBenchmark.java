@@ -0,0 +1,229 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Options;
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.context.FieldValueResolver;
+import com.github.jknack.handlebars.context.JavaBeanValueResolver;
+import com.github.jknack.handlebars.context.MapValueResolver;
+import com.magnoliales.handlebars.helpers.AreaComponents;
+import com.magnoliales.handlebars.helpers.ComponentCursor;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import info.magnolia.jcr.util.ContentMap;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.ConfigurationException;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures iterating the components of an area of {@code loadtest.components} components from an in-memory
+ * repository with the example {@code menu} template: {@code contentmap} passes a {@link ContentMap} per component,
+ * as the public area helper did, and the component helper reads the workspace, identifier and path from the node;
+ * {@code cursor} passes {@link AreaComponents} and the helper reads them from the {@link ComponentCursor}. Both
+ * write the same output. Besides the time per area it prints the bytes the rendering thread allocated per area and
+ * per component. Run each variant in a fresh JVM.
+ *
+ * Usage: {@code AreaBenchmark [contentmap|cursor]}, cursor by default, with {@code loadtest.warmUpMillis},
+ * {@code loadtest.measureMillis} and {@code loadtest.components}, 200 by default.
+ */
+public final class AreaBenchmark {
+
+    private static final long DEFAULT_WARM_UP_MILLIS = 5000;
+    private static final long DEFAULT_MEASURE_MILLIS = 15000;
+    private static final int DEFAULT_COMPONENTS = 200;
+    private static final String MENU = "<table>\n"
+            + "    <tr>\n"
+            + "        {{#each components}}\n"
+            + "            <td>\n"
+            + "                {{{cms-component}}}\n"
+            + "            </td>\n"
+            + "        {{/each}}\n"
+            + "    </tr>\n"
+            + "</table>";
+
+    private AreaBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, RepositoryException {
+        String variant = args.length > 0 ? args[0] : "cursor";
+        boolean cursor = !"contentmap".equals(variant);
+        long warmUp = Long.getLong("loadtest.warmUpMillis", DEFAULT_WARM_UP_MILLIS);
+        long measure = Long.getLong("loadtest.measureMillis", DEFAULT_MEASURE_MILLIS);
+        int components = Integer.getInteger("loadtest.components", DEFAULT_COMPONENTS);
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            throw new IllegalStateException("The JVM does not count allocated bytes");
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+
+        File repositoryHome = File.createTempFile("handlebars-area-benchmark", "");
+        if (!repositoryHome.delete() || !repositoryHome.mkdirs()) {
+            throw new IOException("Cannot create repository home " + repositoryHome);
+        }
+        RepositoryImpl repository = createRepository(repositoryHome);
+        try {
+            Session session = repository.login(new SimpleCredentials("admin", "admin".toCharArray()), "website");
+            try {
+                Node area = createArea(session, components);
+                Handlebars handlebars = new Handlebars();
+                handlebars.registerHelper("cms-component", new ComponentHelper());
+                Template template = handlebars.compileInline(MENU);
+                StringBuilderWriter out = new StringBuilderWriter();
+
+                run(template, area, cursor, out, TimeUnit.MILLISECONDS.toNanos(warmUp));
+                long before = allocationBean.getThreadAllocatedBytes(threadId);
+                long areas = run(template, area, cursor, out, TimeUnit.MILLISECONDS.toNanos(measure));
+                long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+                System.out.printf(Locale.ENGLISH, "%-10s %10s %12s %12s %14s %12s%n", "area", "components",
+                        "ns/area", "bytes/area", "bytes/component", "output");
+                System.out.printf(Locale.ENGLISH, "%-10s %10d %12.0f %12d %14d %12d%n", variant, components,
+                        (double) TimeUnit.MILLISECONDS.toNanos(measure) / areas, allocated / areas,
+                        allocated / areas / components, out.builder.length());
+            } finally {
+                session.logout();
+            }
+        } finally {
+            repository.shutdown();
+            ExamplePagesScenario.delete(repositoryHome);
+        }
+    }
+
+    private static RepositoryImpl createRepository(File home) throws IOException {
+        InputStream configuration = AreaBenchmark.class.getResourceAsStream("/loadtest-repository.xml");
+        try {
+            return RepositoryImpl.create(RepositoryConfig.create(configuration, home.getPath()));
+        } catch (ConfigurationException e) {
+            throw new IOException("Cannot configure repository", e);
+        } catch (RepositoryException e) {
+            throw new IOException("Cannot create repository", e);
+        } finally {
+            configuration.close();
+        }
+    }
+
+    private static Node createArea(Session session, int components) throws RepositoryException {
+        Node area = session.getRootNode().addNode("home").addNode("menu");
+        for (int i = 0; i < components; i++) {
+            Node component = area.addNode(String.valueOf(i));
+            component.setProperty("template", "components/text");
+            component.setProperty("text", "Text " + i);
+        }
+        session.save();
+        return area;
+    }
+
+    private static long run(Template template, Node area, boolean cursor, StringBuilderWriter out, long nanos)
+            throws IOException, RepositoryException {
+        long end = System.nanoTime() + nanos;
+        long areas = 0;
+        while (System.nanoTime() < end) {
+            out.builder.setLength(0);
+            render(template, area, cursor, out);
+            areas++;
+        }
+        return areas;
+    }
+
+    // what the public area helper passes to the area template
+    private static void render(Template template, Node area, boolean cursor, Writer out)
+            throws IOException, RepositoryException {
+        List<Node> nodes = new ArrayList<Node>();
+        NodeIterator children = area.getNodes();
+        while (children.hasNext()) {
+            nodes.add(JcrReads.unwrap(children.nextNode()));
+        }
+        Map<String, Object> model = new HashMap<String, Object>();
+        if (cursor) {
+            model.put("components", new AreaComponents(nodes, null));
+        } else {
+            List<ContentMap> components = new ArrayList<ContentMap>();
+            for (Node node : nodes) {
+                components.add(new ContentMap(node));
+            }
+            model.put("components", components);
+        }
+        Context context = Context.newBuilder(model)
+                .resolver(JavaBeanValueResolver.INSTANCE, FieldValueResolver.INSTANCE, MapValueResolver.INSTANCE)
+                .build();
+        try {
+            template.apply(context, out);
+        } finally {
+            context.destroy();
+        }
+    }
+
+    /**
+     * Reads what the component helper sets on the component element in the page editor and writes it as the
+     * element's marker.
+     */
+    private static final class ComponentHelper implements Helper<Object> {
+
+        @Override
+        public CharSequence apply(Object context, Options options) throws IOException {
+            String workspace;
+            String nodeIdentifier;
+            String path;
+            if (context instanceof ComponentCursor) {
+                ComponentCursor cursor = (ComponentCursor) context;
+                workspace = cursor.getWorkspace();
+                nodeIdentifier = cursor.getNodeIdentifier();
+                path = cursor.getNodePath();
+            } else {
+                Node node = JcrReads.unwrap(((ContentMap) context).getJCRNode());
+                try {
+                    workspace = node.getSession().getWorkspace().getName();
+                    nodeIdentifier = node.getIdentifier();
+                    path = node.getPath();
+                } catch (RepositoryException e) {
+                    throw new IOException("Cannot read component", e);
+                }
+            }
+            return "<!-- cms:component content=\"" + workspace + ":" + path + "\" id=\"" + nodeIdentifier + "\" -->";
+        }
+    }
+
+    private static final class StringBuilderWriter extends Writer {
+
+        private final StringBuilder builder = new StringBuilder();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            builder.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String string) {
+            builder.append(string);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
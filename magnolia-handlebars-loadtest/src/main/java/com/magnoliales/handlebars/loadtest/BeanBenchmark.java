@@ -0,0 +1,126 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.magnoliales.handlebars.helpers.BeanSerializer;
+import org.apache.commons.beanutils.BeanUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing the properties of a bean as the {@code bean} helper does: {@code beanutils} with
+ * {@code BeanUtils.describe}, as the helper did before, {@code serializer} with {@link BeanSerializer} and
+ * {@code json} with {@link BeanSerializer} writing JSON. Besides the time per bean it prints the bytes the thread
+ * allocated per bean. Run each variant in a fresh JVM.
+ *
+ * Usage: {@code BeanBenchmark [beanutils|serializer|json]}, serializer by default, with
+ * {@code loadtest.warmUpMillis} and {@code loadtest.measureMillis}.
+ */
+public final class BeanBenchmark {
+
+    private static final long DEFAULT_WARM_UP_MILLIS = 5000;
+    private static final long DEFAULT_MEASURE_MILLIS = 15000;
+    private static final int BUFFER_CAPACITY = 256;
+    private static final int BEANS = 64;
+
+    private BeanBenchmark() {
+    }
+
+    public static void main(String[] args) throws IllegalAccessException, InvocationTargetException,
+            NoSuchMethodException {
+        String variant = args.length > 0 ? args[0] : "serializer";
+        long warmUp = Long.getLong("loadtest.warmUpMillis", DEFAULT_WARM_UP_MILLIS);
+        long measure = Long.getLong("loadtest.measureMillis", DEFAULT_MEASURE_MILLIS);
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            throw new IllegalStateException("The JVM does not count allocated bytes");
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+
+        ExampleBean[] beans = new ExampleBean[BEANS];
+        for (int i = 0; i < beans.length; i++) {
+            beans[i] = new ExampleBean(i);
+        }
+
+        run(variant, beans, TimeUnit.MILLISECONDS.toNanos(warmUp));
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        long written = run(variant, beans, TimeUnit.MILLISECONDS.toNanos(measure));
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.printf(Locale.ENGLISH, "%-10s %12s %12s %12s%n", "bean", "ns/bean", "bytes/bean", "output");
+        System.out.printf(Locale.ENGLISH, "%-10s %12.0f %12d %12d%n", variant,
+                (double) TimeUnit.MILLISECONDS.toNanos(measure) / written, allocated / written,
+                write(variant, beans[0]).length());
+    }
+
+    private static long run(String variant, ExampleBean[] beans, long nanos) throws IllegalAccessException,
+            InvocationTargetException, NoSuchMethodException {
+        long end = System.nanoTime() + nanos;
+        long written = 0;
+        int length = 0;
+        while (System.nanoTime() < end) {
+            for (ExampleBean bean : beans) {
+                length += write(variant, bean).length();
+            }
+            written += beans.length;
+        }
+        if (length < 0) {
+            throw new IllegalStateException("Never happens, keeps the output alive");
+        }
+        return written;
+    }
+
+    private static CharSequence write(String variant, Object bean) throws IllegalAccessException,
+            InvocationTargetException, NoSuchMethodException {
+        if ("beanutils".equals(variant)) {
+            return BeanUtils.describe(bean).toString();
+        }
+        return new BeanSerializer("json".equals(variant), 1).write(new StringBuilder(BUFFER_CAPACITY), bean);
+    }
+
+    /**
+     * A bean with the kind of properties page models expose.
+     */
+    public static final class ExampleBean {
+
+        private final int number;
+        private final Date created = new Date();
+
+        private ExampleBean(int number) {
+            this.number = number;
+        }
+
+        public String getTitle() {
+            return "Example " + number;
+        }
+
+        public String getText() {
+            return "Text of example " + number;
+        }
+
+        public String getLink() {
+            return "/examples/" + number + ".html";
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public double getRating() {
+            return number / 2.0;
+        }
+
+        public boolean isVisible() {
+            return number % 2 == 0;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+    }
+}
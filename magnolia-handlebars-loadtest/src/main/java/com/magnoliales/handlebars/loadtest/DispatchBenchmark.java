@@ -0,0 +1,236 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.magnoliales.handlebars.blossom.BlossomHandlerMethodAdapter;
+import com.magnoliales.handlebars.blossom.BlossomHandlerMethodMapping;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.HandlerAdapter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of dispatching the templates, areas and components of one page to their Blossom controllers,
+ * from handler lookup to the returned view, with the annotation handler mapping and adapter the module used before
+ * and with {@link BlossomHandlerMethodMapping} and {@code RequestMappingHandlerAdapter}. Views are not rendered.
+ * A page has one page template, two areas and {@code loadtest.components} components.
+ *
+ * Usage: {@code DispatchBenchmark}, with {@code loadtest.warmUpMillis}, {@code loadtest.measureMillis} and
+ * {@code loadtest.components} as in {@link LoadTest}.
+ */
+public final class DispatchBenchmark {
+
+    private static final long DEFAULT_WARM_UP_MILLIS = 5000;
+    private static final long DEFAULT_MEASURE_MILLIS = 15000;
+    private static final int DEFAULT_COMPONENTS = 50;
+
+    private DispatchBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long warmUp = Long.getLong("loadtest.warmUpMillis", DEFAULT_WARM_UP_MILLIS);
+        long measure = Long.getLong("loadtest.measureMillis", DEFAULT_MEASURE_MILLIS);
+        int components = Integer.getInteger("loadtest.components", DEFAULT_COMPONENTS);
+
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBeanDefinition("pageTemplate", new RootBeanDefinition(PageTemplate.class));
+        context.registerBeanDefinition("mainArea", new RootBeanDefinition(PageTemplate.MainArea.class));
+        context.registerBeanDefinition("footerArea", new RootBeanDefinition(PageTemplate.FooterArea.class));
+        context.registerBeanDefinition("textComponent", new RootBeanDefinition(TextComponent.class));
+        context.refresh();
+
+        String[] paths = new String[components + 3];
+        paths[0] = "/page";
+        paths[1] = "/page/main";
+        paths[2] = "/page/footer";
+        for (int i = 3; i < paths.length; i++) {
+            paths[i] = "/text";
+        }
+
+        Dispatcher legacy = legacyDispatcher(context);
+        Dispatcher current = currentDispatcher(context);
+        System.out.printf(Locale.ENGLISH, "%-10s %12s %12s%n", "dispatch", "ns/page", "ns/call");
+        for (Dispatcher dispatcher : new Dispatcher[] {legacy, current}) {
+            run(dispatcher, paths, TimeUnit.MILLISECONDS.toNanos(warmUp));
+            long pages = run(dispatcher, paths, TimeUnit.MILLISECONDS.toNanos(measure));
+            double perPage = (double) TimeUnit.MILLISECONDS.toNanos(measure) / pages;
+            System.out.printf(Locale.ENGLISH, "%-10s %12.0f %12.0f%n", dispatcher.name, perPage,
+                    perPage / paths.length);
+        }
+        context.close();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Dispatcher legacyDispatcher(GenericApplicationContext context) {
+        org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping mapping =
+                new org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping();
+        mapping.setUseDefaultSuffixPattern(false);
+        mapping.setApplicationContext(context);
+        org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerAdapter adapter =
+                new org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerAdapter();
+        adapter.setBeanFactory(context.getBeanFactory());
+        return new Dispatcher("legacy", mapping, adapter);
+    }
+
+    private static Dispatcher currentDispatcher(GenericApplicationContext context) {
+        BlossomHandlerMethodMapping mapping = new BlossomHandlerMethodMapping();
+        mapping.setUseSuffixPatternMatch(false);
+        mapping.setApplicationContext(context);
+        mapping.afterPropertiesSet();
+        RequestMappingHandlerAdapter adapter = new RequestMappingHandlerAdapter();
+        adapter.setApplicationContext(context);
+        adapter.setBeanFactory(context.getBeanFactory());
+        adapter.afterPropertiesSet();
+        return new Dispatcher("current", mapping, new BlossomHandlerMethodAdapter(adapter), adapter);
+    }
+
+    private static long run(Dispatcher dispatcher, String[] paths, long nanos) throws Exception {
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+                DispatchBenchmark.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+                new Stub(null));
+        long end = System.nanoTime() + nanos;
+        long pages = 0;
+        while (System.nanoTime() < end) {
+            for (String path : paths) {
+                dispatcher.dispatch(path, response);
+            }
+            pages++;
+        }
+        return pages;
+    }
+
+    private static final class Dispatcher {
+
+        private final String name;
+        private final HandlerMapping mapping;
+        private final HandlerAdapter[] adapters;
+
+        private Dispatcher(String name, HandlerMapping mapping, HandlerAdapter... adapters) {
+            this.name = name;
+            this.mapping = mapping;
+            this.adapters = adapters;
+        }
+
+        private void dispatch(String path, HttpServletResponse response) throws Exception {
+            // a new request per dispatch, like Blossom's forward
+            HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+                    DispatchBenchmark.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+                    new Stub(path));
+            Object handler = mapping.getHandler(request).getHandler();
+            ModelAndView modelAndView = null;
+            // the first supporting adapter, as the dispatcher servlet chooses
+            for (HandlerAdapter adapter : adapters) {
+                if (adapter.supports(handler)) {
+                    modelAndView = adapter.handle(request, response, handler);
+                    break;
+                }
+            }
+            if (modelAndView == null || modelAndView.getViewName() == null) {
+                throw new IllegalStateException("No view for " + path);
+            }
+        }
+    }
+
+    /**
+     * Just enough of a forwarded request, or a response, for handler lookup and invocation.
+     */
+    private static final class Stub implements InvocationHandler {
+
+        private final String path;
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        private Stub(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("getRequestURI".equals(name) || "getServletPath".equals(name)) {
+                return path;
+            } else if ("getContextPath".equals(name)) {
+                return "";
+            } else if ("getMethod".equals(name)) {
+                return "GET";
+            } else if ("getAttribute".equals(name)) {
+                return attributes.get(args[0]);
+            } else if ("setAttribute".equals(name)) {
+                attributes.put((String) args[0], args[1]);
+            } else if ("removeAttribute".equals(name)) {
+                attributes.remove(args[0]);
+            } else if ("getAttributeNames".equals(name)) {
+                return Collections.enumeration(attributes.keySet());
+            } else if ("getParameterMap".equals(name)) {
+                return Collections.emptyMap();
+            } else if ("getLocale".equals(name)) {
+                return Locale.ENGLISH;
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if (method.getReturnType() == Enumeration.class) {
+                return Collections.enumeration(Collections.emptyList());
+            } else if (method.getReturnType() == boolean.class) {
+                return false;
+            } else if (method.getReturnType() == int.class) {
+                return 0;
+            } else if (method.getReturnType() == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+
+    @Controller
+    public static class PageTemplate {
+
+        @RequestMapping("/page")
+        public String render(Model model) {
+            model.addAttribute("name", "World");
+            return "page";
+        }
+
+        @Controller
+        public static class MainArea {
+
+            @RequestMapping("/page/main")
+            public String render() {
+                return "areas/main";
+            }
+        }
+
+        @Controller
+        public static class FooterArea {
+
+            @RequestMapping("/page/footer")
+            public String render() {
+                return "areas/footer";
+            }
+        }
+    }
+
+    @Controller
+    public static class TextComponent {
+
+        @RequestMapping("/text")
+        public String render(Model model) {
+            model.addAttribute("text", "Text");
+            return "components/text";
+        }
+    }
+}
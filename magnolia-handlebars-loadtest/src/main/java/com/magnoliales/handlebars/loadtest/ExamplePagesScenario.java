@@ -0,0 +1,541 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.cache.ConcurrentMapTemplateCache;
+import com.github.jknack.handlebars.context.FieldValueResolver;
+import com.github.jknack.handlebars.context.JavaBeanValueResolver;
+import com.github.jknack.handlebars.context.MapValueResolver;
+import com.github.jknack.handlebars.io.FileTemplateLoader;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import com.magnoliales.handlebars.helpers.AssetMetadataCache;
+import com.magnoliales.handlebars.helpers.DamLinkCache;
+import com.magnoliales.handlebars.helpers.EditHelper;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.profile.ProfileNode;
+import com.magnoliales.handlebars.profile.ProfiledHelper;
+import com.magnoliales.handlebars.profile.ProfiledWriter;
+import com.magnoliales.handlebars.profile.RenderProfile;
+import com.magnoliales.handlebars.renderer.ChainedContentMap;
+import com.magnoliales.handlebars.renderer.ContentSnapshots;
+import com.magnoliales.handlebars.renderer.LocaleFallbacks;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import com.magnoliales.handlebars.renderer.TemplateAnalyzer;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.objectfactory.Components;
+import info.magnolia.registry.RegistrationException;
+import info.magnolia.rendering.engine.OutputProvider;
+import info.magnolia.rendering.engine.RenderException;
+import info.magnolia.rendering.engine.RenderingEngine;
+import info.magnolia.rendering.model.RenderingModelImpl;
+import info.magnolia.rendering.template.AreaDefinition;
+import info.magnolia.rendering.template.RenderableDefinition;
+import info.magnolia.rendering.template.TemplateDefinition;
+import info.magnolia.rendering.template.configured.ConfiguredAreaDefinition;
+import info.magnolia.rendering.template.configured.ConfiguredTemplateDefinition;
+import info.magnolia.rendering.template.registry.TemplateDefinitionRegistry;
+import info.magnolia.test.mock.MockComponentProvider;
+import info.magnolia.test.mock.MockContext;
+import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.jackrabbit.commons.cnd.CndImporter;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.ConfigurationException;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.ImportUUIDBehavior;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the example module's pages from an in-memory repository. The pages are imported from the module's
+ * bootstrap file and the helpers are registered from the renderer configuration the modules bootstrap, in the
+ * public variants the renderer uses outside of the page editor. Every render runs in a Magnolia
+ * {@link MockContext} of its own, as a request would, and the helpers look up their components in a
+ * {@link MockComponentProvider}. Page, area and component templates go through the template pipeline of the
+ * renderer (template cache, manifest prefetch, {@link ChainedContentMap} with supplier pages and locale fallbacks).
+ *
+ * {@code HandlebarsRenderer} itself is not driven: {@code AbstractRenderer.render} creates the models, wraps the
+ * content and looks up the templating functions through a booted Magnolia, and the view it renders is chosen by
+ * Blossom's dispatch to the example module's controllers. Instead, the {@link RenderingEngine} the {@code cms-area}
+ * and {@code cms-component} helpers render with renders the view each controller returns, from template definitions
+ * mirroring the controllers' annotations, and DAM assets are nodes of the website workspace. The scaling measured
+ * here is that of the template pipeline and the helpers, not of the renderer's page cache, conditional requests or
+ * Blossom dispatch.
+ */
+public class ExamplePagesScenario implements RenderScenario {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExamplePagesScenario.class);
+
+    private static final String NODE_TYPES = "<mgnl = 'http://www.magnolia.info/jcr/mgnl'>\n"
+            + "[mgnl:content] > nt:unstructured, mix:referenceable\n"
+            + "[mgnl:contentNode] > nt:unstructured, mix:referenceable\n"
+            + "[mgnl:page] > mgnl:content\n"
+            + "[mgnl:area] > mgnl:contentNode\n"
+            + "[mgnl:component] > mgnl:contentNode\n";
+    private static final String WEBSITE = "website";
+    private static final String CONFIG = "config";
+    private static final String RENDERERS = "/modules/handlebars/renderers";
+    private static final String HELPERS = RENDERERS + "/handlebars/helpers";
+    private static final String RENDERER_BOOTSTRAP =
+            "/mgnl-bootstrap/handlebars/config.modules.handlebars.renderers.handlebars.xml";
+    private static final String[] HELPER_BOOTSTRAPS = {
+        "/mgnl-bootstrap/handlebars-helpers/config.modules.handlebars.renderers.handlebars.helpers.bean.xml",
+        "/mgnl-bootstrap/handlebars-helpers/config.modules.handlebars.renderers.handlebars.helpers.dam-link.xml",
+        "/mgnl-bootstrap/handlebars-helpers/config.modules.handlebars.renderers.handlebars.helpers.img.xml",
+    };
+    // relative to the resources of the example module, the parent of its template directory
+    private static final String PAGES_BOOTSTRAP = "mgnl-bootstrap/handlebars-example/website.home.xml";
+    private static final String[] PAGES = {"/home", "/home/details", "/home/details/sub-details"};
+    private static final String TEMPLATE = "mgnl:template";
+    private static final String SCOPE_ATTRIBUTE = ExamplePagesScenario.class.getName() + ".scope";
+    private static final long IMAGE_WIDTH = 1280;
+    private static final long IMAGE_HEIGHT = 960;
+
+    private final File templateDirectory;
+    private final int componentsPerArea;
+    private final Locale locale;
+    private final LocaleFallbacks localeFallbacks;
+    private final boolean profiled;
+    private final Map<String, TemplateDefinition> templates;
+    private File repositoryHome;
+    private RepositoryImpl repository;
+    private Session assetSession;
+    private MockComponentProvider componentProvider;
+    private Handlebars handlebars;
+    private TemplateAnalyzer templateAnalyzer;
+
+    /**
+     * @param componentsPerArea the number of components of each area, copies of the one the area is bootstrapped
+     *                          with
+     * @param profiled whether every render records a {@link RenderProfile}; helpers are wrapped in
+     *                 {@link ProfiledHelper} either way, as in the renderer
+     */
+    public ExamplePagesScenario(File templateDirectory, int componentsPerArea, Locale locale, boolean profiled) {
+        this.templateDirectory = templateDirectory;
+        this.componentsPerArea = componentsPerArea;
+        this.locale = locale;
+        this.localeFallbacks = new LocaleFallbacks();
+        this.profiled = profiled;
+        // the templates of the example module's controllers and the views they return
+        templates = new HashMap<String, TemplateDefinition>();
+        addTemplate("handlebars-example:pages/home-page", "home-page", "menu", "footer");
+        addTemplate("handlebars-example:pages/details-page", "details-page");
+        addTemplate("handlebars-example:pages/sub-details-page", "sub-details-page", "menu");
+        addTemplate("handlebars-example:components/text", "components/text");
+    }
+
+    @Override
+    public void setUp() throws IOException {
+        repositoryHome = File.createTempFile("handlebars-loadtest", "");
+        if (!repositoryHome.delete() || !repositoryHome.mkdirs()) {
+            throw new IOException("Cannot create repository home " + repositoryHome);
+        }
+        InputStream configuration = getClass().getResourceAsStream("/loadtest-repository.xml");
+        try {
+            repository = RepositoryImpl.create(RepositoryConfig.create(configuration, repositoryHome.getPath()));
+            Session session = login(WEBSITE);
+            try {
+                CndImporter.registerNodeTypes(new StringReader(NODE_TYPES), session);
+                session.getWorkspace().createWorkspace(CONFIG);
+                importPages(session);
+            } finally {
+                session.logout();
+            }
+            assetSession = login(WEBSITE);
+
+            componentProvider = new MockComponentProvider();
+            componentProvider.setInstance(RenderingEngine.class, (RenderingEngine) Proxy.newProxyInstance(
+                    getClass().getClassLoader(), new Class<?>[] {RenderingEngine.class}, new ControllerViews()));
+            componentProvider.setInstance(TemplateDefinitionRegistry.class, new ExampleTemplates());
+            componentProvider.setInstance(AssetMetadataCache.class, new NodeAssetMetadataCache(assetSession));
+            componentProvider.setInstance(DamLinkCache.class, new DamLinkCache(new InvalidationBus()));
+            Components.setComponentProvider(componentProvider);
+
+            handlebars = new Handlebars(new FileTemplateLoader(templateDirectory));
+            handlebars.with(new ConcurrentMapTemplateCache());
+            Session config = login(CONFIG);
+            try {
+                importRendererConfiguration(config);
+                registerHelpers(config);
+            } finally {
+                config.logout();
+            }
+        } catch (ConfigurationException e) {
+            throw new IOException("Cannot configure repository", e);
+        } catch (ParseException e) {
+            throw new IOException("Cannot register node types", e);
+        } catch (RepositoryException e) {
+            throw new IOException("Cannot bootstrap example pages", e);
+        } finally {
+            configuration.close();
+        }
+        templateAnalyzer = new TemplateAnalyzer(handlebars);
+    }
+
+    @Override
+    public Worker newWorker() throws IOException {
+        final Session session;
+        try {
+            session = login(WEBSITE);
+        } catch (RepositoryException e) {
+            throw new IOException("Cannot log into repository", e);
+        }
+        return new Worker() {
+
+            private int next;
+
+            @Override
+            public int render() throws IOException {
+                String path = PAGES[next++ % PAGES.length];
+                CountingWriter out = new CountingWriter();
+                RenderProfile profile = profiled ? new RenderProfile(path, path) : null;
+                renderPage(session, path, out, profile);
+                if (profile != null) {
+                    profile.complete();
+                }
+                return out.count;
+            }
+
+            @Override
+            public void close() {
+                session.logout();
+            }
+        };
+    }
+
+    /**
+     * Renders a page on the calling thread, outside of the workers.
+     */
+    String render(String path) throws IOException {
+        Session session;
+        try {
+            session = login(WEBSITE);
+        } catch (RepositoryException e) {
+            throw new IOException("Cannot log into repository", e);
+        }
+        try {
+            StringBuilderWriter out = new StringBuilderWriter();
+            renderPage(session, path, out, null);
+            return out.builder.toString();
+        } finally {
+            session.logout();
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        Components.setComponentProvider(null);
+        if (assetSession != null) {
+            assetSession.logout();
+        }
+        if (repository != null) {
+            repository.shutdown();
+        }
+        if (repositoryHome != null) {
+            delete(repositoryHome);
+        }
+    }
+
+    private void renderPage(Session session, String path, Writer out, RenderProfile profile) throws IOException {
+        JcrReads reads = profile != null ? new JcrReads(profile) : null;
+        // a context of its own for every render, as for a request
+        MgnlContext.setInstance(new MockContext());
+        try {
+            RenderScope scope = new RenderScope(MgnlContext.getInstance(), null, null, componentProvider,
+                    localeFallbacks.getKeyTable(locale), ContentSnapshots.getOrCreate(), profile, reads, null);
+            MgnlContext.setAttribute(SCOPE_ATTRIBUTE, scope, info.magnolia.context.Context.LOCAL_SCOPE);
+            Node page = session.getNode(path);
+            // the model of the example module's page controllers
+            Map<String, Object> model = new HashMap<String, Object>();
+            model.put("name", "World");
+            model.put("exampleBean", new ExampleBean());
+            renderTemplate(getTemplateDefinition(page), page, model, out, scope);
+        } catch (RepositoryException e) {
+            throw new IOException("Cannot render " + path, e);
+        } catch (RegistrationException e) {
+            throw new IOException("Cannot render " + path, e);
+        } finally {
+            MgnlContext.setInstance(null);
+        }
+    }
+
+    private void addTemplate(String id, String view, String... areaNames) {
+        ConfiguredTemplateDefinition template = new ConfiguredTemplateDefinition();
+        template.setId(id);
+        template.setTemplateScript(view);
+        Map<String, AreaDefinition> areas = new LinkedHashMap<String, AreaDefinition>();
+        for (String areaName : areaNames) {
+            ConfiguredAreaDefinition area = new ConfiguredAreaDefinition();
+            area.setName(areaName);
+            area.setEnabled(true);
+            area.setType(AreaDefinition.TYPE_LIST);
+            area.setTemplateScript("areas/" + areaName);
+            areas.put(areaName, area);
+        }
+        template.setAreas(areas);
+        templates.put(id, template);
+    }
+
+    private TemplateDefinition getTemplateDefinition(Node content) throws RegistrationException {
+        return componentProvider.getComponent(TemplateDefinitionRegistry.class)
+                .getTemplateDefinition(PropertyUtil.getString(content, TEMPLATE));
+    }
+
+    /**
+     * Imports the example pages, gives the home page an image and copies the component of every area up to the
+     * number of components per area.
+     */
+    private void importPages(Session session) throws IOException, RepositoryException {
+        InputStream pages = new FileInputStream(new File(templateDirectory.getParentFile(), PAGES_BOOTSTRAP));
+        try {
+            session.importXML("/", pages, ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW);
+        } finally {
+            pages.close();
+        }
+        Node asset = session.getRootNode().addNode("images").addNode("example");
+        asset.addMixin("mix:referenceable");
+        asset.setProperty("caption", "Example image");
+        asset.setProperty("width", IMAGE_WIDTH);
+        asset.setProperty("height", IMAGE_HEIGHT);
+        session.save();
+        session.getNode(PAGES[0]).setProperty("image", NodeAssetMetadataCache.ITEM_KEY_PREFIX + asset.getIdentifier());
+        session.save();
+
+        for (String path : PAGES) {
+            for (Node area : NodeUtil.getNodes(session.getNode(path), NodeTypes.Area.NAME)) {
+                String component = area.getNodes().nextNode().getPath();
+                for (int i = 1; i < componentsPerArea; i++) {
+                    session.getWorkspace().copy(component, area.getPath() + "/" + i);
+                }
+            }
+        }
+    }
+
+    private static void importRendererConfiguration(Session config) throws IOException, RepositoryException {
+        JcrUtils.getOrCreateByPath(RENDERERS, "mgnl:content", config);
+        config.save();
+        importXml(config, RENDERERS, RENDERER_BOOTSTRAP);
+        for (String helper : HELPER_BOOTSTRAPS) {
+            importXml(config, HELPERS, helper);
+        }
+    }
+
+    private static void importXml(Session session, String parentPath, String resource)
+            throws IOException, RepositoryException {
+        InputStream xml = ExamplePagesScenario.class.getResourceAsStream(resource);
+        if (xml == null) {
+            throw new IOException("Cannot find " + resource);
+        }
+        try {
+            session.importXML(parentPath, xml, ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW);
+        } finally {
+            xml.close();
+        }
+        session.save();
+    }
+
+    /**
+     * Registers the configured helpers as the renderer does outside of the page editor.
+     */
+    private void registerHelpers(Session config) throws IOException, RepositoryException {
+        for (Node helperNode : JcrUtils.getChildNodes(config.getNode(HELPERS))) {
+            String helperName = PropertyUtil.getString(helperNode, "name");
+            String helperClassName = PropertyUtil.getString(helperNode, "class");
+            Helper<?> helper;
+            try {
+                helper = (Helper<?>) Class.forName(helperClassName).newInstance();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot create helper " + helperName, e);
+            } catch (InstantiationException e) {
+                throw new IOException("Cannot create helper " + helperName, e);
+            } catch (IllegalAccessException e) {
+                throw new IOException("Cannot create helper " + helperName, e);
+            }
+            handlebars.registerHelper(helperName, new ProfiledHelper(helperName,
+                    helper instanceof EditHelper ? ((EditHelper) helper).getPublicHelper() : helper));
+        }
+    }
+
+    private void renderTemplate(RenderableDefinition definition, Node node, Map<String, Object> context, Writer out,
+                                RenderScope scope) throws IOException {
+        String templateName = definition.getTemplateScript();
+        RenderProfile profile = scope.getProfile();
+        JcrReads reads = scope.getJcrReads();
+        ProfileNode step = profile != null ? profile.enter("template", templateName) : null;
+        Writer writer = profile != null ? new ProfiledWriter(out) : out;
+        if (reads != null) {
+            reads.enter(templateName);
+        }
+        try {
+            ChainedContentMap content = new ChainedContentMap(node, scope);
+            Template template = handlebars.compile(templateName);
+            content.prefetch(templateAnalyzer.getManifest(templateName, template).getContentPaths());
+            context.put("content", content);
+            context.put("model", new RenderingModelImpl<RenderableDefinition>(node, definition, null));
+            Context combinedContext = Context.newBuilder(context)
+                    .resolver(JavaBeanValueResolver.INSTANCE, FieldValueResolver.INSTANCE, MapValueResolver.INSTANCE)
+                    .build();
+            combinedContext.data(RenderScope.DATA_KEY, scope);
+            try {
+                template.apply(combinedContext, writer);
+            } finally {
+                combinedContext.destroy();
+            }
+        } finally {
+            if (reads != null) {
+                reads.exit();
+            }
+            if (step != null) {
+                profile.exit(step, ((ProfiledWriter) writer).getCount());
+            }
+        }
+    }
+
+    private Session login(String workspace) throws RepositoryException {
+        return repository.login(new SimpleCredentials("admin", "admin".toCharArray()), workspace);
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            LOGGER.warn("Cannot delete {}", file);
+        }
+    }
+
+    public static final class ExampleBean {
+
+        public String getTitle() {
+            return "Example Bean Title";
+        }
+
+        public String getText() {
+            return "Example Bean Text";
+        }
+    }
+
+    /**
+     * The template definitions of the example module's controllers.
+     */
+    private final class ExampleTemplates extends TemplateDefinitionRegistry {
+
+        @Override
+        public TemplateDefinition getTemplateDefinition(String id) throws RegistrationException {
+            TemplateDefinition definition = templates.get(id);
+            if (definition == null) {
+                throw new RegistrationException("No example template " + id);
+            }
+            return definition;
+        }
+    }
+
+    /**
+     * Stands in for the rendering engine and Blossom's dispatch: renders the content with the view its controller
+     * returns, in the scope of the page render, with the context objects the helper passes.
+     */
+    private final class ControllerViews implements InvocationHandler {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws RenderException {
+            String name = method.getName();
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("toString".equals(name)) {
+                return ControllerViews.class.getName();
+            } else if (!"render".equals(name)) {
+                throw new UnsupportedOperationException(name);
+            }
+            // render(content, [definition,] [contextObjects,] outputProvider)
+            Node content = (Node) args[0];
+            OutputProvider outputProvider = (OutputProvider) args[args.length - 1];
+            Map<String, Object> context = new HashMap<String, Object>();
+            if (args.length > 2 && args[args.length - 2] != null) {
+                context.putAll((Map<String, Object>) args[args.length - 2]);
+            }
+            RenderScope scope = MgnlContext.getAttribute(SCOPE_ATTRIBUTE, info.magnolia.context.Context.LOCAL_SCOPE);
+            StringBuilderWriter out = new StringBuilderWriter();
+            try {
+                RenderableDefinition definition = args.length == 4 ? (RenderableDefinition) args[1]
+                        : getTemplateDefinition(content);
+                renderTemplate(definition, content, context, out, scope);
+                outputProvider.getAppendable().append(out.builder);
+            } catch (RegistrationException e) {
+                throw new RenderException(e);
+            } catch (IOException e) {
+                throw new RenderException(e);
+            }
+            return null;
+        }
+    }
+
+    private static final class CountingWriter extends Writer {
+
+        private int count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class StringBuilderWriter extends Writer {
+
+        private final StringBuilder builder = new StringBuilder();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            builder.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String string) {
+            builder.append(string);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
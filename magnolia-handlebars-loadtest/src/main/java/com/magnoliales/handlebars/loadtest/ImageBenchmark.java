@@ -0,0 +1,190 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Options;
+import com.github.jknack.handlebars.Template;
+import com.magnoliales.handlebars.helpers.AssetMetadataCache;
+import com.magnoliales.handlebars.helpers.ImgTemplateHelper;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.ConfigurationException;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures an image heavy template, a gallery of {@code loadtest.images} {@code img} tags over assets of an
+ * in-memory repository: {@code uncached} reads the asset for every tag and formats the tag as the {@code img} helper
+ * did before asset metadata was cached, {@code cached} uses {@link ImgTemplateHelper} with an
+ * {@link AssetMetadataCache} that reads the same nodes. Besides the time per page it prints the bytes the rendering
+ * thread allocated per page and per image. Run each variant in a fresh JVM.
+ *
+ * Usage: {@code ImageBenchmark [uncached|cached]}, cached by default, with {@code loadtest.warmUpMillis},
+ * {@code loadtest.measureMillis} and {@code loadtest.images}, 120 by default.
+ */
+public final class ImageBenchmark {
+
+    private static final long DEFAULT_WARM_UP_MILLIS = 5000;
+    private static final long DEFAULT_MEASURE_MILLIS = 15000;
+    private static final int DEFAULT_IMAGES = 120;
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 960;
+    private static final String GALLERY = "<ul class=\"gallery\">\n"
+            + "    {{#each images}}\n"
+            + "        <li>{{{img this class=\"thumb\" dimensions=true}}}</li>\n"
+            + "    {{/each}}\n"
+            + "</ul>";
+
+    private ImageBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, RepositoryException {
+        String variant = args.length > 0 ? args[0] : "cached";
+        boolean cached = !"uncached".equals(variant);
+        long warmUp = Long.getLong("loadtest.warmUpMillis", DEFAULT_WARM_UP_MILLIS);
+        long measure = Long.getLong("loadtest.measureMillis", DEFAULT_MEASURE_MILLIS);
+        int images = Integer.getInteger("loadtest.images", DEFAULT_IMAGES);
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            throw new IllegalStateException("The JVM does not count allocated bytes");
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+
+        File repositoryHome = File.createTempFile("handlebars-image-benchmark", "");
+        if (!repositoryHome.delete() || !repositoryHome.mkdirs()) {
+            throw new IOException("Cannot create repository home " + repositoryHome);
+        }
+        RepositoryImpl repository = createRepository(repositoryHome);
+        try {
+            Session session = repository.login(new SimpleCredentials("admin", "admin".toCharArray()), "website");
+            try {
+                List<String> itemKeys = createAssets(session, images);
+                Handlebars handlebars = new Handlebars();
+                if (cached) {
+                    handlebars.registerHelper("img", new ImgTemplateHelper(new NodeAssetMetadataCache(session)));
+                } else {
+                    handlebars.registerHelper("img", new UncachedImgHelper(session));
+                }
+                Template template = handlebars.compileInline(GALLERY);
+                Map<String, Object> model = Collections.<String, Object>singletonMap("images", itemKeys);
+
+                run(template, model, TimeUnit.MILLISECONDS.toNanos(warmUp));
+                long before = allocationBean.getThreadAllocatedBytes(threadId);
+                long pages = run(template, model, TimeUnit.MILLISECONDS.toNanos(measure));
+                long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+                System.out.printf(Locale.ENGLISH, "%-10s %8s %12s %12s %12s %12s%n", "img", "images", "ns/page",
+                        "bytes/page", "bytes/image", "output");
+                System.out.printf(Locale.ENGLISH, "%-10s %8d %12.0f %12d %12d %12d%n", variant, images,
+                        (double) TimeUnit.MILLISECONDS.toNanos(measure) / pages, allocated / pages,
+                        allocated / pages / images, template.apply(model).length());
+            } finally {
+                session.logout();
+            }
+        } finally {
+            repository.shutdown();
+            ExamplePagesScenario.delete(repositoryHome);
+        }
+    }
+
+    private static RepositoryImpl createRepository(File home) throws IOException {
+        InputStream configuration = ImageBenchmark.class.getResourceAsStream("/loadtest-repository.xml");
+        try {
+            return RepositoryImpl.create(RepositoryConfig.create(configuration, home.getPath()));
+        } catch (ConfigurationException e) {
+            throw new IOException("Cannot configure repository", e);
+        } catch (RepositoryException e) {
+            throw new IOException("Cannot create repository", e);
+        } finally {
+            configuration.close();
+        }
+    }
+
+    private static List<String> createAssets(Session session, int images) throws RepositoryException {
+        Node folder = session.getRootNode().addNode("images");
+        List<Node> assets = new ArrayList<Node>();
+        for (int i = 0; i < images; i++) {
+            Node asset = folder.addNode("image-" + i);
+            asset.addMixin("mix:referenceable");
+            asset.setProperty("caption", "Image " + i + " & more");
+            asset.setProperty("width", WIDTH);
+            asset.setProperty("height", HEIGHT);
+            assets.add(asset);
+        }
+        session.save();
+        List<String> itemKeys = new ArrayList<String>();
+        for (Node asset : assets) {
+            itemKeys.add(NodeAssetMetadataCache.ITEM_KEY_PREFIX + asset.getIdentifier());
+        }
+        return itemKeys;
+    }
+
+    private static long run(Template template, Map<String, Object> model, long nanos) throws IOException {
+        long end = System.nanoTime() + nanos;
+        long pages = 0;
+        while (System.nanoTime() < end) {
+            template.apply(model, new StringWriter());
+            pages++;
+        }
+        return pages;
+    }
+
+    /**
+     * Reads the asset for every tag and formats the tag, as the {@code img} helper did before asset metadata was
+     * cached.
+     */
+    private static final class UncachedImgHelper implements Helper<String> {
+
+        private final Session session;
+
+        private UncachedImgHelper(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public CharSequence apply(String context, Options options) throws IOException {
+            String attributes = "";
+            Map<String, String> attributeMap = new HashMap<String, String>();
+            Node asset = NodeAssetMetadataCache.getAsset(session, context);
+            if (asset != null) {
+                try {
+                    attributeMap.put("src", NodeAssetMetadataCache.getLink(asset));
+                    attributeMap.put("alt", asset.getProperty("caption").getString());
+                    attributeMap.put("width", asset.getProperty("width").getString());
+                    attributeMap.put("height", asset.getProperty("height").getString());
+                } catch (RepositoryException e) {
+                    throw new IOException("Cannot read asset " + context, e);
+                }
+            }
+            for (Map.Entry<String, Object> entry : options.hash.entrySet()) {
+                if (entry.getValue() != null && !ImgTemplateHelper.DIMENSIONS_OPTION.equals(entry.getKey())) {
+                    attributeMap.put(entry.getKey(), entry.getValue().toString());
+                }
+            }
+            for (Map.Entry<String, String> entry : attributeMap.entrySet()) {
+                if (entry.getValue() != null) {
+                    attributes += String.format("%s=\"%s\" ", entry.getKey(), entry.getValue());
+                }
+            }
+            return String.format("<img %s/>", attributes);
+        }
+    }
+}
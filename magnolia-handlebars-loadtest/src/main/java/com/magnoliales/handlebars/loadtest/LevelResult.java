@@ -0,0 +1,90 @@
+package com.magnoliales.handlebars.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public final class LevelResult {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+    private static final double P50 = 0.5;
+    private static final double P99 = 0.99;
+    private static final double P999 = 0.999;
+
+    private final int threads;
+    private final long elapsedNanos;
+    private final long[] latencies;
+    private final long allocatedBytes;
+    private final long errors;
+
+    LevelResult(int threads, long elapsedNanos, long[] latencies, long allocatedBytes, long errors) {
+        this.threads = threads;
+        this.elapsedNanos = elapsedNanos;
+        this.latencies = latencies;
+        this.allocatedBytes = allocatedBytes;
+        this.errors = errors;
+        Arrays.sort(this.latencies);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getRenders() {
+        return latencies.length;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getThroughput() {
+        return latencies.length * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    public double getPercentileMillis(double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Allocation rate in MB/s, or a negative value if the JVM cannot measure per thread allocations.
+     */
+    public double getAllocationRate() {
+        return allocatedBytes < 0 ? -1 : allocatedBytes / BYTES_PER_MEGABYTE * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    public double getAllocatedBytesPerRender() {
+        return allocatedBytes < 0 || latencies.length == 0 ? -1 : (double) allocatedBytes / latencies.length;
+    }
+
+    String toRow(LevelResult baseline) {
+        double speedup = getThroughput() / baseline.getThroughput();
+        return String.format(Locale.ENGLISH, "%7d %12.1f %8.2f %8.2f %8.2f %10.1f %12.0f %8.2f %10.2f %6d",
+                threads, getThroughput(), getPercentileMillis(P50), getPercentileMillis(P99),
+                getPercentileMillis(P999), getAllocationRate(), getAllocatedBytesPerRender(),
+                speedup, speedup * baseline.threads / threads, errors);
+    }
+
+    String toCsv(LevelResult baseline) {
+        double speedup = getThroughput() / baseline.getThroughput();
+        return String.format(Locale.ENGLISH, "%d,%.3f,%.4f,%.4f,%.4f,%.3f,%.0f,%.4f,%.4f,%d",
+                threads, getThroughput(), getPercentileMillis(P50), getPercentileMillis(P99),
+                getPercentileMillis(P999), getAllocationRate(), getAllocatedBytesPerRender(),
+                speedup, speedup * baseline.threads / threads, errors);
+    }
+
+    static String header() {
+        return String.format(Locale.ENGLISH, "%7s %12s %8s %8s %8s %10s %12s %8s %10s %6s",
+                "threads", "renders/s", "p50 ms", "p99 ms", "p999 ms", "alloc MB/s", "bytes/render",
+                "speedup", "efficiency", "errors");
+    }
+
+    static String csvHeader() {
+        return "threads,throughput,p50_ms,p99_ms,p999_ms,alloc_mb_s,bytes_per_render,speedup,efficiency,errors";
+    }
+}
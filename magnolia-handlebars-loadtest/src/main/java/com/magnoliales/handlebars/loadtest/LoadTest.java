@@ -0,0 +1,99 @@
+package com.magnoliales.handlebars.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Renders the example pages through the template pipeline described in {@link ExamplePagesScenario} at 1, 2, 4, 8
+ * and 16 threads and reports throughput, latency percentiles, allocation rate and scaling efficiency. The curve is
+ * written to {@code template-pipeline-scaling.csv} in the output directory; it is the scaling of the template
+ * pipeline and the helpers, not of {@code HandlebarsRenderer}. When {@code loadtest.minEfficiency} is set, the run
+ * fails if the efficiency at the highest thread count that does not exceed the available processors drops below it.
+ *
+ * Usage: {@code LoadTest <template directory> [output directory]}, with the template directory of the example module,
+ * next to its bootstrap files; see also the {@code loadtest.*} system properties below.
+ */
+public final class LoadTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+    private static final long DEFAULT_WARM_UP_MILLIS = 5000;
+    private static final long DEFAULT_MEASURE_MILLIS = 15000;
+    private static final int DEFAULT_COMPONENTS = 50;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: LoadTest <template directory> [output directory]");
+            System.exit(1);
+        }
+        File templateDirectory = new File(args[0]);
+        File outputDirectory = new File(args.length > 1 ? args[1] : "target/loadtest");
+        long warmUp = Long.getLong("loadtest.warmUpMillis", DEFAULT_WARM_UP_MILLIS);
+        long measure = Long.getLong("loadtest.measureMillis", DEFAULT_MEASURE_MILLIS);
+        int components = Integer.getInteger("loadtest.components", DEFAULT_COMPONENTS);
+        Locale locale = new Locale(System.getProperty("loadtest.locale", "de"));
+        boolean profiled = Boolean.getBoolean("loadtest.profile");
+        String minEfficiency = System.getProperty("loadtest.minEfficiency");
+
+        RenderScenario scenario = new ExamplePagesScenario(templateDirectory, components, locale, profiled);
+        List<LevelResult> results = new LoadTestHarness(scenario, warmUp, measure).run(THREADS);
+
+        LevelResult baseline = results.get(0);
+        StringBuilder report = new StringBuilder();
+        report.append(LevelResult.header()).append('\n');
+        for (LevelResult result : results) {
+            report.append(result.toRow(baseline)).append('\n');
+        }
+        System.out.println(report);
+        writeCsv(new File(outputDirectory, "template-pipeline-scaling.csv"), results);
+
+        if (minEfficiency != null) {
+            checkEfficiency(results, Double.parseDouble(minEfficiency));
+        }
+    }
+
+    private static void writeCsv(File file, List<LevelResult> results) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Cannot create " + file.getParent());
+        }
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.println(LevelResult.csvHeader());
+            for (LevelResult result : results) {
+                writer.println(result.toCsv(results.get(0)));
+            }
+        } finally {
+            writer.close();
+        }
+        LOGGER.info("Template pipeline scaling curve written to {}", file);
+    }
+
+    private static void checkEfficiency(List<LevelResult> results, double minEfficiency) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        LevelResult baseline = results.get(0);
+        LevelResult checked = baseline;
+        for (LevelResult result : results) {
+            if (result.getThreads() <= processors) {
+                checked = result;
+            }
+        }
+        double efficiency = checked.getThroughput() / baseline.getThroughput() / checked.getThreads();
+        if (efficiency < minEfficiency) {
+            System.err.printf(Locale.ENGLISH, "Scaling efficiency at %d threads is %.2f, expected at least %.2f%n",
+                    checked.getThreads(), efficiency, minEfficiency);
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.magnoliales.handlebars.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link RenderScenario} with an increasing number of threads. Every level runs a warm up phase
+ * followed by a measured phase of fixed duration, all threads starting and stopping together. Renders failing with
+ * an {@link IOException} are counted as errors; any other failure of a thread aborts the run with that failure.
+ */
+public class LoadTestHarness {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final int INITIAL_SAMPLES = 1 << 16;
+    private static final long BARRIER_TIMEOUT_MILLIS = 60000;
+
+    private final RenderScenario scenario;
+    private final long warmUpMillis;
+    private final long measureMillis;
+
+    public LoadTestHarness(RenderScenario scenario, long warmUpMillis, long measureMillis) {
+        this.scenario = scenario;
+        this.warmUpMillis = warmUpMillis;
+        this.measureMillis = measureMillis;
+    }
+
+    public List<LevelResult> run(int[] threadCounts) throws IOException, InterruptedException {
+        List<LevelResult> results = new ArrayList<LevelResult>();
+        scenario.setUp();
+        try {
+            for (int threads : threadCounts) {
+                LOGGER.info("Running {} threads", threads);
+                results.add(runLevel(threads));
+            }
+        } finally {
+            scenario.tearDown();
+        }
+        return results;
+    }
+
+    private LevelResult runLevel(final int threads) throws IOException, InterruptedException {
+        final CyclicBarrier start = new CyclicBarrier(threads + 1);
+        final CyclicBarrier measure = new CyclicBarrier(threads + 1);
+        final CyclicBarrier stop = new CyclicBarrier(threads + 1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        final Phase warmUp = new Phase();
+        final Phase measured = new Phase();
+        final AtomicLong errors = new AtomicLong();
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final com.sun.management.ThreadMXBean allocationBean = threadBean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threadBean : null;
+        final AtomicLong allocated = new AtomicLong(allocationBean != null ? 0 : -1);
+
+        List<Recorder> recorders = new ArrayList<Recorder>();
+        List<Future<Void>> workers = new ArrayList<Future<Void>>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            private int number;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "loadtest-" + threads + "-" + number++);
+            }
+        });
+        warmUp.running = true;
+        measured.running = true;
+        try {
+            for (int i = 0; i < threads; i++) {
+                final RenderScenario.Worker worker = scenario.newWorker();
+                final Recorder recorder = new Recorder();
+                recorders.add(recorder);
+                workers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException, InterruptedException, BrokenBarrierException,
+                            TimeoutException {
+                        boolean completed = false;
+                        try {
+                            start.await(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                            loop(worker, warmUp, null, errors);
+                            measure.await(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                            long threadId = Thread.currentThread().getId();
+                            long before = allocationBean != null
+                                    ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+                            loop(worker, measured, recorder, errors);
+                            if (allocationBean != null) {
+                                allocated.addAndGet(allocationBean.getThreadAllocatedBytes(threadId) - before);
+                            }
+                            stop.await(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                            completed = true;
+                            return null;
+                        } finally {
+                            worker.close();
+                            if (!completed) {
+                                // wakes up the other threads instead of letting them wait for the timeout
+                                failed.countDown();
+                                start.reset();
+                                measure.reset();
+                                stop.reset();
+                            }
+                        }
+                    }
+                }));
+            }
+            start.await(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (failed.await(warmUpMillis, TimeUnit.MILLISECONDS)) {
+                throw abort(executor, workers, warmUp, measured, null);
+            }
+            warmUp.running = false;
+            measure.await(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            long started = System.nanoTime();
+            if (failed.await(measureMillis, TimeUnit.MILLISECONDS)) {
+                throw abort(executor, workers, warmUp, measured, null);
+            }
+            measured.running = false;
+            long elapsed = System.nanoTime() - started;
+            stop.await(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            for (Future<Void> worker : workers) {
+                getResult(worker);
+            }
+            int samples = 0;
+            for (Recorder recorder : recorders) {
+                samples += recorder.size;
+            }
+            long[] latencies = new long[samples];
+            int offset = 0;
+            for (Recorder recorder : recorders) {
+                System.arraycopy(recorder.latencies, 0, latencies, offset, recorder.size);
+                offset += recorder.size;
+            }
+            return new LevelResult(threads, elapsed, latencies, allocated.get(), errors.get());
+        } catch (BrokenBarrierException e) {
+            throw abort(executor, workers, warmUp, measured, e);
+        } catch (TimeoutException e) {
+            throw abort(executor, workers, warmUp, measured, e);
+        } finally {
+            warmUp.running = false;
+            measured.running = false;
+            executor.shutdownNow();
+            if (!executor.awaitTermination(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Load test threads of level {} did not stop", threads);
+            }
+        }
+    }
+
+    /**
+     * Stops the level and returns the failure of the first thread that failed, or one with the given cause if none
+     * did.
+     */
+    private static IOException abort(ExecutorService executor, List<Future<Void>> workers, Phase warmUp,
+                                     Phase measured, Exception cause) throws InterruptedException {
+        warmUp.running = false;
+        measured.running = false;
+        executor.shutdownNow();
+        for (Future<Void> worker : workers) {
+            try {
+                getResult(worker);
+            } catch (IOException e) {
+                return e;
+            }
+        }
+        return new IOException("Load test level aborted", cause);
+    }
+
+    // failures caused by another thread failing or by the level being stopped are not reported
+    private static void getResult(Future<Void> worker) throws IOException, InterruptedException {
+        try {
+            worker.get(BARRIER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (!(cause instanceof BrokenBarrierException || cause instanceof InterruptedException
+                    || cause instanceof TimeoutException)) {
+                throw new IOException("Load test thread failed", cause);
+            }
+        } catch (CancellationException e) {
+            LOGGER.debug("Load test thread cancelled", e);
+        } catch (TimeoutException e) {
+            throw new IOException("Load test thread did not stop", e);
+        }
+    }
+
+    private static void loop(RenderScenario.Worker worker, Phase phase, Recorder recorder, AtomicLong errors) {
+        while (phase.running) {
+            long started = System.nanoTime();
+            try {
+                worker.render();
+            } catch (IOException e) {
+                if (errors.getAndIncrement() == 0) {
+                    LOGGER.error("Render failed", e);
+                }
+                continue;
+            }
+            if (recorder != null) {
+                recorder.record(System.nanoTime() - started);
+            }
+        }
+    }
+
+    private static final class Phase {
+
+        private volatile boolean running;
+    }
+
+    private static final class Recorder {
+
+        private long[] latencies = new long[INITIAL_SAMPLES];
+        private int size;
+
+        private void record(long latency) {
+            if (size == latencies.length) {
+                long[] grown = new long[latencies.length * 2];
+                System.arraycopy(latencies, 0, grown, 0, size);
+                latencies = grown;
+            }
+            latencies[size++] = latency;
+        }
+    }
+}
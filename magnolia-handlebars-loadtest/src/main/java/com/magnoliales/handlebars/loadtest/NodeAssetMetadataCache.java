@@ -0,0 +1,67 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.magnoliales.handlebars.cache.ObservedCache;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import com.magnoliales.handlebars.helpers.AssetMetadata;
+import com.magnoliales.handlebars.helpers.AssetMetadataCache;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.IOException;
+
+/**
+ * Reads asset metadata from nodes of an in-memory repository instead of the DAM. Assets have a {@code caption}, a
+ * {@code width} and a {@code height} and are referenced by {@code jcr:} item keys of their identifier.
+ */
+final class NodeAssetMetadataCache extends AssetMetadataCache {
+
+    static final String ITEM_KEY_PREFIX = "jcr:";
+
+    private static final int MAX_ASSETS = 5000;
+
+    private final Session session;
+
+    NodeAssetMetadataCache(Session session) {
+        super(null, new InvalidationBus(),
+                new ObservedCache<AssetMetadata>(AssetMetadataCache.DAM_WORKSPACE, MAX_ASSETS, false));
+        this.session = session;
+    }
+
+    @Override
+    protected AssetMetadata loadAssetMetadata(String itemKey) {
+        try {
+            Node asset = getAsset(session, itemKey);
+            if (asset == null) {
+                return null;
+            }
+            return new AssetMetadata(itemKey, asset.getPath(), getLink(asset),
+                    asset.getProperty("caption").getString(), asset.getProperty("width").getLong(),
+                    asset.getProperty("height").getLong());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (RepositoryException e) {
+            throw new IllegalStateException("Cannot read asset " + itemKey, e);
+        }
+    }
+
+    @Override
+    protected String loadRenditionLink(String itemKey, String renditionName) {
+        return null;
+    }
+
+    static Node getAsset(Session session, String itemKey) throws IOException {
+        try {
+            return session.getNodeByIdentifier(itemKey.substring(ITEM_KEY_PREFIX.length()));
+        } catch (ItemNotFoundException e) {
+            return null;
+        } catch (RepositoryException e) {
+            throw new IOException("Cannot read asset " + itemKey, e);
+        }
+    }
+
+    static String getLink(Node asset) throws RepositoryException {
+        return "/dam/" + ITEM_KEY_PREFIX + asset.getIdentifier() + asset.getPath();
+    }
+}
@@ -0,0 +1,188 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import com.magnoliales.handlebars.renderer.EncodedLiterals;
+import com.magnoliales.handlebars.renderer.HtmlEscapingStrategy;
+import com.magnoliales.handlebars.renderer.LiteralWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing a rendered page to the response stream: {@code characters} with Handlebars' escaping and an
+ * {@code OutputStreamWriter}, as the servlet writer encodes, {@code escaped} with {@link HtmlEscapingStrategy}
+ * instead, and {@code encoded} with {@link HtmlEscapingStrategy} and a {@link LiteralWriter} copying the
+ * {@link EncodedLiterals} of the template. The page is indented markup like the example templates, with escaped
+ * titles and texts in {@code loadtest.components} components, a few of them needing escapes and non-ASCII
+ * characters. All variants produce the same bytes. Run it once per variant in a fresh JVM, a JVM that has written
+ * through several writers compiles the template for all of them.
+ *
+ * Usage: {@code OutputBenchmark [characters|escaped|encoded]}, encoded by default, with
+ * {@code loadtest.warmUpMillis}, {@code loadtest.measureMillis} and {@code loadtest.components} as in
+ * {@link LoadTest}.
+ */
+public final class OutputBenchmark {
+
+    private static final long DEFAULT_WARM_UP_MILLIS = 5000;
+    private static final long DEFAULT_MEASURE_MILLIS = 15000;
+    private static final int DEFAULT_COMPONENTS = 50;
+    // one in this many texts needs escaping
+    private static final int ESCAPED_EVERY = 5;
+    private static final String PAGE = "<html>\n"
+            + "    <head>\n"
+            + "        <title>{{ content.title }}</title>\n"
+            + "    </head>\n"
+            + "    <body>\n"
+            + "        <h1>Title is: {{ content.title }}!</h1>\n"
+            + "        <div class=\"area menu\">\n"
+            + "            {{#each components}}\n"
+            + "            <div class=\"component text\">\n"
+            + "                <h2>{{ title }}</h2>\n"
+            + "                <p>\n"
+            + "                    {{ text }}\n"
+            + "                </p>\n"
+            + "            </div>\n"
+            + "            {{/each}}\n"
+            + "        </div>\n"
+            + "        <footer>\u00a9 Magnoliales</footer>\n"
+            + "    </body>\n"
+            + "</html>\n";
+
+    private OutputBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String type = args.length > 0 ? args[0] : "encoded";
+        long warmUp = Long.getLong("loadtest.warmUpMillis", DEFAULT_WARM_UP_MILLIS);
+        long measure = Long.getLong("loadtest.measureMillis", DEFAULT_MEASURE_MILLIS);
+        int components = Integer.getInteger("loadtest.components", DEFAULT_COMPONENTS);
+        Map<String, Object> model = model(components);
+
+        Handlebars handlebars = new Handlebars();
+        Output output;
+        if ("characters".equals(type)) {
+            output = new CharacterOutput(type, handlebars.compileInline(PAGE));
+        } else if ("escaped".equals(type)) {
+            handlebars.with(HtmlEscapingStrategy.INSTANCE);
+            output = new CharacterOutput(type, handlebars.compileInline(PAGE));
+        } else {
+            handlebars.with(HtmlEscapingStrategy.INSTANCE);
+            Template template = handlebars.compileInline(PAGE);
+            EncodedLiterals literals = new EncodedLiterals();
+            literals.register(template);
+            output = new EncodedOutput(template, literals);
+        }
+
+        CountingOutputStream out = new CountingOutputStream();
+        run(output, model, out, TimeUnit.MILLISECONDS.toNanos(warmUp));
+        out.count = 0;
+        long pages = run(output, model, out, TimeUnit.MILLISECONDS.toNanos(measure));
+        double perPage = (double) TimeUnit.MILLISECONDS.toNanos(measure) / pages;
+        System.out.printf(Locale.ENGLISH, "%-10s %12s %12s %10s%n", "output", "ns/page", "bytes/page", "MB/s");
+        System.out.printf(Locale.ENGLISH, "%-10s %12.0f %12d %10.1f%n", output.getName(), perPage,
+                out.count / pages, out.count * 1000.0 / measure / (1024 * 1024));
+    }
+
+    private static Map<String, Object> model(int components) {
+        Map<String, Object> content = new HashMap<String, Object>();
+        content.put("title", "Home");
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < components; i++) {
+            Map<String, Object> component = new HashMap<String, Object>();
+            component.put("title", "Component " + i);
+            component.put("text", i % ESCAPED_EVERY == 0
+                    ? "Fish & chips <b>" + i + "</b>, gr\u00fc\u00dfe" : "Lorem ipsum dolor sit amet, " + i);
+            items.add(component);
+        }
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("content", content);
+        model.put("components", items);
+        return model;
+    }
+
+    private static long run(Output output, Map<String, Object> model, OutputStream out, long nanos)
+            throws IOException {
+        long end = System.nanoTime() + nanos;
+        long pages = 0;
+        while (System.nanoTime() < end) {
+            output.write(model, out);
+            pages++;
+        }
+        return pages;
+    }
+
+    private abstract static class Output {
+
+        private final String name;
+
+        protected Output(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public abstract void write(Map<String, Object> model, OutputStream out) throws IOException;
+    }
+
+    private static final class CharacterOutput extends Output {
+
+        private final Template template;
+
+        private CharacterOutput(String name, Template template) {
+            super(name);
+            this.template = template;
+        }
+
+        @Override
+        public void write(Map<String, Object> model, OutputStream out) throws IOException {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            template.apply(model, writer);
+            writer.flush();
+        }
+    }
+
+    private static final class EncodedOutput extends Output {
+
+        private final Template template;
+        private final EncodedLiterals literals;
+
+        private EncodedOutput(Template template, EncodedLiterals literals) {
+            super("encoded");
+            this.template = template;
+            this.literals = literals;
+        }
+
+        @Override
+        public void write(Map<String, Object> model, OutputStream out) throws IOException {
+            LiteralWriter writer = new LiteralWriter(out, literals.getLiterals());
+            template.apply(model, writer);
+            writer.close();
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.magnoliales.handlebars.loadtest;
+
+import com.magnoliales.handlebars.cache.HeapPageOutputStore;
+import com.magnoliales.handlebars.cache.OffHeapPageOutputStore;
+import com.magnoliales.handlebars.cache.PageOutputStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills a page output store with {@code loadtest.storeMegabytes} of pages and then serves and replaces pages in it
+ * for {@code loadtest.measureMillis}, while a thread sleeping for a millisecond at a time measures how much longer
+ * it took to wake up. The pauses it sees are mostly garbage collections, which grow with the live heap when pages are
+ * kept on it. Run it once per store in a fresh JVM with the same heap settings, e.g. {@code -Xmx2g}, and compare
+ * the collection time and the maximum and 99th percentile pause.
+ *
+ * Usage: {@code PageStoreBenchmark [heap|direct|mapped]}, direct by default, with {@code loadtest.storeMegabytes},
+ * {@code loadtest.pageKilobytes}, {@code loadtest.warmUpMillis} and {@code loadtest.measureMillis}.
+ */
+public final class PageStoreBenchmark {
+
+    private static final int DEFAULT_STORE_MEGABYTES = 512;
+    private static final int DEFAULT_PAGE_KILOBYTES = 64;
+    private static final long DEFAULT_WARM_UP_MILLIS = 5000;
+    private static final long DEFAULT_MEASURE_MILLIS = 30000;
+    private static final int KILOBYTE = 1024;
+    // out of 100 operations, the others serve pages
+    private static final int REPLACE_PERCENT = 10;
+    private static final int PERCENT = 100;
+    private static final double P99 = 0.99;
+    private static final int MAX_PAUSE_MILLIS = 10000;
+    private static final String PARAGRAPH = "<div class=\"component text\"><h2>Heading %d</h2><p>Lorem ipsum dolor "
+            + "sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna "
+            + "aliqua. Gr\u00fc\u00dfe, voil\u00e0.</p></div>\n";
+
+    private PageStoreBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String type = args.length > 0 ? args[0] : "direct";
+        int storeMegabytes = Integer.getInteger("loadtest.storeMegabytes", DEFAULT_STORE_MEGABYTES);
+        int pageKilobytes = Integer.getInteger("loadtest.pageKilobytes", DEFAULT_PAGE_KILOBYTES);
+        long warmUp = Long.getLong("loadtest.warmUpMillis", DEFAULT_WARM_UP_MILLIS);
+        long measure = Long.getLong("loadtest.measureMillis", DEFAULT_MEASURE_MILLIS);
+        int pages = storeMegabytes * KILOBYTE / pageKilobytes;
+        // some room for replaced pages, which stay in their slab until it is reused
+        long capacity = 2L * storeMegabytes * KILOBYTE * KILOBYTE;
+
+        PageOutputStore store;
+        if ("heap".equals(type)) {
+            store = new HeapPageOutputStore();
+        } else if ("mapped".equals(type)) {
+            File directory = new File(System.getProperty("java.io.tmpdir"), "handlebars-store-benchmark");
+            store = new OffHeapPageOutputStore(capacity, OffHeapPageOutputStore.DEFAULT_SLAB_SIZE, directory);
+        } else {
+            store = new OffHeapPageOutputStore(capacity, OffHeapPageOutputStore.DEFAULT_SLAB_SIZE);
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < pages; i++) {
+            store.put(key(i), page(i, pageKilobytes * KILOBYTE, random));
+        }
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        churn(store, pages, pageKilobytes * KILOBYTE, random, TimeUnit.MILLISECONDS.toNanos(warmUp), null);
+        PauseMeter meter = new PauseMeter();
+        long collections = getCollections();
+        long collectionMillis = getCollectionMillis();
+        meter.start();
+        long operations = churn(store, pages, pageKilobytes * KILOBYTE, random,
+                TimeUnit.MILLISECONDS.toNanos(measure), meter);
+        meter.interrupt();
+        meter.join();
+
+        System.out.printf(Locale.ENGLISH, "%-8s %8s %10s %10s %10s %10s %10s %12s%n", "store", "pages", "heap MB",
+                "gc count", "gc ms", "max ms", "p99 ms", "ops/s");
+        System.out.printf(Locale.ENGLISH, "%-8s %8d %10d %10d %10d %10d %10d %12.0f%n", type, store.size(),
+                heap / KILOBYTE / KILOBYTE, getCollections() - collections, getCollectionMillis() - collectionMillis,
+                meter.getMax(), meter.getPercentile(P99), operations * 1000.0 / measure);
+    }
+
+    private static long churn(PageOutputStore store, int pages, int pageLength, Random random, long nanos,
+                              PauseMeter meter) throws IOException {
+        OutputStream out = new DiscardingOutputStream();
+        long end = System.nanoTime() + nanos;
+        long operations = 0;
+        while (System.nanoTime() < end && (meter == null || meter.isAlive())) {
+            int page = random.nextInt(pages);
+            if (random.nextInt(PERCENT) < REPLACE_PERCENT) {
+                store.put(key(page), page(page, pageLength, random));
+            } else {
+                store.writeTo(key(page), out);
+            }
+            operations++;
+        }
+        return operations;
+    }
+
+    private static String key(int page) {
+        return "www.example.com/page-" + page + ".html";
+    }
+
+    private static String page(int page, int length, Random random) {
+        StringBuilder builder = new StringBuilder(length + PARAGRAPH.length() * 2);
+        builder.append("<html><head><title>Page ").append(page).append("</title></head><body>\n");
+        while (builder.length() < length) {
+            builder.append(String.format(Locale.ENGLISH, PARAGRAPH, random.nextInt()));
+        }
+        return builder.append("</body></html>").toString();
+    }
+
+    private static long getCollections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : getCollectors()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getCollectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : getCollectors()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static List<GarbageCollectorMXBean> getCollectors() {
+        return ManagementFactory.getGarbageCollectorMXBeans();
+    }
+
+    /**
+     * Counts how many milliseconds late a thread sleeping for one millisecond wakes up.
+     */
+    private static final class PauseMeter extends Thread {
+
+        private final long[] counts = new long[MAX_PAUSE_MILLIS + 1];
+        private long samples;
+        private long max;
+
+        private PauseMeter() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                long start = System.nanoTime();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long late = Math.max(0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) - 1);
+                counts[(int) Math.min(late, MAX_PAUSE_MILLIS)]++;
+                samples++;
+                max = Math.max(max, late);
+            }
+        }
+
+        private long getMax() {
+            return max;
+        }
+
+        private long getPercentile(double percentile) {
+            long threshold = (long) Math.ceil(samples * percentile);
+            long seen = 0;
+            for (int millis = 0; millis < counts.length; millis++) {
+                seen += counts[millis];
+                if (seen >= threshold) {
+                    return millis;
+                }
+            }
+            return MAX_PAUSE_MILLIS;
+        }
+    }
+
+    private static final class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
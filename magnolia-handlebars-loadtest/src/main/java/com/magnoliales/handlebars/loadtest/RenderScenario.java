@@ -0,0 +1,25 @@
+package com.magnoliales.handlebars.loadtest;
+
+import java.io.IOException;
+
+public interface RenderScenario {
+
+    void setUp() throws IOException;
+
+    /**
+     * Creates the renderer used by one load generating thread. Workers are never shared between threads.
+     */
+    Worker newWorker() throws IOException;
+
+    void tearDown();
+
+    interface Worker {
+
+        /**
+         * Renders one page and returns the number of characters written.
+         */
+        int render() throws IOException;
+
+        void close();
+    }
+}
@@ -0,0 +1,79 @@
+package com.magnoliales.handlebars.loadtest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExamplePagesScenarioTest {
+
+    private static final File TEMPLATES = new File(System.getProperty("basedir", "."),
+            "../magnolia-handlebars-example/src/main/resources/templates");
+    private static final int COMPONENTS = 3;
+
+    private ExamplePagesScenario scenario;
+
+    @Before
+    public void setUp() throws IOException {
+        scenario = new ExamplePagesScenario(TEMPLATES, COMPONENTS, Locale.GERMAN, false);
+        scenario.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        scenario.tearDown();
+    }
+
+    @Test
+    public void rendersTheBootstrappedPagesWithTheConfiguredHelpers() throws IOException {
+        String home = scenario.render("/home");
+
+        assertTrue(home, home.contains("<title>Startseite</title>"));
+        assertTrue(home, home.contains("Hello, World!"));
+        assertTrue(home, home.contains("<img src=\"/dam/jcr:"));
+        assertTrue(home, home.contains("alt=\"Example image\""));
+        assertTrue(home, home.contains("Example Bean Title"));
+        assertEquals(COMPONENTS, count(home, "Menü"));
+        assertEquals(COMPONENTS, count(home, "Fußzeile"));
+    }
+
+    @Test
+    public void rendersTheAreasOfSupplierPages() throws IOException {
+        String details = scenario.render("/home/details");
+        String subDetails = scenario.render("/home/details/sub-details");
+
+        assertTrue(details, details.contains("This is detailed content"));
+        assertEquals(COMPONENTS, count(details, "Menü"));
+        assertEquals(COMPONENTS, count(details, "Fußzeile"));
+        assertTrue(subDetails, subDetails.contains("This is SUB detailed content"));
+        assertEquals(COMPONENTS, count(subDetails, "Unterdetails-Menü"));
+        assertEquals(COMPONENTS, count(subDetails, "Fußzeile"));
+    }
+
+    @Test
+    public void runsEveryWorkerRenderInAContextOfItsOwn() throws IOException {
+        RenderScenario.Worker worker = scenario.newWorker();
+        try {
+            for (int i = 0; i < 2 * 3; i++) {
+                assertTrue(worker.render() > 0);
+            }
+        } finally {
+            worker.close();
+        }
+        assertEquals(scenario.render("/home"), scenario.render("/home"));
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,130 @@
+package com.magnoliales.handlebars.loadtest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoadTestHarnessTest {
+
+    private static final long WARM_UP_MILLIS = 20;
+    private static final long MEASURE_MILLIS = 100;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void runsEveryLevelWithItsOwnWorkers() throws IOException, InterruptedException {
+        CountingScenario scenario = new CountingScenario(0, false);
+
+        List<LevelResult> results = new LoadTestHarness(scenario, WARM_UP_MILLIS, MEASURE_MILLIS)
+                .run(new int[] {1, 2});
+
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).getThreads());
+        assertEquals(2, results.get(1).getThreads());
+        assertTrue(results.get(0).getRenders() > 0);
+        assertTrue(results.get(1).getRenders() > 0);
+        assertEquals(0, results.get(1).getErrors());
+        assertEquals(3, scenario.workers.get());
+        assertEquals(3, scenario.closed.get());
+        assertEquals(1, scenario.tornDown.get());
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void countsFailedRendersAsErrors() throws IOException, InterruptedException {
+        CountingScenario scenario = new CountingScenario(2, false);
+
+        LevelResult result = new LoadTestHarness(scenario, WARM_UP_MILLIS, MEASURE_MILLIS).run(new int[] {2}).get(0);
+
+        assertTrue(result.getErrors() > 0);
+        assertTrue(result.getRenders() > 0);
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void abortsWithTheFailureOfAThread() throws InterruptedException {
+        CountingScenario scenario = new CountingScenario(0, true);
+
+        try {
+            new LoadTestHarness(scenario, WARM_UP_MILLIS, TIMEOUT_MILLIS).run(new int[] {4});
+            fail("The failure of a thread must abort the run");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(4, scenario.closed.get());
+        assertEquals(1, scenario.tornDown.get());
+    }
+
+    @Test
+    public void computesPercentilesAndThroughput() {
+        long[] latencies = new long[100];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[latencies.length - 1 - i] = (i + 1) * 1000000L;
+        }
+
+        LevelResult result = new LevelResult(2, 2000000000L, latencies, -1, 0);
+
+        assertEquals(50, result.getThroughput(), 0.001);
+        assertEquals(50, result.getPercentileMillis(0.5), 0.001);
+        assertEquals(99, result.getPercentileMillis(0.99), 0.001);
+        assertEquals(100, result.getPercentileMillis(0.999), 0.001);
+        assertEquals(-1, result.getAllocationRate(), 0);
+        assertEquals(-1, result.getAllocatedBytesPerRender(), 0);
+    }
+
+    private static final class CountingScenario implements RenderScenario {
+
+        private final int failEvery;
+        private final boolean crash;
+        private final AtomicInteger workers = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+        private final AtomicInteger tornDown = new AtomicInteger();
+
+        /**
+         * @param failEvery every how many renders of a worker fail with an {@link IOException}, 0 for none
+         * @param crash     whether the first render of the last worker created throws an unchecked exception
+         */
+        private CountingScenario(int failEvery, boolean crash) {
+            this.failEvery = failEvery;
+            this.crash = crash;
+        }
+
+        @Override
+        public void setUp() {
+        }
+
+        @Override
+        public Worker newWorker() {
+            final int number = workers.incrementAndGet();
+            return new Worker() {
+
+                private int renders;
+
+                @Override
+                public int render() throws IOException {
+                    renders++;
+                    if (crash && number == workers.get()) {
+                        throw new IllegalStateException("Worker " + number + " crashed");
+                    }
+                    if (failEvery > 0 && renders % failEvery == 0) {
+                        throw new IOException("Render " + renders + " failed");
+                    }
+                    return renders;
+                }
+
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        }
+
+        @Override
+        public void tearDown() {
+            tornDown.incrementAndGet();
+        }
+    }
+}
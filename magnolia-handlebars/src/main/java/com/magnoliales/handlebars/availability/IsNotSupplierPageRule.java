@@ -1,6 +1,7 @@
 package com.magnoliales.handlebars.availability;
 
-import info.magnolia.context.MgnlContext;
+import com.magnoliales.handlebars.cache.SupplierGraph;
+import com.magnoliales.handlebars.setup.ModuleComponents;
 import info.magnolia.repository.RepositoryConstants;
 import info.magnolia.ui.api.availability.AbstractAvailabilityRule;
 import info.magnolia.ui.vaadin.integration.jcr.JcrItemId;
@@ -8,9 +9,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.RepositoryException;
-import javax.jcr.query.Query;
-import javax.jcr.query.QueryManager;
-import javax.jcr.query.QueryResult;
 
 public class IsNotSupplierPageRule extends AbstractAvailabilityRule {
 
@@ -22,22 +20,12 @@ public class IsNotSupplierPageRule extends AbstractAvailabilityRule {
             JcrItemId jcrItemId = (JcrItemId) itemId;
             if (jcrItemId.getWorkspace().equals(RepositoryConstants.WEBSITE)) {
                 try {
-                    return !dependentPagesAvailable(jcrItemId.getUuid());
+                    return !ModuleComponents.get(SupplierGraph.class).hasDependents(jcrItemId.getUuid());
                 } catch (RepositoryException e) {
-                    e.printStackTrace();
                     LOGGER.error("Cannot apply rule", e);
                 }
             }
         }
         return true;
     }
-
-    private boolean dependentPagesAvailable(String nodeId) throws RepositoryException {
-        QueryManager queryManager = MgnlContext.getJCRSession(RepositoryConstants.WEBSITE)
-                .getWorkspace().getQueryManager();
-        String expression = "SELECT * FROM [mgnl:page] WHERE [mgnl:supplierPage] = '" + nodeId + "'";
-        Query query = queryManager.createQuery(expression, Query.JCR_SQL2);
-        QueryResult result = query.execute();
-        return result.getRows().hasNext();
-    }
 }
@@ -12,9 +12,14 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.handler.AbstractUrlHandlerMapping;
 import org.springframework.web.servlet.handler.BeanNameUrlHandlerMapping;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.mvc.SimpleControllerHandlerAdapter;
 import org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerAdapter;
 import org.springframework.web.servlet.mvc.annotation.DefaultAnnotationHandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletWebArgumentResolverAdapter;
+
+import java.util.Collections;
 
 @Configuration
 public class BlossomConfiguration {
@@ -24,6 +29,24 @@ public class BlossomConfiguration {
         return new SimpleControllerHandlerAdapter();
     }
 
+    @Bean
+    public RequestMappingHandlerAdapter requestMappingHandlerAdapter() {
+        RequestMappingHandlerAdapter adapter = new RequestMappingHandlerAdapter();
+        adapter.setCustomArgumentResolvers(Collections.<HandlerMethodArgumentResolver>singletonList(
+                new ServletWebArgumentResolverAdapter(new BlossomWebArgumentResolver())));
+        return adapter;
+    }
+
+    @Bean
+    public BlossomHandlerMethodAdapter blossomHandlerMethodAdapter() {
+        BlossomHandlerMethodAdapter adapter = new BlossomHandlerMethodAdapter(requestMappingHandlerAdapter());
+        adapter.setOrder(0);
+        return adapter;
+    }
+
+    /**
+     * Handles the controllers found by {@link #defaultAnnotationHandlerMapping()}, i.e. pre-executed ones.
+     */
     @Bean
     @SuppressWarnings("deprecation")
     public AnnotationMethodHandlerAdapter annotationMethodHandlerAdapter() {
@@ -32,6 +55,9 @@ public class BlossomConfiguration {
         return adapter;
     }
 
+    /**
+     * The URL handler mapping of the controllers that {@link BlossomHandlerMapping} pre-executes, e.g. on form posts.
+     */
     @Bean
     @SuppressWarnings("deprecation")
     public DefaultAnnotationHandlerMapping defaultAnnotationHandlerMapping() {
@@ -40,6 +66,14 @@ public class BlossomConfiguration {
         return mapping;
     }
 
+    @Bean
+    public BlossomHandlerMethodMapping blossomHandlerMethodMapping() {
+        BlossomHandlerMethodMapping mapping = new BlossomHandlerMethodMapping();
+        mapping.setOrder(0);
+        mapping.setUseSuffixPatternMatch(false);
+        return mapping;
+    }
+
     @Bean
     public BeanNameUrlHandlerMapping beanNameUrlHandlerMapping() {
         return new BeanNameUrlHandlerMapping();
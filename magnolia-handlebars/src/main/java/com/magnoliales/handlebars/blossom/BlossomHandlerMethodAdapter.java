@@ -0,0 +1,200 @@
+package com.magnoliales.handlebars.blossom;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.ui.ModelMap;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.validation.Errors;
+import org.springframework.web.bind.annotation.InitBinder;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.SessionAttributes;
+import org.springframework.web.bind.support.SessionStatus;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.method.ControllerAdviceBean;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.annotation.ModelAttributeMethodProcessor;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.HandlerMethodArgumentResolverComposite;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.InvocableHandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.HandlerAdapter;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.ServletRequestDataBinderFactory;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.support.RequestContextUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Invokes the handler methods of plain Blossom controllers through a prepared {@link ServletInvocableHandlerMethod}
+ * kept per method, instead of assembling binder and model factories, a model and an async manager on every
+ * dispatch. A controller is plain when it has no {@code @SessionAttributes}, {@code @InitBinder} or
+ * {@code @ModelAttribute} methods, no {@code @ControllerAdvice} is present and none of its handler's arguments is
+ * bound as a model attribute; other handler methods are left to the {@link RequestMappingHandlerAdapter} this
+ * adapter takes its argument resolvers and return value handlers from, which must be configured after the defaults
+ * for session synchronization, caching and redirect models. The only difference in the result is that the model
+ * of a plain controller holds no {@code BindingResult}s for the attributes it added, which Handlebars views cannot
+ * refer to anyway.
+ */
+public class BlossomHandlerMethodAdapter implements HandlerAdapter, Ordered {
+
+    private final RequestMappingHandlerAdapter requestMappingHandlerAdapter;
+    private final ConcurrentMap<Method, ServletInvocableHandlerMethod> invocables =
+            new ConcurrentHashMap<Method, ServletInvocableHandlerMethod>();
+    private final Set<Method> delegated = Collections.newSetFromMap(new ConcurrentHashMap<Method, Boolean>());
+    private int order;
+
+    public BlossomHandlerMethodAdapter(RequestMappingHandlerAdapter requestMappingHandlerAdapter) {
+        this.requestMappingHandlerAdapter = requestMappingHandlerAdapter;
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Sets the order among the handler adapters, which needs to come before the request mapping handler adapter.
+     */
+    public void setOrder(int order) {
+        this.order = order;
+    }
+
+    @Override
+    public boolean supports(Object handler) {
+        return handler instanceof HandlerMethod && getInvocable((HandlerMethod) handler) != null;
+    }
+
+    @Override
+    public ModelAndView handle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        ServletInvocableHandlerMethod invocable = getInvocable(handlerMethod);
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        ModelAndViewContainer container = new ModelAndViewContainer();
+        container.addAllAttributes(RequestContextUtils.getInputFlashMap(request));
+        try {
+            invocable.invokeAndHandle(webRequest, container);
+        } finally {
+            // runs the request's destruction callbacks and stores accessed session attributes
+            webRequest.requestCompleted();
+        }
+        if (container.isRequestHandled()) {
+            return null;
+        }
+        ModelMap model = container.getModel();
+        ModelAndView modelAndView = new ModelAndView(container.getViewName(), model);
+        if (!container.isViewReference()) {
+            modelAndView.setView((View) container.getView());
+        }
+        if (model instanceof RedirectAttributes) {
+            RequestContextUtils.getOutputFlashMap(request).putAll(((RedirectAttributes) model).getFlashAttributes());
+        }
+        return modelAndView;
+    }
+
+    @Override
+    public long getLastModified(HttpServletRequest request, Object handler) {
+        return -1;
+    }
+
+    /**
+     * @return the prepared handler method, or null if the method needs the full handling
+     */
+    private ServletInvocableHandlerMethod getInvocable(HandlerMethod handlerMethod) {
+        Method method = handlerMethod.getMethod();
+        ServletInvocableHandlerMethod invocable = invocables.get(method);
+        if (invocable == null) {
+            if (delegated.contains(method)) {
+                return null;
+            }
+            // decided on first use, Blossom's argument resolver only answers within a request
+            if (!isPlain(handlerMethod)) {
+                delegated.add(method);
+                return null;
+            }
+            invocable = prepare(handlerMethod);
+            ServletInvocableHandlerMethod existing = invocables.putIfAbsent(method, invocable);
+            if (existing != null) {
+                invocable = existing;
+            }
+        }
+        // prototype controllers get a new bean for every request
+        return invocable.getBean() == handlerMethod.getBean() ? invocable : null;
+    }
+
+    private ServletInvocableHandlerMethod prepare(HandlerMethod handlerMethod) {
+        HandlerMethodArgumentResolverComposite argumentResolvers = new HandlerMethodArgumentResolverComposite();
+        argumentResolvers.addResolvers(requestMappingHandlerAdapter.getArgumentResolvers());
+        HandlerMethodReturnValueHandlerComposite returnValueHandlers = new HandlerMethodReturnValueHandlerComposite();
+        returnValueHandlers.addHandlers(requestMappingHandlerAdapter.getReturnValueHandlers());
+        ServletInvocableHandlerMethod invocable = new ServletInvocableHandlerMethod(handlerMethod);
+        invocable.setHandlerMethodArgumentResolvers(argumentResolvers);
+        invocable.setHandlerMethodReturnValueHandlers(returnValueHandlers);
+        invocable.setDataBinderFactory(new ServletRequestDataBinderFactory(
+                Collections.<InvocableHandlerMethod>emptyList(),
+                requestMappingHandlerAdapter.getWebBindingInitializer()));
+        invocable.setParameterNameDiscoverer(new DefaultParameterNameDiscoverer());
+        return invocable;
+    }
+
+    private boolean isPlain(HandlerMethod handlerMethod) {
+        ApplicationContext context = requestMappingHandlerAdapter.getApplicationContext();
+        if (context != null && !ControllerAdviceBean.findAnnotatedBeans(context).isEmpty()) {
+            return false;
+        }
+        Class<?> handlerType = handlerMethod.getBeanType();
+        if (AnnotationUtils.findAnnotation(handlerType, SessionAttributes.class) != null
+                || isAsync(handlerMethod.getMethod().getReturnType())) {
+            return false;
+        }
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(handlerType)) {
+            if (AnnotationUtils.findAnnotation(method, InitBinder.class) != null
+                    || (AnnotationUtils.findAnnotation(method, ModelAttribute.class) != null
+                    && AnnotationUtils.findAnnotation(method, RequestMapping.class) == null)) {
+                return false;
+            }
+        }
+        for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+            Class<?> type = parameter.getParameterType();
+            if (Errors.class.isAssignableFrom(type) || SessionStatus.class.isAssignableFrom(type)
+                    || isModelAttribute(parameter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsync(Class<?> returnType) {
+        return Callable.class.isAssignableFrom(returnType) || DeferredResult.class.isAssignableFrom(returnType)
+                || WebAsyncTask.class.isAssignableFrom(returnType)
+                || ListenableFuture.class.isAssignableFrom(returnType);
+    }
+
+    private boolean isModelAttribute(MethodParameter parameter) {
+        for (HandlerMethodArgumentResolver resolver : requestMappingHandlerAdapter.getArgumentResolvers()) {
+            if (resolver.supportsParameter(parameter)) {
+                return resolver instanceof ModelAttributeMethodProcessor;
+            }
+        }
+        return false;
+    }
+}
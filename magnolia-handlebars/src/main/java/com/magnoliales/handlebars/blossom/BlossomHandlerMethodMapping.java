@@ -0,0 +1,87 @@
+package com.magnoliales.handlebars.blossom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Request mappings of the Blossom controllers with the handler methods of plain paths resolved once. Templates,
+ * areas and components are dispatched by forwarding to their handler path, such as {@code /home-page/menu}; these
+ * paths are looked up in a table built when the context starts, with the controller bean already resolved if it
+ * is a singleton. Paths with patterns or with mappings restricted by request method, parameters, headers or media
+ * types are left to the usual matching.
+ */
+public class BlossomHandlerMethodMapping extends RequestMappingHandlerMapping {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlossomHandlerMethodMapping.class);
+
+    private volatile Map<String, HandlerMethod> handlerMethodsByPath = Collections.emptyMap();
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        Map<String, HandlerMethod> table = new HashMap<String, HandlerMethod>();
+        Set<String> excluded = new HashSet<String>();
+        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : getHandlerMethods().entrySet()) {
+            RequestMappingInfo info = entry.getKey();
+            boolean unconditional = isUnconditional(info);
+            for (String path : info.getPatternsCondition().getPatterns()) {
+                if (!unconditional || getPathMatcher().isPattern(path)
+                        || table.put(path, resolve(entry.getValue())) != null) {
+                    excluded.add(path);
+                }
+            }
+        }
+        table.keySet().removeAll(excluded);
+        handlerMethodsByPath = table;
+        LOGGER.info("Resolved {} handler paths up front", table.size());
+    }
+
+    /**
+     * @return the number of handler paths dispatched without matching
+     */
+    public int getResolvedPaths() {
+        return handlerMethodsByPath.size();
+    }
+
+    @Override
+    protected HandlerMethod getHandlerInternal(HttpServletRequest request) throws Exception {
+        String lookupPath = getUrlPathHelper().getLookupPathForRequest(request);
+        HandlerMethod handlerMethod = handlerMethodsByPath.get(lookupPath);
+        if (handlerMethod == null) {
+            return super.getHandlerInternal(request);
+        }
+        // what handleMatch exposes for a plain path
+        request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, lookupPath);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, lookupPath);
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Collections.<String, String>emptyMap());
+        return handlerMethod.getBean() instanceof String ? handlerMethod.createWithResolvedBean() : handlerMethod;
+    }
+
+    private HandlerMethod resolve(HandlerMethod handlerMethod) {
+        Object bean = handlerMethod.getBean();
+        if (bean instanceof String && getApplicationContext().isSingleton((String) bean)) {
+            return handlerMethod.createWithResolvedBean();
+        }
+        return handlerMethod;
+    }
+
+    private static boolean isUnconditional(RequestMappingInfo info) {
+        return info.getMethodsCondition().getMethods().isEmpty()
+                && info.getParamsCondition().getExpressions().isEmpty()
+                && info.getHeadersCondition().getExpressions().isEmpty()
+                && info.getConsumesCondition().isEmpty()
+                && info.getProducesCondition().isEmpty()
+                && info.getCustomCondition() == null;
+    }
+}
@@ -0,0 +1,113 @@
+package com.magnoliales.handlebars.cache;
+
+import com.magnoliales.handlebars.cluster.InvalidationListener;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.repository.RepositoryConstants;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dependencies of pages, collected in one traversal of the page and its supplier chain and kept until a change in
+ * the website workspace touches one of the pages.
+ */
+public class DependencyIndex implements InvalidationListener {
+
+    public static final String REGION = "dependencies";
+    public static final String WORKSPACE = RepositoryConstants.WEBSITE;
+
+    private static final int MAX_SIZE = 10000;
+    // areas, components, their areas and so on
+    private static final int MAX_DEPTH = 16;
+    private static final int MAX_SUPPLIERS = 16;
+    private static final int FINGERPRINT_MULTIPLIER = 31;
+    private static final String SUPPLIER_PAGE = "mgnl:supplierPage";
+
+    private final ObservedCache<PageDependencies> cache;
+
+    public DependencyIndex() {
+        this.cache = new ObservedCache<PageDependencies>(WORKSPACE, MAX_SIZE);
+    }
+
+    public PageDependencies get(Node page) throws RepositoryException {
+        String identifier = page.getIdentifier();
+        PageDependencies dependencies = cache.get(identifier);
+        if (dependencies == null) {
+            long generation = cache.getGeneration();
+            dependencies = collect(page);
+            cache.put(identifier, dependencies.getRootPaths(), dependencies, generation);
+        }
+        return dependencies;
+    }
+
+    public void invalidate(String path) {
+        cache.invalidate(path);
+    }
+
+    @Override
+    public void invalidate(String workspace, String path) {
+        if (WORKSPACE.equals(workspace)) {
+            invalidate(path);
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void stop() {
+        cache.stop();
+    }
+
+    private PageDependencies collect(Node page) throws RepositoryException {
+        List<String> rootPaths = new ArrayList<String>();
+        Set<String> visited = new HashSet<String>();
+        Collector collector = new Collector();
+        Node current = page;
+        while (current != null && visited.add(current.getIdentifier()) && visited.size() <= MAX_SUPPLIERS) {
+            rootPaths.add(current.getPath());
+            collector.collect(current, MAX_DEPTH);
+            String supplierId = PropertyUtil.getString(current, SUPPLIER_PAGE);
+            current = supplierId != null ? current.getSession().getNodeByIdentifier(supplierId) : null;
+        }
+        return new PageDependencies(rootPaths, collector.lastModified, collector.fingerprint, collector.size);
+    }
+
+    private static final class Collector {
+
+        private long lastModified;
+        private long fingerprint;
+        private int size;
+
+        private void collect(Node node, int depth) throws RepositoryException {
+            Calendar modified = NodeTypes.LastModified.getLastModified(node);
+            if (modified != null) {
+                lastModified = Math.max(lastModified, modified.getTimeInMillis());
+            }
+            fingerprint = fingerprint * FINGERPRINT_MULTIPLIER + node.getIdentifier().hashCode();
+            size++;
+            if (depth == 0) {
+                return;
+            }
+            NodeIterator children = node.getNodes();
+            while (children.hasNext()) {
+                Node child = children.nextNode();
+                if (!child.isNodeType(NodeTypes.Page.NAME)) {
+                    collect(child, depth - 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.magnoliales.handlebars.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps page output, and its gzip compression if given, on the heap.
+ */
+public class HeapPageOutputStore implements PageOutputStore {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Map<String, Output> outputs = new ConcurrentHashMap<String, Output>();
+
+    @Override
+    public String get(String key) {
+        Output output = outputs.get(key);
+        return output != null ? output.text : null;
+    }
+
+    @Override
+    public boolean writeTo(String key, OutputStream out) throws IOException {
+        Output output = outputs.get(key);
+        if (output == null) {
+            return false;
+        }
+        out.write(output.text.getBytes(UTF8));
+        return true;
+    }
+
+    @Override
+    public boolean writeCompressedTo(String key, OutputStream out) throws IOException {
+        Output output = outputs.get(key);
+        if (output == null || output.compressed == null) {
+            return false;
+        }
+        out.write(output.compressed);
+        return true;
+    }
+
+    @Override
+    public boolean containsCompressed(String key) {
+        Output output = outputs.get(key);
+        return output != null && output.compressed != null;
+    }
+
+    @Override
+    public void put(String key, String output) {
+        put(key, output, null);
+    }
+
+    @Override
+    public void put(String key, String output, byte[] compressed) {
+        outputs.put(key, new Output(output, compressed));
+    }
+
+    @Override
+    public void remove(String key) {
+        outputs.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        outputs.clear();
+    }
+
+    @Override
+    public int size() {
+        return outputs.size();
+    }
+
+    private static final class Output {
+
+        private final String text;
+        private final byte[] compressed;
+
+        private Output(String text, byte[] compressed) {
+            this.text = text;
+            this.compressed = compressed;
+        }
+    }
+}
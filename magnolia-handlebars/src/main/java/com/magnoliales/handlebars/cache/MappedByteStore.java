@@ -0,0 +1,193 @@
+package com.magnoliales.handlebars.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Byte records stored in a memory-mapped file, outside of the heap. Records are appended to the mapped segment;
+ * when it is full, the live records are copied to a fresh segment. Reads are lock free and return read only views
+ * of the mapping; writes are serialized. Segments are temporary files unique to the store, deleted as soon as they
+ * are mapped where the platform allows it, so that stores sharing a directory never touch each other's segments.
+ * The store does not survive restarts.
+ */
+public class MappedByteStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedByteStore.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private final File directory;
+    private final int capacity;
+    private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<String, Location>();
+    private Segment segment;
+    private long garbage;
+
+    public MappedByteStore(File directory, int capacity) throws IOException {
+        this.directory = directory;
+        this.capacity = capacity;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        segment = new Segment(directory, capacity);
+    }
+
+    /**
+     * @return a read only view of the record, or null if there is none
+     */
+    public ByteBuffer get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer view = location.segment.buffer.asReadOnlyBuffer();
+        view.position(location.offset);
+        view.limit(location.offset + location.length);
+        return view.slice();
+    }
+
+    /**
+     * @return false if the record does not fit into the store
+     */
+    public synchronized boolean put(String key, byte[] record) {
+        if (record.length > capacity) {
+            LOGGER.warn("Record {} of {} bytes exceeds the store capacity", key, record.length);
+            return false;
+        }
+        if (segment.position + record.length > capacity) {
+            remove(key);
+            if (!compact(record.length)) {
+                LOGGER.warn("Store {} is full, cannot add record {}", directory, key);
+                return false;
+            }
+        }
+        Location location = segment.append(record);
+        Location replaced = index.put(key, location);
+        if (replaced != null) {
+            garbage += replaced.length;
+        }
+        return true;
+    }
+
+    public synchronized void remove(String key) {
+        Location removed = index.remove(key);
+        if (removed != null) {
+            garbage += removed.length;
+        }
+    }
+
+    public synchronized void clear() {
+        index.clear();
+        garbage = segment.position;
+        compact(0);
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return segment.position;
+    }
+
+    public synchronized long getLiveBytes() {
+        return segment.position - garbage;
+    }
+
+    public synchronized void close() {
+        index.clear();
+        segment.delete();
+    }
+
+    // copies the live records into a new segment, readers of the old one keep their mapping until collected
+    private boolean compact(int required) {
+        if (segment.position - garbage + required > capacity) {
+            return false;
+        }
+        Segment compacted;
+        try {
+            compacted = new Segment(directory, capacity);
+        } catch (IOException e) {
+            LOGGER.error("Cannot create segment", e);
+            return false;
+        }
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            ByteBuffer source = location.segment.buffer.duplicate();
+            source.position(location.offset);
+            source.limit(location.offset + location.length);
+            entry.setValue(compacted.append(source));
+        }
+        segment.delete();
+        segment = compacted;
+        garbage = 0;
+        return true;
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final ByteBuffer writer;
+        private int position;
+
+        private Segment(File directory, int capacity) throws IOException {
+            file = File.createTempFile(SEGMENT_PREFIX, null, directory);
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } finally {
+                randomAccessFile.close();
+            }
+            writer = buffer.duplicate();
+            // the mapping outlives the file on platforms that allow deleting mapped files
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+
+        private void delete() {
+            if (file.exists() && !file.delete()) {
+                LOGGER.warn("Cannot delete segment {}", file);
+            }
+        }
+
+        private Location append(byte[] record) {
+            return append(ByteBuffer.wrap(record));
+        }
+
+        private Location append(ByteBuffer record) {
+            Location location = new Location(this, position, record.remaining());
+            writer.position(position);
+            writer.put(record);
+            position += location.length;
+            return location;
+        }
+    }
+
+    private static final class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.magnoliales.handlebars.cache;
+
+import info.magnolia.cms.util.ObservationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of values derived from repository items. Every entry remembers the paths of the items it was
+ * computed from and is dropped as soon as an observation event touches one of those paths, one of their
+ * descendants or one of their ancestors. When the cache is full the least recently used entry is dropped.
+ * <p>
+ * Values computed while an invalidation happened are not stored, since the change may have been read before the
+ * item it affects: read {@link #getGeneration()} before computing a value and pass it to {@code put}.
+ */
+public class ObservedCache<V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObservedCache.class);
+
+    private static final long OBSERVATION_DELAY = 1000;
+    private static final long OBSERVATION_MAX_DELAY = 5000;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final String workspace;
+    private final int maxSize;
+    // in access order, guarded by this
+    private final Map<String, Entry<V>> entries;
+    private final EventListener listener;
+    private long generation;
+
+    public ObservedCache(String workspace, int maxSize) {
+        this(workspace, maxSize, true);
+    }
+
+    /**
+     * @param observed whether the cache listens to changes in the workspace itself; a cache that does not is only
+     *                 invalidated through {@link #invalidate(String)} and {@link #clear()}
+     */
+    public ObservedCache(String workspace, int maxSize, boolean observed) {
+        this.workspace = workspace;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Entry<V>>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        this.listener = observed ? new Listener() : null;
+        if (listener != null) {
+            ObservationUtil.registerDeferredChangeListener(workspace, "/", listener,
+                    OBSERVATION_DELAY, OBSERVATION_MAX_DELAY);
+        }
+    }
+
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * @return the number of invalidations so far, to be passed to {@code put} with a value computed afterwards
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores the value unless an invalidation happened since the given generation.
+     *
+     * @return whether the value was stored
+     */
+    public boolean put(String key, String path, V value, long generation) {
+        return put(key, new Entry<V>(new String[] {path}, value), generation);
+    }
+
+    /**
+     * @see #put(String, String, Object, long)
+     */
+    public boolean put(String key, Collection<String> paths, V value, long generation) {
+        return put(key, new Entry<V>(paths.toArray(new String[paths.size()]), value), generation);
+    }
+
+    public synchronized void invalidate(String path) {
+        generation++;
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isRelated(path)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public String getWorkspace() {
+        return workspace;
+    }
+
+    public void stop() {
+        if (listener != null) {
+            ObservationUtil.unregisterChangeListener(workspace, listener);
+        }
+        clear();
+    }
+
+    /**
+     * @return whether a change at the event path affects an item at the entry path, i.e. one of the paths is the
+     * same as or a descendant of the other
+     */
+    public static boolean isRelated(String entryPath, String eventPath) {
+        return isSameOrDescendant(eventPath, entryPath) || isSameOrDescendant(entryPath, eventPath);
+    }
+
+    private static boolean isSameOrDescendant(String path, String ancestor) {
+        return path.startsWith(ancestor)
+                && (path.length() == ancestor.length() || ancestor.endsWith("/") || path.charAt(ancestor.length()) == '/');
+    }
+
+    private synchronized boolean put(String key, Entry<V> entry, long since) {
+        if (since != generation) {
+            return false;
+        }
+        entries.put(key, entry);
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+        return true;
+    }
+
+    private static final class Entry<V> {
+
+        private final String[] paths;
+        private final V value;
+
+        private Entry(String[] paths, V value) {
+            this.paths = paths;
+            this.value = value;
+        }
+
+        private boolean isRelated(String eventPath) {
+            for (String path : paths) {
+                if (ObservedCache.isRelated(path, eventPath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final class Listener implements EventListener {
+
+        @Override
+        public void onEvent(EventIterator events) {
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                try {
+                    invalidate(event.getPath());
+                } catch (RepositoryException e) {
+                    LOGGER.warn("Cannot read event path, clearing {} cache", workspace);
+                    clear();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.magnoliales.handlebars.cache;
+
+import com.magnoliales.handlebars.metrics.PageCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps page output outside of the heap, UTF-8 encoded, in a ring of fixed size slabs of direct or memory-mapped
+ * buffers, so that hundreds of megabytes of pages add nothing to the work of the garbage collector. The heap only
+ * holds the index, one packed {@code long} per page. Output is appended to the current slab; when it is full the
+ * oldest slab is emptied and reused, dropping all pages in it at once. Pages larger than a slab are not stored.
+ * The gzip compression of a page is a record of its own, indexed separately, which may be dropped before the page.
+ * <p>
+ * {@link #writeTo(String, OutputStream)} and {@link #writeCompressedTo(String, OutputStream)} copy the bytes to
+ * the stream in chunks without decoding them. Readers pin the slab they read from and a pinned slab is not reused,
+ * readers of a slab being reused miss instead.
+ */
+public class OffHeapPageOutputStore implements PageOutputStore {
+
+    public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapPageOutputStore.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_SLABS = 256;
+    private static final int HEADER_LENGTH = 4;
+    private static final int CHUNK_LENGTH = 8192;
+    private static final int SLAB_SHIFT = 56;
+    private static final int EPOCH_SHIFT = 32;
+    private static final long EPOCH_MASK = 0xFFFFFFL;
+    private static final long OFFSET_MASK = 0xFFFFFFFFL;
+    private static final int EVICTING = -1;
+    private static final String SLAB_PREFIX = "slab-";
+
+    private static final ThreadLocal<byte[]> CHUNKS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_LENGTH];
+        }
+    };
+
+    private final ConcurrentMap<String, Long> index = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> compressedIndex = new ConcurrentHashMap<String, Long>();
+    private final Slab[] slabs;
+    private final int slabSize;
+    private final File directory;
+    private final PageCacheMetrics metrics = PageCacheMetrics.getInstance();
+    private int current;
+
+    /**
+     * Keeps the slabs in direct buffers, which count against {@code -XX:MaxDirectMemorySize}.
+     */
+    public OffHeapPageOutputStore(long capacity, int slabSize) {
+        this(capacity, slabSize, null);
+    }
+
+    /**
+     * @param directory where memory-mapped slab files are created, or null for direct buffers; files are deleted
+     *                  once mapped where the platform allows it
+     */
+    public OffHeapPageOutputStore(long capacity, int slabSize, File directory) {
+        int count = (int) Math.min(MAX_SLABS, Math.max(2, capacity / slabSize));
+        this.slabs = new Slab[count];
+        for (int i = 0; i < count; i++) {
+            slabs[i] = new Slab();
+        }
+        this.slabSize = slabSize;
+        this.directory = directory;
+    }
+
+    @Override
+    public String get(String key) {
+        Long location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        Slab slab = slabs[slab(location)];
+        if (!slab.pin()) {
+            return null;
+        }
+        try {
+            ByteBuffer record = slab.read(location);
+            if (record == null) {
+                return null;
+            }
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            return new String(bytes, UTF8);
+        } finally {
+            slab.unpin();
+        }
+    }
+
+    @Override
+    public boolean writeTo(String key, OutputStream out) throws IOException {
+        return copy(index, key, out);
+    }
+
+    @Override
+    public boolean writeCompressedTo(String key, OutputStream out) throws IOException {
+        return copy(compressedIndex, key, out);
+    }
+
+    @Override
+    public boolean containsCompressed(String key) {
+        return compressedIndex.containsKey(key);
+    }
+
+    @Override
+    public void put(String key, String output) {
+        put(key, output, null);
+    }
+
+    @Override
+    public void put(String key, String output, byte[] compressed) {
+        byte[] bytes = output.getBytes(UTF8);
+        synchronized (this) {
+            compressedIndex.remove(key);
+            if (!append(index, key, bytes)) {
+                index.remove(key);
+                return;
+            }
+            if (compressed != null) {
+                append(compressedIndex, key, compressed);
+            }
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        // the bytes stay in their slab until it is reused
+        index.remove(key);
+        compressedIndex.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+        compressedIndex.clear();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    public int getSlabCount() {
+        return slabs.length;
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * @return the bytes written to the slabs since they were last emptied, including removed pages
+     */
+    public synchronized long getUsedBytes() {
+        long used = 0;
+        for (Slab slab : slabs) {
+            used += slab.position;
+        }
+        return used;
+    }
+
+    private boolean copy(ConcurrentMap<String, Long> records, String key, OutputStream out) throws IOException {
+        Long location = records.get(key);
+        if (location == null) {
+            return false;
+        }
+        Slab slab = slabs[slab(location)];
+        if (!slab.pin()) {
+            return false;
+        }
+        try {
+            ByteBuffer record = slab.read(location);
+            if (record == null) {
+                return false;
+            }
+            byte[] chunk = CHUNKS.get();
+            while (record.hasRemaining()) {
+                int length = Math.min(chunk.length, record.remaining());
+                record.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+            return true;
+        } finally {
+            slab.unpin();
+        }
+    }
+
+    // appends the record to the current slab, or the next one, and indexes it
+    private boolean append(ConcurrentMap<String, Long> records, String key, byte[] bytes) {
+        if (bytes.length + HEADER_LENGTH > slabSize) {
+            LOGGER.debug("Page {} of {} bytes does not fit into a slab", key, bytes.length);
+            return false;
+        }
+        Slab slab = slabs[current];
+        if (slab.buffer == null || slab.position + HEADER_LENGTH + bytes.length > slabSize) {
+            slab = nextSlab();
+            if (slab == null) {
+                LOGGER.debug("All slabs are being read, not storing page {}", key);
+                return false;
+            }
+        }
+        records.put(key, slab.append(current, records == compressedIndex, key, bytes));
+        return true;
+    }
+
+    // the oldest slab that nobody reads, emptied, or null
+    private Slab nextSlab() {
+        for (int i = 1; i <= slabs.length; i++) {
+            int candidate = (current + i) % slabs.length;
+            Slab slab = slabs[candidate];
+            if (slab.evict(candidate)) {
+                current = candidate;
+                return slab;
+            }
+        }
+        return null;
+    }
+
+    private static int slab(long location) {
+        return (int) (location >>> SLAB_SHIFT);
+    }
+
+    private static int epoch(long location) {
+        return (int) ((location >>> EPOCH_SHIFT) & EPOCH_MASK);
+    }
+
+    private static int offset(long location) {
+        return (int) (location & OFFSET_MASK);
+    }
+
+    private ByteBuffer allocate(int number) throws IOException {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(slabSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, SLAB_PREFIX + number + "-" + System.identityHashCode(this));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, slabSize);
+        } finally {
+            randomAccessFile.close();
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private final class Slab {
+
+        private final AtomicInteger pins = new AtomicInteger();
+        private final List<String> keys = new ArrayList<String>();
+        private final List<String> compressedKeys = new ArrayList<String>();
+        private volatile ByteBuffer buffer;
+        private volatile int epoch;
+        private int position;
+
+        private boolean pin() {
+            int count = pins.get();
+            while (count != EVICTING) {
+                if (pins.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+                count = pins.get();
+            }
+            return false;
+        }
+
+        private void unpin() {
+            pins.decrementAndGet();
+        }
+
+        /**
+         * @return the record at the location, or null if the slab was reused since
+         */
+        private ByteBuffer read(long location) {
+            if (epoch != epoch(location)) {
+                return null;
+            }
+            ByteBuffer view = buffer.duplicate();
+            int offset = offset(location);
+            int length = view.getInt(offset);
+            view.position(offset + HEADER_LENGTH);
+            view.limit(offset + HEADER_LENGTH + length);
+            return view;
+        }
+
+        private long append(int number, boolean compressed, String key, byte[] bytes) {
+            long location = ((long) number << SLAB_SHIFT) | ((epoch & EPOCH_MASK) << EPOCH_SHIFT) | position;
+            ByteBuffer writer = buffer.duplicate();
+            writer.position(position);
+            writer.putInt(bytes.length);
+            writer.put(bytes);
+            position = writer.position();
+            (compressed ? compressedKeys : keys).add(key);
+            return location;
+        }
+
+        /**
+         * Drops the pages in the slab unless it is being read.
+         *
+         * @return whether the slab is empty and can be written
+         */
+        private boolean evict(int number) {
+            if (!pins.compareAndSet(0, EVICTING)) {
+                return false;
+            }
+            try {
+                if (buffer == null) {
+                    buffer = allocate(number);
+                }
+                metrics.recordStoreEvictions(evict(index, keys, number));
+                evict(compressedIndex, compressedKeys, number);
+                position = 0;
+                epoch = (int) ((epoch + 1) & EPOCH_MASK);
+                return true;
+            } catch (IOException e) {
+                LOGGER.error("Cannot allocate slab " + number, e);
+                return false;
+            } finally {
+                pins.set(0);
+            }
+        }
+
+        private int evict(ConcurrentMap<String, Long> records, List<String> recordKeys, int number) {
+            int evicted = 0;
+            for (String key : recordKeys) {
+                Long location = records.get(key);
+                if (location != null && slab(location) == number && epoch(location) == epoch
+                        && records.remove(key, location)) {
+                    evicted++;
+                }
+            }
+            recordKeys.clear();
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.magnoliales.handlebars.cache;
+
+import com.magnoliales.handlebars.cluster.InvalidationListener;
+import com.magnoliales.handlebars.metrics.PageCacheMetrics;
+import info.magnolia.cms.util.ObservationUtil;
+import info.magnolia.repository.RepositoryConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rendered pages, invalidated by what they were rendered from. Every page keeps the items recorded by its
+ * {@link PageRecorder}, indexed by path, and is dropped as soon as an observation event touches one of them: a
+ * property or child node of a page it depends on, anything in the subtree of another item it depends on, or an
+ * ancestor of either. Edits to a component therefore only drop the pages that render it.
+ * <p>
+ * Output recorded while any invalidation happened is not stored, since the change may have been read before the
+ * recording of the item it affects.
+ * <p>
+ * With a {@link #setMaxStaleness(long) maximum staleness} invalidated pages are kept as stale until they are
+ * stored again, so that they can be served while a {@link PageRevalidator} renders the current version.
+ * <p>
+ * With {@link #setCompress(boolean) compression} on, pages are also stored gzip compressed, compressed once when
+ * they are stored instead of on every response, to be sent as they are to clients accepting gzip.
+ */
+public class PageCache implements InvalidationListener {
+
+    public static final String REGION = "pages";
+    public static final String[] WORKSPACES = {RepositoryConstants.WEBSITE, "dam"};
+    public static final int DEFAULT_MAX_SIZE = 5000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageCache.class);
+
+    private static final long OBSERVATION_DELAY = 1000;
+    private static final long OBSERVATION_MAX_DELAY = 5000;
+    private static final int NODE_EVENTS = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ConcurrentMap<String, Dependencies> dependencies = new ConcurrentHashMap<String, Dependencies>();
+    private final ConcurrentNavigableMap<String, Set<String>> itemIndex =
+            new ConcurrentSkipListMap<String, Set<String>>();
+    private final ConcurrentNavigableMap<String, Set<String>> pageIndex =
+            new ConcurrentSkipListMap<String, Set<String>>();
+    // guarded by itself, every cached page once, most recently stored last
+    private final Set<String> insertionOrder = new LinkedHashSet<String>();
+    private final ConcurrentMap<String, Long> staleSince = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong generation = new AtomicLong();
+    private final PageCacheMetrics metrics = PageCacheMetrics.getInstance();
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private volatile PageOutputStore store;
+    private volatile long maxStaleness;
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile boolean compress;
+
+    public PageCache() {
+        this(new HeapPageOutputStore());
+    }
+
+    protected PageCache(PageOutputStore store) {
+        this(store, true);
+    }
+
+    /**
+     * @param observed whether the cache listens to changes in the workspaces itself; a cache that does not is only
+     *                 invalidated through {@link #invalidate(String, String, boolean)} and {@link #clear()}
+     */
+    protected PageCache(PageOutputStore store, boolean observed) {
+        this.store = store;
+        if (!observed) {
+            return;
+        }
+        for (String workspace : WORKSPACES) {
+            Listener listener = new Listener(workspace);
+            ObservationUtil.registerDeferredChangeListener(workspace, "/", listener,
+                    OBSERVATION_DELAY, OBSERVATION_MAX_DELAY);
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * @return the output of the page, or null if it is not cached or stale
+     */
+    public String get(String key) {
+        String output = staleSince.containsKey(key) ? null : store.get(key);
+        if (output != null) {
+            metrics.recordHit();
+        } else {
+            metrics.recordMiss();
+        }
+        return output;
+    }
+
+    /**
+     * Writes the output of the page, UTF-8 encoded, without decoding it if the store keeps it encoded.
+     *
+     * @return false if the page is not cached or stale, in which case nothing was written
+     */
+    public boolean writeTo(String key, OutputStream out) throws IOException {
+        boolean written = !staleSince.containsKey(key) && store.writeTo(key, out);
+        if (written) {
+            metrics.recordHit();
+        } else {
+            metrics.recordMiss();
+        }
+        return written;
+    }
+
+    /**
+     * Writes the gzip compressed output of the page.
+     *
+     * @return false if the page is not cached, stale or stored without compression, in which case nothing was
+     * written
+     */
+    public boolean writeCompressedTo(String key, OutputStream out) throws IOException {
+        boolean written = !staleSince.containsKey(key) && store.writeCompressedTo(key, out);
+        if (written) {
+            metrics.recordCompressedHit();
+        } else {
+            metrics.recordMiss();
+        }
+        return written;
+    }
+
+    /**
+     * @return whether the page is cached, not stale and stored with its gzip compression, without counting a lookup
+     */
+    public boolean containsCompressed(String key) {
+        return contains(key) && store.containsCompressed(key);
+    }
+
+    /**
+     * @return whether the page is cached and not stale, without counting a lookup
+     */
+    public boolean contains(String key) {
+        return dependencies.containsKey(key) && !staleSince.containsKey(key);
+    }
+
+    /**
+     * @return the output of the page if it was invalidated no longer than the maximum staleness ago, otherwise null
+     */
+    public String getStale(String key) {
+        Long since = staleSince.get(key);
+        if (since == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - since > maxStaleness) {
+            remove(key);
+            return null;
+        }
+        String output = store.get(key);
+        if (output != null) {
+            metrics.recordStaleServe();
+        }
+        return output;
+    }
+
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * Keeps invalidated pages for up to the given time, in milliseconds, to be served while they are rendered
+     * again; 0 drops them right away.
+     */
+    public void setMaxStaleness(long maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the number of pages kept, 5000 by default. Stores with a bounded capacity may drop pages earlier.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Stores pages gzip compressed as well as they are, off by default.
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public PageOutputStore getStore() {
+        return store;
+    }
+
+    /**
+     * Replaces the store of the page output, dropping all cached pages.
+     */
+    public void setStore(PageOutputStore store) {
+        PageOutputStore previous = this.store;
+        this.store = store;
+        clear();
+        previous.clear();
+    }
+
+    /**
+     * Starts recording the page rendered in the current request.
+     */
+    public PageRecorder startRecording() {
+        return PageRecorder.start(generation.get());
+    }
+
+    /**
+     * Stops recording and stores the output of the page unless the recording was discarded or an invalidation
+     * happened meanwhile.
+     *
+     * @return whether the page was stored
+     */
+    public boolean stopRecording(String key, PageRecorder recorder) {
+        PageRecorder.stop();
+        String output = recorder.getOutput();
+        if (output == null || recorder.isDiscarded() || recorder.getGeneration() != generation.get()) {
+            return false;
+        }
+        remove(key);
+        Dependencies entry = new Dependencies(recorder.getItems(), recorder.getPages());
+        dependencies.put(key, entry);
+        index(itemIndex, entry.items, key);
+        index(pageIndex, entry.pages, key);
+        store.put(key, output, compress ? compress(key, output) : null);
+        synchronized (insertionOrder) {
+            insertionOrder.add(key);
+        }
+        if (recorder.getGeneration() != generation.get()) {
+            remove(key);
+            return false;
+        }
+        // counted by the dependencies, which also hold the pages the store dropped on its own
+        while (dependencies.size() > maxSize) {
+            String eldest = pollEldest();
+            if (eldest == null) {
+                break;
+            }
+            remove(eldest);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the pages that depend on the item at the path, or marks them as stale.
+     *
+     * @param nodeEvent whether a node was added, removed or moved, which affects the pages depending on its
+     *                  descendants as well
+     */
+    public void invalidate(String workspace, String path, boolean nodeEvent) {
+        generation.incrementAndGet();
+        Set<String> affected = new HashSet<String>();
+        String current = path;
+        while (current != null) {
+            addAll(affected, itemIndex.get(PageRecorder.key(workspace, current)));
+            current = getParent(current);
+        }
+        addAll(affected, pageIndex.get(PageRecorder.key(workspace, path)));
+        String parent = getParent(path);
+        if (parent != null) {
+            addAll(affected, pageIndex.get(PageRecorder.key(workspace, parent)));
+        }
+        if (nodeEvent) {
+            String prefix = PageRecorder.key(workspace, path.endsWith("/") ? path : path + "/");
+            String end = prefix + Character.MAX_VALUE;
+            for (Set<String> keys : itemIndex.subMap(prefix, end).values()) {
+                addAll(affected, keys);
+            }
+            for (Set<String> keys : pageIndex.subMap(prefix, end).values()) {
+                addAll(affected, keys);
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (String key : affected) {
+            if (maxStaleness > 0) {
+                unindex(key);
+                staleSince.putIfAbsent(key, now);
+            } else {
+                remove(key);
+            }
+        }
+        metrics.recordInvalidations(affected.size());
+    }
+
+    @Override
+    public void invalidate(String workspace, String path) {
+        invalidate(workspace, path, true);
+    }
+
+    public void remove(String key) {
+        unindex(key);
+        staleSince.remove(key);
+        store.remove(key);
+        synchronized (insertionOrder) {
+            insertionOrder.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        dependencies.clear();
+        itemIndex.clear();
+        pageIndex.clear();
+        staleSince.clear();
+        synchronized (insertionOrder) {
+            insertionOrder.clear();
+        }
+        store.clear();
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public int getStaleSize() {
+        return staleSince.size();
+    }
+
+    // items and pages with dependent pages in the indexes
+    int getIndexSize() {
+        return itemIndex.size() + pageIndex.size();
+    }
+
+    public void stop() {
+        for (Listener listener : listeners) {
+            ObservationUtil.unregisterChangeListener(listener.workspace, listener);
+        }
+        listeners.clear();
+        clear();
+    }
+
+    private static byte[] compress(String key, String output) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+            gzip.write(output.getBytes(UTF8));
+            gzip.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            LOGGER.warn("Cannot compress page " + key, e);
+            return null;
+        }
+    }
+
+    private String pollEldest() {
+        synchronized (insertionOrder) {
+            Iterator<String> keys = insertionOrder.iterator();
+            if (!keys.hasNext()) {
+                return null;
+            }
+            String eldest = keys.next();
+            keys.remove();
+            return eldest;
+        }
+    }
+
+    private void unindex(String key) {
+        Dependencies entry = dependencies.remove(key);
+        if (entry != null) {
+            unindex(itemIndex, entry.items, key);
+            unindex(pageIndex, entry.pages, key);
+        }
+    }
+
+    private static String getParent(String path) {
+        int separator = path.lastIndexOf('/');
+        if (separator < 0 || path.length() == 1) {
+            return null;
+        }
+        return separator == 0 ? "/" : path.substring(0, separator);
+    }
+
+    private static void addAll(Set<String> affected, Set<String> keys) {
+        if (keys != null) {
+            affected.addAll(keys);
+        }
+    }
+
+    // changes are serialized on the index, so that an emptied key set is never removed while a key is added to it;
+    // invalidations read the key sets without locking
+    private static void index(ConcurrentMap<String, Set<String>> index, String[] items, String key) {
+        synchronized (index) {
+            for (String item : items) {
+                Set<String> keys = index.get(item);
+                if (keys == null) {
+                    keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                    index.put(item, keys);
+                }
+                keys.add(key);
+            }
+        }
+    }
+
+    private static void unindex(ConcurrentMap<String, Set<String>> index, String[] items, String key) {
+        synchronized (index) {
+            for (String item : items) {
+                Set<String> keys = index.get(item);
+                if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                    index.remove(item);
+                }
+            }
+        }
+    }
+
+    private static final class Dependencies {
+
+        private final String[] items;
+        private final String[] pages;
+
+        private Dependencies(Collection<String> items, Collection<String> pages) {
+            this.items = items.toArray(new String[items.size()]);
+            this.pages = pages.toArray(new String[pages.size()]);
+        }
+    }
+
+    private final class Listener implements EventListener {
+
+        private final String workspace;
+
+        private Listener(String workspace) {
+            this.workspace = workspace;
+        }
+
+        @Override
+        public void onEvent(EventIterator events) {
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                try {
+                    invalidate(workspace, event.getPath(), (event.getType() & NODE_EVENTS) != 0);
+                } catch (RepositoryException e) {
+                    LOGGER.warn("Cannot read event path, clearing the page cache", e);
+                    clear();
+                    return;
+                }
+            }
+        }
+    }
+}
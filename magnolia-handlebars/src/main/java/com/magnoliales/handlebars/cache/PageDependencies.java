@@ -0,0 +1,49 @@
+package com.magnoliales.handlebars.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The items a page is rendered from: the page with its areas and components and the pages of its supplier chain.
+ * Holds the latest modification date among them and a fingerprint of their identifiers in document order, which
+ * changes when items are added, removed or reordered without touching the modification dates of the others.
+ */
+public final class PageDependencies {
+
+    private final List<String> rootPaths;
+    private final long lastModified;
+    private final long fingerprint;
+    private final int size;
+
+    public PageDependencies(List<String> rootPaths, long lastModified, long fingerprint, int size) {
+        this.rootPaths = Collections.unmodifiableList(rootPaths);
+        this.lastModified = lastModified;
+        this.fingerprint = fingerprint;
+        this.size = size;
+    }
+
+    /**
+     * @return the paths of the page and its supplier pages
+     */
+    public List<String> getRootPaths() {
+        return rootPaths;
+    }
+
+    /**
+     * @return the latest {@code mgnl:lastModified} date of the items, in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the number of items
+     */
+    public int size() {
+        return size;
+    }
+}
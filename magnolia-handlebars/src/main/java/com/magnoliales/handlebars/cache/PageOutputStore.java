@@ -0,0 +1,50 @@
+package com.magnoliales.handlebars.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Storage of rendered page output for the {@link PageCache}, which decides what is stored and for how long.
+ */
+public interface PageOutputStore {
+
+    /**
+     * @return the output stored under the key, or null
+     */
+    String get(String key);
+
+    /**
+     * Writes the output stored under the key, encoded as UTF-8.
+     *
+     * @return false if nothing is stored under the key, in which case nothing was written
+     */
+    boolean writeTo(String key, OutputStream out) throws IOException;
+
+    /**
+     * Writes the gzip compressed output stored under the key.
+     *
+     * @return false if nothing, or no compressed output, is stored under the key, in which case nothing was written
+     */
+    boolean writeCompressedTo(String key, OutputStream out) throws IOException;
+
+    /**
+     * @return whether gzip compressed output is stored under the key, which a store may still drop before it is
+     * written
+     */
+    boolean containsCompressed(String key);
+
+    void put(String key, String output);
+
+    /**
+     * Stores the output along with its gzip compression, which is removed with it.
+     *
+     * @param compressed the gzip compressed UTF-8 encoded output, or null
+     */
+    void put(String key, String output, byte[] compressed);
+
+    void remove(String key);
+
+    void clear();
+
+    int size();
+}
@@ -0,0 +1,165 @@
+package com.magnoliales.handlebars.cache;
+
+import info.magnolia.context.Context;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records what the page rendered in the current request depends on and captures its output for the
+ * {@link PageCache}. Content maps record their node and the pages of the supplier chain, areas record their node
+ * and the image and link helpers record the assets they use. Pages only depend on their own properties and child
+ * nodes, all other items on their whole subtree. Controllers and models that read other content record it with
+ * {@link #record(String, String, boolean)} on {@link #current()}, or {@link #discard()} the page.
+ */
+public final class PageRecorder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageRecorder.class);
+
+    private static final String ATTRIBUTE = PageRecorder.class.getName();
+
+    private final long generation;
+    private final Set<String> items = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> pages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicBoolean capturing = new AtomicBoolean();
+    private volatile boolean discarded;
+    private CapturingWriter output;
+
+    private PageRecorder(long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * @return the recorder of the current request, or null if its page is not recorded
+     */
+    public static PageRecorder current() {
+        if (!MgnlContext.hasInstance()) {
+            return null;
+        }
+        return MgnlContext.getAttribute(ATTRIBUTE, Context.LOCAL_SCOPE);
+    }
+
+    static PageRecorder start(long generation) {
+        PageRecorder recorder = new PageRecorder(generation);
+        MgnlContext.setAttribute(ATTRIBUTE, recorder, Context.LOCAL_SCOPE);
+        return recorder;
+    }
+
+    static void stop() {
+        MgnlContext.removeAttribute(ATTRIBUTE, Context.LOCAL_SCOPE);
+    }
+
+    /**
+     * Key of an item in the dependency indexes of the {@link PageCache}.
+     */
+    static String key(String workspace, String path) {
+        return workspace + ":" + path;
+    }
+
+    public void record(Node node) {
+        try {
+            record(node.getSession().getWorkspace().getName(), node.getPath(), node.isNodeType(NodeTypes.Page.NAME));
+        } catch (RepositoryException e) {
+            LOGGER.warn("Cannot record page dependency, the page will not be cached", e);
+            discard();
+        }
+    }
+
+    /**
+     * @param page whether only the properties and child nodes of the item are depended on, as for pages, rather
+     *             than its whole subtree
+     */
+    public void record(String workspace, String path, boolean page) {
+        (page ? pages : items).add(key(workspace, path));
+    }
+
+    /**
+     * Excludes the page from the cache, e.g. because it depends on something that cannot be recorded.
+     */
+    public void discard() {
+        discarded = true;
+    }
+
+    public boolean isDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * @return a writer that captures what is written to the given writer on the first call, which happens in the
+     * outermost render of the page, and the given writer on any later call
+     */
+    public Writer capture(Writer out) {
+        if (!capturing.compareAndSet(false, true)) {
+            return out;
+        }
+        output = new CapturingWriter(out);
+        return output;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    Set<String> getItems() {
+        return items;
+    }
+
+    Set<String> getPages() {
+        return pages;
+    }
+
+    /**
+     * @return the captured output, or null if nothing was captured
+     */
+    String getOutput() {
+        return output != null ? output.captured.toString() : null;
+    }
+
+    private static final class CapturingWriter extends Writer {
+
+        private final Writer delegate;
+        private final StringBuilder captured = new StringBuilder();
+
+        private CapturingWriter(Writer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            delegate.write(buffer, offset, length);
+            captured.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String string) throws IOException {
+            delegate.write(string);
+            captured.append(string);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            delegate.write(string, offset, length);
+            captured.append(string, offset, offset + length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.magnoliales.handlebars.cache;
+
+import com.magnoliales.handlebars.metrics.PageCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders stale pages of the {@link PageCache} again in the background. A page is re-rendered by requesting it
+ * from this instance with a {@link #HEADER} carrying a secret token and the cache key, which makes the renderer
+ * skip the cache and store the result under that key. The page is requested at the URL and host it was requested at,
+ * unless a {@link #setBaseUrl(String) base URL} is set, and the renderer only stores re-renders whose own key
+ * matches, so that a re-render that reached another site is never stored. At most one re-render per key runs at a
+ * time, and re-renders that find the pool and its queue busy are dropped; the next request for the stale page tries
+ * again.
+ */
+public class PageRevalidator {
+
+    public static final String HEADER = "X-Handlebars-Revalidate";
+    public static final String HOST = "Host";
+    public static final String ALLOW_RESTRICTED_HEADERS = "sun.net.http.allowRestrictedHeaders";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageRevalidator.class);
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int QUEUE_SIZE = 100;
+    private static final int TIMEOUT = 30000;
+    private static final int TOKEN_BITS = 130;
+    private static final int TOKEN_RADIX = 32;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String token = new BigInteger(TOKEN_BITS, new SecureRandom()).toString(TOKEN_RADIX);
+    private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final PageCacheMetrics metrics = PageCacheMetrics.getInstance();
+    private int threads = DEFAULT_THREADS;
+    private String baseUrl;
+    private ThreadPoolExecutor executor;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of pages rendered in the background at the same time, 2 by default. Takes effect before the
+     * first re-render.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Sets the URL this instance is requested at, e.g. {@code http://localhost:8080}, for instances behind a load
+     * balancer that may send the URL of a page to another instance. By default the scheme, host and port of the
+     * request that found the stale page are used. Re-renders through a base URL send the original {@code Host}
+     * header, which the JDK only sends if {@link #canSendHost()}; without it they reach the host of the base URL
+     * and are never stored.
+     */
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Re-renders the page of the request in the background unless it is already being re-rendered.
+     *
+     * @return whether a re-render was started
+     */
+    public boolean revalidate(final String key, HttpServletRequest request) {
+        if (!inFlight.add(key)) {
+            return false;
+        }
+        final String url = getUrl(request);
+        final String host = request.getHeader(HOST);
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        render(key, url, host);
+                    } finally {
+                        inFlight.remove(key);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            metrics.recordRejectedRevalidation();
+            return false;
+        }
+    }
+
+    /**
+     * @return the cache key if the request is a re-render started by this instance, otherwise null
+     */
+    public String getRevalidatedKey(HttpServletRequest request) {
+        String header = request.getHeader(HEADER);
+        if (header == null || !header.startsWith(token + " ")) {
+            return null;
+        }
+        return header.substring(token.length() + 1);
+    }
+
+    /**
+     * @return whether the JDK sends the original {@code Host} header of re-renders through a base URL, which it only
+     * does with {@code -Dsun.net.http.allowRestrictedHeaders=true}
+     */
+    public static boolean canSendHost() {
+        return Boolean.getBoolean(ALLOW_RESTRICTED_HEADERS);
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the URL the page of the request is re-rendered from
+     */
+    String getUrl(HttpServletRequest request) {
+        if (baseUrl != null) {
+            return baseUrl + request.getRequestURI();
+        }
+        return request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort()
+                + request.getRequestURI();
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "handlebars-revalidate-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    private void render(String key, String url, String host) {
+        long start = System.currentTimeMillis();
+        boolean successful = false;
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setInstanceFollowRedirects(false);
+            connection.setRequestProperty(HEADER, token + " " + key);
+            if (baseUrl != null && host != null) {
+                connection.setRequestProperty(HOST, host);
+            }
+            int status = connection.getResponseCode();
+            InputStream body = status < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (body.read(buffer) >= 0) {
+                    continue;
+                }
+                body.close();
+            }
+            successful = status == HttpURLConnection.HTTP_OK;
+            if (!successful) {
+                LOGGER.warn("Re-rendering {} returned {}", url, status);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot re-render " + url, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            metrics.recordRevalidation(System.currentTimeMillis() - start, successful);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.magnoliales.handlebars.cache;
+
+import info.magnolia.cms.util.ObservationUtil;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.repository.RepositoryConstants;
+import org.apache.jackrabbit.commons.JcrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.query.Query;
+import javax.jcr.query.Row;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The {@code mgnl:supplierPage} links of all pages of the website workspace, kept in memory as supplier to
+ * dependents. The graph is built with one query when started, or on first use, and updated from observation events:
+ * supplier property changes update the page, added and moved pages are scanned with their page subtree and removed
+ * pages drop the links they had. Dependents are looked up transitively without repository access, which makes delete
+ * checks and impact reports independent of the number of pages.
+ * <p>
+ * Links to removed suppliers are kept as long as the dependent pages still refer to them.
+ */
+public class SupplierGraph {
+
+    public static final String WORKSPACE = RepositoryConstants.WEBSITE;
+    public static final String SUPPLIER_PAGE = "mgnl:supplierPage";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SupplierGraph.class);
+
+    private static final long OBSERVATION_DELAY = 1000;
+    private static final long OBSERVATION_MAX_DELAY = 5000;
+    private static final int MAX_SUPPLIERS = 16;
+    private static final String QUERY = "SELECT * FROM [" + NodeTypes.Page.NAME + "] WHERE [" + SUPPLIER_PAGE
+            + "] IS NOT NULL";
+
+    private final ConcurrentMap<String, String> suppliers = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, Set<String>> dependents = new ConcurrentHashMap<String, Set<String>>();
+    // paths of the pages that have a supplier, to drop their links when a subtree is removed or moved
+    private final ConcurrentMap<String, String> paths = new ConcurrentHashMap<String, String>();
+    private final ConcurrentNavigableMap<String, String> identifiers = new ConcurrentSkipListMap<String, String>();
+    private EventListener listener;
+    private volatile boolean started;
+
+    /**
+     * @return the identifier of the supplier page of the page, or null if it has none
+     */
+    public String getSupplier(String identifier) throws RepositoryException {
+        if (!started) {
+            start();
+        }
+        return suppliers.get(identifier);
+    }
+
+    /**
+     * @return the identifiers of the page's supplier, its supplier's supplier and so on, nearest first
+     */
+    public List<String> getSupplierChain(String identifier) throws RepositoryException {
+        if (!started) {
+            start();
+        }
+        Set<String> chain = new LinkedHashSet<String>();
+        String current = suppliers.get(identifier);
+        while (current != null && !current.equals(identifier) && chain.add(current)
+                && chain.size() < MAX_SUPPLIERS) {
+            current = suppliers.get(current);
+        }
+        return new ArrayList<String>(chain);
+    }
+
+    public boolean hasDependents(String identifier) throws RepositoryException {
+        if (!started) {
+            start();
+        }
+        Set<String> direct = dependents.get(identifier);
+        return direct != null && !direct.isEmpty();
+    }
+
+    /**
+     * @return the identifiers of the pages that have the page as their supplier
+     */
+    public Set<String> getDependents(String identifier) throws RepositoryException {
+        if (!started) {
+            start();
+        }
+        Set<String> direct = dependents.get(identifier);
+        return direct != null ? Collections.unmodifiableSet(direct) : Collections.<String>emptySet();
+    }
+
+    /**
+     * @return the identifiers of all pages that have the page in their supplier chain, i.e. the pages whose content
+     * changes when the page is edited, nearest first
+     */
+    public Set<String> getAllDependents(String identifier) throws RepositoryException {
+        if (!started) {
+            start();
+        }
+        Set<String> closure = new LinkedHashSet<String>();
+        LinkedList<String> queue = new LinkedList<String>();
+        queue.add(identifier);
+        while (!queue.isEmpty()) {
+            Set<String> direct = dependents.get(queue.removeFirst());
+            if (direct == null) {
+                continue;
+            }
+            for (String dependent : direct) {
+                if (!dependent.equals(identifier) && closure.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * @return the paths of all pages that have the page in their supplier chain, sorted
+     */
+    public SortedSet<String> getAllDependentPaths(String identifier) throws RepositoryException {
+        SortedSet<String> dependentPaths = new TreeSet<String>();
+        for (String dependent : getAllDependents(identifier)) {
+            String path = paths.get(dependent);
+            if (path != null) {
+                dependentPaths.add(path);
+            }
+        }
+        return dependentPaths;
+    }
+
+    /**
+     * @return the number of pages with a supplier page
+     */
+    public int size() {
+        return suppliers.size();
+    }
+
+    /**
+     * Builds the graph again from the repository.
+     */
+    public synchronized void rebuild() throws RepositoryException {
+        clear();
+        MgnlContext.doInSystemContext(new MgnlContext.Op<Void, RepositoryException>() {
+            @Override
+            public Void exec() throws RepositoryException {
+                Session session = MgnlContext.getJCRSession(WORKSPACE);
+                Query query = session.getWorkspace().getQueryManager().createQuery(QUERY, Query.JCR_SQL2);
+                for (Row row : JcrUtils.getRows(query.execute())) {
+                    update(row.getNode());
+                }
+                return null;
+            }
+        });
+        LOGGER.info("Built supplier graph of {} pages", suppliers.size());
+    }
+
+    public synchronized void start() throws RepositoryException {
+        if (started) {
+            return;
+        }
+        listener = new EventListener() {
+            @Override
+            public void onEvent(final EventIterator events) {
+                MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+                    @Override
+                    public void doExec() {
+                        apply(events);
+                    }
+                });
+            }
+        };
+        // registered first, so that no change made while building is missed
+        ObservationUtil.registerDeferredChangeListener(WORKSPACE, "/", listener,
+                OBSERVATION_DELAY, OBSERVATION_MAX_DELAY);
+        try {
+            rebuild();
+        } catch (RepositoryException e) {
+            ObservationUtil.unregisterChangeListener(WORKSPACE, listener);
+            throw e;
+        }
+        started = true;
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        ObservationUtil.unregisterChangeListener(WORKSPACE, listener);
+        clear();
+    }
+
+    /**
+     * Applies the observed changes, called in the system context.
+     */
+    synchronized void apply(EventIterator events) {
+        try {
+            Session session = MgnlContext.getJCRSession(WORKSPACE);
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                String path = event.getPath();
+                if (event.getType() == Event.NODE_REMOVED) {
+                    removeSubtree(path);
+                } else if (event.getType() == Event.NODE_ADDED || event.getType() == Event.NODE_MOVED) {
+                    if (session.nodeExists(path)) {
+                        scan(session.getNode(path));
+                    }
+                } else if (path.endsWith("/" + SUPPLIER_PAGE)) {
+                    String pagePath = path.substring(0, path.length() - SUPPLIER_PAGE.length() - 1);
+                    if (session.nodeExists(pagePath)) {
+                        update(session.getNode(pagePath));
+                    }
+                }
+            }
+        } catch (RepositoryException e) {
+            LOGGER.warn("Cannot apply supplier page changes, rebuilding the supplier graph", e);
+            try {
+                rebuild();
+            } catch (RepositoryException rebuildException) {
+                LOGGER.error("Cannot rebuild the supplier graph", rebuildException);
+            }
+        }
+    }
+
+    private void scan(Node node) throws RepositoryException {
+        if (!node.isNodeType(NodeTypes.Page.NAME)) {
+            return;
+        }
+        update(node);
+        for (Node child : JcrUtils.getChildNodes(node)) {
+            scan(child);
+        }
+    }
+
+    private void update(Node page) throws RepositoryException {
+        String identifier = page.getIdentifier();
+        String supplier = PropertyUtil.getString(page, SUPPLIER_PAGE);
+        unlink(identifier);
+        if (supplier == null || supplier.isEmpty()) {
+            return;
+        }
+        String path = page.getPath();
+        suppliers.put(identifier, supplier);
+        paths.put(identifier, path);
+        identifiers.put(path, identifier);
+        Set<String> direct = dependents.get(supplier);
+        if (direct == null) {
+            Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            direct = dependents.putIfAbsent(supplier, created);
+            if (direct == null) {
+                direct = created;
+            }
+        }
+        direct.add(identifier);
+    }
+
+    private void removeSubtree(String path) {
+        String prefix = path.endsWith("/") ? path : path + "/";
+        List<String> removed = new ArrayList<String>();
+        String identifier = identifiers.get(path);
+        if (identifier != null) {
+            removed.add(identifier);
+        }
+        removed.addAll(identifiers.subMap(prefix, prefix + Character.MAX_VALUE).values());
+        for (String page : removed) {
+            unlink(page);
+        }
+    }
+
+    private void unlink(String identifier) {
+        String supplier = suppliers.remove(identifier);
+        String path = paths.remove(identifier);
+        if (path != null) {
+            identifiers.remove(path, identifier);
+        }
+        if (supplier != null) {
+            Set<String> direct = dependents.get(supplier);
+            if (direct != null) {
+                direct.remove(identifier);
+                if (direct.isEmpty()) {
+                    dependents.remove(supplier, direct);
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        suppliers.clear();
+        dependents.clear();
+        paths.clear();
+        identifiers.clear();
+    }
+}
@@ -0,0 +1,401 @@
+package com.magnoliales.handlebars.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Invalidates caches on all instances of a cluster. Caches register as named regions; invalidations and clears
+ * are applied locally right away, collected for a batch delay, coalesced and sent to the other instances through
+ * a pluggable {@link InvalidationTransport}. Every message carries the sender's sequence number, and idle senders
+ * send heartbeats with their last sequence number, so that an instance that missed a message clears all its
+ * regions instead of serving stale output.
+ * <p>
+ * Content published to an instance is observed by its caches directly. The bus carries what an instance cannot
+ * observe itself: template changes detected by the renderer's template loader, and explicit flushes published by
+ * application code or through the {@code com.magnoliales.handlebars:type=InvalidationBus} MBean. Without a transport
+ * it only applies them locally. Messages are not authenticated, transports must only connect trusted instances.
+ */
+public class InvalidationBus implements InvalidationReceiver, InvalidationBusMBean {
+
+    public static final String OBJECT_NAME = "com.magnoliales.handlebars:type=InvalidationBus";
+    public static final long DEFAULT_BATCH_DELAY = 200;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private static final long HEARTBEAT_INTERVAL = 5000;
+    private static final int MAGIC = 0x48424956;
+    private static final byte VERSION = 1;
+    private static final byte DATA = 1;
+    private static final byte HEARTBEAT = 2;
+    private static final byte CLEAR = 1;
+    private static final byte INVALIDATE = 2;
+    // more pending invalidations of a region are sent as a clear
+    private static final int MAX_REGION_INVALIDATIONS = 500;
+    private static final int MAX_MESSAGE_SIZE = 60000;
+    private static final char SEPARATOR = ':';
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, InvalidationListener> listeners =
+            new ConcurrentHashMap<String, InvalidationListener>();
+    private final Map<String, Long> lastSequences = new ConcurrentHashMap<String, Long>();
+    private final Set<String> pendingClears = new LinkedHashSet<String>();
+    private final Map<String, Set<String>> pendingInvalidations = new LinkedHashMap<String, Set<String>>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong coalescedInvalidations = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+    private volatile InvalidationTransport transport;
+    private ScheduledExecutorService scheduler;
+    private volatile long lastSent;
+
+    public void register(String region, InvalidationListener listener) {
+        listeners.put(region, listener);
+    }
+
+    public void unregister(String region) {
+        listeners.remove(region);
+    }
+
+    /**
+     * Starts exchanging invalidations with the other instances.
+     *
+     * @param batchDelay milliseconds to collect invalidations before they are sent
+     */
+    public synchronized void start(InvalidationTransport transport, long batchDelay) throws IOException {
+        if (this.transport != null) {
+            return;
+        }
+        transport.start(this);
+        this.transport = transport;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "handlebars-invalidation-sender");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, batchDelay, batchDelay, TimeUnit.MILLISECONDS);
+        registerMBean();
+    }
+
+    public synchronized void stop() {
+        if (transport == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        flush();
+        transport.stop();
+        transport = null;
+        unregisterMBean();
+    }
+
+    public synchronized boolean isStarted() {
+        return transport != null;
+    }
+
+    /**
+     * Invalidates the item at the path in the region on this instance and, with the next batch, on all others.
+     */
+    public void invalidate(String region, String workspace, String path) {
+        InvalidationListener listener = listeners.get(region);
+        if (listener != null) {
+            listener.invalidate(workspace, path);
+        }
+        if (transport == null) {
+            return;
+        }
+        synchronized (pendingClears) {
+            if (pendingClears.contains(region)) {
+                coalescedInvalidations.incrementAndGet();
+                return;
+            }
+            Set<String> paths = pendingInvalidations.get(region);
+            if (paths == null) {
+                paths = new LinkedHashSet<String>();
+                pendingInvalidations.put(region, paths);
+            }
+            if (!paths.add(workspace + SEPARATOR + path)) {
+                coalescedInvalidations.incrementAndGet();
+            } else if (paths.size() > MAX_REGION_INVALIDATIONS) {
+                coalescedInvalidations.addAndGet(paths.size());
+                pendingInvalidations.remove(region);
+                pendingClears.add(region);
+            }
+        }
+    }
+
+    /**
+     * Clears the region on this instance and, with the next batch, on all others.
+     */
+    @Override
+    public void clear(String region) {
+        InvalidationListener listener = listeners.get(region);
+        if (listener != null) {
+            listener.clear();
+        }
+        if (transport == null) {
+            return;
+        }
+        synchronized (pendingClears) {
+            Set<String> paths = pendingInvalidations.remove(region);
+            if (paths != null) {
+                coalescedInvalidations.addAndGet(paths.size());
+            }
+            pendingClears.add(region);
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        for (String region : listeners.keySet()) {
+            clear(region);
+        }
+    }
+
+    /**
+     * Sends the pending invalidations, or a heartbeat if nothing was sent for a while.
+     */
+    public void flush() {
+        InvalidationTransport current = transport;
+        if (current == null) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<byte[]>();
+        try {
+            synchronized (pendingClears) {
+                for (String region : pendingClears) {
+                    records.add(encodeRecord(CLEAR, region, null));
+                }
+                for (Map.Entry<String, Set<String>> entry : pendingInvalidations.entrySet()) {
+                    for (String item : entry.getValue()) {
+                        records.add(encodeRecord(INVALIDATE, entry.getKey(), item));
+                    }
+                }
+                pendingClears.clear();
+                pendingInvalidations.clear();
+            }
+            if (!records.isEmpty()) {
+                sendData(current, records);
+            } else if (System.currentTimeMillis() - lastSent >= HEARTBEAT_INTERVAL) {
+                send(current, HEARTBEAT, sequence.get(), new ArrayList<byte[]>());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot send cache invalidations", e);
+        }
+    }
+
+    @Override
+    public void receive(byte[] message, int offset, int length) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message, offset, length));
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                LOGGER.debug("Ignoring message of another protocol or version");
+                return;
+            }
+            byte type = in.readByte();
+            String sender = in.readUTF();
+            long messageSequence = in.readLong();
+            if (sender.equals(nodeId)) {
+                return;
+            }
+            receivedMessages.incrementAndGet();
+            if (!accept(sender, type, messageSequence)) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte kind = in.readByte();
+                InvalidationListener listener = listeners.get(in.readUTF());
+                if (kind == CLEAR) {
+                    if (listener != null) {
+                        listener.clear();
+                    }
+                } else {
+                    String item = in.readUTF();
+                    int separator = item.indexOf(SEPARATOR);
+                    if (listener != null) {
+                        listener.invalidate(item.substring(0, separator), item.substring(separator + 1));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read invalidation message", e);
+            resync("an unreadable message");
+        }
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public String[] getRegions() {
+        return listeners.keySet().toArray(new String[listeners.size()]);
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    @Override
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    @Override
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    @Override
+    public long getCoalescedInvalidations() {
+        return coalescedInvalidations.get();
+    }
+
+    @Override
+    public long getResyncs() {
+        return resyncs.get();
+    }
+
+    // whether the records of the message are to be applied, clearing all regions if messages were missed
+    private boolean accept(String sender, byte type, long messageSequence) {
+        synchronized (lastSequences) {
+            Long last = lastSequences.get(sender);
+            if (last == null) {
+                lastSequences.put(sender, messageSequence);
+                return type == DATA;
+            }
+            if (messageSequence <= last) {
+                return false;
+            }
+            long expected = type == DATA ? last + 1 : last;
+            if (messageSequence > expected) {
+                resync((messageSequence - expected) + " messages from " + sender);
+            }
+            lastSequences.put(sender, messageSequence);
+            return type == DATA;
+        }
+    }
+
+    private void resync(String missed) {
+        LOGGER.info("Missed {}, clearing all cache regions", missed);
+        resyncs.incrementAndGet();
+        for (InvalidationListener listener : listeners.values()) {
+            listener.clear();
+        }
+    }
+
+    private void sendData(InvalidationTransport current, List<byte[]> records) throws IOException {
+        List<byte[]> batch = new ArrayList<byte[]>();
+        int size = 0;
+        for (byte[] record : records) {
+            if (!batch.isEmpty() && size + record.length > MAX_MESSAGE_SIZE) {
+                send(current, DATA, sequence.incrementAndGet(), batch);
+                batch = new ArrayList<byte[]>();
+                size = 0;
+            }
+            batch.add(record);
+            size += record.length;
+        }
+        send(current, DATA, sequence.incrementAndGet(), batch);
+    }
+
+    private void send(InvalidationTransport current, byte type, long messageSequence, List<byte[]> records)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(type);
+        out.writeUTF(nodeId);
+        out.writeLong(messageSequence);
+        out.writeInt(records.size());
+        for (byte[] record : records) {
+            out.write(record);
+        }
+        out.flush();
+        current.send(bytes.toByteArray());
+        sentMessages.incrementAndGet();
+        lastSent = System.currentTimeMillis();
+    }
+
+    private static byte[] encodeRecord(byte kind, String region, String item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(kind);
+        out.writeUTF(region);
+        if (item != null) {
+            out.writeUTF(item);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot register invalidation bus", e);
+        } catch (InstanceAlreadyExistsException e) {
+            LOGGER.debug("Invalidation bus already registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot register invalidation bus", e);
+        } catch (NotCompliantMBeanException e) {
+            LOGGER.error("Cannot register invalidation bus", e);
+        }
+    }
+
+    private void unregisterMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot unregister invalidation bus", e);
+        } catch (InstanceNotFoundException e) {
+            LOGGER.debug("Invalidation bus not registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot unregister invalidation bus", e);
+        }
+    }
+}
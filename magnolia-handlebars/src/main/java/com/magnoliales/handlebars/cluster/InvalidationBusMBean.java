@@ -0,0 +1,40 @@
+package com.magnoliales.handlebars.cluster;
+
+/**
+ * State of the cluster invalidation bus of this instance.
+ */
+public interface InvalidationBusMBean {
+
+    String getNodeId();
+
+    String[] getRegions();
+
+    /**
+     * @return the sequence number of the last message sent
+     */
+    long getSequence();
+
+    long getSentMessages();
+
+    long getReceivedMessages();
+
+    /**
+     * @return invalidations merged into pending ones or into a clear of their region before being sent
+     */
+    long getCoalescedInvalidations();
+
+    /**
+     * @return full clears of all regions after messages from another instance were lost
+     */
+    long getResyncs();
+
+    /**
+     * Clears the region on all instances.
+     */
+    void clear(String region);
+
+    /**
+     * Clears all regions on all instances.
+     */
+    void clearAll();
+}
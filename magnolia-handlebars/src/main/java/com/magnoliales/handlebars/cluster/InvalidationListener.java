@@ -0,0 +1,14 @@
+package com.magnoliales.handlebars.cluster;
+
+/**
+ * A cache registered with the {@link InvalidationBus} under a region name.
+ */
+public interface InvalidationListener {
+
+    /**
+     * Drops what was derived from the item at the path, its descendants or its ancestors.
+     */
+    void invalidate(String workspace, String path);
+
+    void clear();
+}
@@ -0,0 +1,9 @@
+package com.magnoliales.handlebars.cluster;
+
+/**
+ * Receives the messages a {@link InvalidationTransport} delivers.
+ */
+public interface InvalidationReceiver {
+
+    void receive(byte[] message, int offset, int length);
+}
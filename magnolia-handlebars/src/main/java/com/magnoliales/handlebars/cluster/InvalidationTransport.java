@@ -0,0 +1,19 @@
+package com.magnoliales.handlebars.cluster;
+
+import java.io.IOException;
+
+/**
+ * Carries the messages of the {@link InvalidationBus} between the instances of a cluster. Delivery may be
+ * unreliable and unordered; the bus detects lost messages by their sequence numbers.
+ */
+public interface InvalidationTransport {
+
+    void start(InvalidationReceiver receiver) throws IOException;
+
+    /**
+     * Sends the message to the other instances, not necessarily to this one.
+     */
+    void send(byte[] message) throws IOException;
+
+    void stop();
+}
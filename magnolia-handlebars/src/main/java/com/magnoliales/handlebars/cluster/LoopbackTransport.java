@@ -0,0 +1,68 @@
+package com.magnoliales.handlebars.cluster;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers messages to the other transports of the same group in this JVM, synchronously on the sending thread.
+ * Meant for tests and for running several buses in one process.
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+    private static final ConcurrentMap<String, List<LoopbackTransport>> GROUPS =
+            new ConcurrentHashMap<String, List<LoopbackTransport>>();
+
+    private final String group;
+    private volatile InvalidationReceiver receiver;
+    private volatile boolean dropping;
+
+    public LoopbackTransport(String group) {
+        this.group = group;
+    }
+
+    @Override
+    public void start(InvalidationReceiver receiver) {
+        this.receiver = receiver;
+        List<LoopbackTransport> members = GROUPS.get(group);
+        if (members == null) {
+            List<LoopbackTransport> created = new CopyOnWriteArrayList<LoopbackTransport>();
+            members = GROUPS.putIfAbsent(group, created);
+            if (members == null) {
+                members = created;
+            }
+        }
+        members.add(this);
+    }
+
+    @Override
+    public void send(byte[] message) {
+        List<LoopbackTransport> members = GROUPS.get(group);
+        if (members == null || dropping) {
+            return;
+        }
+        for (LoopbackTransport member : members) {
+            InvalidationReceiver memberReceiver = member.receiver;
+            if (member != this && memberReceiver != null) {
+                memberReceiver.receive(message, 0, message.length);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        List<LoopbackTransport> members = GROUPS.get(group);
+        if (members != null) {
+            members.remove(this);
+        }
+        receiver = null;
+    }
+
+    /**
+     * Drops the messages sent while set, to simulate a lossy network.
+     */
+    public void setDropping(boolean dropping) {
+        this.dropping = dropping;
+    }
+}
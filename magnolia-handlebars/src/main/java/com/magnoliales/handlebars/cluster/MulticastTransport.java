@@ -0,0 +1,89 @@
+package com.magnoliales.handlebars.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+
+/**
+ * Sends messages as UDP datagrams to a multicast group that all instances of the cluster join. Messages are neither
+ * authenticated nor encrypted, any host that can send to the group can clear the caches of all instances, so the
+ * transport must only be used on a trusted network, with a time to live that keeps the datagrams inside it.
+ */
+public class MulticastTransport implements InvalidationTransport {
+
+    public static final String DEFAULT_ADDRESS = "239.255.27.1";
+    public static final int DEFAULT_PORT = 45627;
+    public static final int DEFAULT_TIME_TO_LIVE = 1;
+    public static final int MAX_MESSAGE_SIZE = 65000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MulticastTransport.class);
+
+    private final String address;
+    private final int port;
+    private final int timeToLive;
+    private InetAddress group;
+    private MulticastSocket socket;
+    private Thread receiverThread;
+
+    public MulticastTransport(String address, int port, int timeToLive) {
+        this.address = address;
+        this.port = port;
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public synchronized void start(final InvalidationReceiver receiver) throws IOException {
+        group = InetAddress.getByName(address);
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(timeToLive);
+        socket.joinGroup(group);
+        final MulticastSocket receiving = socket;
+        receiverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[MAX_MESSAGE_SIZE];
+                while (!receiving.isClosed()) {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    try {
+                        receiving.receive(packet);
+                        receiver.receive(packet.getData(), packet.getOffset(), packet.getLength());
+                    } catch (IOException e) {
+                        if (!receiving.isClosed()) {
+                            LOGGER.warn("Cannot receive invalidation message", e);
+                        }
+                    }
+                }
+            }
+        }, "handlebars-invalidation-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        LOGGER.info("Exchanging cache invalidations with multicast group {}:{}", address, port);
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        MulticastSocket sending = socket;
+        if (sending != null) {
+            sending.send(new DatagramPacket(message, message.length, group, port));
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.leaveGroup(group);
+        } catch (IOException e) {
+            LOGGER.debug("Cannot leave multicast group", e);
+        }
+        socket.close();
+        socket = null;
+        receiverThread.interrupt();
+    }
+}
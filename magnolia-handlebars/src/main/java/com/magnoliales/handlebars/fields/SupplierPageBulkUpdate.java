@@ -0,0 +1,240 @@
+package com.magnoliales.handlebars.fields;
+
+import com.magnoliales.handlebars.cache.SupplierGraph;
+import com.magnoliales.handlebars.setup.ApplicationContextContainer;
+import com.magnoliales.handlebars.setup.ModuleComponents;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.repository.RepositoryConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Points the {@code mgnl:supplierPage} of many pages to new suppliers, e.g. when a site section is restructured.
+ * All changes are validated first against the {@link com.magnoliales.handlebars.annotations.ParentTemplate} rules:
+ * the page's template must require a parent template, the new supplier must use it and must not have the page in
+ * its own supplier chain. Valid changes are then saved in batches, one {@code session.save()} per batch, in the
+ * order of the page identifiers.
+ * <p>
+ * A failed batch is discarded and the {@link Result} tells the last saved page; passing it as {@code resumeAfter}
+ * continues from there. Pages already pointing to their new supplier are skipped, so running the same changes again
+ * is cheap as well.
+ */
+public class SupplierPageBulkUpdate {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SupplierPageBulkUpdate.class);
+
+    private static final String SUPPLIER_PAGE = SupplierGraph.SUPPLIER_PAGE;
+    private static final int MAX_SUPPLIERS = 16;
+
+    private final TemplateUtils utils;
+    private final SupplierGraph supplierGraph = ModuleComponents.get(SupplierGraph.class);
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public SupplierPageBulkUpdate(ApplicationContextContainer applicationContextContainer) {
+        this.utils = new TemplateUtils(applicationContextContainer);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of pages saved at once, 500 by default.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Result apply(Map<String, String> suppliers) throws RepositoryException {
+        return apply(suppliers, null, null);
+    }
+
+    /**
+     * @param suppliers   the identifiers of the new supplier pages by the identifiers of the pages
+     * @param resumeAfter the last saved page of a previous run, or null to start with the first page
+     * @param progress    notified after every saved batch, or null
+     */
+    public Result apply(Map<String, String> suppliers, String resumeAfter, Progress progress)
+            throws RepositoryException {
+        Session session = MgnlContext.getJCRSession(RepositoryConstants.WEBSITE);
+        SortedMap<String, String> pending = new TreeMap<String, String>(suppliers);
+        if (resumeAfter != null) {
+            pending = pending.tailMap(resumeAfter + Character.MIN_VALUE);
+        }
+        Result result = new Result(pending.size());
+        SortedMap<String, String> valid = validate(session, pending, result);
+        int inBatch = 0;
+        int unchanged = 0;
+        String last = null;
+        try {
+            for (Map.Entry<String, String> entry : valid.entrySet()) {
+                Node page = session.getNodeByIdentifier(entry.getKey());
+                if (entry.getValue().equals(PropertyUtil.getString(page, SUPPLIER_PAGE))) {
+                    unchanged++;
+                } else {
+                    page.setProperty(SUPPLIER_PAGE, entry.getValue());
+                    NodeTypes.LastModified.update(page);
+                    inBatch++;
+                }
+                last = entry.getKey();
+                if (inBatch == batchSize) {
+                    save(session, result, inBatch, unchanged, last, progress);
+                    inBatch = 0;
+                    unchanged = 0;
+                }
+            }
+            if (inBatch > 0 || unchanged > 0) {
+                save(session, result, inBatch, unchanged, last, progress);
+            }
+        } catch (RepositoryException e) {
+            LOGGER.error("Cannot update supplier pages, resume after " + result.lastSaved, e);
+            session.refresh(false);
+            result.failure = e;
+        }
+        LOGGER.info("Updated supplier page of {} pages, {} unchanged, {} rejected", result.updated, result.skipped,
+                result.rejected.size());
+        return result;
+    }
+
+    private void save(Session session, Result result, int inBatch, int unchanged, String last, Progress progress)
+            throws RepositoryException {
+        session.save();
+        result.updated += inBatch;
+        result.skipped += unchanged;
+        result.lastSaved = last;
+        LOGGER.debug("Saved supplier pages up to {}, {} of {}", last, result.updated, result.total);
+        if (progress != null) {
+            progress.saved(result);
+        }
+    }
+
+    private SortedMap<String, String> validate(Session session, SortedMap<String, String> pending, Result result)
+            throws RepositoryException {
+        SortedMap<String, String> valid = new TreeMap<String, String>();
+        Map<String, String> parentTemplates = utils.getParentTemplates();
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            String reason;
+            try {
+                Node page = session.getNodeByIdentifier(entry.getKey());
+                Node supplier = session.getNodeByIdentifier(entry.getValue());
+                String template = NodeTypes.Renderable.getTemplate(page);
+                if (!page.isNodeType(NodeTypes.Page.NAME) || !supplier.isNodeType(NodeTypes.Page.NAME)) {
+                    reason = "not a page";
+                } else if (!utils.requiresParentTemplate(template)) {
+                    reason = "template " + template + " has no parent template";
+                } else if (!parentTemplates.get(template).equals(NodeTypes.Renderable.getTemplate(supplier))) {
+                    reason = "supplier does not use template " + parentTemplates.get(template);
+                } else if (isInSupplierChain(entry.getKey(), entry.getValue(), pending)) {
+                    reason = "supplier chain would loop";
+                } else {
+                    valid.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+            } catch (ItemNotFoundException e) {
+                reason = "not found";
+            }
+            result.rejected.put(entry.getKey(), reason);
+        }
+        return valid;
+    }
+
+    // follows the chain as it will be once all changes are applied
+    private boolean isInSupplierChain(String page, String supplier, Map<String, String> pending)
+            throws RepositoryException {
+        Set<String> visited = new HashSet<String>();
+        String current = supplier;
+        while (current != null && visited.add(current) && visited.size() <= MAX_SUPPLIERS) {
+            if (current.equals(page)) {
+                return true;
+            }
+            current = pending.containsKey(current) ? pending.get(current) : supplierGraph.getSupplier(current);
+        }
+        return current != null;
+    }
+
+    /**
+     * Notified after every saved batch.
+     */
+    public interface Progress {
+
+        void saved(Result result);
+    }
+
+    /**
+     * Outcome of a bulk update, updated while it runs.
+     */
+    public static final class Result {
+
+        private final int total;
+        private final Map<String, String> rejected = new TreeMap<String, String>();
+        private int updated;
+        private int skipped;
+        private String lastSaved;
+        private RepositoryException failure;
+
+        private Result(int total) {
+            this.total = total;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+
+        /**
+         * @return the number of pages that already pointed to their new supplier
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return the reasons changes were not applied, by page identifier
+         */
+        public Map<String, String> getRejected() {
+            return Collections.unmodifiableMap(rejected);
+        }
+
+        /**
+         * @return the identifier of the last page of the last saved batch, to resume after, or null
+         */
+        public String getLastSaved() {
+            return lastSaved;
+        }
+
+        /**
+         * @return the exception that stopped the update, or null if it completed
+         */
+        public RepositoryException getFailure() {
+            return failure;
+        }
+
+        public boolean isComplete() {
+            return failure == null;
+        }
+
+        @Override
+        public String toString() {
+            return updated + " updated, " + skipped + " unchanged, " + rejected.size() + " rejected of " + total
+                    + (failure != null ? ", failed after " + lastSaved : "");
+        }
+    }
+}
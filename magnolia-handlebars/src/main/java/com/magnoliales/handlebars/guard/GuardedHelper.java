@@ -0,0 +1,49 @@
+package com.magnoliales.handlebars.guard;
+
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.renderer.RenderScope;
+
+import java.io.IOException;
+
+/**
+ * Holds the wrapped helper to its {@link RenderBudgets budget}. Calls with a {@code name} hash, such as
+ * {@code cms-area name="menu"}, have a circuit of their own, so one slow area does not cut off the others.
+ */
+public class GuardedHelper implements Helper<Object> {
+
+    private final String name;
+    private final Helper<Object> delegate;
+    private final RenderBudgets budgets;
+
+    @SuppressWarnings("unchecked")
+    public GuardedHelper(String name, Helper<?> delegate, RenderBudgets budgets) {
+        this.name = name;
+        this.delegate = (Helper<Object>) delegate;
+        this.budgets = budgets;
+    }
+
+    public Helper<?> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public CharSequence apply(Object context, Options options) throws IOException {
+        Object target = options.hash("name");
+        String key = target != null ? name + " " + target : name;
+        RenderScope scope = RenderScope.from(options);
+        if (!budgets.allow(key)) {
+            return budgets.fallback(key, scope);
+        }
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            CharSequence result = delegate.apply(context, options);
+            completed = true;
+            budgets.remember(key, scope, result);
+            return result;
+        } finally {
+            budgets.record(key, System.nanoTime() - start, budgets.getHelperBudget(name), completed);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.magnoliales.handlebars.guard;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.magnoliales.handlebars.cache.PageRecorder;
+import com.magnoliales.handlebars.metrics.RenderBudgetMetrics;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import com.magnoliales.handlebars.renderer.SharedRequests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time budgets of helpers and templates with a circuit breaker per helper call or template. A call that takes
+ * longer than its budget is reported as an overrun; calls run on the request thread and are not interrupted, so
+ * the output of a slow call is still used. After {@link #setFailureThreshold(int) a number} of overruns or
+ * exceptions in a row the circuit opens: for the {@link #setOpenTime(long) open time} calls are not made and
+ * render the last good output for the same content instead, or nothing. Then one trial call decides whether the
+ * circuit closes again. Pages rendered with a fallback are kept out of the page cache.
+ * <p>
+ * Budgets do not bound the time of a single call, they only stop calling helpers and templates that keep overrunning.
+ * Output is only kept as a fallback for {@link SharedRequests shared requests}, by the page requested and the content
+ * rendered, so that output rendered for one visitor is never shown to another; other requests render nothing while
+ * a circuit is open.
+ */
+public class RenderBudgets {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_TIME = 30000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderBudgets.class);
+
+    private static final int MAX_FALLBACKS = 1000;
+    private static final int MAX_FALLBACK_LENGTH = 65536;
+    private static final char KEY_SEPARATOR = '\n';
+
+    private final ConcurrentMap<String, Long> helperBudgets = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> templateBudgets = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+    private final ConcurrentMap<String, CharSequence> fallbacks = new ConcurrentHashMap<String, CharSequence>();
+    private final Queue<String> fallbackOrder = new ConcurrentLinkedQueue<String>();
+    private final RenderBudgetMetrics metrics = RenderBudgetMetrics.getInstance();
+    private volatile long defaultHelperBudget;
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long openTime = DEFAULT_OPEN_TIME;
+
+    /**
+     * @return the budget of the helper in milliseconds, 0 if it has none
+     */
+    public long getHelperBudget(String helper) {
+        Long budget = helperBudgets.get(helper);
+        return budget != null ? budget : defaultHelperBudget;
+    }
+
+    public void setHelperBudget(String helper, long millis) {
+        helperBudgets.put(helper, millis);
+    }
+
+    /**
+     * Sets the budget of helpers without a budget of their own, 0 for none.
+     */
+    public void setDefaultHelperBudget(long millis) {
+        this.defaultHelperBudget = millis;
+    }
+
+    /**
+     * @return the budget of the template in milliseconds, 0 if it has none
+     */
+    public long getTemplateBudget(String templateScript) {
+        Long budget = templateBudgets.get(templateScript);
+        return budget != null ? budget : 0;
+    }
+
+    public void setTemplateBudget(String templateScript, long millis) {
+        templateBudgets.put(templateScript, millis);
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Sets the time in milliseconds an open circuit skips calls before it lets a trial call through.
+     */
+    public void setOpenTime(long openTime) {
+        this.openTime = openTime;
+    }
+
+    /**
+     * @return whether the call is allowed; if not, the caller renders {@link #fallback(String, RenderScope)}
+     */
+    public boolean allow(String key) {
+        return getCircuit(key).allow(System.currentTimeMillis());
+    }
+
+    /**
+     * Records a finished call, which closes the circuit if it was in time and successful.
+     *
+     * @param nanos     the time the call took
+     * @param completed whether the call returned rather than threw an exception
+     */
+    public void record(String key, long nanos, long budget, boolean completed) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        boolean overrun = millis > budget;
+        if (overrun) {
+            metrics.recordOverrun(key, millis);
+        }
+        if (!completed) {
+            metrics.recordFailure();
+        }
+        Circuit circuit = getCircuit(key);
+        if (completed && !overrun) {
+            if (circuit.close()) {
+                LOGGER.info("Closed circuit of {}", key);
+                metrics.recordClosed(key);
+            }
+        } else if (circuit.fail(System.currentTimeMillis())) {
+            LOGGER.warn("Opened circuit of {} for {}ms after {} in {}ms", key, openTime,
+                    completed ? "overrun" : "failure", millis);
+            metrics.recordOpened(key);
+        }
+    }
+
+    /**
+     * Keeps the output as the fallback of the call for the current page and content, if the request is shared.
+     */
+    public void remember(String key, RenderScope scope, CharSequence output) {
+        if (output == null || output.length() > MAX_FALLBACK_LENGTH) {
+            return;
+        }
+        String fallbackKey = getFallbackKey(key, scope);
+        if (fallbackKey == null) {
+            return;
+        }
+        if (fallbacks.put(fallbackKey, output instanceof Handlebars.SafeString ? output : output.toString()) == null) {
+            fallbackOrder.offer(fallbackKey);
+            while (fallbacks.size() > MAX_FALLBACKS) {
+                String eldest = fallbackOrder.poll();
+                if (eldest == null) {
+                    break;
+                }
+                fallbacks.remove(eldest);
+            }
+        }
+    }
+
+    /**
+     * @return the last good output of the call for the current page and content, or an empty string
+     */
+    public CharSequence fallback(String key, RenderScope scope) {
+        String fallbackKey = getFallbackKey(key, scope);
+        CharSequence fallback = fallbackKey != null ? fallbacks.get(fallbackKey) : null;
+        metrics.recordShortCircuit(fallback == null);
+        PageRecorder recorder = scope != null ? scope.getRecorder() : null;
+        if (recorder != null) {
+            recorder.discard();
+        }
+        return fallback != null ? fallback : "";
+    }
+
+    private Circuit getCircuit(String key) {
+        Circuit circuit = circuits.get(key);
+        if (circuit == null) {
+            Circuit created = new Circuit();
+            circuit = circuits.putIfAbsent(key, created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * @return the key of the call's output for the current page and content, or null unless the request is shared
+     */
+    private static String getFallbackKey(String key, RenderScope scope) {
+        String requestKey = SharedRequests.getKey();
+        if (requestKey == null) {
+            return null;
+        }
+        Node content = scope != null ? scope.getAggregationState().getCurrentContentNode() : null;
+        if (content == null) {
+            return key + KEY_SEPARATOR + requestKey;
+        }
+        try {
+            return key + KEY_SEPARATOR + requestKey + KEY_SEPARATOR + content.getPath();
+        } catch (RepositoryException e) {
+            return key + KEY_SEPARATOR + requestKey;
+        }
+    }
+
+    private final class Circuit {
+
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean trial = new AtomicBoolean();
+        private volatile long openUntil;
+
+        private boolean allow(long now) {
+            long until = openUntil;
+            if (until == 0) {
+                return true;
+            }
+            return now >= until && trial.compareAndSet(false, true);
+        }
+
+        /**
+         * @return whether the circuit was open
+         */
+        private boolean close() {
+            failures.set(0);
+            trial.set(false);
+            boolean open = openUntil != 0;
+            openUntil = 0;
+            return open;
+        }
+
+        /**
+         * @return whether the circuit opened
+         */
+        private boolean fail(long now) {
+            if (openUntil != 0) {
+                // the trial call failed
+                openUntil = now + openTime;
+                trial.set(false);
+                return false;
+            }
+            if (failures.incrementAndGet() >= failureThreshold) {
+                openUntil = now + openTime;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -2,6 +2,10 @@ package com.magnoliales.handlebars.helpers;
 
 import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import info.magnolia.context.Context;
+import info.magnolia.context.MgnlContext;
 import info.magnolia.jcr.util.ContentMap;
 import info.magnolia.jcr.util.NodeTypes;
 import info.magnolia.jcr.util.NodeUtil;
@@ -9,9 +13,11 @@ import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.objectfactory.Components;
 import info.magnolia.registry.RegistrationException;
 import info.magnolia.rendering.context.RenderingContext;
+import info.magnolia.rendering.engine.AppendableOnlyOutputProvider;
 import info.magnolia.rendering.engine.RenderException;
 import info.magnolia.rendering.engine.RenderingEngine;
 import info.magnolia.rendering.template.AreaDefinition;
+import info.magnolia.rendering.template.RenderableDefinition;
 import info.magnolia.rendering.template.TemplateDefinition;
 import info.magnolia.rendering.template.registry.TemplateDefinitionRegistry;
 import info.magnolia.templating.elements.AbstractContentTemplatingElement;
@@ -24,6 +30,9 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class AbstractTemplateHelper<C extends TemplatingElement> implements Helper {
 
@@ -34,23 +43,29 @@ public abstract class AbstractTemplateHelper<C extends TemplatingElement> implem
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CmsInitTemplateHelper.class);
 
-    protected C createTemplatingElement() {
-        // FIXME use scope instead of fetching the RenderingContext for passing it as an argument
-        final RenderingEngine renderingEngine = Components.getComponent(RenderingEngine.class);
-        final RenderingContext renderingContext = renderingEngine.getRenderingContext();
-
-        return Components.getComponentProvider().newInstance(getTemplatingElementClass(), renderingContext);
+    protected C createTemplatingElement(Options options) {
+        RenderScope scope = RenderScope.from(options);
+        if (scope == null) {
+            final RenderingEngine renderingEngine = Components.getComponent(RenderingEngine.class);
+            final RenderingContext renderingContext = renderingEngine.getRenderingContext();
+            return Components.getComponentProvider().newInstance(getTemplatingElementClass(), renderingContext);
+        }
+        return scope.getComponentProvider().newInstance(getTemplatingElementClass(), scope.getRenderingContext());
     }
 
     protected Class<C> getTemplatingElementClass() {
-        // TODO does this support more than one level of subclasses?
-        return (Class<C>) ((ParameterizedType) this.getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+        // the public variants extend the helpers
+        Type type = getClass().getGenericSuperclass();
+        while (!(type instanceof ParameterizedType)) {
+            type = ((Class<?>) type).getGenericSuperclass();
+        }
+        return (Class<C>) ((ParameterizedType) type).getActualTypeArguments()[0];
     }
 
     protected void initContentElement(Options options, AbstractContentTemplatingElement component)  {
         // @todo The freemarker code ensured that options could be cast to the correct type - here I am just assuming
         ContentMap contentMap = options.hash(CONTENT_ATTRIBUTE);
-        Node contentNode = contentMap != null ? contentMap.getJCRNode() : null;
+        Node contentNode = contentMap != null ? JcrReads.unwrap(contentMap.getJCRNode()) : null;
         String workspace = options.hash(WORKSPACE_ATTRIBUTE);
         String nodeIdentifier = options.hash(UUID_ATTRIBUTE);
         String path = options.hash(PATH_ATTRIBUTE);
@@ -61,8 +76,17 @@ public abstract class AbstractTemplateHelper<C extends TemplatingElement> implem
         component.setPath(path);
     }
 
+    /**
+     * @return the node of a component given as a {@link ComponentCursor} or a {@link ContentMap}, unwrapped
+     */
+    protected static Node getComponentNode(Object context) {
+        Node node = context instanceof ComponentCursor ? ((ComponentCursor) context).getJCRNode()
+                : ((ContentMap) context).getJCRNode();
+        return JcrReads.unwrap(node);
+    }
+
     protected CharSequence render(AbstractContentTemplatingElement templatingElement) {
-        StringBuffer buffer = new StringBuffer();
+        StringBuilder buffer = new StringBuilder();
         try {
             templatingElement.begin(buffer);
             templatingElement.end(buffer);
@@ -76,9 +100,39 @@ public abstract class AbstractTemplateHelper<C extends TemplatingElement> implem
         return buffer;
     }
 
-    protected AreaState createAreaState(String name, Node node) {
+    /**
+     * Renders the content the way a templating element does outside of the page editor, with the context attributes
+     * set for the duration of the render.
+     *
+     * @param definition the definition to render with, or null for the template of the content
+     */
+    protected CharSequence renderContent(Node content, RenderableDefinition definition,
+                                         Map<String, Object> contextObjects, Map<String, Object> contextAttributes,
+                                         RenderScope scope) {
+        RenderingEngine renderingEngine = scope != null
+                ? scope.getComponentProvider().getComponent(RenderingEngine.class)
+                : Components.getComponent(RenderingEngine.class);
+        StringBuilder buffer = new StringBuilder();
+        Map<String, Object> previous = setAttributes(contextAttributes);
+        try {
+            if (definition == null) {
+                renderingEngine.render(content, new AppendableOnlyOutputProvider(buffer));
+            } else {
+                renderingEngine.render(content, definition, contextObjects, new AppendableOnlyOutputProvider(buffer));
+            }
+        } catch (RenderException e) {
+            LOGGER.warn("Render Error rendering:", e);
+        } finally {
+            restoreAttributes(previous);
+        }
+        return buffer;
+    }
+
+    protected AreaState createAreaState(String name, Node node, RenderScope scope) {
         String templateId = PropertyUtil.getString(node, "mgnl:template");
-        TemplateDefinitionRegistry registry = Components.getComponent(TemplateDefinitionRegistry.class);
+        TemplateDefinitionRegistry registry = scope != null
+                ? scope.getComponentProvider().getComponent(TemplateDefinitionRegistry.class)
+                : Components.getComponent(TemplateDefinitionRegistry.class);
         TemplateDefinition templateDefinition;
         try {
             templateDefinition = registry.getTemplateDefinition(templateId);
@@ -106,11 +160,36 @@ public abstract class AbstractTemplateHelper<C extends TemplatingElement> implem
                 LOGGER.error("Cannot find supplier page", e);
                 return null;
             }
-            return createAreaState(name, supplier);
+            return createAreaState(name, supplier, scope);
         }
 
     }
 
+    private static Map<String, Object> setAttributes(Map<String, Object> attributes) {
+        if (attributes == null || attributes.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> previous = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            previous.put(attribute.getKey(), MgnlContext.getAttribute(attribute.getKey(), Context.LOCAL_SCOPE));
+            MgnlContext.setAttribute(attribute.getKey(), attribute.getValue(), Context.LOCAL_SCOPE);
+        }
+        return previous;
+    }
+
+    private static void restoreAttributes(Map<String, Object> previous) {
+        if (previous == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> attribute : previous.entrySet()) {
+            if (attribute.getValue() == null) {
+                MgnlContext.removeAttribute(attribute.getKey(), Context.LOCAL_SCOPE);
+            } else {
+                MgnlContext.setAttribute(attribute.getKey(), attribute.getValue(), Context.LOCAL_SCOPE);
+            }
+        }
+    }
+
     public static final class AreaState {
 
         private AreaDefinition areaDefinition;
@@ -0,0 +1,67 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.magnoliales.handlebars.renderer.RenderScope;
+
+import javax.jcr.Node;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The components of an area as the {@code components} of its template. Each iteration moves one
+ * {@link ComponentCursor} from component to component, so {@code {{#each components}}} allocates the same two
+ * objects whether the area has two components or two hundred. Components looked up by index get a cursor of their
+ * own.
+ */
+public final class AreaComponents extends AbstractList<ComponentCursor> {
+
+    private final List<Node> nodes;
+    private final RenderScope scope;
+
+    /**
+     * @param scope the scope of the render, or null outside of it
+     */
+    public AreaComponents(List<Node> nodes, RenderScope scope) {
+        this.nodes = nodes;
+        this.scope = scope;
+    }
+
+    @Override
+    public ComponentCursor get(int index) {
+        return new ComponentCursor(nodes.get(index), scope);
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public Iterator<ComponentCursor> iterator() {
+        return new Iterator<ComponentCursor>() {
+
+            private final ComponentCursor cursor = new ComponentCursor(scope);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < nodes.size();
+            }
+
+            @Override
+            public ComponentCursor next() {
+                if (next >= nodes.size()) {
+                    throw new NoSuchElementException();
+                }
+                cursor.moveTo(nodes.get(next++));
+                return cursor;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
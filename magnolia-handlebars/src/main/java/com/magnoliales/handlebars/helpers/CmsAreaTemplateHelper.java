@@ -1,6 +1,11 @@
 package com.magnoliales.handlebars.helpers;
 
+import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.renderer.ContentSnapshots;
+import com.magnoliales.handlebars.renderer.NodeSnapshot;
+import com.magnoliales.handlebars.renderer.RenderScope;
 import info.magnolia.rendering.model.RenderingModel;
 import info.magnolia.templating.elements.AreaElement;
 import org.slf4j.Logger;
@@ -9,12 +14,20 @@ import org.slf4j.LoggerFactory;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
-public class CmsAreaTemplateHelper extends AbstractTemplateHelper<AreaElement> {
+public class CmsAreaTemplateHelper extends AbstractTemplateHelper<AreaElement> implements EditHelper {
+
+    public static final String PREFETCH_ATTRIBUTE = "prefetch";
+    public static final String PREFETCH_PROPERTIES_ATTRIBUTE = "prefetchProperties";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CmsInitTemplateHelper.class);
 
+    // area, components, their areas and the components within
+    private static final int DEFAULT_PREFETCH_DEPTH = 3;
+
     public CharSequence apply(Object context, Options options) throws IOException {
 
         String name = options.hash("name");
@@ -26,8 +39,7 @@ public class CmsAreaTemplateHelper extends AbstractTemplateHelper<AreaElement> {
         Boolean editable = options.hash("editable");
         Map<String, Object> contextAttributes = options.hash("contextAttributes");
 
-        RenderingModel model = (RenderingModel) ((Map) context).get("model");
-        AreaState areaState = createAreaState(name, model.getNode());
+        AreaState areaState = resolveArea(context, options);
         Node node = areaState.getNode();
 
         String workspace = null;
@@ -41,9 +53,9 @@ public class CmsAreaTemplateHelper extends AbstractTemplateHelper<AreaElement> {
             LOGGER.error("Cannot read properties from the node", e);
         }
 
-        final AreaElement templatingElement = createTemplatingElement();
+        final AreaElement templatingElement = createTemplatingElement(options);
 
-        templatingElement.setContent(node);
+        templatingElement.setContent(JcrReads.unwrap(node));
         templatingElement.setWorkspace(workspace);
         templatingElement.setNodeIdentifier(nodeIdentifier);
         templatingElement.setPath(path);
@@ -61,4 +73,56 @@ public class CmsAreaTemplateHelper extends AbstractTemplateHelper<AreaElement> {
         return render(templatingElement);
     }
 
+    @Override
+    public Helper getPublicHelper() {
+        return new PublicAreaTemplateHelper();
+    }
+
+    /**
+     * Finds the area of the page, on a supplier page if the template does not define it, records it as a dependency
+     * of the page and prefetches its content.
+     */
+    protected AreaState resolveArea(Object context, Options options) {
+        String name = options.hash("name");
+        Integer prefetchDepth = options.hash(PREFETCH_ATTRIBUTE, DEFAULT_PREFETCH_DEPTH);
+        String prefetchProperties = options.hash(PREFETCH_PROPERTIES_ATTRIBUTE);
+
+        RenderScope scope = RenderScope.from(options);
+        RenderingModel model = (RenderingModel) ((Map) context).get("model");
+        AreaState areaState = createAreaState(name, scope != null ? scope.account(model.getNode()) : model.getNode(),
+                scope);
+        Node node = areaState.getNode();
+        if (scope != null) {
+            scope.record(node);
+        }
+        if (prefetchDepth > 0) {
+            prefetch(scope != null ? scope.getSnapshots() : ContentSnapshots.getOrCreate(), node, prefetchDepth,
+                    prefetchProperties);
+        }
+        return areaState;
+    }
+
+    private void prefetch(ContentSnapshots snapshots, Node areaNode, int depth, String propertyNames) {
+        try {
+            NodeSnapshot existing = snapshots.get(areaNode.getIdentifier());
+            if (existing != null && existing.isComplete()) {
+                return;
+            }
+        } catch (RepositoryException e) {
+            LOGGER.error("Cannot read area identifier", e);
+        }
+        Set<String> propertyFilter = null;
+        if (propertyNames != null) {
+            propertyFilter = new HashSet<String>();
+            for (String propertyName : propertyNames.split(",")) {
+                propertyFilter.add(propertyName.trim());
+            }
+        }
+        try {
+            snapshots.register(NodeSnapshot.capture(areaNode, depth, propertyFilter));
+        } catch (RepositoryException e) {
+            LOGGER.error("Cannot prefetch area content", e);
+        }
+    }
+
 }
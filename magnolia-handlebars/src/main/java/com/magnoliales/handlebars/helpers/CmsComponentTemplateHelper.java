@@ -1,7 +1,7 @@
 package com.magnoliales.handlebars.helpers;
 
+import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
-import info.magnolia.jcr.util.ContentMap;
 import info.magnolia.templating.elements.ComponentElement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,26 +11,33 @@ import javax.jcr.RepositoryException;
 import java.io.IOException;
 import java.util.Map;
 
-public class CmsComponentTemplateHelper extends AbstractTemplateHelper<ComponentElement> {
+public class CmsComponentTemplateHelper extends AbstractTemplateHelper<ComponentElement> implements EditHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CmsInitTemplateHelper.class);
 
     public CharSequence apply(Object context, Options options) throws IOException {
 
-        Node node = ((ContentMap) context).getJCRNode();
+        Node node = getComponentNode(context);
 
         String workspace = null;
         String nodeIdentifier = null;
         String path = null;
-        try {
-            workspace = node.getSession().getWorkspace().getName();
-            nodeIdentifier = node.getIdentifier();
-            path = node.getPath();
-        } catch (RepositoryException e) {
-            LOGGER.error("Cannot read properties from the node", e);
+        if (context instanceof ComponentCursor) {
+            ComponentCursor cursor = (ComponentCursor) context;
+            workspace = cursor.getWorkspace();
+            nodeIdentifier = cursor.getNodeIdentifier();
+            path = cursor.getNodePath();
+        } else {
+            try {
+                workspace = node.getSession().getWorkspace().getName();
+                nodeIdentifier = node.getIdentifier();
+                path = node.getPath();
+            } catch (RepositoryException e) {
+                LOGGER.error("Cannot read properties from the node", e);
+            }
         }
 
-        final ComponentElement templatingElement = createTemplatingElement();
+        final ComponentElement templatingElement = createTemplatingElement(options);
 
         templatingElement.setContent(node);
         templatingElement.setWorkspace(workspace);
@@ -47,4 +54,9 @@ public class CmsComponentTemplateHelper extends AbstractTemplateHelper<Component
 
         return render(templatingElement);
     }
+
+    @Override
+    public Helper getPublicHelper() {
+        return new PublicComponentTemplateHelper();
+    }
 }
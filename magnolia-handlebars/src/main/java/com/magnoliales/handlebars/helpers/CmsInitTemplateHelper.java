@@ -1,5 +1,6 @@
 package com.magnoliales.handlebars.helpers;
 
+import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
 import info.magnolia.templating.elements.InitElement;
 import org.slf4j.Logger;
@@ -7,12 +8,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 
-public class CmsInitTemplateHelper extends AbstractTemplateHelper<InitElement> {
+public class CmsInitTemplateHelper extends AbstractTemplateHelper<InitElement> implements EditHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CmsInitTemplateHelper.class);
 
     public CharSequence apply(Object context, Options options) throws IOException {
-        final InitElement templatingElement = createTemplatingElement();
+        final InitElement templatingElement = createTemplatingElement(options);
         initContentElement(options, templatingElement);
 
         String dialog = options.hash("dialog");
@@ -20,4 +21,9 @@ public class CmsInitTemplateHelper extends AbstractTemplateHelper<InitElement> {
 
         return render(templatingElement);
     }
+
+    @Override
+    public Helper getPublicHelper() {
+        return new PublicInitTemplateHelper();
+    }
 }
@@ -0,0 +1,141 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.magnoliales.handlebars.renderer.RenderScope;
+import info.magnolia.jcr.util.ContentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A component of an area, moved from one component to the next while {@link AreaComponents} are iterated, so that
+ * iterating an area creates one cursor instead of a {@link ContentMap} per component. The workspace is read once
+ * per cursor, the identifier and path at most once per component and only when asked for. Templates reading the
+ * properties of the component go through a {@link ContentMap} of the component created on first use, over the node
+ * accounted by the scope of the render like the other content of the page.
+ * <p>
+ * A cursor is only valid until the iteration moves on; helpers must not keep it beyond their call.
+ */
+public final class ComponentCursor extends AbstractMap<String, Object> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComponentCursor.class);
+
+    private final RenderScope scope;
+    private Node jcrNode;
+    private String workspace;
+    private String nodeIdentifier;
+    private String nodePath;
+    private ContentMap contentMap;
+
+    ComponentCursor(RenderScope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * A cursor that stays on the given component.
+     *
+     * @param scope the scope of the render, or null outside of it
+     */
+    public ComponentCursor(Node node, RenderScope scope) {
+        this(scope);
+        moveTo(node);
+    }
+
+    void moveTo(Node node) {
+        jcrNode = node;
+        nodeIdentifier = null;
+        nodePath = null;
+        contentMap = null;
+    }
+
+    public Node getJCRNode() {
+        return jcrNode;
+    }
+
+    /**
+     * @return the workspace of the component, read from the first component the cursor was on, or null if it
+     * cannot be read
+     */
+    public String getWorkspace() {
+        if (workspace == null) {
+            try {
+                workspace = jcrNode.getSession().getWorkspace().getName();
+            } catch (RepositoryException e) {
+                LOGGER.error("Cannot read the workspace of the component", e);
+            }
+        }
+        return workspace;
+    }
+
+    public String getNodeIdentifier() {
+        if (nodeIdentifier == null) {
+            try {
+                nodeIdentifier = jcrNode.getIdentifier();
+            } catch (RepositoryException e) {
+                LOGGER.error("Cannot read the identifier of the component", e);
+            }
+        }
+        return nodeIdentifier;
+    }
+
+    public String getNodePath() {
+        if (nodePath == null) {
+            try {
+                nodePath = jcrNode.getPath();
+            } catch (RepositoryException e) {
+                LOGGER.error("Cannot read the path of the component", e);
+            }
+        }
+        return nodePath;
+    }
+
+    /**
+     * @return the properties of the component the cursor is on
+     */
+    public ContentMap getContentMap() {
+        if (contentMap == null) {
+            contentMap = new ContentMap(scope != null ? scope.account(jcrNode) : jcrNode);
+        }
+        return contentMap;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return getContentMap().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getContentMap().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return getContentMap().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getContentMap().isEmpty();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return getContentMap().keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return getContentMap().values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return getContentMap().entrySet();
+    }
+}
@@ -0,0 +1,15 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Helper;
+
+/**
+ * A helper that renders page editor markup on author instances. Templates rendered outside of the page editor are
+ * compiled with its public variant instead, which leaves the editor out.
+ */
+public interface EditHelper {
+
+    /**
+     * @return the helper registered under the same name in the public variant of the templates
+     */
+    Helper getPublicHelper();
+}
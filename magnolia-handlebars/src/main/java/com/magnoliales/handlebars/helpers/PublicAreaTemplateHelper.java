@@ -0,0 +1,67 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.rendering.template.AreaDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code cms-area} outside of the page editor, rendering the area with its components directly. Areas inheriting
+ * components from their ancestors are left to the area element, which implements the inheritance. The components
+ * are passed as {@link AreaComponents}, iterated with one {@link ComponentCursor}.
+ */
+public class PublicAreaTemplateHelper extends CmsAreaTemplateHelper {
+
+    public static final String COMPONENTS_ATTRIBUTE = "components";
+    public static final String COMPONENT_ATTRIBUTE = "component";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicAreaTemplateHelper.class);
+
+    @Override
+    public CharSequence apply(Object context, Options options) throws IOException {
+        AreaState areaState = resolveArea(context, options);
+        AreaDefinition areaDefinition = areaState.getAreaDefinition();
+        if (!Boolean.TRUE.equals(areaDefinition.getEnabled())) {
+            return "";
+        }
+        if (areaDefinition.getInheritance() != null
+                && Boolean.TRUE.equals(areaDefinition.getInheritance().isEnabled())) {
+            return super.apply(context, options);
+        }
+        String type = options.hash("type", areaDefinition.getType());
+        Map<String, Object> contextAttributes = options.hash("contextAttributes");
+        RenderScope scope = RenderScope.from(options);
+
+        Node node = areaState.getNode();
+        Map<String, Object> contextObjects = new HashMap<String, Object>();
+        if (!AreaDefinition.TYPE_NO_COMPONENT.equals(type)) {
+            List<Node> components = new ArrayList<Node>();
+            try {
+                for (Node component : NodeUtil.getNodes(node, NodeTypes.Component.NAME)) {
+                    components.add(JcrReads.unwrap(component));
+                }
+            } catch (RepositoryException e) {
+                LOGGER.error("Cannot read area components", e);
+            }
+            if (AreaDefinition.TYPE_SINGLE.equals(type)) {
+                contextObjects.put(COMPONENT_ATTRIBUTE, components.isEmpty() ? null
+                        : new ComponentCursor(components.get(0), scope));
+            } else {
+                contextObjects.put(COMPONENTS_ATTRIBUTE, new AreaComponents(components, scope));
+            }
+        }
+        return renderContent(JcrReads.unwrap(node), areaDefinition, contextObjects, contextAttributes, scope);
+    }
+}
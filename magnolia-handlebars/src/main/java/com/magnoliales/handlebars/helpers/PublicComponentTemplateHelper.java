@@ -0,0 +1,19 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.renderer.RenderScope;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * {@code cms-component} outside of the page editor, rendering the component with its template directly.
+ */
+public class PublicComponentTemplateHelper extends CmsComponentTemplateHelper {
+
+    @Override
+    public CharSequence apply(Object context, Options options) throws IOException {
+        Map<String, Object> contextAttributes = options.hash("contextAttributes");
+        return renderContent(getComponentNode(context), null, null, contextAttributes, RenderScope.from(options));
+    }
+}
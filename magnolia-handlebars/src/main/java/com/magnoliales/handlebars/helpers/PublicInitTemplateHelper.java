@@ -0,0 +1,16 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Options;
+
+import java.io.IOException;
+
+/**
+ * {@code cms-init} outside of the page editor, which has nothing to initialise.
+ */
+public class PublicInitTemplateHelper extends CmsInitTemplateHelper {
+
+    @Override
+    public CharSequence apply(Object context, Options options) throws IOException {
+        return "";
+    }
+}
@@ -0,0 +1,65 @@
+package com.magnoliales.handlebars.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+/**
+ * Counts every node taken from the wrapped iterator as a read and wraps it.
+ */
+class AccountingNodeIterator implements NodeIterator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountingNodeIterator.class);
+
+    private final NodeIterator iterator;
+    private final JcrReads reads;
+
+    AccountingNodeIterator(NodeIterator iterator, JcrReads reads) {
+        this.iterator = iterator;
+        this.reads = reads;
+    }
+
+    @Override
+    public Node nextNode() {
+        Node node = iterator.nextNode();
+        try {
+            reads.nodeRead(node.getPath());
+        } catch (RepositoryException e) {
+            LOGGER.debug("Cannot read node path", e);
+        }
+        return reads.wrap(node);
+    }
+
+    @Override
+    public Object next() {
+        return nextNode();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return iterator.hasNext();
+    }
+
+    @Override
+    public void skip(long skipNum) {
+        iterator.skip(skipNum);
+    }
+
+    @Override
+    public long getSize() {
+        return iterator.getSize();
+    }
+
+    @Override
+    public long getPosition() {
+        return iterator.getPosition();
+    }
+
+    @Override
+    public void remove() {
+        iterator.remove();
+    }
+}
@@ -0,0 +1,97 @@
+package com.magnoliales.handlebars.metrics;
+
+import info.magnolia.jcr.wrapper.DelegateNodeWrapper;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Counts the node and property reads made through a node, and wraps the nodes and session reached from it.
+ */
+public class AccountingNodeWrapper extends DelegateNodeWrapper {
+
+    private final JcrReads reads;
+    private String path;
+
+    public AccountingNodeWrapper(Node wrapped, JcrReads reads) {
+        super(wrapped);
+        this.reads = reads;
+    }
+
+    @Override
+    public Node getNode(String relPath) throws RepositoryException {
+        reads.nodeRead(childPath(relPath));
+        return reads.wrap(super.getNode(relPath));
+    }
+
+    @Override
+    public boolean hasNode(String relPath) throws RepositoryException {
+        reads.nodeRead(childPath(relPath));
+        return super.hasNode(relPath);
+    }
+
+    @Override
+    public NodeIterator getNodes() throws RepositoryException {
+        return new AccountingNodeIterator(super.getNodes(), reads);
+    }
+
+    @Override
+    public NodeIterator getNodes(String namePattern) throws RepositoryException {
+        return new AccountingNodeIterator(super.getNodes(namePattern), reads);
+    }
+
+    @Override
+    public NodeIterator getNodes(String[] nameGlobs) throws RepositoryException {
+        return new AccountingNodeIterator(super.getNodes(nameGlobs), reads);
+    }
+
+    @Override
+    public Node getParent() throws RepositoryException {
+        Node parent = super.getParent();
+        reads.nodeRead(parent.getPath());
+        return reads.wrap(parent);
+    }
+
+    @Override
+    public Property getProperty(String relPath) throws RepositoryException {
+        reads.propertyRead(childPath(relPath));
+        return super.getProperty(relPath);
+    }
+
+    @Override
+    public boolean hasProperty(String relPath) throws RepositoryException {
+        reads.propertyRead(childPath(relPath));
+        return super.hasProperty(relPath);
+    }
+
+    @Override
+    public PropertyIterator getProperties() throws RepositoryException {
+        return new AccountingPropertyIterator(super.getProperties(), reads);
+    }
+
+    @Override
+    public PropertyIterator getProperties(String namePattern) throws RepositoryException {
+        return new AccountingPropertyIterator(super.getProperties(namePattern), reads);
+    }
+
+    @Override
+    public PropertyIterator getProperties(String[] nameGlobs) throws RepositoryException {
+        return new AccountingPropertyIterator(super.getProperties(nameGlobs), reads);
+    }
+
+    @Override
+    public Session getSession() throws RepositoryException {
+        return new AccountingSessionWrapper(super.getSession(), reads);
+    }
+
+    private String childPath(String relPath) throws RepositoryException {
+        if (path == null) {
+            path = getWrappedNode().getPath();
+        }
+        return path.length() == 1 ? path + relPath : path + "/" + relPath;
+    }
+}
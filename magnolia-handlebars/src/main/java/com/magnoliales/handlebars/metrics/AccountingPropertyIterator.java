@@ -0,0 +1,65 @@
+package com.magnoliales.handlebars.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+
+/**
+ * Counts every property taken from the wrapped iterator as a read.
+ */
+class AccountingPropertyIterator implements PropertyIterator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountingPropertyIterator.class);
+
+    private final PropertyIterator iterator;
+    private final JcrReads reads;
+
+    AccountingPropertyIterator(PropertyIterator iterator, JcrReads reads) {
+        this.iterator = iterator;
+        this.reads = reads;
+    }
+
+    @Override
+    public Property nextProperty() {
+        Property property = iterator.nextProperty();
+        try {
+            reads.propertyRead(property.getPath());
+        } catch (RepositoryException e) {
+            LOGGER.debug("Cannot read property path", e);
+        }
+        return property;
+    }
+
+    @Override
+    public Object next() {
+        return nextProperty();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return iterator.hasNext();
+    }
+
+    @Override
+    public void skip(long skipNum) {
+        iterator.skip(skipNum);
+    }
+
+    @Override
+    public long getSize() {
+        return iterator.getSize();
+    }
+
+    @Override
+    public long getPosition() {
+        return iterator.getPosition();
+    }
+
+    @Override
+    public void remove() {
+        iterator.remove();
+    }
+}
@@ -0,0 +1,70 @@
+package com.magnoliales.handlebars.metrics;
+
+import info.magnolia.jcr.wrapper.DelegateSessionWrapper;
+
+import javax.jcr.Item;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Counts the reads made through a session, e.g. supplier page lookups by identifier, and wraps the nodes read.
+ */
+public class AccountingSessionWrapper extends DelegateSessionWrapper {
+
+    private final JcrReads reads;
+
+    public AccountingSessionWrapper(Session wrapped, JcrReads reads) {
+        super(wrapped);
+        this.reads = reads;
+    }
+
+    @Override
+    public Node getRootNode() throws RepositoryException {
+        reads.nodeRead("/");
+        return reads.wrap(super.getRootNode());
+    }
+
+    @Override
+    public Node getNode(String absPath) throws RepositoryException {
+        reads.nodeRead(absPath);
+        return reads.wrap(super.getNode(absPath));
+    }
+
+    @Override
+    public Node getNodeByIdentifier(String id) throws RepositoryException {
+        Node node = super.getNodeByIdentifier(id);
+        reads.nodeRead(node.getPath());
+        return reads.wrap(node);
+    }
+
+    @Override
+    public Item getItem(String absPath) throws RepositoryException {
+        Item item = super.getItem(absPath);
+        if (item.isNode()) {
+            reads.nodeRead(absPath);
+            return reads.wrap((Node) item);
+        }
+        reads.propertyRead(absPath);
+        return item;
+    }
+
+    @Override
+    public Property getProperty(String absPath) throws RepositoryException {
+        reads.propertyRead(absPath);
+        return super.getProperty(absPath);
+    }
+
+    @Override
+    public boolean nodeExists(String absPath) throws RepositoryException {
+        reads.nodeRead(absPath);
+        return super.nodeExists(absPath);
+    }
+
+    @Override
+    public boolean propertyExists(String absPath) throws RepositoryException {
+        reads.propertyRead(absPath);
+        return super.propertyExists(absPath);
+    }
+}
@@ -0,0 +1,197 @@
+package com.magnoliales.handlebars.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Totals of the accounted renders, published as the {@code com.magnoliales.handlebars:type=JcrReads} MBean.
+ * Requests with items read at least {@link #REPEAT_THRESHOLD} times are logged with these items. The manifests of the
+ * analysed templates, with the content paths prefetched for them, are published as well.
+ */
+public final class JcrReadMetrics implements JcrReadMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.magnoliales.handlebars:type=JcrReads";
+    public static final int REPEAT_THRESHOLD = 3;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JcrReadMetrics.class);
+
+    private static final JcrReadMetrics INSTANCE = new JcrReadMetrics();
+
+    private static final int TOP_READERS = 20;
+
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong nodeReads = new AtomicLong();
+    private final AtomicLong propertyReads = new AtomicLong();
+    private final AtomicLong repeatedReads = new AtomicLong();
+    private final AtomicLong maxReadsPerRender = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong[]> ownerReads = new ConcurrentHashMap<String, AtomicLong[]>();
+    private final ConcurrentMap<String, String> templateManifests = new ConcurrentHashMap<String, String>();
+
+    private JcrReadMetrics() {
+    }
+
+    public static JcrReadMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot register repository read metrics", e);
+        } catch (InstanceAlreadyExistsException e) {
+            LOGGER.debug("Repository read metrics already registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot register repository read metrics", e);
+        } catch (NotCompliantMBeanException e) {
+            LOGGER.error("Cannot register repository read metrics", e);
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot unregister repository read metrics", e);
+        } catch (InstanceNotFoundException e) {
+            LOGGER.debug("Repository read metrics not registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot unregister repository read metrics", e);
+        }
+    }
+
+    /**
+     * Adds the reads of a completed request.
+     */
+    public void record(String uri, JcrReads reads) {
+        renders.incrementAndGet();
+        nodeReads.addAndGet(reads.getNodeReads());
+        propertyReads.addAndGet(reads.getPropertyReads());
+        long total = reads.getTotalReads();
+        long max = maxReadsPerRender.get();
+        while (total > max && !maxReadsPerRender.compareAndSet(max, total)) {
+            max = maxReadsPerRender.get();
+        }
+        for (Map.Entry<String, int[]> entry : reads.getOwnerReads().entrySet()) {
+            AtomicLong[] counts = ownerReads.get(entry.getKey());
+            if (counts == null) {
+                AtomicLong[] created = {new AtomicLong(), new AtomicLong()};
+                counts = ownerReads.putIfAbsent(entry.getKey(), created);
+                if (counts == null) {
+                    counts = created;
+                }
+            }
+            counts[0].addAndGet(entry.getValue()[0]);
+            counts[1].addAndGet(entry.getValue()[1]);
+        }
+        Map<String, Integer> repeated = reads.getRepeatedReads();
+        List<String> amplified = new ArrayList<String>();
+        for (Map.Entry<String, Integer> entry : repeated.entrySet()) {
+            repeatedReads.addAndGet(entry.getValue() - 1);
+            if (entry.getValue() >= REPEAT_THRESHOLD) {
+                amplified.add(entry.getKey() + " (" + entry.getValue() + "x)");
+            }
+        }
+        if (!amplified.isEmpty()) {
+            LOGGER.info("Repeated repository reads rendering {}: {}", uri, amplified);
+        }
+    }
+
+    /**
+     * Replaces the manifest of a template, which is analysed again whenever it is compiled again.
+     */
+    public void recordTemplate(String templateName, String manifest) {
+        templateManifests.put(templateName, manifest);
+    }
+
+    @Override
+    public long getRenders() {
+        return renders.get();
+    }
+
+    @Override
+    public long getNodeReads() {
+        return nodeReads.get();
+    }
+
+    @Override
+    public long getPropertyReads() {
+        return propertyReads.get();
+    }
+
+    @Override
+    public long getRepeatedReads() {
+        return repeatedReads.get();
+    }
+
+    @Override
+    public long getMaxReadsPerRender() {
+        return maxReadsPerRender.get();
+    }
+
+    @Override
+    public double getAverageReadsPerRender() {
+        long count = renders.get();
+        return count == 0 ? 0 : (double) (nodeReads.get() + propertyReads.get()) / count;
+    }
+
+    @Override
+    public String[] getTopReaders() {
+        List<Map.Entry<String, AtomicLong[]>> entries = new ArrayList<Map.Entry<String, AtomicLong[]>>(
+                ownerReads.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicLong[]>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicLong[]> a, Map.Entry<String, AtomicLong[]> b) {
+                long left = a.getValue()[0].get() + a.getValue()[1].get();
+                long right = b.getValue()[0].get() + b.getValue()[1].get();
+                return left < right ? 1 : (left == right ? 0 : -1);
+            }
+        });
+        int size = Math.min(TOP_READERS, entries.size());
+        String[] top = new String[size];
+        for (int i = 0; i < size; i++) {
+            Map.Entry<String, AtomicLong[]> entry = entries.get(i);
+            top[i] = entry.getKey() + ": " + entry.getValue()[0].get() + " / " + entry.getValue()[1].get();
+        }
+        return top;
+    }
+
+    @Override
+    public String[] getTemplateManifests() {
+        Map<String, String> manifests = new TreeMap<String, String>(templateManifests);
+        return manifests.values().toArray(new String[manifests.size()]);
+    }
+
+    @Override
+    public void reset() {
+        renders.set(0);
+        nodeReads.set(0);
+        propertyReads.set(0);
+        repeatedReads.set(0);
+        maxReadsPerRender.set(0);
+        ownerReads.clear();
+    }
+}
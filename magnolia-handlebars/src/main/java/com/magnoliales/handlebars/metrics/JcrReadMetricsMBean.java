@@ -0,0 +1,34 @@
+package com.magnoliales.handlebars.metrics;
+
+/**
+ * Repository reads of the renders accounted since the last reset.
+ */
+public interface JcrReadMetricsMBean {
+
+    long getRenders();
+
+    long getNodeReads();
+
+    long getPropertyReads();
+
+    /**
+     * @return reads of items already read in the same request
+     */
+    long getRepeatedReads();
+
+    long getMaxReadsPerRender();
+
+    double getAverageReadsPerRender();
+
+    /**
+     * @return templates and helpers with the most reads, as {@code name: node reads / property reads}
+     */
+    String[] getTopReaders();
+
+    /**
+     * @return the content paths, areas, partials and helpers of the analysed templates, kept on reset
+     */
+    String[] getTemplateManifests();
+
+    void reset();
+}
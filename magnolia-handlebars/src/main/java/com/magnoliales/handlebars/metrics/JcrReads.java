@@ -0,0 +1,136 @@
+package com.magnoliales.handlebars.metrics;
+
+import com.magnoliales.handlebars.profile.RenderProfile;
+import info.magnolia.context.MgnlContext;
+
+import javax.jcr.Node;
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository reads of one request, made through nodes wrapped by {@link #wrap(Node)}. Reads are attributed to
+ * the template or helper running when they happen and counted per item to find items read over and over again.
+ * Templates rendered on the render executor read on another thread than the request, so the accounting is
+ * synchronized.
+ */
+public final class JcrReads {
+
+    private static final String ATTRIBUTE = JcrReads.class.getName();
+    private static final String NO_OWNER = "(none)";
+
+    private final RenderProfile profile;
+    private final Map<String, Integer> itemReads = new HashMap<String, Integer>();
+    private final Map<String, int[]> ownerReads = new LinkedHashMap<String, int[]>();
+    private final List<String> owners = new ArrayList<String>();
+    private int nodeReads;
+    private int propertyReads;
+
+    public JcrReads(RenderProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * @return the accounting of the current request, started on first use when enabled or when the request is
+     * profiled, otherwise null
+     */
+    public static JcrReads forRequest(boolean enabled, RenderProfile profile) {
+        if (!MgnlContext.isWebContext()) {
+            return enabled || profile != null ? new JcrReads(profile) : null;
+        }
+        HttpServletRequest request = MgnlContext.getWebContext().getRequest();
+        JcrReads reads = (JcrReads) request.getAttribute(ATTRIBUTE);
+        if (reads == null && (enabled || profile != null)) {
+            reads = new JcrReads(profile);
+            request.setAttribute(ATTRIBUTE, reads);
+        }
+        return reads;
+    }
+
+    public static Node unwrap(Node node) {
+        return node instanceof AccountingNodeWrapper ? ((AccountingNodeWrapper) node).getWrappedNode() : node;
+    }
+
+    public Node wrap(Node node) {
+        if (node == null || node instanceof AccountingNodeWrapper) {
+            return node;
+        }
+        return new AccountingNodeWrapper(node, this);
+    }
+
+    public synchronized void enter(String owner) {
+        owners.add(owner);
+    }
+
+    /**
+     * @return true if the outermost step of the request is done
+     */
+    public synchronized boolean exit() {
+        owners.remove(owners.size() - 1);
+        return owners.isEmpty();
+    }
+
+    public synchronized int getNodeReads() {
+        return nodeReads;
+    }
+
+    public synchronized int getPropertyReads() {
+        return propertyReads;
+    }
+
+    public synchronized int getTotalReads() {
+        return nodeReads + propertyReads;
+    }
+
+    /**
+     * @return a copy of the node and property reads per template or helper
+     */
+    public synchronized Map<String, int[]> getOwnerReads() {
+        Map<String, int[]> copy = new LinkedHashMap<String, int[]>();
+        for (Map.Entry<String, int[]> entry : ownerReads.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+        return copy;
+    }
+
+    /**
+     * @return the items read more than once, with their number of reads
+     */
+    public synchronized Map<String, Integer> getRepeatedReads() {
+        Map<String, Integer> repeated = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, Integer> entry : itemReads.entrySet()) {
+            if (entry.getValue() > 1) {
+                repeated.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return repeated;
+    }
+
+    synchronized void nodeRead(String path) {
+        nodeReads++;
+        read(path, 0);
+    }
+
+    synchronized void propertyRead(String path) {
+        propertyReads++;
+        read(path, 1);
+    }
+
+    private void read(String path, int kind) {
+        Integer count = itemReads.get(path);
+        itemReads.put(path, count == null ? 1 : count + 1);
+        String owner = owners.isEmpty() ? NO_OWNER : owners.get(owners.size() - 1);
+        int[] counts = ownerReads.get(owner);
+        if (counts == null) {
+            counts = new int[2];
+            ownerReads.put(owner, counts);
+        }
+        counts[kind]++;
+        if (profile != null) {
+            profile.addReads(1);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.magnoliales.handlebars.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the page cache and its background re-renders, published as the
+ * {@code com.magnoliales.handlebars:type=PageCache} MBean.
+ */
+public final class PageCacheMetrics implements PageCacheMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.magnoliales.handlebars:type=PageCache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageCacheMetrics.class);
+
+    private static final PageCacheMetrics INSTANCE = new PageCacheMetrics();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compressedHits = new AtomicLong();
+    private final AtomicLong staleServes = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong failedRevalidations = new AtomicLong();
+    private final AtomicLong rejectedRevalidations = new AtomicLong();
+    private final AtomicLong revalidationMillis = new AtomicLong();
+    private final AtomicLong maxRevalidationMillis = new AtomicLong();
+    private final AtomicLong storeEvictions = new AtomicLong();
+
+    private PageCacheMetrics() {
+    }
+
+    public static PageCacheMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot register page cache metrics", e);
+        } catch (InstanceAlreadyExistsException e) {
+            LOGGER.debug("Page cache metrics already registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot register page cache metrics", e);
+        } catch (NotCompliantMBeanException e) {
+            LOGGER.error("Cannot register page cache metrics", e);
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot unregister page cache metrics", e);
+        } catch (InstanceNotFoundException e) {
+            LOGGER.debug("Page cache metrics not registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot unregister page cache metrics", e);
+        }
+    }
+
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public void recordCompressedHit() {
+        hits.incrementAndGet();
+        compressedHits.incrementAndGet();
+    }
+
+    public void recordStaleServe() {
+        staleServes.incrementAndGet();
+    }
+
+    public void recordInvalidations(int count) {
+        invalidations.addAndGet(count);
+    }
+
+    public void recordRevalidation(long millis, boolean successful) {
+        revalidations.incrementAndGet();
+        if (!successful) {
+            failedRevalidations.incrementAndGet();
+        }
+        revalidationMillis.addAndGet(millis);
+        long max = maxRevalidationMillis.get();
+        while (millis > max && !maxRevalidationMillis.compareAndSet(max, millis)) {
+            max = maxRevalidationMillis.get();
+        }
+    }
+
+    public void recordRejectedRevalidation() {
+        rejectedRevalidations.incrementAndGet();
+    }
+
+    public void recordStoreEvictions(int count) {
+        storeEvictions.addAndGet(count);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getCompressedHits() {
+        return compressedHits.get();
+    }
+
+    @Override
+    public long getStaleServes() {
+        return staleServes.get();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    @Override
+    public long getFailedRevalidations() {
+        return failedRevalidations.get();
+    }
+
+    @Override
+    public long getRejectedRevalidations() {
+        return rejectedRevalidations.get();
+    }
+
+    @Override
+    public double getAverageRevalidationMillis() {
+        long count = revalidations.get();
+        return count == 0 ? 0 : (double) revalidationMillis.get() / count;
+    }
+
+    @Override
+    public long getMaxRevalidationMillis() {
+        return maxRevalidationMillis.get();
+    }
+
+    @Override
+    public long getStoreEvictions() {
+        return storeEvictions.get();
+    }
+
+    @Override
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        compressedHits.set(0);
+        staleServes.set(0);
+        invalidations.set(0);
+        revalidations.set(0);
+        failedRevalidations.set(0);
+        rejectedRevalidations.set(0);
+        revalidationMillis.set(0);
+        maxRevalidationMillis.set(0);
+        storeEvictions.set(0);
+    }
+}
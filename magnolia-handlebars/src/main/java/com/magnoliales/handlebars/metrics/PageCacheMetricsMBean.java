@@ -0,0 +1,46 @@
+package com.magnoliales.handlebars.metrics;
+
+/**
+ * Page cache lookups and background re-renders since the last reset.
+ */
+public interface PageCacheMetricsMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return hits answered with the gzip compressed output
+     */
+    long getCompressedHits();
+
+    /**
+     * @return lookups answered with invalidated output while the page is re-rendered in the background
+     */
+    long getStaleServes();
+
+    /**
+     * @return pages dropped or marked stale because something they depend on changed
+     */
+    long getInvalidations();
+
+    long getRevalidations();
+
+    long getFailedRevalidations();
+
+    /**
+     * @return re-renders not started because the pool and its queue were busy
+     */
+    long getRejectedRevalidations();
+
+    double getAverageRevalidationMillis();
+
+    long getMaxRevalidationMillis();
+
+    /**
+     * @return pages dropped by the output store to make room for others
+     */
+    long getStoreEvictions();
+
+    void reset();
+}
@@ -0,0 +1,184 @@
+package com.magnoliales.handlebars.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the render budgets of helpers and templates, published as the
+ * {@code com.magnoliales.handlebars:type=RenderBudgets} MBean.
+ */
+public final class RenderBudgetMetrics implements RenderBudgetMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.magnoliales.handlebars:type=RenderBudgets";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderBudgetMetrics.class);
+
+    private static final RenderBudgetMetrics INSTANCE = new RenderBudgetMetrics();
+
+    private static final int TOP_OVERRUNS = 20;
+
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong shortCircuits = new AtomicLong();
+    private final AtomicLong emptyFallbacks = new AtomicLong();
+    private final AtomicLong openedCircuits = new AtomicLong();
+    private final Set<String> openCircuits = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // count and longest time per helper or template
+    private final ConcurrentMap<String, AtomicLong[]> keyOverruns = new ConcurrentHashMap<String, AtomicLong[]>();
+
+    private RenderBudgetMetrics() {
+    }
+
+    public static RenderBudgetMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot register render budget metrics", e);
+        } catch (InstanceAlreadyExistsException e) {
+            LOGGER.debug("Render budget metrics already registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot register render budget metrics", e);
+        } catch (NotCompliantMBeanException e) {
+            LOGGER.error("Cannot register render budget metrics", e);
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (MalformedObjectNameException e) {
+            LOGGER.error("Cannot unregister render budget metrics", e);
+        } catch (InstanceNotFoundException e) {
+            LOGGER.debug("Render budget metrics not registered", e);
+        } catch (MBeanRegistrationException e) {
+            LOGGER.error("Cannot unregister render budget metrics", e);
+        }
+    }
+
+    public void recordOverrun(String key, long millis) {
+        overruns.incrementAndGet();
+        AtomicLong[] counts = keyOverruns.get(key);
+        if (counts == null) {
+            AtomicLong[] created = {new AtomicLong(), new AtomicLong()};
+            counts = keyOverruns.putIfAbsent(key, created);
+            if (counts == null) {
+                counts = created;
+            }
+        }
+        counts[0].incrementAndGet();
+        long max = counts[1].get();
+        while (millis > max && !counts[1].compareAndSet(max, millis)) {
+            max = counts[1].get();
+        }
+    }
+
+    public void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public void recordShortCircuit(boolean empty) {
+        shortCircuits.incrementAndGet();
+        if (empty) {
+            emptyFallbacks.incrementAndGet();
+        }
+    }
+
+    public void recordOpened(String key) {
+        openedCircuits.incrementAndGet();
+        openCircuits.add(key);
+    }
+
+    public void recordClosed(String key) {
+        openCircuits.remove(key);
+    }
+
+    @Override
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public long getShortCircuits() {
+        return shortCircuits.get();
+    }
+
+    @Override
+    public long getEmptyFallbacks() {
+        return emptyFallbacks.get();
+    }
+
+    @Override
+    public long getOpenedCircuits() {
+        return openedCircuits.get();
+    }
+
+    @Override
+    public String[] getOpenCircuits() {
+        Set<String> open = new TreeSet<String>(openCircuits);
+        return open.toArray(new String[open.size()]);
+    }
+
+    @Override
+    public String[] getTopOverruns() {
+        List<Map.Entry<String, AtomicLong[]>> entries = new ArrayList<Map.Entry<String, AtomicLong[]>>(
+                keyOverruns.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicLong[]>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicLong[]> a, Map.Entry<String, AtomicLong[]> b) {
+                long left = a.getValue()[0].get();
+                long right = b.getValue()[0].get();
+                return left < right ? 1 : (left == right ? 0 : -1);
+            }
+        });
+        int size = Math.min(TOP_OVERRUNS, entries.size());
+        String[] top = new String[size];
+        for (int i = 0; i < size; i++) {
+            Map.Entry<String, AtomicLong[]> entry = entries.get(i);
+            top[i] = entry.getKey() + ": " + entry.getValue()[0].get() + " / " + entry.getValue()[1].get() + "ms";
+        }
+        return top;
+    }
+
+    @Override
+    public void reset() {
+        overruns.set(0);
+        failures.set(0);
+        shortCircuits.set(0);
+        emptyFallbacks.set(0);
+        openedCircuits.set(0);
+        keyOverruns.clear();
+    }
+}
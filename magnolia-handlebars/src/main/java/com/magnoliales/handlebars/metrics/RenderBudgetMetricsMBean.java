@@ -0,0 +1,41 @@
+package com.magnoliales.handlebars.metrics;
+
+/**
+ * Render budget overruns and circuit breaker activity since the last reset.
+ */
+public interface RenderBudgetMetricsMBean {
+
+    /**
+     * @return helper calls and template renders that took longer than their budget
+     */
+    long getOverruns();
+
+    /**
+     * @return helper calls and template renders that ended with an exception
+     */
+    long getFailures();
+
+    /**
+     * @return calls answered with a fallback because their circuit was open
+     */
+    long getShortCircuits();
+
+    /**
+     * @return short-circuited calls that had no last good output and rendered nothing
+     */
+    long getEmptyFallbacks();
+
+    long getOpenedCircuits();
+
+    /**
+     * @return the helpers and templates whose circuit is currently open
+     */
+    String[] getOpenCircuits();
+
+    /**
+     * @return the helpers and templates with the most overruns, with their count and longest time in milliseconds
+     */
+    String[] getTopOverruns();
+
+    void reset();
+}
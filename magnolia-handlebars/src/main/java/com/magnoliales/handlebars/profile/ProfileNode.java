@@ -0,0 +1,145 @@
+package com.magnoliales.handlebars.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One step of a render: a template, its compilation or prefetch, or a helper call, with the time spent in it
+ * (including its children), the repository reads made directly in it and the characters it produced.
+ */
+public final class ProfileNode {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final String type;
+    private final String name;
+    private final ProfileNode parent;
+    private final long startNanos;
+    private List<ProfileNode> children;
+    private long elapsedNanos;
+    private int reads;
+    private long characters;
+
+    ProfileNode(String type, String name, ProfileNode parent) {
+        this.type = type;
+        this.name = name;
+        this.parent = parent;
+        this.startNanos = System.nanoTime();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<ProfileNode> getChildren() {
+        return children != null ? children : Collections.<ProfileNode>emptyList();
+    }
+
+    public double getMillis() {
+        return elapsedNanos / NANOS_PER_MILLI;
+    }
+
+    public int getReads() {
+        return reads;
+    }
+
+    public int getTotalReads() {
+        int total = reads;
+        for (ProfileNode child : getChildren()) {
+            total += child.getTotalReads();
+        }
+        return total;
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    ProfileNode getParent() {
+        return parent;
+    }
+
+    void addChild(ProfileNode child) {
+        if (children == null) {
+            children = new ArrayList<ProfileNode>();
+        }
+        children.add(child);
+    }
+
+    void finish(long producedCharacters) {
+        elapsedNanos = System.nanoTime() - startNanos;
+        characters += producedCharacters;
+    }
+
+    void addReads(int count) {
+        reads += count;
+    }
+
+    /**
+     * @return the node with the highest own time (excluding children) in this subtree
+     */
+    ProfileNode slowest() {
+        ProfileNode slowest = this;
+        for (ProfileNode child : getChildren()) {
+            ProfileNode candidate = child.slowest();
+            if (candidate.ownNanos() > slowest.ownNanos()) {
+                slowest = candidate;
+            }
+        }
+        return slowest;
+    }
+
+    void appendJson(StringBuilder json) {
+        json.append("{\"type\":");
+        appendString(json, type);
+        json.append(",\"name\":");
+        appendString(json, name);
+        json.append(",\"millis\":").append(String.format(Locale.ENGLISH, "%.3f", getMillis()));
+        json.append(",\"reads\":").append(reads);
+        json.append(",\"characters\":").append(characters);
+        if (children != null) {
+            json.append(",\"children\":[");
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                children.get(i).appendJson(json);
+            }
+            json.append(']');
+        }
+        json.append('}');
+    }
+
+    private long ownNanos() {
+        long own = elapsedNanos;
+        for (ProfileNode child : getChildren()) {
+            own -= child.elapsedNanos;
+        }
+        return own;
+    }
+
+    static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,52 @@
+package com.magnoliales.handlebars.profile;
+
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.renderer.RenderScope;
+
+import java.io.IOException;
+
+/**
+ * Records calls of the wrapped helper in the render profile and attributes the repository reads they make to
+ * the helper. Renders without profile and read accounting only pay for the scope lookup.
+ */
+public class ProfiledHelper implements Helper<Object> {
+
+    private final String name;
+    private final Helper<Object> delegate;
+
+    @SuppressWarnings("unchecked")
+    public ProfiledHelper(String name, Helper<?> delegate) {
+        this.name = name;
+        this.delegate = (Helper<Object>) delegate;
+    }
+
+    public Helper<?> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public CharSequence apply(Object context, Options options) throws IOException {
+        RenderScope scope = RenderScope.from(options);
+        JcrReads reads = scope != null ? scope.getJcrReads() : null;
+        if (reads == null) {
+            return delegate.apply(context, options);
+        }
+        Object target = options.hash("name");
+        String label = target != null ? name + " " + target : name;
+        RenderProfile profile = scope.getProfile();
+        ProfileNode node = profile != null ? profile.enter("helper", label) : null;
+        reads.enter(label);
+        CharSequence result = null;
+        try {
+            result = delegate.apply(context, options);
+            return result;
+        } finally {
+            reads.exit();
+            if (node != null) {
+                profile.exit(node, result != null ? result.length() : 0);
+            }
+        }
+    }
+}
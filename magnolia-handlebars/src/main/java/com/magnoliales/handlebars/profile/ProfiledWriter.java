@@ -0,0 +1,49 @@
+package com.magnoliales.handlebars.profile;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Counts the characters a template writes.
+ */
+public class ProfiledWriter extends Writer {
+
+    private final Writer delegate;
+    private long count;
+
+    public ProfiledWriter(Writer delegate) {
+        this.delegate = delegate;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        delegate.write(buffer, offset, length);
+        count += length;
+    }
+
+    @Override
+    public void write(String string) throws IOException {
+        delegate.write(string);
+        count += string.length();
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        delegate.write(string, offset, length);
+        count += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,134 @@
+package com.magnoliales.handlebars.profile;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tree of the templates, areas, components and helpers rendered for one request. Steps may be entered and exited
+ * on the render executor while the request thread waits, or gives up waiting, so the profile and its nodes are
+ * guarded by the profile: read the tree through {@link #toJson()} and {@link #summary()}, or once the request has
+ * completed. A step is a child of the step that was current when it was entered.
+ */
+public final class RenderProfile {
+
+    private final String id;
+    private final String uri;
+    private final long created;
+    private final ProfileNode root;
+    private ProfileNode current;
+    private Map<String, Integer> repeatedReads;
+
+    public RenderProfile(String id, String uri) {
+        this.id = id;
+        this.uri = uri;
+        this.created = System.currentTimeMillis();
+        this.root = new ProfileNode("request", uri, null);
+        this.current = root;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public ProfileNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return true if no step is running, i.e. the next step is the outermost render of the request
+     */
+    public synchronized boolean isIdle() {
+        return current == root;
+    }
+
+    public synchronized ProfileNode enter(String type, String name) {
+        ProfileNode node = new ProfileNode(type, name, current);
+        current.addChild(node);
+        current = node;
+        return node;
+    }
+
+    /**
+     * Finishes the step. Steps still running below it, e.g. on an executor the request thread stopped waiting for,
+     * no longer receive children; a step exited after its parent does not change the current step.
+     */
+    public synchronized void exit(ProfileNode node, long characters) {
+        node.finish(characters);
+        for (ProfileNode step = current; step != null; step = step.getParent()) {
+            if (step == node) {
+                current = node.getParent();
+                return;
+            }
+        }
+    }
+
+    public synchronized void addReads(int count) {
+        current.addReads(count);
+    }
+
+    public synchronized Map<String, Integer> getRepeatedReads() {
+        return repeatedReads;
+    }
+
+    /**
+     * @param repeatedReads repository items read more than once during the request, with their number of reads
+     */
+    public synchronized void setRepeatedReads(Map<String, Integer> repeatedReads) {
+        this.repeatedReads = repeatedReads;
+    }
+
+    /**
+     * Finishes the request node once the outermost render is done.
+     */
+    public synchronized void complete() {
+        long characters = 0;
+        for (ProfileNode child : root.getChildren()) {
+            characters += child.getCharacters();
+        }
+        root.finish(characters - root.getCharacters());
+    }
+
+    /**
+     * @return one line summary for the {@code X-Render-Profile} header
+     */
+    public synchronized String summary() {
+        ProfileNode slowest = root.slowest();
+        return String.format(Locale.ENGLISH,
+                "id=%s; total=%.2fms; reads=%d; repeated=%d; chars=%d; slowest=%s %s %.2fms",
+                id, root.getMillis(), root.getTotalReads(), repeatedReads != null ? repeatedReads.size() : 0,
+                root.getCharacters(), slowest.getType(), slowest.getName(), slowest.getMillis());
+    }
+
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"id\":");
+        ProfileNode.appendString(json, id);
+        json.append(",\"uri\":");
+        ProfileNode.appendString(json, uri);
+        json.append(",\"created\":").append(created);
+        if (repeatedReads != null) {
+            json.append(",\"repeatedReads\":{");
+            boolean first = true;
+            for (Map.Entry<String, Integer> entry : repeatedReads.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                ProfileNode.appendString(json, entry.getKey());
+                json.append(':').append(entry.getValue());
+                first = false;
+            }
+            json.append('}');
+        }
+        json.append(",\"tree\":");
+        root.appendJson(json);
+        return json.append('}').toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.magnoliales.handlebars.profile;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Serves recorded render profiles as JSON: {@code ?id=...} returns the profile with the id sent in the
+ * {@code X-Render-Profile-Id} header, without parameters the most recent profiles are returned.
+ */
+public class RenderProfileServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!RenderProfiles.isAuthorized()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        String id = request.getParameter("id");
+        String json;
+        if (id != null) {
+            RenderProfile profile = RenderProfiles.get(id);
+            if (profile == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            json = profile.toJson();
+        } else {
+            List<RenderProfile> profiles = RenderProfiles.getRecent();
+            StringBuilder list = new StringBuilder("[");
+            for (int i = 0; i < profiles.size(); i++) {
+                if (i > 0) {
+                    list.append(',');
+                }
+                list.append(profiles.get(i).toJson());
+            }
+            json = list.append(']').toString();
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter writer = response.getWriter();
+        writer.write(json);
+        writer.flush();
+    }
+}
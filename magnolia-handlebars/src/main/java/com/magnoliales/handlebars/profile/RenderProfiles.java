@@ -0,0 +1,128 @@
+package com.magnoliales.handlebars.profile;
+
+import info.magnolia.cms.security.User;
+import info.magnolia.context.MgnlContext;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts render profiles for requests that ask for one and keeps the most recent ones for
+ * {@link RenderProfileServlet}. A request is profiled when it carries the {@code renderProfile=true} parameter or
+ * an {@code X-Render-Profile} header and the user has the {@code superuser} role.
+ */
+public final class RenderProfiles {
+
+    public static final String PARAMETER = "renderProfile";
+    public static final String HEADER = "X-Render-Profile";
+    public static final String ID_HEADER = "X-Render-Profile-Id";
+    public static final String ROLE = "superuser";
+
+    private static final String ATTRIBUTE = RenderProfile.class.getName();
+    private static final Object DISABLED = new Object();
+    private static final int MAX_PROFILES = 50;
+    private static final int RADIX = 36;
+    private static final char FIRST_PRINTABLE = ' ';
+    private static final char LAST_PRINTABLE = '~';
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final ConcurrentMap<String, RenderProfile> PROFILES = new ConcurrentHashMap<String, RenderProfile>();
+    private static final Queue<String> ORDER = new ConcurrentLinkedQueue<String>();
+
+    private RenderProfiles() {
+    }
+
+    /**
+     * @return the profile of the current request, started on first use, or null if the request is not profiled
+     */
+    public static RenderProfile forRequest() {
+        if (!MgnlContext.isWebContext()) {
+            return null;
+        }
+        HttpServletRequest request = MgnlContext.getWebContext().getRequest();
+        Object profile = request.getAttribute(ATTRIBUTE);
+        if (profile == null) {
+            if (isRequested(request) && isAuthorized()) {
+                String id = Long.toString(System.currentTimeMillis(), RADIX) + "-"
+                        + Long.toString(SEQUENCE.incrementAndGet(), RADIX);
+                profile = new RenderProfile(id, request.getRequestURI());
+            } else {
+                profile = DISABLED;
+            }
+            request.setAttribute(ATTRIBUTE, profile);
+        }
+        return profile == DISABLED ? null : (RenderProfile) profile;
+    }
+
+    /**
+     * Called before the outermost render of a profiled request, while headers can still be sent.
+     */
+    public static void started(RenderProfile profile) {
+        HttpServletResponse response = MgnlContext.getWebContext().getResponse();
+        if (!response.isCommitted()) {
+            response.setHeader(ID_HEADER, profile.getId());
+        }
+    }
+
+    /**
+     * Called after the outermost render of a profiled request. The summary header is only sent if the response
+     * has not been committed yet, the full profile is available from {@link RenderProfileServlet} in any case.
+     */
+    public static void completed(RenderProfile profile) {
+        profile.complete();
+        if (PROFILES.put(profile.getId(), profile) == null) {
+            ORDER.offer(profile.getId());
+        }
+        while (PROFILES.size() > MAX_PROFILES) {
+            String eldest = ORDER.poll();
+            if (eldest == null) {
+                break;
+            }
+            PROFILES.remove(eldest);
+        }
+        HttpServletResponse response = MgnlContext.getWebContext().getResponse();
+        if (!response.isCommitted()) {
+            response.setHeader(HEADER, printable(profile.summary()));
+        }
+    }
+
+    public static RenderProfile get(String id) {
+        return PROFILES.get(id);
+    }
+
+    public static List<RenderProfile> getRecent() {
+        List<RenderProfile> recent = new ArrayList<RenderProfile>();
+        for (String id : ORDER) {
+            RenderProfile profile = PROFILES.get(id);
+            if (profile != null) {
+                recent.add(profile);
+            }
+        }
+        return recent;
+    }
+
+    static boolean isAuthorized() {
+        User user = MgnlContext.getUser();
+        return user != null && user.hasRole(ROLE);
+    }
+
+    private static boolean isRequested(HttpServletRequest request) {
+        return request.getHeader(HEADER) != null || Boolean.parseBoolean(request.getParameter(PARAMETER));
+    }
+
+    private static String printable(String value) {
+        StringBuilder printable = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            printable.append(c >= FIRST_PRINTABLE && c <= LAST_PRINTABLE ? c : '?');
+        }
+        return printable.toString();
+    }
+}
@@ -1,27 +1,80 @@
 package com.magnoliales.handlebars.renderer;
 
+import com.magnoliales.handlebars.cache.PageRecorder;
+import com.magnoliales.handlebars.metrics.JcrReads;
 import info.magnolia.jcr.util.ContentMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class ChainedContentMap extends ContentMap {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ChainedContentMap.class);
 
+    private static final LocaleFallbacks DEFAULT_LOCALE_FALLBACKS = new LocaleFallbacks();
+
+    private static final String SUPPLIER = "supplier";
+    private static final String SUPPLIER_PAGE = "mgnl:supplierPage";
+
+    // lookup results: not known yet, known to be absent, present but left to ContentMap to convert
+    private static final Object UNKNOWN = new Object();
+    private static final Object MISSING = new Object();
+    private static final Object RAW = new Object();
+
     private ChainedContentMap supplierMap;
-    private String localeName;
+    private LocaleKeyTable keyTable;
+    private NodeSnapshot snapshot;
+    private Map<String, Object> fetched;
 
     public ChainedContentMap(Node node, Locale locale) {
+        this(node, DEFAULT_LOCALE_FALLBACKS.getKeyTable(locale));
+    }
+
+    public ChainedContentMap(Node node, LocaleKeyTable keyTable) {
+        this(node, keyTable, ContentSnapshots.current());
+    }
+
+    public ChainedContentMap(Node node, RenderScope scope) {
+        this(scope.account(node), scope.getKeyTable(), scope.getSnapshots(), scope.getRecorder());
+    }
+
+    public ChainedContentMap(Node node, LocaleKeyTable keyTable, ContentSnapshots snapshots) {
+        this(node, keyTable, snapshots, null);
+    }
+
+    private ChainedContentMap(Node node, LocaleKeyTable keyTable, ContentSnapshots snapshots,
+                              PageRecorder recorder) {
         super(node);
-        this.localeName = locale.toString();
+        this.keyTable = keyTable;
+        if (recorder != null) {
+            recorder.record(JcrReads.unwrap(node));
+        }
         try {
-            if (node.hasProperty("mgnl:supplierPage")) {
-                String id = node.getProperty("mgnl:supplierPage").getString();
-                supplierMap = new ChainedContentMap(node.getSession().getNodeByIdentifier(id), locale);
+            if (snapshots != null) {
+                snapshot = snapshots.get(node.getIdentifier());
+            }
+            String id = null;
+            if (snapshot != null && snapshot.hasProperty(SUPPLIER_PAGE)) {
+                id = (String) snapshot.getProperty(SUPPLIER_PAGE);
+            } else if (snapshotMayContain(SUPPLIER_PAGE) && node.hasProperty(SUPPLIER_PAGE)) {
+                id = node.getProperty(SUPPLIER_PAGE).getString();
+            }
+            if (id != null) {
+                supplierMap = new ChainedContentMap(node.getSession().getNodeByIdentifier(id), keyTable, snapshots,
+                        recorder);
             }
         } catch (RepositoryException e) {
             LOGGER.error("Cannot fetch supplier page data");
@@ -31,17 +84,137 @@ public class ChainedContentMap extends ContentMap {
     @Override
     public Object get(Object key) {
         String keyName = (String) key;
-        String localKeyName = keyName + "_" + localeName;
-        if (key.equals("supplier")) {
+        if (key.equals(SUPPLIER)) {
             return supplierMap;
-        } else if (containsKey(localKeyName)) {
-            return super.get(localKeyName);
-        } else if (containsKey(keyName)) {
+        } else if (keyName.startsWith("@")) {
             return super.get(keyName);
+        }
+        Object value = resolve(keyTable.getNames(keyName));
+        if (value != MISSING) {
+            return value;
         } else if (supplierMap != null) {
             return supplierMap.get(key);
         } else {
             return null;
         }
     }
+
+    /**
+     * Reads the given content paths, e.g. {@code title} or {@code supplier.title}, in all localized variants,
+     * with one repository call for properties and one for child nodes per map in the supplier chain.
+     */
+    public void prefetch(Collection<String> contentPaths) {
+        Set<String> keys = new HashSet<String>();
+        Set<String> supplierKeys = new HashSet<String>();
+        for (String contentPath : contentPaths) {
+            int separator = contentPath.indexOf('.');
+            String key = separator < 0 ? contentPath : contentPath.substring(0, separator);
+            if (key.equals(SUPPLIER)) {
+                if (separator > 0) {
+                    supplierKeys.add(contentPath.substring(separator + 1));
+                }
+            } else if (!key.startsWith("@")) {
+                keys.add(key);
+            }
+        }
+        List<String> unknown = new ArrayList<String>();
+        for (String key : keys) {
+            for (String name : keyTable.getNames(key)) {
+                if (known(name) == UNKNOWN) {
+                    unknown.add(name);
+                }
+            }
+        }
+        if (!unknown.isEmpty() && !fetch(unknown)) {
+            return;
+        }
+        if (supplierMap != null) {
+            for (String key : keys) {
+                if (resolve(keyTable.getNames(key)) == MISSING) {
+                    supplierKeys.add(key);
+                }
+            }
+            if (!supplierKeys.isEmpty()) {
+                supplierMap.prefetch(supplierKeys);
+            }
+        }
+    }
+
+    private Object resolve(String[] names) {
+        List<String> unknown = null;
+        for (String name : names) {
+            Object value = known(name);
+            if (value == UNKNOWN) {
+                if (unknown == null) {
+                    unknown = new ArrayList<String>(names.length);
+                }
+                unknown.add(name);
+            } else if (value != MISSING && unknown == null) {
+                return value == RAW ? super.get(name) : value;
+            }
+        }
+        if (unknown == null) {
+            return MISSING;
+        }
+        boolean complete = fetch(unknown);
+        for (String name : names) {
+            Object value = known(name);
+            if (value == RAW || (value == UNKNOWN && !complete && containsKey(name))) {
+                return super.get(name);
+            } else if (value != MISSING && value != UNKNOWN) {
+                return value;
+            }
+        }
+        return MISSING;
+    }
+
+    private Object known(String name) {
+        if (fetched != null && fetched.containsKey(name)) {
+            return fetched.get(name);
+        } else if (snapshot != null && snapshot.hasProperty(name)) {
+            return snapshot.getProperty(name);
+        } else if (!snapshotMayContain(name)) {
+            return MISSING;
+        } else {
+            return UNKNOWN;
+        }
+    }
+
+    private boolean fetch(List<String> names) {
+        if (fetched == null) {
+            fetched = new HashMap<String, Object>();
+        }
+        String[] globs = names.toArray(new String[names.size()]);
+        try {
+            Set<String> found = new HashSet<String>();
+            PropertyIterator properties = getJCRNode().getProperties(globs);
+            while (properties.hasNext()) {
+                Property property = properties.nextProperty();
+                Object value = property.isMultiple() ? null : NodeSnapshot.valueOf(property.getValue());
+                fetched.put(property.getName(), value != null ? value : RAW);
+                found.add(property.getName());
+            }
+            NodeIterator nodes = getJCRNode().getNodes(globs);
+            while (nodes.hasNext()) {
+                String name = nodes.nextNode().getName();
+                if (!found.contains(name)) {
+                    fetched.put(name, RAW);
+                    found.add(name);
+                }
+            }
+            for (String name : names) {
+                if (!found.contains(name)) {
+                    fetched.put(name, MISSING);
+                }
+            }
+            return true;
+        } catch (RepositoryException e) {
+            LOGGER.error("Cannot fetch content", e);
+            return false;
+        }
+    }
+
+    private boolean snapshotMayContain(String keyName) {
+        return snapshot == null || snapshot.mayContain(keyName);
+    }
 }
@@ -0,0 +1,109 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.cache.PageDependencies;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Validators of rendered pages. The entity tag combines the latest modification date and the fingerprint of the
+ * page's dependencies with the version of its template sources, so it changes when content is edited, added,
+ * removed or reordered and when templates are redeployed. {@code Last-Modified} is the later of the content and
+ * template dates; it misses removals, which is why {@code If-None-Match} takes precedence when both are sent.
+ * <p>
+ * Pages sent gzip compressed have an entity tag of their own, with a {@code -gzip} suffix, since they are different
+ * bytes. Either tag matches {@code If-None-Match}, which compares weakly: both stand for the same content.
+ */
+public final class ConditionalGet {
+
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String WEAK_PREFIX = "W/";
+    private static final String GZIP_SUFFIX = "-gzip";
+    private static final long SECOND = 1000;
+
+    private ConditionalGet() {
+    }
+
+    public static boolean isConditional(String method) {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    public static String getEntityTag(PageDependencies dependencies, long templateVersion) {
+        return getEntityTag(dependencies, templateVersion, false);
+    }
+
+    /**
+     * @param gzip whether the page is sent gzip compressed
+     */
+    public static String getEntityTag(PageDependencies dependencies, long templateVersion, boolean gzip) {
+        return "\"" + Long.toHexString(dependencies.getLastModified()) + "-"
+                + Long.toHexString(dependencies.getFingerprint()) + "-" + Long.toHexString(templateVersion)
+                + (gzip ? GZIP_SUFFIX : "") + "\"";
+    }
+
+    /**
+     * Sends the validators and answers with {@code 304 Not Modified} if the request's preconditions match them.
+     *
+     * @return whether the response is complete and the page must not be rendered
+     */
+    public static boolean apply(HttpServletRequest request, HttpServletResponse response,
+                                PageDependencies dependencies, long templateVersion) {
+        return apply(request, response, dependencies, templateVersion, false);
+    }
+
+    /**
+     * @param gzip whether the page is sent gzip compressed
+     * @see #apply(HttpServletRequest, HttpServletResponse, PageDependencies, long)
+     */
+    public static boolean apply(HttpServletRequest request, HttpServletResponse response,
+                                PageDependencies dependencies, long templateVersion, boolean gzip) {
+        String entityTag = getEntityTag(dependencies, templateVersion, gzip);
+        long lastModified = Math.max(dependencies.getLastModified(), templateVersion);
+        response.setHeader(ETAG, entityTag);
+        response.setDateHeader(LAST_MODIFIED, lastModified);
+        if (isNotModified(request, getEntityTag(dependencies, templateVersion), lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param entityTag the entity tag of the page sent uncompressed, which matches its gzip variant as well
+     */
+    static boolean isNotModified(HttpServletRequest request, String entityTag, long lastModified) {
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matches(ifNoneMatch, entityTag);
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifModifiedSince >= 0 && lastModified / SECOND <= ifModifiedSince / SECOND;
+    }
+
+    // weak comparison, as required for If-None-Match
+    private static boolean matches(String ifNoneMatch, String entityTag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith(WEAK_PREFIX)) {
+                trimmed = trimmed.substring(WEAK_PREFIX.length());
+            }
+            if (trimmed.equals("*") || trimmed.equals(entityTag) || trimmed.equals(gzipVariant(entityTag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String gzipVariant(String entityTag) {
+        return entityTag.substring(0, entityTag.length() - 1) + GZIP_SUFFIX + "\"";
+    }
+}
@@ -0,0 +1,52 @@
+package com.magnoliales.handlebars.renderer;
+
+import info.magnolia.context.Context;
+import info.magnolia.context.MgnlContext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request scoped registry of prefetched node snapshots, keyed by node identifier. Safe to share between the
+ * threads rendering parts of the same request.
+ */
+public final class ContentSnapshots {
+
+    private static final String ATTRIBUTE = ContentSnapshots.class.getName();
+
+    private final Map<String, NodeSnapshot> snapshots = new ConcurrentHashMap<String, NodeSnapshot>();
+
+    private ContentSnapshots() {
+    }
+
+    public static ContentSnapshots current() {
+        if (!MgnlContext.hasInstance()) {
+            return null;
+        }
+        return MgnlContext.getAttribute(ATTRIBUTE, Context.LOCAL_SCOPE);
+    }
+
+    public static ContentSnapshots getOrCreate() {
+        ContentSnapshots snapshots = current();
+        if (snapshots == null) {
+            snapshots = new ContentSnapshots();
+            MgnlContext.setAttribute(ATTRIBUTE, snapshots, Context.LOCAL_SCOPE);
+        }
+        return snapshots;
+    }
+
+    public void register(NodeSnapshot snapshot) {
+        snapshots.put(snapshot.getIdentifier(), snapshot);
+        for (NodeSnapshot child : snapshot.getChildren()) {
+            register(child);
+        }
+    }
+
+    public NodeSnapshot get(String identifier) {
+        return snapshots.get(identifier);
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+}
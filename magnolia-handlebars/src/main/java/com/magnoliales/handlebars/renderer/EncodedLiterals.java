@@ -0,0 +1,111 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The literal text of compiled templates, UTF-8 encoded once. Handlebars writes a literal as the same string
+ * instance on every render, so a {@link LiteralWriter} finds the bytes by identity and copies them to the response
+ * instead of encoding the characters again. The literals are read from the internal nodes of the compiled template;
+ * templates of a Handlebars version without them simply have none.
+ */
+public class EncodedLiterals {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EncodedLiterals.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String HANDLEBARS_PACKAGE = "com.github.jknack.handlebars.";
+    private static final String TEXT_CLASS = HANDLEBARS_PACKAGE + "internal.Text";
+    private static final String TEXT_FIELD = "text";
+
+    private final Set<Template> templates = Collections.newSetFromMap(new ConcurrentHashMap<Template, Boolean>());
+    private volatile Map<String, byte[]> literals = Collections.emptyMap();
+
+    public boolean contains(Template template) {
+        return templates.contains(template);
+    }
+
+    /**
+     * Encodes the literals of the template and of the blocks within; partials are registered on their own.
+     */
+    public void register(Template template) {
+        if (!templates.add(template)) {
+            return;
+        }
+        Map<String, byte[]> found = new IdentityHashMap<String, byte[]>();
+        try {
+            collect(template, found, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+        } catch (IllegalAccessException e) {
+            LOGGER.warn("Cannot read the literals of " + template.filename(), e);
+            return;
+        } catch (SecurityException e) {
+            LOGGER.warn("Cannot read the literals of " + template.filename(), e);
+            return;
+        }
+        synchronized (this) {
+            Map<String, byte[]> updated = new IdentityHashMap<String, byte[]>(literals);
+            updated.putAll(found);
+            literals = updated;
+        }
+    }
+
+    /**
+     * @return the encoded literals by string instance, unchanged by later registrations
+     */
+    public Map<String, byte[]> getLiterals() {
+        return literals;
+    }
+
+    public int size() {
+        return literals.size();
+    }
+
+    public synchronized void clear() {
+        templates.clear();
+        literals = Collections.emptyMap();
+    }
+
+    private static void collect(Object node, Map<String, byte[]> found, Set<Object> visited)
+            throws IllegalAccessException {
+        if (node == null || !node.getClass().getName().startsWith(HANDLEBARS_PACKAGE) || !visited.add(node)) {
+            return;
+        }
+        for (Class<?> type = node.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (TEXT_CLASS.equals(type.getName()) && TEXT_FIELD.equals(field.getName())) {
+                    field.setAccessible(true);
+                    String text = (String) field.get(node);
+                    if (text != null && !text.isEmpty()) {
+                        found.put(text, text.getBytes(UTF8));
+                    }
+                } else if (Template.class.isAssignableFrom(field.getType())) {
+                    field.setAccessible(true);
+                    collect(field.get(node), found, visited);
+                } else if (Iterable.class.isAssignableFrom(field.getType())) {
+                    field.setAccessible(true);
+                    Iterable<?> children = (Iterable<?>) field.get(node);
+                    if (children != null) {
+                        for (Object child : children) {
+                            if (child instanceof Template) {
+                                collect(child, found, visited);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
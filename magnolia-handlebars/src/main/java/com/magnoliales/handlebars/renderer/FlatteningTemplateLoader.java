@@ -0,0 +1,571 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.io.AbstractTemplateSource;
+import com.github.jknack.handlebars.io.TemplateLoader;
+import com.github.jknack.handlebars.io.TemplateSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Loads templates with their block inheritance resolved and small partials inlined, so that a page extending a
+ * chain of layouts compiles to one flat template instead of resolving partials and blocks on every render.
+ * <p>
+ * The template is evaluated statically from top to bottom as the {@code partial} and {@code block} helpers would:
+ * {@code {{#partial "name"}}} definitions are removed and remembered, {@code {{#block "name"}}} is replaced with
+ * the last definition of the name or its own body, and {@code {{> name}}} without a context is replaced with the
+ * partial's source if the partial uses blocks or is at most {@link #setMaxInlineSize(int) the maximum inline size}.
+ * Sections of other helpers may render any number of times, so only partials without blocks are inlined inside
+ * them. Templates using blocks or partial definitions where they cannot be resolved statically, delimiter changes,
+ * whitespace control or escaped tags are loaded unchanged. Since the text between tags is kept as is, the output
+ * is the same as the unflattened template's as long as {@code prettyPrint} is off.
+ * <p>
+ * Flattened templates report the latest modification date of all templates they were built from, so they are
+ * recompiled, and their pages revalidated, whenever any template of the chain changes. The templates of a chain are
+ * checked for changes at most once per {@link #setCheckInterval(long) check interval}, so a change is picked up
+ * within that interval. Compile errors refer to positions in the flattened text.
+ * <p>
+ * With {@link #setMinify(boolean) minification} on, the whitespace in the markup of every template loaded, flattened
+ * or not, is collapsed by the {@link TemplateMinifier} once before it is compiled.
+ * <p>
+ * Templates loaded again because one of the templates they were built from changed are reported to the
+ * {@link #setReloadListener(ReloadListener) reload listener}. Changes are only detected while flattening or
+ * minification is on.
+ */
+public class FlatteningTemplateLoader implements TemplateLoader {
+
+    public static final int DEFAULT_MAX_INLINE_SIZE = 2048;
+    public static final long DEFAULT_CHECK_INTERVAL = 2000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlatteningTemplateLoader.class);
+
+    private static final String PARTIAL = "partial";
+    private static final String BLOCK = "block";
+    private static final int MAX_DEPTH = 16;
+
+    private final TemplateLoader delegate;
+    private final ConcurrentMap<String, Flattened> flattened = new ConcurrentHashMap<String, Flattened>();
+    private volatile boolean enabled = true;
+    private volatile int maxInlineSize = DEFAULT_MAX_INLINE_SIZE;
+    private volatile boolean minify;
+    private volatile long checkInterval = DEFAULT_CHECK_INTERVAL;
+    private volatile ReloadListener reloadListener;
+
+    public FlatteningTemplateLoader(TemplateLoader delegate) {
+        this.delegate = delegate;
+    }
+
+    public TemplateLoader getDelegate() {
+        return delegate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads templates unchanged when disabled.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        flattened.clear();
+    }
+
+    public int getMaxInlineSize() {
+        return maxInlineSize;
+    }
+
+    /**
+     * Sets the size in characters up to which partials without blocks are inlined, 2048 by default. Partials
+     * using blocks are always inlined.
+     */
+    public void setMaxInlineSize(int maxInlineSize) {
+        this.maxInlineSize = maxInlineSize;
+        flattened.clear();
+    }
+
+    public boolean isMinify() {
+        return minify;
+    }
+
+    /**
+     * Collapses the whitespace in the markup of the templates loaded, off by default.
+     */
+    public void setMinify(boolean minify) {
+        this.minify = minify;
+        flattened.clear();
+    }
+
+    public long getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Sets the milliseconds for which a loaded template is used without checking the templates it was built from
+     * for changes, 2000 by default. With 0 they are checked on every load.
+     */
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    public ReloadListener getReloadListener() {
+        return reloadListener;
+    }
+
+    public void setReloadListener(ReloadListener reloadListener) {
+        this.reloadListener = reloadListener;
+    }
+
+    @Override
+    public TemplateSource sourceAt(String location) throws IOException {
+        if (!enabled && !minify) {
+            return delegate.sourceAt(location);
+        }
+        Flattened current = flattened.get(location);
+        if (current != null && current.isCurrent(delegate, checkInterval)) {
+            return current.source;
+        }
+        boolean reloaded = current != null;
+        current = enabled ? flatten(location) : unchanged(location);
+        if (minify) {
+            current = current.minified();
+        }
+        // before storing, so that a listener clearing all templates does not drop the reloaded one
+        ReloadListener listener = reloadListener;
+        if (reloaded && listener != null) {
+            listener.reloaded(location);
+        }
+        flattened.put(location, current);
+        return current.source;
+    }
+
+    @Override
+    public String resolve(String location) {
+        return delegate.resolve(location);
+    }
+
+    @Override
+    public String getPrefix() {
+        return delegate.getPrefix();
+    }
+
+    @Override
+    public String getSuffix() {
+        return delegate.getSuffix();
+    }
+
+    @Override
+    public void setPrefix(String prefix) {
+        delegate.setPrefix(prefix);
+    }
+
+    @Override
+    public void setSuffix(String suffix) {
+        delegate.setSuffix(suffix);
+    }
+
+    /**
+     * Drops all flattened templates, they are built again on their next load.
+     */
+    public void clear() {
+        flattened.clear();
+    }
+
+    private Flattened flatten(String location) throws IOException {
+        TemplateSource source = delegate.sourceAt(location);
+        Map<String, Long> chain = new LinkedHashMap<String, Long>();
+        chain.put(location, source.lastModified());
+        Flattener flattener = new Flattener(chain);
+        try {
+            Section template = parse(source.content());
+            if (!template.usesBlocks() && !template.includesPartials()) {
+                return new Flattened(source, chain);
+            }
+            flattener.stack.add(location);
+            StringBuilder out = new StringBuilder();
+            flattener.flatten(template.children, out, false);
+            long lastModified = 0;
+            for (Long modified : chain.values()) {
+                lastModified = Math.max(lastModified, modified);
+            }
+            LOGGER.debug("Flattened template {} from {}", location, chain.keySet());
+            return new Flattened(new FlattenedSource(source.filename(), out.toString(), lastModified), chain);
+        } catch (Unflattenable e) {
+            LOGGER.debug("Cannot flatten template {}: {}", location, e.getMessage());
+            return unchanged(source, location);
+        }
+    }
+
+    private Flattened unchanged(String location) throws IOException {
+        return unchanged(delegate.sourceAt(location), location);
+    }
+
+    private static Flattened unchanged(TemplateSource source, String location) {
+        Map<String, Long> own = new HashMap<String, Long>();
+        own.put(location, source.lastModified());
+        return new Flattened(source, own);
+    }
+
+    static Section parse(String text) throws Unflattenable {
+        LinkedList<Section> open = new LinkedList<Section>();
+        open.add(new Section(null, text));
+        int position = 0;
+        while (position < text.length()) {
+            int start = text.indexOf("{{", position);
+            if (start < 0) {
+                open.getLast().children.add(new Part(text.substring(position)));
+                break;
+            }
+            if (start > 0 && text.charAt(start - 1) == '\\') {
+                throw new Unflattenable("escaped tag");
+            }
+            if (start > position) {
+                open.getLast().children.add(new Part(text.substring(position, start)));
+            }
+            String closing = text.startsWith("{{!--", start) ? "--}}" : text.startsWith("{{{", start) ? "}}}" : "}}";
+            int end = text.indexOf(closing, start + 2);
+            if (end < 0) {
+                throw new Unflattenable("unclosed tag");
+            }
+            end += closing.length();
+            Tag tag = new Tag(text.substring(start, end));
+            if (tag.kind == '#' || tag.kind == '^') {
+                Section section = new Section(tag, tag.getText());
+                open.getLast().children.add(section);
+                open.add(section);
+            } else if (tag.kind == '/') {
+                if (open.size() == 1 || !open.getLast().open.name.equals(tag.name)) {
+                    throw new Unflattenable("unbalanced section " + tag.name);
+                }
+                open.removeLast().close = tag;
+            } else {
+                open.getLast().children.add(tag);
+            }
+            position = end;
+        }
+        if (open.size() > 1) {
+            throw new Unflattenable("unclosed section " + open.getLast().open.name);
+        }
+        return open.getFirst();
+    }
+
+    /**
+     * Notified of templates loaded again because they changed.
+     */
+    public interface ReloadListener {
+
+        /**
+         * @param location the location of the template, or of a template built from the changed one
+         */
+        void reloaded(String location);
+    }
+
+    /**
+     * A source of a template that could not be flattened is unchanged and depends on itself only.
+     */
+    private static final class Flattened {
+
+        private final TemplateSource source;
+        private final Map<String, Long> chain;
+        private volatile long checked = System.currentTimeMillis();
+
+        private Flattened(TemplateSource source, Map<String, Long> chain) {
+            this.source = source;
+            this.chain = chain;
+        }
+
+        private Flattened minified() throws IOException {
+            String content = TemplateMinifier.minify(source.content());
+            return new Flattened(new FlattenedSource(source.filename(), content, source.lastModified()), chain);
+        }
+
+        private boolean isCurrent(TemplateLoader loader, long interval) {
+            long now = System.currentTimeMillis();
+            if (now - checked < interval) {
+                return true;
+            }
+            for (Map.Entry<String, Long> entry : chain.entrySet()) {
+                try {
+                    if (loader.sourceAt(entry.getKey()).lastModified() != entry.getValue()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+            checked = now;
+            return true;
+        }
+    }
+
+    private static final class FlattenedSource extends AbstractTemplateSource {
+
+        private final String filename;
+        private final String content;
+        private final long lastModified;
+
+        private FlattenedSource(String filename, String content, long lastModified) {
+            this.filename = filename;
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+
+        @Override
+        public String filename() {
+            return filename;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Text between tags, or a tag.
+     */
+    static class Part {
+
+        private final String text;
+
+        Part(String text) {
+            this.text = text;
+        }
+
+        String getText() {
+            return text;
+        }
+    }
+
+    static final class Tag extends Part {
+
+        private final char kind;
+        private final String name;
+        private final String params;
+
+        Tag(String text) throws Unflattenable {
+            super(text);
+            String inner = text.startsWith("{{{") ? text.substring(3, text.length() - 3)
+                    : text.substring(2, text.length() - 2);
+            if (inner.startsWith("!")) {
+                kind = '!';
+                name = "";
+                params = "";
+                return;
+            }
+            if (inner.startsWith("~") || inner.endsWith("~")) {
+                throw new Unflattenable("whitespace control");
+            }
+            String trimmed = inner.trim();
+            if (trimmed.startsWith("=")) {
+                throw new Unflattenable("delimiter change");
+            }
+            char first = trimmed.isEmpty() ? ' ' : trimmed.charAt(0);
+            String rest = trimmed;
+            if ("#^/>&".indexOf(first) >= 0) {
+                rest = trimmed.substring(1).trim();
+            } else {
+                first = ' ';
+            }
+            int space = indexOfWhitespace(rest);
+            String head = space < 0 ? rest : rest.substring(0, space);
+            if ((first == '^' && head.isEmpty()) || (first == ' ' && "else".equals(head) && space < 0)) {
+                first = 'e';
+            }
+            kind = first;
+            name = head;
+            params = space < 0 ? "" : rest.substring(space).trim();
+        }
+
+        private static int indexOfWhitespace(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the name given as the only parameter of a {@code partial} or {@code block} section
+         */
+        String getQuotedParam() throws Unflattenable {
+            if (params.length() < 2 || params.charAt(0) != params.charAt(params.length() - 1)
+                    || (params.charAt(0) != '"' && params.charAt(0) != '\'')
+                    || params.indexOf(params.charAt(0), 1) != params.length() - 1) {
+                throw new Unflattenable(name + " with parameters " + params);
+            }
+            return params.substring(1, params.length() - 1);
+        }
+    }
+
+    static final class Section extends Part {
+
+        private final Tag open;
+        private final List<Part> children = new ArrayList<Part>();
+        private Tag close;
+
+        /**
+         * @param text the opening tag, or the whole template for the root section
+         */
+        Section(Tag open, String text) {
+            super(text);
+            this.open = open;
+        }
+
+        boolean isHelper(String helper) {
+            return open != null && open.kind == '#' && helper.equals(open.name);
+        }
+
+        boolean usesBlocks() {
+            if (isHelper(PARTIAL) || isHelper(BLOCK)) {
+                return true;
+            }
+            for (Part child : children) {
+                if (child instanceof Section && ((Section) child).usesBlocks()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean includesPartials() {
+            for (Part child : children) {
+                if (child instanceof Tag && ((Tag) child).kind == '>') {
+                    return true;
+                }
+                if (child instanceof Section && ((Section) child).includesPartials()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean hasElse() {
+            for (Part child : children) {
+                if (child instanceof Tag && ((Tag) child).kind == 'e') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Unflattenable extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        Unflattenable(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * One flattening of a template, with the partials defined so far.
+     */
+    private final class Flattener {
+
+        private final Map<String, Long> chain;
+        private final Map<String, Section> partials = new HashMap<String, Section>();
+        private final LinkedList<String> stack = new LinkedList<String>();
+
+        private Flattener(Map<String, Long> chain) {
+            this.chain = chain;
+        }
+
+        /**
+         * @param dynamic whether the parts are inside a section that may render any number of times
+         */
+        private void flatten(List<Part> parts, StringBuilder out, boolean dynamic) throws Unflattenable {
+            for (Part part : parts) {
+                if (part instanceof Section) {
+                    flattenSection((Section) part, out, dynamic);
+                } else if (part instanceof Tag && ((Tag) part).kind == '>') {
+                    flattenPartial((Tag) part, out, dynamic);
+                } else {
+                    out.append(part.getText());
+                }
+            }
+        }
+
+        private void flattenSection(Section section, StringBuilder out, boolean dynamic) throws Unflattenable {
+            if (section.isHelper(PARTIAL)) {
+                if (dynamic) {
+                    throw new Unflattenable("partial definition in a section");
+                }
+                partials.put(section.open.getQuotedParam(), section);
+            } else if (section.isHelper(BLOCK)) {
+                if (dynamic) {
+                    throw new Unflattenable("block in a section");
+                }
+                String name = section.open.getQuotedParam();
+                if (section.hasElse()) {
+                    throw new Unflattenable("block " + name + " with else");
+                }
+                Section definition = partials.get(name);
+                if (definition == null && exists(name)) {
+                    // the block helper falls back to the template of that name
+                    throw new Unflattenable("block " + name + " matches a template");
+                }
+                flatten(definition != null ? definition.children : section.children, out, false);
+            } else {
+                out.append(section.getText());
+                flatten(section.children, out, true);
+                out.append(section.close.getText());
+            }
+        }
+
+        private void flattenPartial(Tag tag, StringBuilder out, boolean dynamic) throws Unflattenable {
+            Section partial = load(tag.name);
+            boolean pure = partial != null && !partial.usesBlocks() && !partial.includesPartials();
+            if (!tag.params.isEmpty() || stack.contains(tag.name) || stack.size() >= MAX_DEPTH
+                    || (pure && partial.getText().length() > maxInlineSize)) {
+                if (!pure) {
+                    throw new Unflattenable("partial " + tag.name + " cannot be inlined");
+                }
+                out.append(tag.getText());
+                return;
+            }
+            if (partial == null) {
+                throw new Unflattenable("partial " + tag.name + " cannot be loaded");
+            }
+            stack.add(tag.name);
+            flatten(partial.children, out, dynamic);
+            stack.removeLast();
+        }
+
+        private Section load(String location) throws Unflattenable {
+            try {
+                TemplateSource source = delegate.sourceAt(location);
+                Section partial = parse(source.content());
+                chain.put(location, source.lastModified());
+                return partial;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private boolean exists(String location) {
+            try {
+                delegate.sourceAt(location);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -12,17 +12,40 @@ import com.github.jknack.handlebars.io.ClassPathTemplateLoader;
 import com.github.jknack.handlebars.io.CompositeTemplateLoader;
 import com.github.jknack.handlebars.io.FileTemplateLoader;
 import com.github.jknack.handlebars.io.TemplateLoader;
+import com.magnoliales.handlebars.cache.DependencyIndex;
+import com.magnoliales.handlebars.cache.OffHeapPageOutputStore;
+import com.magnoliales.handlebars.cache.PageCache;
+import com.magnoliales.handlebars.cache.PageDependencies;
+import com.magnoliales.handlebars.cache.PageRecorder;
+import com.magnoliales.handlebars.cache.PageRevalidator;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import com.magnoliales.handlebars.cluster.InvalidationListener;
+import com.magnoliales.handlebars.cluster.InvalidationTransport;
+import com.magnoliales.handlebars.cluster.LoopbackTransport;
+import com.magnoliales.handlebars.cluster.MulticastTransport;
+import com.magnoliales.handlebars.guard.GuardedHelper;
+import com.magnoliales.handlebars.guard.RenderBudgets;
+import com.magnoliales.handlebars.helpers.EditHelper;
+import com.magnoliales.handlebars.metrics.JcrReadMetrics;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.profile.ProfileNode;
+import com.magnoliales.handlebars.profile.ProfiledHelper;
+import com.magnoliales.handlebars.profile.ProfiledWriter;
+import com.magnoliales.handlebars.profile.RenderProfile;
+import com.magnoliales.handlebars.profile.RenderProfiles;
+import com.magnoliales.handlebars.setup.ModuleComponents;
+import info.magnolia.cms.beans.config.ServerConfiguration;
 import info.magnolia.cms.core.AggregationState;
 import info.magnolia.context.MgnlContext;
 import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.module.blossom.render.RenderContext;
+import info.magnolia.objectfactory.Components;
 import info.magnolia.rendering.context.RenderingContext;
 import info.magnolia.rendering.engine.RenderException;
 import info.magnolia.rendering.engine.RenderingEngine;
 import info.magnolia.rendering.model.RenderingModel;
 import info.magnolia.rendering.renderer.AbstractRenderer;
 import info.magnolia.rendering.template.RenderableDefinition;
-import info.magnolia.rendering.util.AppendableWriter;
 import info.magnolia.repository.RepositoryConstants;
 import org.apache.jackrabbit.commons.JcrUtils;
 import org.slf4j.Logger;
@@ -30,17 +53,55 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.jcr.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Locale;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 public class HandlebarsRenderer extends AbstractRenderer {
 
+    public static final String TEMPLATES_REGION = "templates";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(HandlebarsRenderer.class);
 
+    private static final String CONFIG_PATH = "/modules/handlebars/renderers/handlebars";
+    private static final String UTF8 = "UTF-8";
+    private static final String GZIP = "gzip";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String QUALITY = "q=";
+    private static final long MEGABYTE = 1024 * 1024;
+    private static final long DEFAULT_PAGE_CACHE_CAPACITY = 256;
+
     private Handlebars handlebars;
+    private Handlebars publicHandlebars;
+    private FlatteningTemplateLoader templateLoader;
+    private TemplateAnalyzer templateAnalyzer;
+    private EncodedLiterals encodedLiterals;
+    private LocaleFallbacks localeFallbacks;
+    private Executor renderExecutor;
+    private boolean accountJcrReads;
+    private PageSnapshots pageSnapshots;
+    private DependencyIndex dependencyIndex;
+    private PageCache pageCache;
+    private PageRevalidator pageRevalidator;
+    private InvalidationBus invalidationBus;
+    private RenderBudgets renderBudgets;
+    private boolean admin;
+    private long startTime;
 
     @Inject
     public HandlebarsRenderer(RenderingEngine renderingEngine) {
@@ -56,20 +117,126 @@ public class HandlebarsRenderer extends AbstractRenderer {
             loader = new ClassPathTemplateLoader("/templates");
         }
 
-        handlebars = new Handlebars(loader);
+        templateLoader = new FlatteningTemplateLoader(loader);
+        handlebars = new Handlebars(templateLoader);
         handlebars.with(new ConcurrentMapTemplateCache());
+        handlebars.with(HtmlEscapingStrategy.INSTANCE);
+        publicHandlebars = new Handlebars(templateLoader);
+        publicHandlebars.with(new ConcurrentMapTemplateCache());
+        publicHandlebars.with(HtmlEscapingStrategy.INSTANCE);
+        encodedLiterals = new EncodedLiterals();
+        templateAnalyzer = new TemplateAnalyzer(handlebars);
+        localeFallbacks = new LocaleFallbacks();
+        renderBudgets = new RenderBudgets();
+        admin = Components.getComponent(ServerConfiguration.class).isAdmin();
+        startTime = System.currentTimeMillis();
+        invalidationBus = ModuleComponents.get(InvalidationBus.class);
+        invalidationBus.register(TEMPLATES_REGION, new InvalidationListener() {
+            @Override
+            public void invalidate(String workspace, String path) {
+                clear();
+            }
+
+            @Override
+            public void clear() {
+                templateLoader.clear();
+                handlebars.getCache().clear();
+                publicHandlebars.getCache().clear();
+                if (encodedLiterals != null) {
+                    encodedLiterals.clear();
+                }
+            }
+        });
+
+        // reloads detected on this instance clear the templates of the others
+        templateLoader.setReloadListener(new FlatteningTemplateLoader.ReloadListener() {
+            @Override
+            public void reloaded(String location) {
+                LOGGER.info("Template {} changed, clearing the templates of all instances", location);
+                invalidationBus.invalidate(TEMPLATES_REGION, TEMPLATES_REGION, location);
+            }
+        });
 
         // @todo, really not sure why node2bean doesn't work on this one
         try {
             Session session = MgnlContext.getJCRSession(RepositoryConstants.CONFIG);
-            Node helpersNode = session.getNode("/modules/handlebars/renderers/handlebars/helpers");
+            Node rendererNode = session.getNode(CONFIG_PATH);
+            if (rendererNode.hasNode("localeFallbacks")) {
+                for (Property property : JcrUtils.getProperties(rendererNode.getNode("localeFallbacks"))) {
+                    if (!property.getName().contains(":")) {
+                        LOGGER.info("Adding locale fallbacks {}: {}", property.getName(), property.getString());
+                        localeFallbacks.setFallbacks(property.getName(),
+                                Arrays.asList(property.getString().trim().split("\\s*,\\s*")));
+                    }
+                }
+            }
+            if (rendererNode.hasProperty("flattenTemplates")) {
+                templateLoader.setEnabled(rendererNode.getProperty("flattenTemplates").getBoolean());
+            }
+            if (rendererNode.hasProperty("maxInlineSize")) {
+                templateLoader.setMaxInlineSize((int) rendererNode.getProperty("maxInlineSize").getLong());
+            }
+            if (rendererNode.hasProperty("templateCheckInterval")) {
+                templateLoader.setCheckInterval(rendererNode.getProperty("templateCheckInterval").getLong());
+            }
+            if (rendererNode.hasProperty("minifyTemplates")) {
+                templateLoader.setMinify(rendererNode.getProperty("minifyTemplates").getBoolean());
+            }
+            if (rendererNode.hasProperty("encodeLiterals")
+                    && !rendererNode.getProperty("encodeLiterals").getBoolean()) {
+                encodedLiterals = null;
+            }
+            if (rendererNode.hasProperty("accountJcrReads")) {
+                accountJcrReads = rendererNode.getProperty("accountJcrReads").getBoolean();
+            }
+            if (rendererNode.hasProperty("pageSnapshots")
+                    && rendererNode.getProperty("pageSnapshots").getBoolean()) {
+                LOGGER.info("Rendering pages from snapshots");
+                pageSnapshots = ModuleComponents.get(PageSnapshots.class);
+            }
+            if (rendererNode.hasProperty("conditionalGet")
+                    && rendererNode.getProperty("conditionalGet").getBoolean()) {
+                LOGGER.info("Answering conditional requests for pages");
+                dependencyIndex = ModuleComponents.get(DependencyIndex.class);
+            }
+            if (rendererNode.hasProperty("pageCache") && rendererNode.getProperty("pageCache").getBoolean()) {
+                LOGGER.info("Caching rendered pages");
+                pageCache = ModuleComponents.get(PageCache.class);
+                if (rendererNode.hasProperty("maxStaleness")) {
+                    configureRevalidation(rendererNode);
+                }
+                if (rendererNode.hasProperty("pageCacheStore")) {
+                    configurePageStore(rendererNode);
+                }
+                pageCache.setMaxSize((int) getLong(rendererNode, "pageCacheMaxSize", PageCache.DEFAULT_MAX_SIZE));
+                if (rendererNode.hasProperty("pageCacheGzip")) {
+                    pageCache.setCompress(rendererNode.getProperty("pageCacheGzip").getBoolean());
+                }
+            }
+            if (rendererNode.hasProperty("publicTemplates")
+                    && !rendererNode.getProperty("publicTemplates").getBoolean()) {
+                publicHandlebars = handlebars;
+            }
+            configureBudgets(rendererNode);
+            registerRegions();
+            if (rendererNode.hasNode("cluster")) {
+                configureCluster(rendererNode.getNode("cluster"));
+            }
+            Node helpersNode = rendererNode.getNode("helpers");
             for (Node helperNode : JcrUtils.getChildNodes(helpersNode)) {
                 String helperName = PropertyUtil.getString(helperNode, "name");
                 String helperClassName = PropertyUtil.getString(helperNode, "class");
                 LOGGER.info("Adding handlebars helper {}: {}", helperName, helperClassName);
                 Class<?> helperClass = Class.forName(helperClassName);
                 Helper helper = (Helper) helperClass.newInstance();
-                handlebars.registerHelper(helperName, helper);
+                if (helperNode.hasProperty("budget")) {
+                    renderBudgets.setHelperBudget(helperName, helperNode.getProperty("budget").getLong());
+                }
+                handlebars.registerHelper(helperName, wrap(helperName, helper));
+                if (publicHandlebars != handlebars) {
+                    publicHandlebars.registerHelper(helperName, wrap(helperName, helper instanceof EditHelper
+                            ? ((EditHelper) helper).getPublicHelper() : helper));
+                }
             }
         } catch (IllegalAccessException e) {
             LOGGER.error("Cannot read helpers information", e);
@@ -86,6 +253,172 @@ public class HandlebarsRenderer extends AbstractRenderer {
         }
     }
 
+    public TemplateAnalyzer getTemplateAnalyzer() {
+        return templateAnalyzer;
+    }
+
+    /**
+     * @return the loader flattening block inheritance and small partials, enabled unless the
+     * {@code flattenTemplates} property is false, and minifying templates if the {@code minifyTemplates} property
+     * is true
+     */
+    public FlatteningTemplateLoader getTemplateLoader() {
+        return templateLoader;
+    }
+
+    /**
+     * @return the time budgets and circuit breakers of helpers and templates
+     */
+    public RenderBudgets getRenderBudgets() {
+        return renderBudgets;
+    }
+
+    /**
+     * @return the encoded literals of the templates rendered so far, null if disabled with the
+     * {@code encodeLiterals} property
+     */
+    public EncodedLiterals getEncodedLiterals() {
+        return encodedLiterals;
+    }
+
+    public LocaleFallbacks getLocaleFallbacks() {
+        return localeFallbacks;
+    }
+
+    public boolean isAccountJcrReads() {
+        return accountJcrReads;
+    }
+
+    /**
+     * Counts the repository reads of every render and publishes them in {@link JcrReadMetrics}. Profiled requests
+     * are always accounted.
+     */
+    public void setAccountJcrReads(boolean accountJcrReads) {
+        this.accountJcrReads = accountJcrReads;
+    }
+
+    /**
+     * @return the page snapshots anonymous requests are rendered from, null unless enabled with the
+     * {@code pageSnapshots} property
+     */
+    public PageSnapshots getPageSnapshots() {
+        return pageSnapshots;
+    }
+
+    /**
+     * @return the dependencies validators of pages are computed from, null unless enabled with the
+     * {@code conditionalGet} property
+     */
+    public DependencyIndex getDependencyIndex() {
+        return dependencyIndex;
+    }
+
+    /**
+     * @return the cache of rendered pages, null unless enabled with the {@code pageCache} property
+     */
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * @return the re-renders of stale pages, null unless enabled with a positive {@code maxStaleness}
+     */
+    public PageRevalidator getPageRevalidator() {
+        return pageRevalidator;
+    }
+
+    /**
+     * @return the bus invalidating the template cache, and the page caches enabled on this instance, across the
+     * cluster configured in the {@code cluster} node
+     */
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    public Executor getRenderExecutor() {
+        return renderExecutor;
+    }
+
+    /**
+     * Renders templates on the given executor instead of the calling thread, which waits for the result. The
+     * render scope carries the Magnolia context to the executing thread; null renders on the calling thread.
+     */
+    public void setRenderExecutor(Executor renderExecutor) {
+        this.renderExecutor = renderExecutor;
+    }
+
+    /**
+     * Answers conditional requests for pages from the dependency index and serves pages from the page cache
+     * before they are rendered. Pages missing from the cache are recorded while rendering and stored; stale pages
+     * are served while they are rendered again in the background. Pages cached gzip compressed are sent as they are
+     * to clients accepting gzip.
+     */
+    @Override
+    public void render(RenderingContext renderingContext, Map<String, Object> contextObjects)
+            throws RenderException {
+        if ((dependencyIndex == null && pageCache == null) || !isPageRender(renderingContext)) {
+            renderUncached(renderingContext, contextObjects);
+            return;
+        }
+        HttpServletRequest request = MgnlContext.getWebContext().getRequest();
+        HttpServletResponse response = MgnlContext.getWebContext().getResponse();
+        if (pageCache != null && pageCache.isCompress()) {
+            response.addHeader("Vary", ACCEPT_ENCODING);
+        }
+        String revalidatedKey = pageRevalidator != null ? pageRevalidator.getRevalidatedKey(request) : null;
+        if (revalidatedKey != null && !revalidatedKey.equals(SharedRequests.getKey())) {
+            // e.g. a base URL without the original host, which renders another site
+            LOGGER.warn("Not storing the re-render of {}, which was requested as {}", revalidatedKey,
+                    SharedRequests.getKey());
+            renderUncached(renderingContext, contextObjects);
+            return;
+        }
+        String cacheKey = revalidatedKey;
+        if (cacheKey == null && pageCache != null) {
+            cacheKey = SharedRequests.getKey();
+            String stale = cacheKey != null && pageRevalidator != null && !pageCache.contains(cacheKey)
+                    ? pageCache.getStale(cacheKey) : null;
+            if (stale != null) {
+                // without validators, which would describe the current version
+                pageRevalidator.revalidate(cacheKey, request);
+                write(renderingContext, stale, cacheKey);
+                return;
+            }
+        }
+        boolean gzip = cacheKey != null && revalidatedKey == null && pageCache.isCompress()
+                && !response.containsHeader(CONTENT_ENCODING) && acceptsGzip(request.getHeader(ACCEPT_ENCODING))
+                && pageCache.containsCompressed(cacheKey);
+        if (revalidatedKey == null && dependencyIndex != null && isNotModified(renderingContext, gzip)) {
+            return;
+        }
+        if (cacheKey != null && revalidatedKey == null && writeCached(renderingContext, cacheKey, gzip)) {
+            return;
+        }
+        if (cacheKey == null) {
+            renderUncached(renderingContext, contextObjects);
+            return;
+        }
+        PageRecorder recorder = pageCache.startRecording();
+        boolean rendered = false;
+        try {
+            renderUncached(renderingContext, contextObjects);
+            rendered = true;
+        } finally {
+            if (!rendered) {
+                recorder.discard();
+            }
+            pageCache.stopRecording(cacheKey, recorder);
+        }
+    }
+
+    /**
+     * Renders the content with its template, without answering from or storing in the page cache.
+     */
+    void renderUncached(RenderingContext renderingContext, Map<String, Object> contextObjects)
+            throws RenderException {
+        super.render(renderingContext, contextObjects);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     protected void setupContext(Map<String, Object> context, Node content, RenderableDefinition definition,
@@ -109,24 +442,476 @@ public class HandlebarsRenderer extends AbstractRenderer {
     protected void onRender(Node content, RenderableDefinition definition, RenderingContext renderingContext,
                             Map<String, Object> context, String templateScript) throws RenderException {
 
-        final AppendableWriter out;
         try {
-            out = renderingContext.getAppendable();
             AggregationState aggregationState = (AggregationState) context.get("state");
-            Node node = aggregationState.getCurrentContentNode();
-            Locale locale = aggregationState.getLocale();
-            context.put("content", new ChainedContentMap(node, locale));
-            Context combinedContext = Context.newBuilder(context)
-                    .resolver(JavaBeanValueResolver.INSTANCE, FieldValueResolver.INSTANCE, MapValueResolver.INSTANCE)
-                    .build();
+            RenderScope scope = RenderScope.capture(renderingContext, aggregationState, localeFallbacks,
+                    accountJcrReads);
+            LiteralWriter literalWriter = openLiteralWriter(renderingContext);
+            Writer out = literalWriter != null ? literalWriter : renderingContext.getAppendable();
+            if (scope.getRecorder() != null) {
+                out = scope.getRecorder().capture(out);
+            }
+            long budget = renderBudgets.getTemplateBudget(templateScript);
             try {
-                Template template = handlebars.compile(templateScript);
-                template.apply(combinedContext, out);
+                if (budget > 0) {
+                    renderBudgeted(scope, templateScript, context, out, budget);
+                } else {
+                    renderScoped(scope, templateScript, context, out);
+                }
             } finally {
-                combinedContext.destroy();
+                if (literalWriter != null) {
+                    literalWriter.close();
+                }
             }
         } catch (IOException e) {
             LOGGER.error("Cannot render template", e);
+            PageRecorder recorder = PageRecorder.current();
+            if (recorder != null) {
+                recorder.discard();
+            }
+        }
+    }
+
+    // the outermost render of a page outside of the page editor, which happens before anything is written
+    private boolean isPageRender(RenderingContext renderingContext) {
+        if (!MgnlContext.isWebContext() || (admin && !MgnlContext.getAggregationState().isPreviewMode())) {
+            return false;
+        }
+        Node page = renderingContext.getMainContent();
+        Node content = renderingContext.getCurrentContent();
+        try {
+            return page != null && content != null && !MgnlContext.getWebContext().getResponse().isCommitted()
+                    && page.getIdentifier().equals(content.getIdentifier());
+        } catch (RepositoryException e) {
+            LOGGER.error("Cannot read page identifier", e);
+            return false;
+        }
+    }
+
+    /**
+     * @return a writer copying the encoded literals of the templates to the response, if the page render writes
+     * to a UTF-8 encoded response and nothing took its writer yet, otherwise null
+     */
+    private LiteralWriter openLiteralWriter(RenderingContext renderingContext) throws RenderException {
+        if (encodedLiterals == null || !isPageRender(renderingContext)
+                || !UTF8.equalsIgnoreCase(MgnlContext.getWebContext().getResponse().getCharacterEncoding())) {
+            return null;
+        }
+        try {
+            return new LiteralWriter(renderingContext.getOutputStream(), encodedLiterals.getLiterals());
+        } catch (IllegalStateException e) {
+            LOGGER.debug("Response writer in use, writing page as characters", e);
+            return null;
+        }
+    }
+
+    /**
+     * Validators only cover content and templates, not the model, DAM assets, the user or parameters, so they are
+     * only sent for {@link SharedRequests shared requests}.
+     *
+     * @param gzip whether the page is sent gzip compressed
+     */
+    private boolean isNotModified(RenderingContext renderingContext, boolean gzip) {
+        if (!SharedRequests.isShared()) {
+            return false;
+        }
+        HttpServletRequest request = MgnlContext.getWebContext().getRequest();
+        HttpServletResponse response = MgnlContext.getWebContext().getResponse();
+        try {
+            PageDependencies dependencies = dependencyIndex.get(renderingContext.getMainContent());
+            long templateVersion = getTemplateVersion(RenderContext.get().getTemplateScript());
+            return ConditionalGet.apply(request, response, dependencies, templateVersion, gzip);
+        } catch (RepositoryException e) {
+            LOGGER.error("Cannot read page dependencies", e);
+        } catch (IOException e) {
+            LOGGER.error("Cannot read template sources", e);
+        }
+        return false;
+    }
+
+    // page output off the heap, in direct or memory-mapped slabs, with capacity and slab size in megabytes
+    private void configurePageStore(Node rendererNode) throws RepositoryException {
+        String type = PropertyUtil.getString(rendererNode, "pageCacheStore");
+        long capacity = MEGABYTE * getLong(rendererNode, "pageCacheCapacity", DEFAULT_PAGE_CACHE_CAPACITY);
+        int slabSize = (int) (MEGABYTE * getLong(rendererNode, "pageCacheSlabSize",
+                OffHeapPageOutputStore.DEFAULT_SLAB_SIZE / MEGABYTE));
+        if ("direct".equals(type)) {
+            LOGGER.info("Keeping {}MB of cached pages in direct buffers", capacity / MEGABYTE);
+            pageCache.setStore(new OffHeapPageOutputStore(capacity, slabSize));
+        } else if ("mapped".equals(type)) {
+            String directory = PropertyUtil.getString(rendererNode, "pageCacheDirectory",
+                    new File(System.getProperty("java.io.tmpdir"), "handlebars-pages").getPath());
+            LOGGER.info("Keeping {}MB of cached pages in files mapped from {}", capacity / MEGABYTE, directory);
+            pageCache.setStore(new OffHeapPageOutputStore(capacity, slabSize, new File(directory)));
+        } else if (!"heap".equals(type)) {
+            LOGGER.warn("Unknown page cache store {}, keeping pages on the heap", type);
+        }
+    }
+
+    // stale while revalidate, with the maximum staleness in seconds
+    private void configureRevalidation(Node rendererNode) throws RepositoryException {
+        long maxStaleness = rendererNode.getProperty("maxStaleness").getLong();
+        if (maxStaleness <= 0) {
+            return;
+        }
+        String revalidationUrl = PropertyUtil.getString(rendererNode, "revalidationUrl");
+        if (revalidationUrl != null && !PageRevalidator.canSendHost()) {
+            LOGGER.error("Not serving stale pages: re-renders through {} are only stored with -D{}=true",
+                    revalidationUrl, PageRevalidator.ALLOW_RESTRICTED_HEADERS);
+            return;
+        }
+        LOGGER.info("Serving pages up to {}s stale while rendering them again", maxStaleness);
+        pageCache.setMaxStaleness(TimeUnit.SECONDS.toMillis(maxStaleness));
+        pageRevalidator = ModuleComponents.get(PageRevalidator.class);
+        if (rendererNode.hasProperty("revalidationThreads")) {
+            pageRevalidator.setThreads((int) rendererNode.getProperty("revalidationThreads").getLong());
+        }
+        pageRevalidator.setBaseUrl(revalidationUrl);
+    }
+
+    private void configureBudgets(Node rendererNode) throws RepositoryException {
+        renderBudgets.setDefaultHelperBudget(getLong(rendererNode, "helperBudget", 0));
+        renderBudgets.setFailureThreshold((int) getLong(rendererNode, "failureThreshold",
+                RenderBudgets.DEFAULT_FAILURE_THRESHOLD));
+        renderBudgets.setOpenTime(TimeUnit.SECONDS.toMillis(getLong(rendererNode, "circuitOpenTime",
+                TimeUnit.MILLISECONDS.toSeconds(RenderBudgets.DEFAULT_OPEN_TIME))));
+        if (rendererNode.hasNode("templateBudgets")) {
+            for (Node budgetNode : JcrUtils.getChildNodes(rendererNode.getNode("templateBudgets"))) {
+                String templateScript = PropertyUtil.getString(budgetNode, "template");
+                if (templateScript != null && budgetNode.hasProperty("budget")) {
+                    LOGGER.info("Budget of template {}: {}ms", templateScript,
+                            budgetNode.getProperty("budget").getLong());
+                    renderBudgets.setTemplateBudget(templateScript, budgetNode.getProperty("budget").getLong());
+                }
+            }
+        }
+    }
+
+    private void registerRegions() {
+        if (pageCache != null) {
+            invalidationBus.register(PageCache.REGION, pageCache);
+        }
+        if (dependencyIndex != null) {
+            invalidationBus.register(DependencyIndex.REGION, dependencyIndex);
+        }
+        if (pageSnapshots != null) {
+            invalidationBus.register(PageSnapshots.REGION, pageSnapshots);
+        }
+    }
+
+    private void configureCluster(Node clusterNode) throws RepositoryException {
+        String type = PropertyUtil.getString(clusterNode, "transport", "multicast");
+        InvalidationTransport transport;
+        if ("multicast".equals(type)) {
+            transport = new MulticastTransport(
+                    PropertyUtil.getString(clusterNode, "address", MulticastTransport.DEFAULT_ADDRESS),
+                    (int) getLong(clusterNode, "port", MulticastTransport.DEFAULT_PORT),
+                    (int) getLong(clusterNode, "timeToLive", MulticastTransport.DEFAULT_TIME_TO_LIVE));
+        } else if ("loopback".equals(type)) {
+            transport = new LoopbackTransport(PropertyUtil.getString(clusterNode, "group", "default"));
+        } else {
+            try {
+                transport = (InvalidationTransport) Class.forName(type).newInstance();
+            } catch (ClassNotFoundException e) {
+                LOGGER.error("Cannot create invalidation transport " + type, e);
+                return;
+            } catch (InstantiationException e) {
+                LOGGER.error("Cannot create invalidation transport " + type, e);
+                return;
+            } catch (IllegalAccessException e) {
+                LOGGER.error("Cannot create invalidation transport " + type, e);
+                return;
+            }
+        }
+        long batchDelay = getLong(clusterNode, "batchDelay", InvalidationBus.DEFAULT_BATCH_DELAY);
+        try {
+            invalidationBus.start(transport, batchDelay);
+            LOGGER.info("Exchanging cache invalidations over the {} transport as {}", type,
+                    invalidationBus.getNodeId());
+        } catch (IOException e) {
+            LOGGER.error("Cannot start invalidation transport " + type, e);
+        }
+    }
+
+    private Helper<Object> wrap(String helperName, Helper<?> helper) {
+        Helper<Object> profiled = new ProfiledHelper(helperName, helper);
+        if (renderBudgets.getHelperBudget(helperName) > 0) {
+            return new GuardedHelper(helperName, profiled, renderBudgets);
+        }
+        return profiled;
+    }
+
+    private static long getLong(Node node, String name, long defaultValue) throws RepositoryException {
+        return node.hasProperty(name) ? node.getProperty(name).getLong() : defaultValue;
+    }
+
+    /**
+     * Writes the cached page, as stored if the response is UTF-8 encoded, and gzip compressed if asked to and the
+     * compressed page is still stored.
+     *
+     * @return false if the page is not cached
+     */
+    private boolean writeCached(RenderingContext renderingContext, String cacheKey, boolean gzip)
+            throws RenderException {
+        HttpServletResponse response = MgnlContext.getWebContext().getResponse();
+        if (UTF8.equalsIgnoreCase(response.getCharacterEncoding())) {
+            try {
+                OutputStream out = renderingContext.getOutputStream();
+                if (gzip && pageCache.writeCompressedTo(cacheKey, new ContentEncodingStream(out, response, GZIP))) {
+                    return true;
+                }
+                return pageCache.writeTo(cacheKey, out);
+            } catch (IllegalStateException e) {
+                LOGGER.debug("Response writer in use, writing cached page as characters", e);
+            } catch (IOException e) {
+                throw new RenderException("Cannot write cached page " + cacheKey, e);
+            }
+        }
+        String output = pageCache.get(cacheKey);
+        if (output == null) {
+            return false;
+        }
+        write(renderingContext, output, cacheKey);
+        return true;
+    }
+
+    private void write(RenderingContext renderingContext, String output, String cacheKey) throws RenderException {
+        try {
+            renderingContext.getAppendable().write(output);
+        } catch (IOException e) {
+            throw new RenderException("Cannot write cached page " + cacheKey, e);
+        }
+    }
+
+    /**
+     * @return whether the {@code Accept-Encoding} header accepts gzip with a non-zero quality, explicitly or with
+     * {@code *}
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean gzip = null;
+        boolean any = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            boolean accepted = true;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith(QUALITY)) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(QUALITY.length())) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (GZIP.equalsIgnoreCase(name) || ("x-" + GZIP).equalsIgnoreCase(name)) {
+                gzip = accepted;
+            } else if ("*".equals(name)) {
+                any = accepted;
+            }
+        }
+        return gzip != null ? gzip : any;
+    }
+
+    /**
+     * @return the latest modification date of the template and its partials, at least the time the renderer was
+     * created, so that redeployed component templates change the version as well
+     */
+    private long getTemplateVersion(String templateScript) throws IOException {
+        TemplateLoader loader = handlebars.getLoader();
+        long version = Math.max(startTime, loader.sourceAt(templateScript).lastModified());
+        Template template = handlebars.compile(templateScript);
+        for (String partial : templateAnalyzer.getManifest(templateScript, template).getPartials()) {
+            version = Math.max(version, loader.sourceAt(partial).lastModified());
+        }
+        return version;
+    }
+
+    private void render(RenderScope scope, String templateScript, Map<String, Object> context, Writer out)
+            throws IOException, RenderException {
+        RenderProfile profile = scope.getProfile();
+        // snapshots are captured with the session of the request and shared with every anonymous visitor
+        if (pageSnapshots != null && SharedRequests.isShared()) {
+            registerPageSnapshot(scope);
+        }
+        ChainedContentMap contentMap = new ChainedContentMap(scope.getAggregationState().getCurrentContentNode(),
+                scope);
+        context.put("content", contentMap);
+        ProfileNode step = profile != null ? profile.enter("compile", templateScript) : null;
+        // the manifest is analysed from the author variant, which both variants share
+        Template authorTemplate = handlebars.compile(templateScript);
+        Handlebars variant = isEditable(scope) ? handlebars : publicHandlebars;
+        Template template = variant.compile(templateScript);
+        TemplateManifest manifest = templateAnalyzer.getManifest(templateScript, authorTemplate);
+        if (encodedLiterals != null && !encodedLiterals.contains(template)) {
+            encodedLiterals.register(template);
+            for (String partial : manifest.getPartials()) {
+                encodedLiterals.register(variant.compile(partial));
+            }
+        }
+        if (step != null) {
+            profile.exit(step, 0);
+            step = profile.enter("prefetch", templateScript);
+        }
+        contentMap.prefetch(manifest.getContentPaths());
+        if (step != null) {
+            profile.exit(step, 0);
+        }
+        Context combinedContext = Context.newBuilder(context)
+                .resolver(JavaBeanValueResolver.INSTANCE, FieldValueResolver.INSTANCE, MapValueResolver.INSTANCE)
+                .build();
+        combinedContext.data(RenderScope.DATA_KEY, scope);
+        try {
+            if (renderExecutor == null) {
+                template.apply(combinedContext, out);
+            } else {
+                applyOnExecutor(scope, template, combinedContext, out);
+            }
+        } finally {
+            combinedContext.destroy();
+        }
+    }
+
+    // rendered in the page editor, with the author variant of the templates
+    private boolean isEditable(RenderScope scope) {
+        return admin && !scope.getAggregationState().isPreviewMode();
+    }
+
+    private void registerPageSnapshot(RenderScope scope) {
+        Node page = scope.getAggregationState().getMainContentNode();
+        try {
+            if (page != null && scope.getSnapshots().get(page.getIdentifier()) == null) {
+                List<NodeSnapshot> snapshots = pageSnapshots.get(page);
+                if (snapshots != null) {
+                    for (NodeSnapshot snapshot : snapshots) {
+                        scope.getSnapshots().register(snapshot);
+                    }
+                }
+            }
+        } catch (RepositoryException e) {
+            LOGGER.error("Cannot read page snapshot", e);
+        }
+    }
+
+    // profiled requests always account for their reads
+    private void renderScoped(RenderScope scope, String templateScript, Map<String, Object> context, Writer out)
+            throws IOException, RenderException {
+        if (scope.getJcrReads() == null) {
+            render(scope, templateScript, context, out);
+        } else {
+            renderInstrumented(scope, templateScript, context, out);
+        }
+    }
+
+    private void renderBudgeted(RenderScope scope, String templateScript, Map<String, Object> context, Writer out,
+                                long budget) throws IOException, RenderException {
+        String key = "template " + templateScript;
+        if (!renderBudgets.allow(key)) {
+            out.append(renderBudgets.fallback(key, scope));
+            return;
+        }
+        // buffered, so that the output can be kept as the fallback
+        StringWriter buffer = new StringWriter();
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            renderScoped(scope, templateScript, context, buffer);
+            completed = true;
+        } finally {
+            renderBudgets.record(key, System.nanoTime() - start, budget, completed);
+        }
+        renderBudgets.remember(key, scope, buffer.toString());
+        out.write(buffer.toString());
+    }
+
+    private void renderInstrumented(RenderScope scope, String templateScript, Map<String, Object> context,
+                                    Writer out) throws IOException, RenderException {
+        RenderProfile profile = scope.getProfile();
+        JcrReads reads = scope.getJcrReads();
+        boolean outermost = profile != null && profile.isIdle();
+        if (outermost) {
+            RenderProfiles.started(profile);
+        }
+        ProfileNode node = profile != null ? profile.enter("template", templateScript) : null;
+        ProfiledWriter writer = new ProfiledWriter(out);
+        reads.enter(templateScript);
+        try {
+            render(scope, templateScript, context, writer);
+        } finally {
+            if (reads.exit()) {
+                JcrReadMetrics.getInstance().record(scope.getAggregationState().getCurrentURI(), reads);
+                if (profile != null) {
+                    profile.setRepeatedReads(reads.getRepeatedReads());
+                }
+            }
+            if (node != null) {
+                profile.exit(node, writer.getCount());
+            }
+            if (outermost) {
+                RenderProfiles.completed(profile);
+            }
+        }
+    }
+
+    private void applyOnExecutor(RenderScope scope, final Template template, final Context context,
+                                 final Writer out) throws IOException, RenderException {
+        FutureTask<Void> task = new FutureTask<Void>(scope.wrap(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                template.apply(context, out);
+                return null;
+            }
+        }));
+        renderExecutor.execute(task);
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RenderException("Interrupted while rendering " + template.filename(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RenderException("Cannot render " + template.filename(), e.getCause());
+        }
+    }
+
+    /**
+     * Sets the content coding of the response on the first write, so that nothing is changed if nothing is written.
+     */
+    private static final class ContentEncodingStream extends FilterOutputStream {
+
+        private final HttpServletResponse response;
+        private final String encoding;
+        private boolean started;
+
+        private ContentEncodingStream(OutputStream out, HttpServletResponse response, String encoding) {
+            super(out);
+            this.response = response;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            start();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            start();
+            out.write(b, off, len);
+        }
+
+        private void start() {
+            if (!started) {
+                response.setHeader(CONTENT_ENCODING, encoding);
+                started = true;
+            }
         }
     }
 }
@@ -0,0 +1,63 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.EscapingStrategy;
+import com.github.jknack.handlebars.Handlebars;
+
+/**
+ * Escapes the same characters as {@link EscapingStrategy#HTML_ENTITY}, {@code & < > " ' `}, in one pass that
+ * returns values without any of them as they are instead of copying them.
+ */
+public final class HtmlEscapingStrategy implements EscapingStrategy {
+
+    public static final HtmlEscapingStrategy INSTANCE = new HtmlEscapingStrategy();
+
+    // room for a few entities before the builder grows
+    private static final int EXTRA_CAPACITY = 16;
+    private static final String[] ENTITIES = new String['`' + 1];
+
+    static {
+        ENTITIES['&'] = "&amp;";
+        ENTITIES['<'] = "&lt;";
+        ENTITIES['>'] = "&gt;";
+        ENTITIES['"'] = "&quot;";
+        ENTITIES['\''] = "&#x27;";
+        ENTITIES['`'] = "&#x60;";
+    }
+
+    private HtmlEscapingStrategy() {
+    }
+
+    @Override
+    public String escape(CharSequence value) {
+        if (value == null || value.length() == 0) {
+            return "";
+        }
+        if (value instanceof Handlebars.SafeString) {
+            return value.toString();
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < ENTITIES.length && ENTITIES[c] != null) {
+                return escape(value, i);
+            }
+        }
+        return value.toString();
+    }
+
+    private static String escape(CharSequence value, int first) {
+        int length = value.length();
+        StringBuilder escaped = new StringBuilder(length + EXTRA_CAPACITY);
+        escaped.append(value, 0, first);
+        for (int i = first; i < length; i++) {
+            char c = value.charAt(i);
+            String entity = c < ENTITIES.length ? ENTITIES[c] : null;
+            if (entity == null) {
+                escaped.append(c);
+            } else {
+                escaped.append(entity);
+            }
+        }
+        return escaped.toString();
+    }
+}
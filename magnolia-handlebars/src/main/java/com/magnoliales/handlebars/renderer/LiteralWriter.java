@@ -0,0 +1,180 @@
+package com.magnoliales.handlebars.renderer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes UTF-8 to a stream, copying the encoded bytes of template literals instead of encoding them. Strings are
+ * looked up by identity, so only the literal instances of the compiled templates match; everything else is
+ * encoded the way {@code String.getBytes("UTF-8")} does, unpaired surrogates becoming {@code ?}.
+ * <p>
+ * Output is buffered; {@link #flushBuffer()} writes it to the stream without flushing the stream.
+ */
+public class LiteralWriter extends Writer {
+
+    private static final int BUFFER_LENGTH = 8192;
+    // the longest encoding of a character
+    private static final int MAX_CHAR_LENGTH = 4;
+    private static final int ONE_BYTE_LIMIT = 0x80;
+    private static final int TWO_BYTE_LIMIT = 0x800;
+    private static final int CONTINUATION = 0x80;
+    private static final int CONTINUATION_MASK = 0x3F;
+    private static final int TWO_BYTE_LEAD = 0xC0;
+    private static final int THREE_BYTE_LEAD = 0xE0;
+    private static final int FOUR_BYTE_LEAD = 0xF0;
+    private static final int SHIFT = 6;
+    private static final int DOUBLE_SHIFT = 12;
+    private static final int TRIPLE_SHIFT = 18;
+    private static final char NO_SURROGATE = 0;
+    private static final byte REPLACEMENT = '?';
+
+    private final OutputStream out;
+    private final Map<String, byte[]> literals;
+    private final byte[] buffer = new byte[BUFFER_LENGTH];
+    private final char[] scratch = new char[BUFFER_LENGTH];
+    private int position;
+    private char highSurrogate = NO_SURROGATE;
+
+    public LiteralWriter(OutputStream out, Map<String, byte[]> literals) {
+        this.out = out;
+        this.literals = literals;
+    }
+
+    @Override
+    public void write(String string) throws IOException {
+        byte[] encoded = literals.get(string);
+        if (encoded == null) {
+            write(string, 0, string.length());
+        } else {
+            writeBytes(encoded);
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int chunk = Math.min(end - i, scratch.length);
+            string.getChars(i, i + chunk, scratch, 0);
+            write(scratch, 0, chunk);
+            i += chunk;
+        }
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            // runs of ASCII characters up to the end of the buffer, other characters one at a time
+            int limit = Math.min(end, i + buffer.length - position);
+            if (highSurrogate == NO_SURROGATE) {
+                while (i < limit && chars[i] < ONE_BYTE_LIMIT) {
+                    buffer[position++] = (byte) chars[i++];
+                }
+            }
+            if (i < end) {
+                encode(chars[i++]);
+            }
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        encode((char) c);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        write(String.valueOf(csq));
+        return this;
+    }
+
+    /**
+     * Writes the buffered output to the stream.
+     */
+    public void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Writes the buffered output but leaves the stream open, it belongs to the response.
+     */
+    @Override
+    public void close() throws IOException {
+        replaceHighSurrogate();
+        flushBuffer();
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        replaceHighSurrogate();
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length >= buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void encode(char c) throws IOException {
+        ensureCapacity(MAX_CHAR_LENGTH);
+        if (highSurrogate != NO_SURROGATE) {
+            char high = highSurrogate;
+            highSurrogate = NO_SURROGATE;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[position++] = (byte) (FOUR_BYTE_LEAD | (codePoint >> TRIPLE_SHIFT));
+                buffer[position++] = (byte) (CONTINUATION | ((codePoint >> DOUBLE_SHIFT) & CONTINUATION_MASK));
+                buffer[position++] = (byte) (CONTINUATION | ((codePoint >> SHIFT) & CONTINUATION_MASK));
+                buffer[position++] = (byte) (CONTINUATION | (codePoint & CONTINUATION_MASK));
+                return;
+            }
+            buffer[position++] = REPLACEMENT;
+            ensureCapacity(MAX_CHAR_LENGTH);
+        }
+        if (c < ONE_BYTE_LIMIT) {
+            buffer[position++] = (byte) c;
+        } else if (c < TWO_BYTE_LIMIT) {
+            buffer[position++] = (byte) (TWO_BYTE_LEAD | (c >> SHIFT));
+            buffer[position++] = (byte) (CONTINUATION | (c & CONTINUATION_MASK));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[position++] = REPLACEMENT;
+        } else {
+            buffer[position++] = (byte) (THREE_BYTE_LEAD | (c >> DOUBLE_SHIFT));
+            buffer[position++] = (byte) (CONTINUATION | ((c >> SHIFT) & CONTINUATION_MASK));
+            buffer[position++] = (byte) (CONTINUATION | (c & CONTINUATION_MASK));
+        }
+    }
+
+    // a high surrogate followed by anything but a low surrogate
+    private void replaceHighSurrogate() throws IOException {
+        if (highSurrogate != NO_SURROGATE) {
+            ensureCapacity(1);
+            buffer[position++] = REPLACEMENT;
+            highSurrogate = NO_SURROGATE;
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position > buffer.length - length) {
+            flushBuffer();
+        }
+    }
+}
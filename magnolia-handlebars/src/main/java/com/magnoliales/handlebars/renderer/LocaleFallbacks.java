@@ -0,0 +1,62 @@
+package com.magnoliales.handlebars.renderer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Locale fallback chains for localized properties. By default a locale falls back to its parents, so
+ * {@code de_CH} is looked up as {@code de_CH}, {@code de} and finally the unlocalized key. A configured
+ * chain, e.g. {@code de_CH -> de, en}, replaces the parents of that locale.
+ */
+public class LocaleFallbacks {
+
+    private final Map<String, List<String>> fallbacks = new HashMap<String, List<String>>();
+    private final ConcurrentMap<String, LocaleKeyTable> tables = new ConcurrentHashMap<String, LocaleKeyTable>();
+
+    public void setFallbacks(String localeName, List<String> fallbackLocaleNames) {
+        fallbacks.put(localeName, new ArrayList<String>(fallbackLocaleNames));
+        tables.clear();
+    }
+
+    public List<String> getFallbacks(String localeName) {
+        List<String> localeNames = fallbacks.get(localeName);
+        return localeNames != null ? Collections.unmodifiableList(localeNames) : null;
+    }
+
+    public LocaleKeyTable getKeyTable(Locale locale) {
+        String localeName = locale.toString();
+        LocaleKeyTable table = tables.get(localeName);
+        if (table == null) {
+            table = new LocaleKeyTable(localeName, chain(locale));
+            tables.putIfAbsent(localeName, table);
+        }
+        return table;
+    }
+
+    private List<String> chain(Locale locale) {
+        List<String> chain = new ArrayList<String>();
+        String localeName = locale.toString();
+        if (localeName.isEmpty()) {
+            return chain;
+        }
+        chain.add(localeName);
+        List<String> configured = fallbacks.get(localeName);
+        if (configured != null) {
+            chain.addAll(configured);
+            return chain;
+        }
+        if (!locale.getVariant().isEmpty() && !locale.getCountry().isEmpty()) {
+            chain.add(locale.getLanguage() + "_" + locale.getCountry());
+        }
+        if (!locale.getCountry().isEmpty() || !locale.getVariant().isEmpty()) {
+            chain.add(locale.getLanguage());
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,41 @@
+package com.magnoliales.handlebars.renderer;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Property names to try for a key in one locale, most specific first, e.g. {@code title_de_CH},
+ * {@code title_de}, {@code title}. Names are computed once per key and interned.
+ */
+public final class LocaleKeyTable {
+
+    private final String localeName;
+    private final String[] suffixes;
+    private final ConcurrentMap<String, String[]> names = new ConcurrentHashMap<String, String[]>();
+
+    LocaleKeyTable(String localeName, List<String> fallbackLocaleNames) {
+        this.localeName = localeName;
+        this.suffixes = new String[fallbackLocaleNames.size() + 1];
+        for (int i = 0; i < fallbackLocaleNames.size(); i++) {
+            suffixes[i] = ("_" + fallbackLocaleNames.get(i)).intern();
+        }
+        suffixes[fallbackLocaleNames.size()] = "";
+    }
+
+    public String getLocaleName() {
+        return localeName;
+    }
+
+    public String[] getNames(String key) {
+        String[] keyNames = names.get(key);
+        if (keyNames == null) {
+            keyNames = new String[suffixes.length];
+            for (int i = 0; i < suffixes.length; i++) {
+                keyNames[i] = (key + suffixes[i]).intern();
+            }
+            names.putIfAbsent(key, keyNames);
+        }
+        return keyNames;
+    }
+}
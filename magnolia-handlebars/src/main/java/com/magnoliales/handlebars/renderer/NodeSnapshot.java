@@ -0,0 +1,180 @@
+package com.magnoliales.handlebars.renderer;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory copy of a node's single-valued properties and, up to a given depth, of its descendants.
+ * A snapshot is complete when no property was filtered out and all child nodes were captured, so a
+ * missing key can be answered without asking the repository. Multi-valued and binary properties, and
+ * children skipped by type, are only recorded by name.
+ */
+public final class NodeSnapshot {
+
+    private final String name;
+    private final String identifier;
+    private final String path;
+    private final String workspace;
+    private final Map<String, Object> properties;
+    private final Map<String, NodeSnapshot> children;
+    private final Set<String> uncaptured;
+    private final boolean complete;
+
+    NodeSnapshot(String name, String identifier, String path, String workspace, Map<String, Object> properties,
+                 Map<String, NodeSnapshot> children, Set<String> uncaptured, boolean complete) {
+        this.name = name;
+        this.identifier = identifier;
+        this.path = path;
+        this.workspace = workspace;
+        this.properties = properties;
+        this.children = children;
+        this.uncaptured = uncaptured;
+        this.complete = complete;
+    }
+
+    public static NodeSnapshot capture(Node node, int depth, Set<String> propertyNames) throws RepositoryException {
+        return capture(node, node.getSession().getWorkspace().getName(), depth, propertyNames, null);
+    }
+
+    /**
+     * Captures a node with all of its descendants up to the given depth, except for children of the given type
+     * (e.g. the sub pages of a page), which are only recorded by name.
+     */
+    public static NodeSnapshot captureTree(Node node, int depth, String skippedType) throws RepositoryException {
+        return capture(node, node.getSession().getWorkspace().getName(), depth, null, skippedType);
+    }
+
+    private static NodeSnapshot capture(Node node, String workspace, int depth, Set<String> propertyNames,
+                                        String skippedType) throws RepositoryException {
+        boolean complete = propertyNames == null;
+        Set<String> uncaptured = new HashSet<String>();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        PropertyIterator propertyIterator = node.getProperties();
+        while (propertyIterator.hasNext()) {
+            Property property = propertyIterator.nextProperty();
+            String propertyName = property.getName();
+            if (propertyNames != null && !propertyNames.contains(propertyName)) {
+                continue;
+            }
+            Object value = property.isMultiple() ? null : valueOf(property.getValue());
+            if (value != null) {
+                properties.put(propertyName, value);
+            } else {
+                uncaptured.add(propertyName);
+            }
+        }
+        Map<String, NodeSnapshot> children;
+        if (depth > 0) {
+            children = new LinkedHashMap<String, NodeSnapshot>();
+            NodeIterator nodeIterator = node.getNodes();
+            while (nodeIterator.hasNext()) {
+                Node child = nodeIterator.nextNode();
+                if (skippedType != null && child.isNodeType(skippedType)) {
+                    uncaptured.add(child.getName());
+                } else {
+                    children.put(child.getName(), capture(child, workspace, depth - 1, propertyNames, skippedType));
+                }
+            }
+        } else {
+            children = Collections.emptyMap();
+            complete = false;
+        }
+        return new NodeSnapshot(node.getName(), node.getIdentifier(), node.getPath(), workspace,
+                properties, children, uncaptured, complete);
+    }
+
+    static Object valueOf(Value value) throws RepositoryException {
+        switch (value.getType()) {
+            case PropertyType.STRING:
+            case PropertyType.NAME:
+            case PropertyType.PATH:
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+            case PropertyType.URI:
+                return value.getString();
+            case PropertyType.LONG:
+                return value.getLong();
+            case PropertyType.DOUBLE:
+                return value.getDouble();
+            case PropertyType.DECIMAL:
+                return value.getDecimal();
+            case PropertyType.BOOLEAN:
+                return value.getBoolean();
+            case PropertyType.DATE:
+                return value.getDate();
+            default:
+                return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getWorkspace() {
+        return workspace;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public boolean hasProperty(String propertyName) {
+        return properties.containsKey(propertyName);
+    }
+
+    public Object getProperty(String propertyName) {
+        return properties.get(propertyName);
+    }
+
+    public Map<String, Object> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    public boolean hasChild(String childName) {
+        return children.containsKey(childName);
+    }
+
+    public NodeSnapshot getChild(String childName) {
+        return children.get(childName);
+    }
+
+    public Collection<NodeSnapshot> getChildren() {
+        return Collections.unmodifiableCollection(children.values());
+    }
+
+    /**
+     * @return names of the properties and children that exist but were not captured
+     */
+    public Set<String> getUncaptured() {
+        return Collections.unmodifiableSet(uncaptured);
+    }
+
+    /**
+     * Whether the repository has to be asked for the given key, i.e. the snapshot cannot tell
+     * for sure that there is no such property.
+     */
+    public boolean mayContain(String key) {
+        return properties.containsKey(key) || children.containsKey(key) || uncaptured.contains(key) || !complete;
+    }
+}
@@ -0,0 +1,224 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.cache.MappedByteStore;
+import com.magnoliales.handlebars.cache.ObservedCache;
+import com.magnoliales.handlebars.cluster.InvalidationListener;
+import info.magnolia.cms.util.ObservationUtil;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.repository.RepositoryConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary snapshots of pages for public instances, where content only changes on publication. A snapshot holds
+ * the page with its areas and components, and the pages of its supplier chain, so that content maps and area
+ * prefetches answer from memory instead of the repository. Snapshots are kept in a {@link MappedByteStore},
+ * captured with the session of the first request that renders a page, and dropped when a publication touches one
+ * of its pages. The renderer only uses them for anonymous requests, so that a snapshot holds what anonymous
+ * visitors may read. Snapshots that cannot be decoded are dropped and captured again.
+ */
+public class PageSnapshots implements InvalidationListener {
+
+    public static final String REGION = "snapshots";
+    public static final String WORKSPACE = RepositoryConstants.WEBSITE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageSnapshots.class);
+
+    private static final int CAPACITY = 64 * 1024 * 1024;
+    // areas, components, their areas and so on
+    private static final int MAX_DEPTH = 16;
+    private static final int MAX_SUPPLIERS = 16;
+    private static final long OBSERVATION_DELAY = 1000;
+    private static final long OBSERVATION_MAX_DELAY = 5000;
+    private static final String SUPPLIER_PAGE = "mgnl:supplierPage";
+
+    private final ConcurrentMap<String, List<String>> rootPaths = new ConcurrentHashMap<String, List<String>>();
+    private final AtomicLong generation = new AtomicLong();
+    private final File directory;
+    private final boolean observed;
+    private MappedByteStore store;
+    private EventListener listener;
+    private volatile boolean started;
+
+    public PageSnapshots() {
+        this(new File(System.getProperty("java.io.tmpdir"), "magnolia-handlebars-snapshots"), true);
+    }
+
+    /**
+     * @param directory the directory of the store's segments, which other instances may share
+     * @param observed  whether the snapshots listen to changes in the workspace themselves; snapshots that do not
+     *                  are only invalidated through {@link #invalidate(String)} and {@link #clear()}
+     */
+    public PageSnapshots(File directory, boolean observed) {
+        this.directory = directory;
+        this.observed = observed;
+    }
+
+    /**
+     * @return the snapshots of the page and its supplier pages, captured with the session of the page if there is
+     * no snapshot yet or it cannot be decoded
+     */
+    public List<NodeSnapshot> get(Node page) throws RepositoryException {
+        if (!started) {
+            start();
+        }
+        String identifier = page.getIdentifier();
+        ByteBuffer record = store.get(identifier);
+        if (record != null) {
+            try {
+                List<NodeSnapshot> snapshots = SnapshotCodec.decode(record);
+                if (snapshots != null) {
+                    return snapshots;
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Dropping corrupt snapshot of page " + identifier, e);
+            }
+            rootPaths.remove(identifier);
+            store.remove(identifier);
+        }
+        try {
+            return build(page, generation.get());
+        } catch (IOException e) {
+            LOGGER.error("Cannot build snapshot of page " + identifier, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the generation to pass to {@link #build(Node, long)}, which changes with every invalidation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Captures the page and its supplier chain and stores the snapshot, unless an invalidation happened since the
+     * generation was read.
+     *
+     * @return the captured snapshots
+     */
+    public List<NodeSnapshot> build(Node page, long expectedGeneration) throws RepositoryException, IOException {
+        if (!started) {
+            start();
+        }
+        List<NodeSnapshot> snapshots = new ArrayList<NodeSnapshot>();
+        List<String> paths = new ArrayList<String>();
+        Set<String> visited = new HashSet<String>();
+        Node current = page;
+        while (current != null && visited.add(current.getIdentifier()) && visited.size() <= MAX_SUPPLIERS) {
+            snapshots.add(NodeSnapshot.captureTree(current, MAX_DEPTH, NodeTypes.Page.NAME));
+            paths.add(current.getPath());
+            String supplierId = PropertyUtil.getString(current, SUPPLIER_PAGE);
+            current = supplierId != null ? current.getSession().getNodeByIdentifier(supplierId) : null;
+        }
+        String identifier = page.getIdentifier();
+        if (expectedGeneration == generation.get() && store.put(identifier, SnapshotCodec.encode(snapshots))) {
+            rootPaths.put(identifier, paths);
+            // an invalidation that missed the paths above increased the generation before this check
+            if (expectedGeneration != generation.get()) {
+                rootPaths.remove(identifier);
+                store.remove(identifier);
+            }
+        }
+        return snapshots;
+    }
+
+    public void invalidate(String path) {
+        generation.incrementAndGet();
+        for (Map.Entry<String, List<String>> entry : rootPaths.entrySet()) {
+            for (String rootPath : entry.getValue()) {
+                if (ObservedCache.isRelated(rootPath, path)) {
+                    rootPaths.remove(entry.getKey());
+                    store.remove(entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(String workspace, String path) {
+        if (WORKSPACE.equals(workspace)) {
+            invalidate(path);
+        }
+    }
+
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        rootPaths.clear();
+        if (started) {
+            store.clear();
+        }
+    }
+
+    public int size() {
+        return started ? store.size() : 0;
+    }
+
+    MappedByteStore getStore() {
+        return store;
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        if (listener != null) {
+            ObservationUtil.unregisterChangeListener(WORKSPACE, listener);
+        }
+        store.close();
+        rootPaths.clear();
+    }
+
+    private synchronized void start() throws RepositoryException {
+        if (started) {
+            return;
+        }
+        try {
+            store = new MappedByteStore(directory, CAPACITY);
+        } catch (IOException e) {
+            throw new RepositoryException("Cannot create page snapshot store", e);
+        }
+        started = true;
+        if (!observed) {
+            return;
+        }
+        listener = new EventListener() {
+            @Override
+            public void onEvent(EventIterator events) {
+                while (events.hasNext()) {
+                    Event event = events.nextEvent();
+                    try {
+                        invalidate(event.getPath());
+                    } catch (RepositoryException e) {
+                        LOGGER.warn("Cannot read event path, dropping all page snapshots", e);
+                        clear();
+                        return;
+                    }
+                }
+            }
+        };
+        ObservationUtil.registerDeferredChangeListener(WORKSPACE, "/", listener,
+                OBSERVATION_DELAY, OBSERVATION_MAX_DELAY);
+    }
+}
@@ -0,0 +1,170 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.cache.PageRecorder;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.profile.RenderProfile;
+import com.magnoliales.handlebars.profile.RenderProfiles;
+import info.magnolia.cms.core.AggregationState;
+import info.magnolia.context.Context;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.objectfactory.Components;
+import info.magnolia.rendering.context.RenderingContext;
+
+import javax.jcr.Node;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * State of a single render: the Magnolia context, rendering context, aggregation state, locale, prefetched
+ * content, render profile and page recorder, captured once on the thread that starts the render. The renderer
+ * passes it to helpers through the Handlebars context data ({@link #from(Options)}) and to
+ * {@link ChainedContentMap}, so neither looks it up from thread bound holders. {@link #wrap(Callable)} carries the
+ * scope to tasks running on other threads.
+ */
+public final class RenderScope {
+
+    public static final String DATA_KEY = RenderScope.class.getName();
+
+    private final Context mgnlContext;
+    private final RenderingContext renderingContext;
+    private final AggregationState aggregationState;
+    private final ComponentProvider componentProvider;
+    private final LocaleKeyTable keyTable;
+    private final ContentSnapshots snapshots;
+    private final RenderProfile profile;
+    private final JcrReads jcrReads;
+    private final PageRecorder recorder;
+
+    public RenderScope(Context mgnlContext, RenderingContext renderingContext, AggregationState aggregationState,
+                       ComponentProvider componentProvider, LocaleKeyTable keyTable, ContentSnapshots snapshots,
+                       RenderProfile profile, JcrReads jcrReads, PageRecorder recorder) {
+        this.mgnlContext = mgnlContext;
+        this.renderingContext = renderingContext;
+        this.aggregationState = aggregationState;
+        this.componentProvider = componentProvider;
+        this.keyTable = keyTable;
+        this.snapshots = snapshots;
+        this.profile = profile;
+        this.jcrReads = jcrReads;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Captures the state of the calling thread. Renders nested in the same request share the prefetched content,
+     * the profile, the read accounting, which is enabled by {@code accountReads} or by profiling, and the recorder
+     * of the page cache.
+     */
+    public static RenderScope capture(RenderingContext renderingContext, AggregationState aggregationState,
+                                      LocaleFallbacks localeFallbacks, boolean accountReads) {
+        RenderProfile profile = RenderProfiles.forRequest();
+        return new RenderScope(MgnlContext.getInstance(), renderingContext, aggregationState,
+                Components.getComponentProvider(), localeFallbacks.getKeyTable(aggregationState.getLocale()),
+                ContentSnapshots.getOrCreate(), profile, JcrReads.forRequest(accountReads, profile),
+                PageRecorder.current());
+    }
+
+    /**
+     * @return the scope of the render the helper is applied in, or null outside of {@link HandlebarsRenderer}
+     */
+    public static RenderScope from(Options options) {
+        return options.data(DATA_KEY);
+    }
+
+    /**
+     * Returns a task that runs with this scope's Magnolia context bound to the executing thread and restores the
+     * previous binding afterwards.
+     */
+    public <T> Callable<T> wrap(final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Context previous = MgnlContext.hasInstance() ? MgnlContext.getInstance() : null;
+                if (previous == mgnlContext) {
+                    return task.call();
+                }
+                MgnlContext.setInstance(mgnlContext);
+                try {
+                    return task.call();
+                } finally {
+                    MgnlContext.setInstance(previous);
+                }
+            }
+        };
+    }
+
+    public Context getMgnlContext() {
+        return mgnlContext;
+    }
+
+    public RenderingContext getRenderingContext() {
+        return renderingContext;
+    }
+
+    public AggregationState getAggregationState() {
+        return aggregationState;
+    }
+
+    public ComponentProvider getComponentProvider() {
+        return componentProvider;
+    }
+
+    public Locale getLocale() {
+        return aggregationState.getLocale();
+    }
+
+    public LocaleKeyTable getKeyTable() {
+        return keyTable;
+    }
+
+    public ContentSnapshots getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @return the profile of the request, or null if it is not profiled
+     */
+    public RenderProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return the read accounting of the request, or null if reads are not accounted
+     */
+    public JcrReads getJcrReads() {
+        return jcrReads;
+    }
+
+    /**
+     * @return the recorder of the page dependencies, or null if the page is not recorded for the page cache
+     */
+    public PageRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Records the node as a dependency of the page if the page is recorded.
+     */
+    public void record(Node node) {
+        if (recorder != null) {
+            recorder.record(JcrReads.unwrap(node));
+        }
+    }
+
+    /**
+     * Records the item at the path as a dependency of the page if the page is recorded.
+     */
+    public void record(String workspace, String path) {
+        if (recorder != null && path != null) {
+            recorder.record(workspace, path, false);
+        }
+    }
+
+    /**
+     * @return the node, wrapped to account for the reads made through it if reads are accounted
+     */
+    public Node account(Node node) {
+        return jcrReads != null ? jcrReads.wrap(node) : node;
+    }
+}
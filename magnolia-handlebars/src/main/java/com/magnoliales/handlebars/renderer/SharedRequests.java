@@ -0,0 +1,43 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.profile.RenderProfiles;
+import info.magnolia.cms.security.User;
+import info.magnolia.cms.security.UserManager;
+import info.magnolia.context.MgnlContext;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Requests whose pages render the same for every visitor: anonymous, unprofiled GET requests without parameters.
+ * Only their output is cached, validated or shared with other visitors.
+ */
+public final class SharedRequests {
+
+    private SharedRequests() {
+    }
+
+    /**
+     * @return whether the current request renders the same for every visitor, false outside of requests
+     */
+    public static boolean isShared() {
+        if (!MgnlContext.isWebContext()) {
+            return false;
+        }
+        HttpServletRequest request = MgnlContext.getWebContext().getRequest();
+        User user = MgnlContext.getUser();
+        return "GET".equals(request.getMethod()) && request.getQueryString() == null
+                && (user == null || UserManager.ANONYMOUS_USER.equals(user.getName()))
+                && RenderProfiles.forRequest() == null;
+    }
+
+    /**
+     * @return the server name and URI of the current request, or null unless it is shared
+     */
+    public static String getKey() {
+        if (!isShared()) {
+            return null;
+        }
+        HttpServletRequest request = MgnlContext.getWebContext().getRequest();
+        return request.getServerName() + request.getRequestURI();
+    }
+}
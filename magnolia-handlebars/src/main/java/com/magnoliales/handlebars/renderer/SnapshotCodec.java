@@ -0,0 +1,198 @@
+package com.magnoliales.handlebars.renderer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Compact binary form of {@link NodeSnapshot} trees. Strings are length prefixed UTF-8, property values carry a
+ * one byte type tag.
+ */
+public final class SnapshotCodec {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int VERSION = 1;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte DECIMAL = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DATE = 6;
+
+    private SnapshotCodec() {
+    }
+
+    public static byte[] encode(List<NodeSnapshot> snapshots) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_CAPACITY);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeInt(snapshots.size());
+        for (NodeSnapshot snapshot : snapshots) {
+            write(out, snapshot);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the decoded snapshots, or null if the buffer was written by another version of the codec
+     * @throws IOException if the buffer is truncated or corrupt
+     */
+    public static List<NodeSnapshot> decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.get() != VERSION) {
+                return null;
+            }
+            int count = readCount(buffer);
+            List<NodeSnapshot> snapshots = new ArrayList<NodeSnapshot>(count);
+            for (int i = 0; i < count; i++) {
+                snapshots.add(read(buffer));
+            }
+            return snapshots;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt snapshot", e);
+        } catch (NegativeArraySizeException e) {
+            throw new IOException("Corrupt snapshot", e);
+        }
+    }
+
+    private static void write(DataOutputStream out, NodeSnapshot snapshot) throws IOException {
+        writeString(out, snapshot.getName());
+        writeString(out, snapshot.getIdentifier());
+        writeString(out, snapshot.getPath());
+        writeString(out, snapshot.getWorkspace());
+        out.writeBoolean(snapshot.isComplete());
+        Map<String, Object> properties = snapshot.getProperties();
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            writeString(out, property.getKey());
+            writeValue(out, property.getValue());
+        }
+        Set<String> uncaptured = snapshot.getUncaptured();
+        out.writeInt(uncaptured.size());
+        for (String name : uncaptured) {
+            writeString(out, name);
+        }
+        out.writeInt(snapshot.getChildren().size());
+        for (NodeSnapshot child : snapshot.getChildren()) {
+            write(out, child);
+        }
+    }
+
+    private static NodeSnapshot read(ByteBuffer buffer) {
+        String name = readString(buffer);
+        String identifier = readString(buffer);
+        String path = readString(buffer);
+        String workspace = readString(buffer);
+        boolean complete = buffer.get() != 0;
+        int propertyCount = readCount(buffer);
+        Map<String, Object> properties = new HashMap<String, Object>(propertyCount * 2);
+        for (int i = 0; i < propertyCount; i++) {
+            String key = readString(buffer);
+            properties.put(key, readValue(buffer));
+        }
+        int uncapturedCount = readCount(buffer);
+        Set<String> uncaptured = uncapturedCount == 0 ? Collections.<String>emptySet() : new HashSet<String>();
+        for (int i = 0; i < uncapturedCount; i++) {
+            uncaptured.add(readString(buffer));
+        }
+        int childCount = readCount(buffer);
+        Map<String, NodeSnapshot> children = childCount == 0
+                ? Collections.<String, NodeSnapshot>emptyMap()
+                : new LinkedHashMap<String, NodeSnapshot>(childCount * 2);
+        for (int i = 0; i < childCount; i++) {
+            NodeSnapshot child = read(buffer);
+            children.put(child.getName(), child);
+        }
+        return new NodeSnapshot(name, identifier, path, workspace, properties, children, uncaptured, complete);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) value;
+            out.writeByte(DATE);
+            out.writeLong(calendar.getTimeInMillis());
+            writeString(out, calendar.getTimeZone().getID());
+        } else {
+            throw new IOException("Cannot encode " + value.getClass());
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case STRING:
+                return readString(buffer);
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case DECIMAL:
+                return new BigDecimal(readString(buffer));
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case DATE:
+                long millis = buffer.getLong();
+                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(readString(buffer)));
+                calendar.setTimeInMillis(millis);
+                return calendar;
+            default:
+                throw new IllegalArgumentException("Unknown value type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readCount(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    // every counted element takes at least a byte, larger counts come from corrupt records
+    private static int readCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,231 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.internal.HbsLexer;
+import com.github.jknack.handlebars.internal.HbsParser;
+import com.github.jknack.handlebars.internal.HbsParserBaseVisitor;
+import com.magnoliales.handlebars.metrics.JcrReadMetrics;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds a {@link TemplateManifest} per compiled template by walking its syntax tree. Comments and string literals
+ * are skipped, and references below {@code content} are only collected where they resolve against the page's
+ * content: outside of blocks changing the context, such as {@code with} and {@code each}, or with as many
+ * {@code ../} as blocks inside of them. Partials are analysed recursively, so the manifest of a template extending
+ * a layout includes everything the layout reads; the content paths of partials rendered with another context are
+ * left out. Every analysis is published in the {@link JcrReadMetrics} MBean.
+ */
+public class TemplateAnalyzer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplateAnalyzer.class);
+
+    private static final String CONTENT = "content.";
+    private static final String PARENT = "../";
+    private static final String AREA_HELPER = "cms-area";
+    // helpers rendering their body with the context they are called with
+    private static final Set<String> SAME_CONTEXT_HELPERS = new HashSet<String>(Arrays.asList("if", "unless"));
+
+    private final Handlebars handlebars;
+    private final ConcurrentMap<String, Analysis> analyses = new ConcurrentHashMap<String, Analysis>();
+
+    public TemplateAnalyzer(Handlebars handlebars) {
+        this.handlebars = handlebars;
+    }
+
+    public TemplateManifest getManifest(String templateName, Template template) {
+        Analysis analysis = analyses.get(templateName);
+        if (analysis == null || analysis.template != template) {
+            analysis = new Analysis(template, analyze(templateName, template, new HashSet<String>()));
+            analyses.put(templateName, analysis);
+            JcrReadMetrics.getInstance().recordTemplate(templateName, analysis.manifest.toString());
+            LOGGER.debug("Analysed template {}", analysis.manifest);
+        }
+        return analysis.manifest;
+    }
+
+    public Map<String, TemplateManifest> getManifests() {
+        Map<String, TemplateManifest> manifests = new TreeMap<String, TemplateManifest>();
+        for (Map.Entry<String, Analysis> entry : analyses.entrySet()) {
+            manifests.put(entry.getKey(), entry.getValue().manifest);
+        }
+        return manifests;
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (TemplateManifest manifest : getManifests().values()) {
+            report.append(manifest).append('\n');
+        }
+        return report.toString();
+    }
+
+    private TemplateManifest analyze(String templateName, Template template, Set<String> visited) {
+        visited.add(templateName);
+        TemplateManifest manifest = new TemplateManifest(templateName);
+        HbsLexer lexer = new HbsLexer(new ANTLRInputStream(template.text()), Handlebars.DELIM_START,
+                Handlebars.DELIM_END);
+        lexer.removeErrorListeners();
+        HbsParser parser = new HbsParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            new ManifestBuilder(manifest, visited).visit(parser.template());
+        } catch (ParseCancellationException e) {
+            LOGGER.warn("Cannot analyse template {}", templateName, e);
+        }
+        return manifest;
+    }
+
+    private static String unquote(TerminalNode literal) {
+        String text = literal.getText();
+        return text.substring(1, text.length() - 1).replace("\\" + text.charAt(0), String.valueOf(text.charAt(0)));
+    }
+
+    private static final class Analysis {
+
+        private final Template template;
+        private final TemplateManifest manifest;
+
+        private Analysis(Template template, TemplateManifest manifest) {
+            this.template = template;
+            this.manifest = manifest;
+        }
+    }
+
+    /**
+     * Adds the helpers, areas, partials and content paths of the statements it visits to a manifest.
+     */
+    private final class ManifestBuilder extends HbsParserBaseVisitor<Void> {
+
+        private final TemplateManifest manifest;
+        private final Set<String> visited;
+        // blocks changing the context around the visited statement
+        private int depth;
+
+        private ManifestBuilder(TemplateManifest manifest, Set<String> visited) {
+            this.manifest = manifest;
+            this.visited = visited;
+        }
+
+        @Override
+        public Void visitComment(HbsParser.CommentContext ctx) {
+            return null;
+        }
+
+        @Override
+        public Void visitSexpr(HbsParser.SexprContext ctx) {
+            String name = ctx.QID().getText();
+            if (handlebars.helper(name) == null) {
+                addReference(name);
+            } else {
+                manifest.addHelper(name);
+            }
+            if (AREA_HELPER.equals(name)) {
+                addArea(ctx.hash());
+            }
+            return visitChildren(ctx);
+        }
+
+        @Override
+        public Void visitRefPram(HbsParser.RefPramContext ctx) {
+            addReference(ctx.QID().getText());
+            return null;
+        }
+
+        @Override
+        public Void visitRefHash(HbsParser.RefHashContext ctx) {
+            addReference(ctx.QID().getText());
+            return null;
+        }
+
+        @Override
+        public Void visitBlock(HbsParser.BlockContext ctx) {
+            visit(ctx.sexpr());
+            boolean changesContext = !SAME_CONTEXT_HELPERS.contains(ctx.sexpr().QID().getText());
+            if (changesContext) {
+                depth++;
+            }
+            try {
+                visit(ctx.body());
+            } finally {
+                if (changesContext) {
+                    depth--;
+                }
+            }
+            // the inverse is rendered with the context of the block
+            if (ctx.elseBlock() != null) {
+                visit(ctx.elseBlock());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnless(HbsParser.UnlessContext ctx) {
+            addReference(ctx.QID(0).getText());
+            return visit(ctx.body());
+        }
+
+        @Override
+        public Void visitPartial(HbsParser.PartialContext ctx) {
+            String partialName = ctx.PATH().getText();
+            manifest.addPartial(partialName);
+            if (ctx.QID() != null) {
+                addReference(ctx.QID().getText());
+            }
+            if (!visited.contains(partialName)) {
+                try {
+                    TemplateManifest partial = analyze(partialName, handlebars.compile(partialName), visited);
+                    manifest.merge(partial, depth == 0 && ctx.QID() == null);
+                } catch (IOException e) {
+                    LOGGER.warn("Cannot analyse partial {} of {}", partialName, manifest.getTemplateName());
+                }
+            }
+            return null;
+        }
+
+        private void addArea(List<HbsParser.HashContext> hash) {
+            for (HbsParser.HashContext entry : hash) {
+                if ("name".equals(entry.QID().getText())) {
+                    HbsParser.HashValueContext value = entry.hashValue();
+                    if (value instanceof HbsParser.StringHashContext) {
+                        manifest.addArea(unquote(((HbsParser.StringHashContext) value).DOUBLE_STRING()));
+                    } else if (value instanceof HbsParser.CharHashContext) {
+                        manifest.addArea(unquote(((HbsParser.CharHashContext) value).SINGLE_STRING()));
+                    } else {
+                        manifest.addAreaReference(value.getText());
+                    }
+                }
+            }
+        }
+
+        // paths below content that resolve against the context of the page, with ../ leaving blocks
+        private void addReference(String reference) {
+            String path = reference;
+            int level = depth;
+            while (path.startsWith(PARENT)) {
+                path = path.substring(PARENT.length());
+                level--;
+            }
+            if (level == 0 && path.startsWith(CONTENT) && path.length() > CONTENT.length()) {
+                manifest.addContentPath(path.substring(CONTENT.length()));
+            }
+        }
+    }
+}
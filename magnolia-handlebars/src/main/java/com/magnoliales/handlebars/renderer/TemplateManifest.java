@@ -0,0 +1,93 @@
+package com.magnoliales.handlebars.renderer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What a template, including the partials it pulls in, reads while rendering.
+ */
+public final class TemplateManifest {
+
+    private final String templateName;
+    private final Set<String> contentPaths = new TreeSet<String>();
+    private final Set<String> areas = new TreeSet<String>();
+    private final Set<String> areaReferences = new TreeSet<String>();
+    private final Set<String> partials = new TreeSet<String>();
+    private final Set<String> helpers = new TreeSet<String>();
+
+    TemplateManifest(String templateName) {
+        this.templateName = templateName;
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    /**
+     * Paths below {@code content}, e.g. {@code title} or {@code supplier.title}.
+     */
+    public Set<String> getContentPaths() {
+        return Collections.unmodifiableSet(contentPaths);
+    }
+
+    public Set<String> getAreas() {
+        return Collections.unmodifiableSet(areas);
+    }
+
+    /**
+     * References naming areas, e.g. {@code areaName} for {@code name=areaName}, whose names are only known while
+     * rendering.
+     */
+    public Set<String> getAreaReferences() {
+        return Collections.unmodifiableSet(areaReferences);
+    }
+
+    public Set<String> getPartials() {
+        return Collections.unmodifiableSet(partials);
+    }
+
+    public Set<String> getHelpers() {
+        return Collections.unmodifiableSet(helpers);
+    }
+
+    void addContentPath(String contentPath) {
+        contentPaths.add(contentPath);
+    }
+
+    void addArea(String area) {
+        areas.add(area);
+    }
+
+    void addAreaReference(String reference) {
+        areaReferences.add(reference);
+    }
+
+    void addPartial(String partial) {
+        partials.add(partial);
+    }
+
+    void addHelper(String helper) {
+        helpers.add(helper);
+    }
+
+    /**
+     * @param withContentPaths whether the content paths of the manifest are read from the same content
+     */
+    void merge(TemplateManifest manifest, boolean withContentPaths) {
+        if (withContentPaths) {
+            contentPaths.addAll(manifest.contentPaths);
+        }
+        areas.addAll(manifest.areas);
+        areaReferences.addAll(manifest.areaReferences);
+        partials.addAll(manifest.partials);
+        helpers.addAll(manifest.helpers);
+    }
+
+    @Override
+    public String toString() {
+        return templateName + ": " + contentPaths.size() + " content paths " + contentPaths
+                + ", areas " + areas + (areaReferences.isEmpty() ? "" : " and named by " + areaReferences)
+                + ", partials " + partials + ", helpers " + helpers;
+    }
+}
@@ -0,0 +1,137 @@
+package com.magnoliales.handlebars.renderer;
+
+/**
+ * Collapses the whitespace in the markup of a template source. Every run of whitespace between tags, and between
+ * the attributes of a tag, becomes a single newline if it contained one and a single space otherwise, which
+ * renders the same in HTML. Handlebars tags, attribute values, comments and the content of {@code pre},
+ * {@code textarea}, {@code script} and {@code style} elements are kept as they are; the state carries over
+ * Handlebars tags, so {@code <pre>{{ text }}</pre>} keeps the whitespace around the variable.
+ */
+public final class TemplateMinifier {
+
+    private static final String[] RAW_ELEMENTS = {"pre", "textarea", "script", "style"};
+    private static final String COMMENT_START = "<!--";
+    private static final String COMMENT_END = "-->";
+
+    private final String source;
+    private final StringBuilder out;
+    private int position;
+    private boolean inComment;
+    private boolean inTag;
+    private char quote;
+    private String rawElement;
+    private String openingElement;
+
+    private TemplateMinifier(String source) {
+        this.source = source;
+        this.out = new StringBuilder(source.length());
+    }
+
+    public static String minify(String source) {
+        TemplateMinifier minifier = new TemplateMinifier(source);
+        minifier.run();
+        return minifier.out.toString();
+    }
+
+    private void run() {
+        while (position < source.length()) {
+            int start = source.indexOf("{{", position);
+            int end = start < 0 ? source.length() : start;
+            while (position < end) {
+                markup(end);
+            }
+            if (start >= 0) {
+                position = handlebarsTagEnd(start);
+                out.append(source, start, position);
+            }
+        }
+    }
+
+    // the end of the Handlebars tag starting at the position, or of the source if it is not closed
+    private int handlebarsTagEnd(int start) {
+        String closing = source.startsWith("{{!--", start) ? "--}}" : source.startsWith("{{{", start) ? "}}}" : "}}";
+        int end = source.indexOf(closing, start + 2);
+        return end < 0 ? source.length() : end + closing.length();
+    }
+
+    private void markup(int end) {
+        char c = source.charAt(position);
+        if (inComment) {
+            if (source.startsWith(COMMENT_END, position)) {
+                inComment = false;
+                out.append(COMMENT_END);
+                position += COMMENT_END.length();
+            } else {
+                out.append(c);
+                position++;
+            }
+        } else if (rawElement != null) {
+            if (c == '<' && startsWithIgnoreCase("</" + rawElement)) {
+                rawElement = null;
+                inTag = true;
+            }
+            out.append(c);
+            position++;
+        } else if (quote != 0) {
+            if (c == quote) {
+                quote = 0;
+            }
+            out.append(c);
+            position++;
+        } else if (Character.isWhitespace(c)) {
+            collapse(end);
+        } else if (inTag) {
+            if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                inTag = false;
+                rawElement = openingElement;
+                openingElement = null;
+            }
+            out.append(c);
+            position++;
+        } else {
+            if (source.startsWith(COMMENT_START, position)) {
+                inComment = true;
+                out.append(COMMENT_START);
+                position += COMMENT_START.length();
+                return;
+            }
+            if (c == '<' && position + 1 < source.length() && isTagStart(source.charAt(position + 1))) {
+                inTag = true;
+                openingElement = rawElementAt(position + 1);
+            }
+            out.append(c);
+            position++;
+        }
+    }
+
+    private void collapse(int end) {
+        boolean newline = false;
+        while (position < end && Character.isWhitespace(source.charAt(position))) {
+            newline |= source.charAt(position) == '\n';
+            position++;
+        }
+        out.append(newline ? '\n' : ' ');
+    }
+
+    private static boolean isTagStart(char c) {
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+    }
+
+    // the raw element opened by the tag name at the position, or null
+    private String rawElementAt(int start) {
+        for (String element : RAW_ELEMENTS) {
+            int end = start + element.length();
+            if (source.regionMatches(true, start, element, 0, element.length())
+                    && (end == source.length() || !Character.isLetterOrDigit(source.charAt(end)))) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private boolean startsWithIgnoreCase(String prefix) {
+        return source.regionMatches(true, position, prefix, 0, prefix.length());
+    }
+}
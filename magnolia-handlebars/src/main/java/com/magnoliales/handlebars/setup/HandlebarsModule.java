@@ -1,15 +1,31 @@
 package com.magnoliales.handlebars.setup;
 
+import com.magnoliales.handlebars.cache.DependencyIndex;
+import com.magnoliales.handlebars.cache.PageCache;
+import com.magnoliales.handlebars.cache.PageRevalidator;
+import com.magnoliales.handlebars.cache.SupplierGraph;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import com.magnoliales.handlebars.metrics.JcrReadMetrics;
+import com.magnoliales.handlebars.metrics.PageCacheMetrics;
+import com.magnoliales.handlebars.metrics.RenderBudgetMetrics;
+import com.magnoliales.handlebars.renderer.PageSnapshots;
+import info.magnolia.cms.beans.config.ServerConfiguration;
 import info.magnolia.module.ModuleLifecycle;
 import info.magnolia.module.ModuleLifecycleContext;
 import info.magnolia.module.blossom.module.BlossomModuleSupport;
 import info.magnolia.objectfactory.Components;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.DispatcherServlet;
 
+import javax.jcr.RepositoryException;
+
 public class HandlebarsModule extends BlossomModuleSupport implements ModuleLifecycle {
 
     public static final String SERVLET_NAME = "handlebars-blossom";
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(HandlebarsModule.class);
+
     public void start(ModuleLifecycleContext moduleLifecycleContext) {
         initBlossomDispatcherServlet(SERVLET_NAME,
                 "classpath:/base-handlebars-context.xml classpath:/handlebars-context.xml");
@@ -19,9 +35,48 @@ public class HandlebarsModule extends BlossomModuleSupport implements ModuleLife
                 container.setContext(servlet.getWebApplicationContext());
             }
         }
+        JcrReadMetrics.getInstance().register();
+        PageCacheMetrics.getInstance().register();
+        RenderBudgetMetrics.getInstance().register();
+        if (Components.getComponent(ServerConfiguration.class).isAdmin()) {
+            try {
+                ModuleComponents.get(SupplierGraph.class).start();
+            } catch (RepositoryException e) {
+                LOGGER.error("Cannot build supplier graph, it is built on first use", e);
+            }
+        }
     }
 
     public void stop(ModuleLifecycleContext moduleLifecycleContext) {
+        JcrReadMetrics.getInstance().unregister();
+        PageCacheMetrics.getInstance().unregister();
+        RenderBudgetMetrics.getInstance().unregister();
+        // components that were never created need no stopping, creating them now would start them
+        InvalidationBus invalidationBus = ModuleComponents.getCreated(InvalidationBus.class);
+        if (invalidationBus != null) {
+            invalidationBus.stop();
+        }
+        PageSnapshots pageSnapshots = ModuleComponents.getCreated(PageSnapshots.class);
+        if (pageSnapshots != null) {
+            pageSnapshots.stop();
+        }
+        DependencyIndex dependencyIndex = ModuleComponents.getCreated(DependencyIndex.class);
+        if (dependencyIndex != null) {
+            dependencyIndex.stop();
+        }
+        PageRevalidator pageRevalidator = ModuleComponents.getCreated(PageRevalidator.class);
+        if (pageRevalidator != null) {
+            pageRevalidator.stop();
+        }
+        PageCache pageCache = ModuleComponents.getCreated(PageCache.class);
+        if (pageCache != null) {
+            pageCache.stop();
+        }
+        SupplierGraph supplierGraph = ModuleComponents.getCreated(SupplierGraph.class);
+        if (supplierGraph != null) {
+            supplierGraph.stop();
+        }
+        ModuleComponents.reset();
         super.destroyDispatcherServlets();
         super.closeRootWebApplicationContext();
     }
@@ -1,10 +1,14 @@
 package com.magnoliales.handlebars.setup;
 
 import com.magnoliales.handlebars.fields.TemplateSelectorDefinition;
+import com.magnoliales.handlebars.profile.RenderProfileServlet;
 import info.magnolia.module.DefaultModuleVersionHandler;
 import info.magnolia.module.InstallContext;
+import info.magnolia.module.delta.DeltaBuilder;
+import info.magnolia.module.delta.RegisterServletTask;
 import info.magnolia.module.delta.SetPropertyTask;
 import info.magnolia.module.delta.Task;
+import info.magnolia.module.model.ServletDefinition;
 import info.magnolia.repository.RepositoryConstants;
 
 import java.util.ArrayList;
@@ -12,6 +16,12 @@ import java.util.List;
 
 public class HandlebarsVersionHandler extends DefaultModuleVersionHandler {
 
+    public HandlebarsVersionHandler() {
+        // servlets of the module descriptor are only registered on install
+        register(DeltaBuilder.update("1.1.0", "Registers the render profile servlet")
+                .addTask(new RegisterServletTask(renderProfileServlet())));
+    }
+
     @Override
     protected List<Task> getExtraInstallTasks(InstallContext installContext) {
         List<Task> tasks = new ArrayList<Task>();
@@ -23,4 +33,16 @@ public class HandlebarsVersionHandler extends DefaultModuleVersionHandler {
                 "class", TemplateSelectorDefinition.class.getName()));
         return tasks;
     }
+
+    /**
+     * @return the {@code RenderProfileServlet} of the module descriptor
+     */
+    private static ServletDefinition renderProfileServlet() {
+        ServletDefinition servlet = new ServletDefinition();
+        servlet.setName("RenderProfileServlet");
+        servlet.setClassName(RenderProfileServlet.class.getName());
+        servlet.setComment("Serves recorded handlebars render profiles as JSON");
+        servlet.addMapping("/.handlebars/profile");
+        return servlet;
+    }
 }
@@ -0,0 +1,40 @@
+package com.magnoliales.handlebars.setup;
+
+import info.magnolia.objectfactory.Components;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The components of the module that are created on demand, such as caches enabled in the renderer configuration.
+ * Getting them through this class records that they were created, so that the module stops those when it stops
+ * instead of creating the others.
+ */
+public final class ModuleComponents {
+
+    private static final Set<Class<?>> CREATED = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+    private ModuleComponents() {
+    }
+
+    public static <T> T get(Class<T> type) {
+        CREATED.add(type);
+        return Components.getComponent(type);
+    }
+
+    /**
+     * @return the component if it was got through {@link #get(Class)} since the module was last stopped, otherwise
+     * null
+     */
+    public static <T> T getCreated(Class<T> type) {
+        return CREATED.contains(type) ? Components.getComponent(type) : null;
+    }
+
+    /**
+     * Forgets the created components once the module stopped them.
+     */
+    public static void reset() {
+        CREATED.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package com.magnoliales.handlebars;
+
+import info.magnolia.context.Context;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.context.SystemContext;
+import info.magnolia.context.WebContext;
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.objectfactory.Components;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mocked Magnolia contexts whose attributes are kept in a map, for code that keeps request scoped state in
+ * {@link MgnlContext}, and a system context handing out one session. Uninstall them with {@link #uninstall()} after
+ * every test.
+ */
+public final class TestContexts {
+
+    private TestContexts() {
+    }
+
+    public static Context install() {
+        return install(mock(Context.class));
+    }
+
+    public static WebContext installWebContext() {
+        return install(mock(WebContext.class));
+    }
+
+    /**
+     * Installs a system context, looked up as a component as Magnolia does, that returns the session for every
+     * workspace.
+     */
+    public static SystemContext installSystemContext(Session session) throws RepositoryException {
+        SystemContext context = mock(SystemContext.class);
+        when(context.getJCRSession(anyString())).thenReturn(session);
+        ComponentProvider componentProvider = mock(ComponentProvider.class);
+        when(componentProvider.getComponent(SystemContext.class)).thenReturn(context);
+        Components.setComponentProvider(componentProvider);
+        return context;
+    }
+
+    public static void uninstall() {
+        MgnlContext.setInstance(null);
+        Components.setComponentProvider(null);
+    }
+
+    private static <C extends Context> C install(C context) {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        when(context.getAttribute(anyString(), anyInt())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return attributes.get(invocation.getArguments()[0]);
+            }
+        });
+        when(context.getAttribute(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return attributes.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                attributes.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(context).setAttribute(anyString(), any(), anyInt());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                attributes.remove(invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(context).removeAttribute(anyString(), anyInt());
+        MgnlContext.setInstance(context);
+        return context;
+    }
+}
@@ -0,0 +1,93 @@
+package com.magnoliales.handlebars;
+
+import org.apache.jackrabbit.commons.cnd.CndImporter;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.junit.rules.ExternalResource;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+/**
+ * In-memory Jackrabbit repository with the Magnolia node types pages, areas and components are made of. Use it as
+ * a class rule and {@link #clean(Session)} the workspace after every test.
+ */
+public class TestRepository extends ExternalResource {
+
+    public static final String WEBSITE = "website";
+
+    private static final String NODE_TYPES = "<mgnl = 'http://www.magnolia.info/jcr/mgnl'>\n"
+            + "[mgnl:content] > nt:unstructured, mix:referenceable\n"
+            + "[mgnl:contentNode] > nt:unstructured, mix:referenceable\n"
+            + "[mgnl:page] > mgnl:content\n"
+            + "[mgnl:area] > mgnl:contentNode\n"
+            + "[mgnl:component] > mgnl:contentNode\n";
+
+    private File home;
+    private RepositoryImpl repository;
+
+    @Override
+    protected void before() throws IOException, RepositoryException, ParseException {
+        home = File.createTempFile("handlebars-test", "");
+        if (!home.delete() || !home.mkdirs()) {
+            throw new IOException("Cannot create repository home " + home);
+        }
+        InputStream configuration = getClass().getResourceAsStream("/test-repository.xml");
+        try {
+            repository = RepositoryImpl.create(RepositoryConfig.create(configuration, home.getPath()));
+        } finally {
+            configuration.close();
+        }
+        Session session = login(WEBSITE);
+        try {
+            CndImporter.registerNodeTypes(new StringReader(NODE_TYPES), session);
+        } finally {
+            session.logout();
+        }
+    }
+
+    @Override
+    protected void after() {
+        repository.shutdown();
+        delete(home);
+    }
+
+    public Session login(String workspace) throws RepositoryException {
+        return repository.login(new SimpleCredentials("admin", "admin".toCharArray()), workspace);
+    }
+
+    /**
+     * Removes everything but the system node from the workspace of the session.
+     */
+    public void clean(Session session) throws RepositoryException {
+        session.refresh(false);
+        NodeIterator nodes = session.getRootNode().getNodes();
+        while (nodes.hasNext()) {
+            Node node = nodes.nextNode();
+            if (!"jcr:system".equals(node.getName())) {
+                node.remove();
+            }
+        }
+        session.save();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.magnoliales.handlebars.blossom;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.InitBinder;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlossomHandlerMethodAdapterTest {
+
+    private GenericApplicationContext context;
+    private BlossomHandlerMethodMapping mapping;
+    private BlossomHandlerMethodAdapter adapter;
+    private HttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        context = new GenericApplicationContext();
+        context.registerBeanDefinition("textComponent", new RootBeanDefinition(TextComponent.class));
+        context.registerBeanDefinition("formComponent", new RootBeanDefinition(FormComponent.class));
+        context.registerBeanDefinition("callbackComponent", new RootBeanDefinition(CallbackComponent.class));
+        context.refresh();
+        mapping = new BlossomHandlerMethodMapping();
+        mapping.setUseSuffixPatternMatch(false);
+        mapping.setApplicationContext(context);
+        mapping.afterPropertiesSet();
+        RequestMappingHandlerAdapter requestMappingHandlerAdapter = new RequestMappingHandlerAdapter();
+        requestMappingHandlerAdapter.setApplicationContext(context);
+        requestMappingHandlerAdapter.setBeanFactory(context.getBeanFactory());
+        requestMappingHandlerAdapter.afterPropertiesSet();
+        adapter = new BlossomHandlerMethodAdapter(requestMappingHandlerAdapter);
+        response = mock(HttpServletResponse.class);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void invokesPlainControllersResolvedUpFront() throws Exception {
+        HttpServletRequest request = request("/text");
+        Object handler = mapping.getHandler(request).getHandler();
+
+        assertEquals(3, mapping.getResolvedPaths());
+        assertTrue(adapter.supports(handler));
+        ModelAndView modelAndView = adapter.handle(request, response, handler);
+        assertEquals("components/text", modelAndView.getViewName());
+        assertEquals("Text", modelAndView.getModel().get("text"));
+    }
+
+    @Test
+    public void leavesControllersWithBinderMethodsToTheRequestMappingAdapter() throws Exception {
+        Object handler = mapping.getHandler(request("/form")).getHandler();
+
+        assertFalse(adapter.supports(handler));
+        assertFalse(adapter.supports(new TextComponent()));
+    }
+
+    @Test
+    public void completesTheRequestAfterEveryCall() throws Exception {
+        CallbackComponent component = context.getBean(CallbackComponent.class);
+        HttpServletRequest request = request("/callback");
+
+        adapter.handle(request, response, mapping.getHandler(request).getHandler());
+        assertEquals(1, component.completed);
+
+        component.failing = true;
+        try {
+            adapter.handle(request, response, mapping.getHandler(request).getHandler());
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(CallbackComponent.FAILURE, e.getMessage());
+        }
+        assertEquals(2, component.completed);
+    }
+
+    private static HttpServletRequest request(String path) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRequestURI()).thenReturn(path);
+        when(request.getServletPath()).thenReturn(path);
+        when(request.getContextPath()).thenReturn("");
+        when(request.getMethod()).thenReturn("GET");
+        return request;
+    }
+
+    /**
+     * A plain controller.
+     */
+    @Controller
+    public static class TextComponent {
+
+        @RequestMapping("/text")
+        public String render(Model model) {
+            model.addAttribute("text", "Text");
+            return "components/text";
+        }
+    }
+
+    /**
+     * A controller customizing data binding.
+     */
+    @Controller
+    public static class FormComponent {
+
+        @InitBinder
+        public void initBinder(WebDataBinder binder) {
+            binder.setIgnoreUnknownFields(false);
+        }
+
+        @RequestMapping("/form")
+        public String render() {
+            return "components/form";
+        }
+    }
+
+    /**
+     * Counts the completed requests it was called in.
+     */
+    @Controller
+    public static class CallbackComponent {
+
+        static final String FAILURE = "failed";
+
+        private volatile int completed;
+        private volatile boolean failing;
+
+        @RequestMapping("/callback")
+        public String render(NativeWebRequest request) {
+            request.registerDestructionCallback("callback", new Runnable() {
+                @Override
+                public void run() {
+                    completed++;
+                }
+            }, RequestAttributes.SCOPE_REQUEST);
+            if (failing) {
+                throw new IllegalStateException(FAILURE);
+            }
+            return "components/callback";
+        }
+    }
+}
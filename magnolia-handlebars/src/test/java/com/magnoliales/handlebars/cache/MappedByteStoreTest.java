@@ -0,0 +1,101 @@
+package com.magnoliales.handlebars.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedByteStoreTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int CAPACITY = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedByteStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        store = new MappedByteStore(folder.getRoot(), CAPACITY);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void returnsStoredRecords() {
+        assertTrue(store.put("a", bytes("first")));
+        assertTrue(store.put("b", bytes("second")));
+
+        assertEquals("first", string(store.get("a")));
+        assertEquals("second", string(store.get("b")));
+        assertNull(store.get("c"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void compactsLiveRecordsWhenTheSegmentIsFull() {
+        String record = "0123456789abcdefghij";
+        assertTrue(store.put("a", bytes(record)));
+        assertTrue(store.put("b", bytes(record)));
+        store.remove("a");
+        assertTrue(store.put("b", bytes("replaced")));
+        assertTrue(store.put("c", bytes(record)));
+        assertTrue(store.put("d", bytes(record)));
+
+        assertNull(store.get("a"));
+        assertEquals("replaced", string(store.get("b")));
+        assertEquals(record, string(store.get("c")));
+        assertEquals(record, string(store.get("d")));
+        assertEquals(store.getUsedBytes(), store.getLiveBytes());
+    }
+
+    @Test
+    public void rejectsRecordsThatDoNotFit() {
+        assertFalse(store.put("a", new byte[CAPACITY + 1]));
+        assertTrue(store.put("b", new byte[CAPACITY]));
+        assertFalse(store.put("c", new byte[1]));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void keepsItsSegmentsApartFromStoresSharingTheDirectory() throws IOException {
+        MappedByteStore other = new MappedByteStore(folder.getRoot(), CAPACITY);
+        try {
+            store.put("a", bytes("mine"));
+            other.put("a", bytes("theirs"));
+            other.clear();
+
+            assertEquals("mine", string(store.get("a")));
+        } finally {
+            other.close();
+        }
+        MappedByteStore restarted = new MappedByteStore(folder.getRoot(), CAPACITY);
+        restarted.close();
+
+        assertEquals("mine", string(store.get("a")));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(UTF8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
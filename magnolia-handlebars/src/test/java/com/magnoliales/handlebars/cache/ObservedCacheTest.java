@@ -0,0 +1,105 @@
+package com.magnoliales.handlebars.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ObservedCacheTest {
+
+    private ObservedCache<String> cache;
+
+    @Before
+    public void setUp() {
+        cache = new ObservedCache<String>("dam", 3, false);
+    }
+
+    @Test
+    public void relatesSamePathsAncestorsAndDescendants() {
+        assertTrue(ObservedCache.isRelated("/a/b", "/a/b"));
+        assertTrue(ObservedCache.isRelated("/a/b", "/a"));
+        assertTrue(ObservedCache.isRelated("/a/b", "/a/b/c"));
+        assertTrue(ObservedCache.isRelated("/a/b", "/"));
+        assertFalse(ObservedCache.isRelated("/a/b", "/a/bc"));
+        assertFalse(ObservedCache.isRelated("/a/bc", "/a/b"));
+        assertFalse(ObservedCache.isRelated("/a/b", "/a/c"));
+    }
+
+    @Test
+    public void invalidatesEntriesRelatedToAnyOfTheirPaths() {
+        put("image", "/images/a");
+        cache.put("gallery", Arrays.asList("/images/b", "/images/c"), "gallery", cache.getGeneration());
+        put("document", "/documents/d");
+
+        cache.invalidate("/images/c/jcr:content");
+
+        assertEquals("image", cache.get("image"));
+        assertNull(cache.get("gallery"));
+        assertEquals("document", cache.get("document"));
+
+        cache.invalidate("/images");
+
+        assertNull(cache.get("image"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() {
+        put("a", "/a");
+        put("b", "/b");
+        put("c", "/c");
+        cache.get("a");
+
+        put("d", "/d");
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a"));
+        assertEquals("c", cache.get("c"));
+        assertEquals("d", cache.get("d"));
+    }
+
+    @Test
+    public void doesNotEvictLiveEntriesForInvalidatedOrReplacedOnes() {
+        put("a", "/a");
+        put("b", "/b");
+        cache.invalidate("/a");
+        put("a", "/a");
+        put("a", "/a");
+        put("c", "/c");
+
+        assertEquals(3, cache.size());
+        assertEquals("b", cache.get("b"));
+        assertEquals("a", cache.get("a"));
+        assertEquals("c", cache.get("c"));
+    }
+
+    @Test
+    public void dropsValuesComputedWhileAnInvalidationHappened() {
+        long generation = cache.getGeneration();
+        cache.invalidate("/unrelated");
+
+        assertFalse(cache.put("a", "/a", "stale", generation));
+        assertNull(cache.get("a"));
+        assertTrue(cache.put("a", "/a", "current", cache.getGeneration()));
+        assertEquals("current", cache.get("a"));
+    }
+
+    @Test
+    public void dropsValuesComputedWhileTheCacheWasCleared() {
+        long generation = cache.getGeneration();
+        cache.clear();
+
+        assertFalse(cache.put("a", "/a", "stale", generation));
+        assertEquals(0, cache.size());
+    }
+
+    private void put(String key, String path) {
+        assertTrue(cache.put(key, path, key, cache.getGeneration()));
+    }
+}
@@ -0,0 +1,126 @@
+package com.magnoliales.handlebars.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapPageOutputStoreTest {
+
+    private static final int SLAB_SIZE = 64;
+    // 20 bytes, two records of a page and its header fit into a slab
+    private static final String PAGE = "<p>Page output %s</p>";
+    private static final int LARGE_SLAB_SIZE = 65536;
+    private static final int LARGE_PAGE_REPEATS = 4000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesPagesAndTheirCompressionAsUtf8InChunks() throws IOException {
+        OffHeapPageOutputStore store = new OffHeapPageOutputStore(2 * LARGE_SLAB_SIZE, LARGE_SLAB_SIZE);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < LARGE_PAGE_REPEATS; i++) {
+            large.append("Gr\u00FC\u00DFe \u20AC ");
+        }
+        byte[] compressed = {1, 2, 3};
+        store.put("large", large.toString(), compressed);
+
+        assertEquals(large.toString(), store.get("large"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(store.writeTo("large", out));
+        assertArrayEquals(large.toString().getBytes("UTF-8"), out.toByteArray());
+        assertTrue(store.containsCompressed("large"));
+        out.reset();
+        assertTrue(store.writeCompressedTo("large", out));
+        assertArrayEquals(compressed, out.toByteArray());
+
+        store.remove("large");
+        out.reset();
+        assertFalse(store.writeTo("large", out));
+        assertFalse(store.writeCompressedTo("large", out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void dropsThePagesOfTheOldestSlabWhenFull() {
+        OffHeapPageOutputStore store = new OffHeapPageOutputStore(2 * SLAB_SIZE, SLAB_SIZE);
+        for (String key : Arrays.asList("a", "b", "c", "d", "e")) {
+            store.put(key, page(key));
+        }
+
+        assertEquals(2, store.getSlabCount());
+        assertEquals(3, store.size());
+        assertNull(store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(page("c"), store.get("c"));
+        assertEquals(page("e"), store.get("e"));
+    }
+
+    @Test
+    public void dropsTheOldOutputOfPagesTooLargeForASlab() {
+        OffHeapPageOutputStore store = new OffHeapPageOutputStore(2 * SLAB_SIZE, SLAB_SIZE);
+        store.put("a", page("a"));
+        store.put("a", page(page("a") + page("a") + page("a")));
+
+        assertNull(store.get("a"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void doesNotReuseASlabWhileItIsRead() throws IOException {
+        final OffHeapPageOutputStore store = new OffHeapPageOutputStore(2 * SLAB_SIZE, SLAB_SIZE);
+        store.put("a", page("a"));
+        final ByteArrayOutputStream read = new ByteArrayOutputStream();
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                // fills the second slab and needs another one while the first is read
+                for (String key : Arrays.asList("b", "c", "d", "e")) {
+                    store.put(key, page(key));
+                }
+                read.write(bytes, offset, length);
+            }
+        };
+
+        assertTrue(store.writeTo("a", out));
+        assertEquals(page("a"), read.toString("UTF-8"));
+        assertEquals(page("a"), store.get("a"));
+        assertEquals(page("e"), store.get("e"));
+        assertEquals(page("b"), store.get("b"));
+        assertNull(store.get("c"));
+    }
+
+    @Test
+    public void mapsSlabsToFilesThatAreDeleted() throws IOException {
+        File directory = folder.newFolder();
+        OffHeapPageOutputStore store = new OffHeapPageOutputStore(2 * SLAB_SIZE, SLAB_SIZE, directory);
+        for (String key : Arrays.asList("a", "b", "c")) {
+            store.put(key, page(key));
+        }
+
+        assertEquals(page("a"), store.get("a"));
+        assertEquals(page("c"), store.get("c"));
+        assertEquals(0, directory.list().length);
+    }
+
+    private static String page(String key) {
+        return String.format(PAGE, key);
+    }
+}
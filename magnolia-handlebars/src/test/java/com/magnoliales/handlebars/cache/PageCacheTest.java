@@ -0,0 +1,146 @@
+package com.magnoliales.handlebars.cache;
+
+import com.magnoliales.handlebars.TestContexts;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageCacheTest {
+
+    private static final String WEBSITE = "website";
+    private static final int SLAB_SIZE = 1024;
+
+    private PageCache cache;
+
+    @Before
+    public void setUp() {
+        TestContexts.install();
+        cache = new PageCache(new HeapPageOutputStore(), false);
+    }
+
+    @After
+    public void tearDown() {
+        TestContexts.uninstall();
+    }
+
+    @Test
+    public void dropsOnlyThePagesDependingOnAChangedItem() throws IOException {
+        store("home", "/home/main/0", "/home");
+        store("about", "/about/main/0", "/about");
+
+        cache.invalidate(WEBSITE, "/home/main/0/text", false);
+
+        assertNull(cache.get("home"));
+        assertEquals("about", cache.get("about"));
+    }
+
+    @Test
+    public void dropsOutputRecordedWhileAnInvalidationHappened() throws IOException {
+        PageRecorder recorder = cache.startRecording();
+        recorder.record(WEBSITE, "/home", true);
+        write(recorder, "home");
+        cache.invalidate(WEBSITE, "/unrelated", false);
+
+        assertFalse(cache.stopRecording("home", recorder));
+        assertNull(cache.get("home"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyStoredPage() throws IOException {
+        cache.setMaxSize(2);
+        store("a", null, "/a");
+        store("b", null, "/b");
+        store("a", null, "/a");
+        store("a", null, "/a");
+        store("c", null, "/c");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a"));
+        assertEquals("c", cache.get("c"));
+
+        cache.invalidate(WEBSITE, "/a", true);
+        store("a", null, "/a");
+        store("d", null, "/d");
+
+        assertNull(cache.get("c"));
+        assertEquals("a", cache.get("a"));
+        assertEquals("d", cache.get("d"));
+    }
+
+    @Test
+    public void removesEmptyIndexEntries() throws IOException {
+        store("home", "/home/main/0", "/home");
+        store("other", "/home/main/0", "/other");
+        assertEquals(3, cache.getIndexSize());
+
+        cache.remove("other");
+        assertEquals(2, cache.getIndexSize());
+
+        cache.invalidate(WEBSITE, "/home", true);
+        assertEquals(0, cache.getIndexSize());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void keepsInvalidatedPagesAsStaleUnindexed() throws IOException {
+        cache.setMaxStaleness(60000);
+        store("home", "/home/main/0", "/home");
+
+        cache.invalidate(WEBSITE, "/home/main/0", false);
+
+        assertFalse(cache.contains("home"));
+        assertNull(cache.get("home"));
+        assertEquals("home", cache.getStale("home"));
+        assertEquals(0, cache.getIndexSize());
+
+        store("home", "/home/main/0", "/home");
+        assertEquals("home", cache.get("home"));
+        assertEquals(0, cache.getStaleSize());
+    }
+
+    @Test
+    public void writesPagesOfAnOffHeapStoreWithoutDecodingThem() throws IOException {
+        store("old", null, "/old");
+        cache.setStore(new OffHeapPageOutputStore(2 * SLAB_SIZE, SLAB_SIZE));
+        assertEquals(0, cache.size());
+
+        cache.setMaxStaleness(60000);
+        store("home", "/home/main/0", "/home");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(cache.writeTo("home", out));
+        assertEquals("home", out.toString("UTF-8"));
+
+        cache.invalidate(WEBSITE, "/home/main/0", false);
+        out.reset();
+        assertFalse(cache.writeTo("home", out));
+        assertEquals(0, out.size());
+        assertEquals("home", cache.getStale("home"));
+    }
+
+    private void store(String key, String item, String page) throws IOException {
+        PageRecorder recorder = cache.startRecording();
+        if (item != null) {
+            recorder.record(WEBSITE, item, false);
+        }
+        recorder.record(WEBSITE, page, true);
+        write(recorder, key);
+        assertTrue(cache.stopRecording(key, recorder));
+    }
+
+    private static void write(PageRecorder recorder, String output) throws IOException {
+        Writer out = recorder.capture(new StringWriter());
+        out.write(output);
+        out.flush();
+    }
+}
@@ -0,0 +1,150 @@
+package com.magnoliales.handlebars.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PageRevalidatorTest {
+
+    private static final long TIMEOUT = 10;
+    private static final long POLL_MILLIS = 10;
+
+    private final BlockingQueue<HttpExchange> exchanges = new LinkedBlockingQueue<HttpExchange>();
+    private HttpServer server;
+    private PageRevalidator revalidator;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+                exchange.close();
+                exchanges.add(exchange);
+            }
+        });
+        server.start();
+        revalidator = new PageRevalidator();
+    }
+
+    @After
+    public void tearDown() {
+        revalidator.stop();
+        server.stop(0);
+    }
+
+    @Test
+    public void requestsThePageAtTheHostItWasRequestedAt() {
+        HttpServletRequest request = request("www.example.com");
+
+        assertEquals("https://www.example.com:8443/home.html", revalidator.getUrl(request));
+
+        revalidator.setBaseUrl("http://localhost:8080");
+        assertEquals("http://localhost:8080/home.html", revalidator.getUrl(request));
+    }
+
+    @Test
+    public void sendsTheKeyWithATokenOnlyThisInstanceAccepts() throws InterruptedException {
+        HttpServletRequest request = request("127.0.0.1");
+        when(request.getScheme()).thenReturn("http");
+        when(request.getServerPort()).thenReturn(server.getAddress().getPort());
+
+        assertTrue(revalidator.revalidate("127.0.0.1/home.html", request));
+        HttpExchange exchange = exchanges.poll(TIMEOUT, TimeUnit.SECONDS);
+
+        assertNotNull(exchange);
+        assertEquals("/home.html", exchange.getRequestURI().getPath());
+        assertTrue(exchange.getRequestHeaders().getFirst(PageRevalidator.HOST).startsWith("127.0.0.1"));
+        HttpServletRequest revalidation = mock(HttpServletRequest.class);
+        when(revalidation.getHeader(PageRevalidator.HEADER))
+                .thenReturn(exchange.getRequestHeaders().getFirst(PageRevalidator.HEADER));
+        assertEquals("127.0.0.1/home.html", revalidator.getRevalidatedKey(revalidation));
+        assertNull(new PageRevalidator().getRevalidatedKey(revalidation));
+    }
+
+    @Test
+    public void sendsAKeyThatDoesNotMatchTheBaseUrlHostWithoutTheOriginalHost() throws InterruptedException {
+        assumeFalse(PageRevalidator.canSendHost());
+        revalidator.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+
+        assertTrue(revalidator.revalidate("www.example.com/home.html", request("www.example.com")));
+        HttpExchange exchange = exchanges.poll(TIMEOUT, TimeUnit.SECONDS);
+
+        assertNotNull(exchange);
+        String host = exchange.getRequestHeaders().getFirst(PageRevalidator.HOST);
+        assertTrue(host.startsWith("127.0.0.1"));
+        HttpServletRequest revalidation = mock(HttpServletRequest.class);
+        when(revalidation.getHeader(PageRevalidator.HEADER))
+                .thenReturn(exchange.getRequestHeaders().getFirst(PageRevalidator.HEADER));
+        assertEquals("www.example.com/home.html", revalidator.getRevalidatedKey(revalidation));
+        assertNotEquals(host.substring(0, host.indexOf(':')) + exchange.getRequestURI().getPath(),
+                revalidator.getRevalidatedKey(revalidation));
+    }
+
+    @Test
+    public void rendersEachKeyOnceAtATime() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/slow.html", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    release.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+                exchange.close();
+                exchanges.add(exchange);
+            }
+        });
+        revalidator.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        HttpServletRequest request = request("127.0.0.1");
+        when(request.getRequestURI()).thenReturn("/slow.html");
+
+        assertTrue(revalidator.revalidate("127.0.0.1/slow.html", request));
+        assertFalse(revalidator.revalidate("127.0.0.1/slow.html", request));
+        assertEquals(1, revalidator.getInFlight());
+
+        release.countDown();
+        assertNotNull(exchanges.poll(TIMEOUT, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (revalidator.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        assertTrue(revalidator.revalidate("127.0.0.1/slow.html", request));
+    }
+
+    private static HttpServletRequest request(String serverName) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getScheme()).thenReturn("https");
+        when(request.getServerName()).thenReturn(serverName);
+        when(request.getServerPort()).thenReturn(8443);
+        when(request.getRequestURI()).thenReturn("/home.html");
+        when(request.getHeader(PageRevalidator.HOST)).thenReturn(serverName);
+        return request;
+    }
+}
@@ -0,0 +1,152 @@
+package com.magnoliales.handlebars.cache;
+
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.TestRepository;
+import info.magnolia.context.MgnlContext;
+import org.apache.jackrabbit.commons.iterator.EventIteratorAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SupplierGraphTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private Session session;
+    private SupplierGraph graph;
+    private String a;
+    private String b;
+    private String c;
+    private String d;
+    private String e;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        TestContexts.installSystemContext(session);
+        Node root = session.getRootNode();
+        Node pageA = addPage(root, "a", null);
+        Node pageB = addPage(root, "b", pageA);
+        Node pageC = addPage(pageB, "c", pageB);
+        Node pageD = addPage(root, "d", pageA);
+        Node pageE = addPage(root, "e", pageC);
+        session.save();
+        a = pageA.getIdentifier();
+        b = pageB.getIdentifier();
+        c = pageC.getIdentifier();
+        d = pageD.getIdentifier();
+        e = pageE.getIdentifier();
+        graph = new SupplierGraph();
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        graph.stop();
+        TestContexts.uninstall();
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void buildsTheGraphOnFirstUseAndFollowsDependentsTransitively() throws RepositoryException {
+        assertEquals(b, graph.getSupplier(c));
+        assertNull(graph.getSupplier(a));
+        assertEquals(4, graph.size());
+        assertEquals(Arrays.asList(c, b, a), graph.getSupplierChain(e));
+        assertEquals(new HashSet<String>(Arrays.asList(b, d)), graph.getDependents(a));
+        assertTrue(graph.hasDependents(c));
+        assertFalse(graph.hasDependents(e));
+
+        List<String> all = new ArrayList<String>(graph.getAllDependents(a));
+        assertEquals(new HashSet<String>(Arrays.asList(b, d)), new HashSet<String>(all.subList(0, 2)));
+        assertEquals(Arrays.asList(c, e), all.subList(2, all.size()));
+        assertEquals(Arrays.asList("/b", "/b/c", "/d", "/e"),
+                new ArrayList<String>(graph.getAllDependentPaths(a)));
+    }
+
+    @Test
+    public void stopsAtCycles() throws RepositoryException {
+        session.getNode("/a").setProperty(SupplierGraph.SUPPLIER_PAGE, e);
+        session.save();
+
+        assertEquals(Arrays.asList(c, b, a), graph.getSupplierChain(e));
+        assertEquals(new HashSet<String>(Arrays.asList(a, b, c, d)), graph.getAllDependents(e));
+    }
+
+    @Test
+    public void followsChangedSuppliersAndAddedPages() throws RepositoryException {
+        graph.start();
+        session.getNode("/d").setProperty(SupplierGraph.SUPPLIER_PAGE, c);
+        Node f = addPage(session.getNode("/d"), "f", session.getNode("/e"));
+        session.save();
+
+        apply(event(Event.PROPERTY_CHANGED, "/d/" + SupplierGraph.SUPPLIER_PAGE), event(Event.NODE_ADDED, "/d/f"));
+
+        assertEquals(Collections.singleton(b), graph.getDependents(a));
+        assertEquals(new HashSet<String>(Arrays.asList(d, e)), graph.getDependents(c));
+        assertEquals(Collections.singleton(f.getIdentifier()), graph.getDependents(e));
+        assertEquals(Arrays.asList(e, c, b, a), graph.getSupplierChain(f.getIdentifier()));
+    }
+
+    @Test
+    public void dropsTheLinksOfRemovedAndMovedSubtrees() throws RepositoryException {
+        graph.start();
+        session.getNode("/b").remove();
+        session.move("/d", "/a/d");
+        session.save();
+
+        apply(event(Event.NODE_REMOVED, "/b"), event(Event.NODE_REMOVED, "/d"), event(Event.NODE_MOVED, "/a/d"));
+
+        assertEquals(2, graph.size());
+        assertNull(graph.getSupplier(b));
+        assertNull(graph.getSupplier(c));
+        assertEquals(Collections.singleton(d), graph.getDependents(a));
+        assertEquals(Collections.singleton("/a/d"), graph.getAllDependentPaths(a));
+        // e keeps its link to the removed supplier
+        assertEquals(Collections.singleton(e), graph.getDependents(c));
+    }
+
+    private void apply(Event... events) {
+        final EventIteratorAdapter iterator = new EventIteratorAdapter(Arrays.asList(events));
+        MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+            @Override
+            public void doExec() {
+                graph.apply(iterator);
+            }
+        });
+    }
+
+    private static Event event(int type, String path) throws RepositoryException {
+        Event event = mock(Event.class);
+        when(event.getType()).thenReturn(type);
+        when(event.getPath()).thenReturn(path);
+        return event;
+    }
+
+    private static Node addPage(Node parent, String name, Node supplier) throws RepositoryException {
+        Node page = parent.addNode(name, "mgnl:page");
+        if (supplier != null) {
+            page.setProperty(SupplierGraph.SUPPLIER_PAGE, supplier.getIdentifier());
+        }
+        return page;
+    }
+}
@@ -0,0 +1,28 @@
+package com.magnoliales.handlebars.cache;
+
+import java.util.Set;
+
+/**
+ * Starts and inspects {@link PageRecorder}s outside of the {@link PageCache} for tests in other packages.
+ */
+public final class TestRecorders {
+
+    private TestRecorders() {
+    }
+
+    public static PageRecorder start() {
+        return PageRecorder.start(0);
+    }
+
+    public static void stop() {
+        PageRecorder.stop();
+    }
+
+    public static Set<String> getItems(PageRecorder recorder) {
+        return recorder.getItems();
+    }
+
+    public static Set<String> getPages(PageRecorder recorder) {
+        return recorder.getPages();
+    }
+}
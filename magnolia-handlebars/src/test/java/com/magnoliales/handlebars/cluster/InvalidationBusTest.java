@@ -0,0 +1,99 @@
+package com.magnoliales.handlebars.cluster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InvalidationBusTest {
+
+    private static final String REGION = "templates";
+    private static final long BATCH_DELAY = 60000;
+
+    private InvalidationBus sender;
+    private InvalidationBus receiver;
+    private LoopbackTransport senderTransport;
+    private RecordingListener sent;
+    private RecordingListener received;
+
+    @Before
+    public void setUp() throws IOException {
+        String group = getClass().getName() + System.nanoTime();
+        sender = new InvalidationBus();
+        receiver = new InvalidationBus();
+        sent = new RecordingListener();
+        received = new RecordingListener();
+        sender.register(REGION, sent);
+        receiver.register(REGION, received);
+        senderTransport = new LoopbackTransport(group);
+        sender.start(senderTransport, BATCH_DELAY);
+        receiver.start(new LoopbackTransport(group), BATCH_DELAY);
+    }
+
+    @After
+    public void tearDown() {
+        sender.stop();
+        receiver.stop();
+    }
+
+    @Test
+    public void appliesInvalidationsLocallyAndOnOtherInstancesWithTheNextBatch() {
+        sender.invalidate(REGION, REGION, "page");
+
+        assertEquals("templates:page", sent.events.get(0));
+        assertTrue(received.events.isEmpty());
+
+        sender.flush();
+        assertEquals("templates:page", received.events.get(0));
+    }
+
+    @Test
+    public void coalescesInvalidationsOfAClearedRegion() {
+        sender.invalidate(REGION, REGION, "page");
+        sender.clear(REGION);
+        sender.invalidate(REGION, REGION, "header");
+        sender.flush();
+
+        assertEquals(1, received.events.size());
+        assertEquals("clear", received.events.get(0));
+        assertEquals(2, sender.getCoalescedInvalidations());
+    }
+
+    @Test
+    public void clearsAllRegionsAfterMissingAMessage() {
+        sender.invalidate(REGION, REGION, "page");
+        sender.flush();
+        senderTransport.setDropping(true);
+        sender.invalidate(REGION, REGION, "header");
+        sender.flush();
+        senderTransport.setDropping(false);
+        sender.invalidate(REGION, REGION, "footer");
+        sender.flush();
+
+        assertEquals(1, receiver.getResyncs());
+        assertEquals("templates:page", received.events.get(0));
+        assertEquals("clear", received.events.get(1));
+        assertEquals("templates:footer", received.events.get(2));
+    }
+
+    private static final class RecordingListener implements InvalidationListener {
+
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void invalidate(String workspace, String path) {
+            events.add(workspace + ":" + path);
+        }
+
+        @Override
+        public void clear() {
+            events.add("clear");
+        }
+    }
+}
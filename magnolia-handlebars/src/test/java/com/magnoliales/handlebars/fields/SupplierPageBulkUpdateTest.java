@@ -0,0 +1,247 @@
+package com.magnoliales.handlebars.fields;
+
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.TestRepository;
+import com.magnoliales.handlebars.annotations.ParentTemplate;
+import com.magnoliales.handlebars.cache.SupplierGraph;
+import com.magnoliales.handlebars.setup.ApplicationContextContainer;
+import com.magnoliales.handlebars.setup.ModuleComponents;
+import info.magnolia.context.Context;
+import info.magnolia.module.blossom.annotation.Template;
+import info.magnolia.objectfactory.Components;
+import info.magnolia.repository.RepositoryConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class SupplierPageBulkUpdateTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private static final int ARTICLES = 5;
+    private static final int BATCH_SIZE = 2;
+
+    private Session session;
+    private SupplierGraph graph;
+    private SupplierPageBulkUpdate update;
+    private Node section;
+    private Node otherSection;
+    private List<String> articles;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        Context context = TestContexts.install();
+        when(context.getJCRSession(RepositoryConstants.WEBSITE)).thenReturn(session);
+        TestContexts.installSystemContext(session);
+        graph = new SupplierGraph();
+        when(Components.getComponentProvider().getComponent(SupplierGraph.class)).thenReturn(graph);
+
+        section = addPage(session.getRootNode(), "section", SectionTemplate.ID, null);
+        otherSection = addPage(session.getRootNode(), "other-section", SectionTemplate.ID, null);
+        articles = new ArrayList<String>();
+        for (int i = 0; i < ARTICLES; i++) {
+            articles.add(addPage(section, "article" + i, ArticleTemplate.ID, section).getIdentifier());
+        }
+        Collections.sort(articles);
+        session.save();
+
+        StaticApplicationContext applicationContext = new StaticApplicationContext();
+        applicationContext.registerSingleton("section", SectionTemplate.class);
+        applicationContext.registerSingleton("article", ArticleTemplate.class);
+        applicationContext.registerSingleton("chapter", ChapterTemplate.class);
+        applicationContext.refresh();
+        ApplicationContextContainer container = new ApplicationContextContainer();
+        container.setContext(applicationContext);
+        update = new SupplierPageBulkUpdate(container);
+        update.setBatchSize(BATCH_SIZE);
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        graph.stop();
+        ModuleComponents.reset();
+        TestContexts.uninstall();
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void rejectsChangesAgainstTheParentTemplateRules() throws RepositoryException {
+        Node chapter = addPage(session.getRootNode(), "chapter", ChapterTemplate.ID, null);
+        Node subChapter = addPage(chapter, "sub-chapter", ChapterTemplate.ID, chapter);
+        Node area = section.addNode("main", "mgnl:area");
+        session.save();
+        Map<String, String> changes = new HashMap<String, String>();
+        changes.put(articles.get(0), otherSection.getIdentifier());
+        changes.put(articles.get(1), chapter.getIdentifier());
+        changes.put(articles.get(2), area.getIdentifier());
+        changes.put(articles.get(3), "0b5a9c3e-3f0b-4d3c-9a4e-7c1d2e3f4a5b");
+        changes.put(section.getIdentifier(), otherSection.getIdentifier());
+        changes.put(chapter.getIdentifier(), subChapter.getIdentifier());
+
+        SupplierPageBulkUpdate.Result result = update.apply(changes);
+
+        assertTrue(result.isComplete());
+        assertEquals(changes.size(), result.getTotal());
+        assertEquals(1, result.getUpdated());
+        Map<String, String> rejected = result.getRejected();
+        assertEquals("supplier does not use template section", rejected.get(articles.get(1)));
+        assertEquals("not a page", rejected.get(articles.get(2)));
+        assertEquals("not found", rejected.get(articles.get(3)));
+        assertEquals("template section has no parent template", rejected.get(section.getIdentifier()));
+        assertEquals("supplier chain would loop", rejected.get(chapter.getIdentifier()));
+        assertEquals(otherSection.getIdentifier(), supplierOf(articles.get(0)));
+        assertFalse(session.getNodeByIdentifier(chapter.getIdentifier()).hasProperty(SupplierGraph.SUPPLIER_PAGE));
+    }
+
+    @Test
+    public void savesOneBatchAtATimeAndReportsProgress() throws RepositoryException {
+        final Session reader = REPOSITORY.login(TestRepository.WEBSITE);
+        final List<Integer> saved = new ArrayList<Integer>();
+        final List<String> lastSaved = new ArrayList<String>();
+        try {
+            SupplierPageBulkUpdate.Result result = update.apply(moveAll(), null, new SupplierPageBulkUpdate.Progress() {
+                @Override
+                public void saved(SupplierPageBulkUpdate.Result progress) {
+                    try {
+                        reader.refresh(false);
+                        saved.add(countMoved(reader));
+                    } catch (RepositoryException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    lastSaved.add(progress.getLastSaved());
+                }
+            });
+
+            assertTrue(result.isComplete());
+            assertEquals(ARTICLES, result.getUpdated());
+            assertEquals(Arrays.asList(2, 4, 5), saved);
+            assertEquals(Arrays.asList(articles.get(1), articles.get(3), articles.get(4)), lastSaved);
+            assertTrue(session.getNodeByIdentifier(articles.get(0)).hasProperty("mgnl:lastModified"));
+        } finally {
+            reader.logout();
+        }
+    }
+
+    @Test
+    public void resumesAfterTheLastSavedBatchAndSkipsUnchangedPages() throws RepositoryException {
+        final Session remover = REPOSITORY.login(TestRepository.WEBSITE);
+        SupplierPageBulkUpdate.Result failed;
+        try {
+            failed = update.apply(moveAll(), null, new SupplierPageBulkUpdate.Progress() {
+                @Override
+                public void saved(SupplierPageBulkUpdate.Result progress) {
+                    try {
+                        if (progress.getUpdated() == BATCH_SIZE) {
+                            remover.getNodeByIdentifier(articles.get(2)).remove();
+                            remover.save();
+                        }
+                    } catch (RepositoryException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        } finally {
+            remover.logout();
+        }
+
+        assertFalse(failed.isComplete());
+        assertEquals(BATCH_SIZE, failed.getUpdated());
+        assertEquals(articles.get(1), failed.getLastSaved());
+
+        SupplierPageBulkUpdate.Result resumed = update.apply(moveAll(), failed.getLastSaved(), null);
+
+        assertTrue(resumed.isComplete());
+        assertEquals(ARTICLES - BATCH_SIZE, resumed.getTotal());
+        assertEquals(2, resumed.getUpdated());
+        assertEquals("not found", resumed.getRejected().get(articles.get(2)));
+
+        SupplierPageBulkUpdate.Result again = update.apply(moveAll());
+
+        assertEquals(0, again.getUpdated());
+        assertEquals(ARTICLES - 1, again.getSkipped());
+        assertNull(again.getFailure());
+    }
+
+    private Map<String, String> moveAll() throws RepositoryException {
+        Map<String, String> changes = new HashMap<String, String>();
+        for (String article : articles) {
+            changes.put(article, otherSection.getIdentifier());
+        }
+        return changes;
+    }
+
+    private int countMoved(Session reader) throws RepositoryException {
+        int moved = 0;
+        for (String article : articles) {
+            if (otherSection.getIdentifier().equals(reader.getNodeByIdentifier(article)
+                    .getProperty(SupplierGraph.SUPPLIER_PAGE).getString())) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    private String supplierOf(String identifier) throws RepositoryException {
+        return session.getNodeByIdentifier(identifier).getProperty(SupplierGraph.SUPPLIER_PAGE).getString();
+    }
+
+    private static Node addPage(Node parent, String name, String template, Node supplier)
+            throws RepositoryException {
+        Node page = parent.addNode(name, "mgnl:page");
+        page.setProperty("mgnl:template", template);
+        if (supplier != null) {
+            page.setProperty(SupplierGraph.SUPPLIER_PAGE, supplier.getIdentifier());
+        }
+        return page;
+    }
+
+    /**
+     * A section, pages of which supply articles.
+     */
+    @Template(id = SectionTemplate.ID, title = "Section")
+    public static final class SectionTemplate {
+
+        public static final String ID = "section";
+    }
+
+    /**
+     * An article supplied by a section.
+     */
+    @Template(id = ArticleTemplate.ID, title = "Article")
+    @ParentTemplate(SectionTemplate.class)
+    public static final class ArticleTemplate {
+
+        public static final String ID = "article";
+    }
+
+    /**
+     * A chapter supplied by another chapter.
+     */
+    @Template(id = ChapterTemplate.ID, title = "Chapter")
+    @ParentTemplate(ChapterTemplate.class)
+    public static final class ChapterTemplate {
+
+        public static final String ID = "chapter";
+    }
+}
@@ -0,0 +1,116 @@
+package com.magnoliales.handlebars.guard;
+
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import info.magnolia.cms.core.AggregationState;
+import info.magnolia.cms.security.User;
+import info.magnolia.cms.security.UserManager;
+import info.magnolia.context.WebContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RenderBudgetsTest {
+
+    private static final String KEY = "cms-area main";
+    private static final long BUDGET = 100;
+    private static final long IN_TIME = TimeUnit.MILLISECONDS.toNanos(BUDGET / 2);
+    private static final long OVERRUN = TimeUnit.MILLISECONDS.toNanos(BUDGET * 2);
+    private static final long LONG_OPEN_TIME = 60000;
+
+    private HttpServletRequest request;
+    private User user;
+    private RenderBudgets budgets;
+
+    @Before
+    public void setUp() {
+        WebContext context = TestContexts.installWebContext();
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getServerName()).thenReturn("www.example.com");
+        when(request.getRequestURI()).thenReturn("/home.html");
+        when(context.getRequest()).thenReturn(request);
+        user = mock(User.class);
+        when(user.getName()).thenReturn(UserManager.ANONYMOUS_USER);
+        when(context.getUser()).thenReturn(user);
+        budgets = new RenderBudgets();
+        budgets.setFailureThreshold(2);
+        budgets.setOpenTime(LONG_OPEN_TIME);
+    }
+
+    @After
+    public void tearDown() {
+        TestContexts.uninstall();
+    }
+
+    @Test
+    public void opensTheCircuitAfterFailuresInARowAndClosesItAfterAGoodTrialCall() {
+        budgets.record(KEY, OVERRUN, BUDGET, true);
+        budgets.record(KEY, IN_TIME, BUDGET, true);
+        budgets.record(KEY, OVERRUN, BUDGET, true);
+        assertTrue(budgets.allow(KEY));
+
+        budgets.record(KEY, IN_TIME, BUDGET, false);
+        assertFalse(budgets.allow(KEY));
+        assertTrue(budgets.allow("other"));
+
+        budgets.setOpenTime(0);
+        budgets.record(KEY, IN_TIME, BUDGET, false);
+        assertTrue(budgets.allow(KEY));
+        assertFalse(budgets.allow(KEY));
+
+        budgets.record(KEY, IN_TIME, BUDGET, true);
+        assertTrue(budgets.allow(KEY));
+        assertTrue(budgets.allow(KEY));
+    }
+
+    @Test
+    public void fallsBackToTheOutputOfTheSamePageAndContent() throws RepositoryException {
+        RenderScope main = scope("/home/main");
+        budgets.remember(KEY, main, "<nav>Good</nav>");
+
+        assertEquals("<nav>Good</nav>", budgets.fallback(KEY, main).toString());
+        assertEquals("", budgets.fallback(KEY, scope("/home/footer")).toString());
+        assertEquals("", budgets.fallback("other", main).toString());
+
+        when(request.getRequestURI()).thenReturn("/other.html");
+        assertEquals("", budgets.fallback(KEY, main).toString());
+    }
+
+    @Test
+    public void neverKeepsOrServesOutputOfPersonalizedRequests() throws RepositoryException {
+        RenderScope main = scope("/home/main");
+        budgets.remember(KEY, main, "<nav>Anonymous</nav>");
+
+        when(user.getName()).thenReturn("editor");
+        budgets.remember(KEY, main, "<nav>Editor</nav>");
+        assertEquals("", budgets.fallback(KEY, main).toString());
+
+        when(user.getName()).thenReturn(UserManager.ANONYMOUS_USER);
+        when(request.getQueryString()).thenReturn("preview=true");
+        budgets.remember(KEY, main, "<nav>Preview</nav>");
+        assertEquals("", budgets.fallback(KEY, main).toString());
+
+        when(request.getQueryString()).thenReturn(null);
+        assertEquals("<nav>Anonymous</nav>", budgets.fallback(KEY, main).toString());
+    }
+
+    private static RenderScope scope(String contentPath) throws RepositoryException {
+        Node content = mock(Node.class);
+        when(content.getPath()).thenReturn(contentPath);
+        AggregationState aggregationState = new AggregationState();
+        aggregationState.setCurrentContentNode(content);
+        return new RenderScope(null, null, aggregationState, null, null, null, null, null, null);
+    }
+}
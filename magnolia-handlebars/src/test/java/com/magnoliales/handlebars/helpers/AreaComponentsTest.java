@@ -0,0 +1,97 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.magnoliales.handlebars.TestRepository;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AreaComponentsTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private static final int COMPONENTS = 3;
+
+    private Session session;
+    private List<Node> nodes;
+    private JcrReads reads;
+    private AreaComponents components;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        Node area = session.getRootNode().addNode("home", "mgnl:page").addNode("main", "mgnl:area");
+        nodes = new ArrayList<Node>();
+        for (int i = 0; i < COMPONENTS; i++) {
+            Node component = area.addNode(String.valueOf(i), "mgnl:component");
+            component.setProperty("text", "Component " + i);
+            nodes.add(component);
+        }
+        session.save();
+        reads = new JcrReads(null);
+        components = new AreaComponents(nodes, new RenderScope(null, null, null, null, null, null, null, reads,
+                null));
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void movesOneCursorAcrossTheComponents() {
+        Iterator<ComponentCursor> iterator = components.iterator();
+        ComponentCursor cursor = iterator.next();
+        assertSame(nodes.get(0), cursor.getJCRNode());
+        for (int i = 1; i < COMPONENTS; i++) {
+            assertSame(cursor, iterator.next());
+            assertSame(nodes.get(i), cursor.getJCRNode());
+        }
+        try {
+            iterator.next();
+            fail();
+        } catch (NoSuchElementException e) {
+            assertSame(nodes.get(COMPONENTS - 1), cursor.getJCRNode());
+        }
+    }
+
+    @Test
+    public void givesComponentsLookedUpByIndexACursorOfTheirOwn() {
+        ComponentCursor first = components.get(0);
+
+        assertNotSame(first, components.get(0));
+        assertSame(nodes.get(0), first.getJCRNode());
+        assertSame(nodes.get(1), components.get(1).getJCRNode());
+        assertEquals(COMPONENTS, components.size());
+    }
+
+    @Test
+    public void rendersThePropertiesOfEachComponentAccountedByTheScope() throws IOException {
+        String rendered = new Handlebars().compileInline("{{#each components}}<p>{{text}}</p>{{/each}}")
+                .apply(Collections.singletonMap("components", components));
+
+        assertEquals("<p>Component 0</p><p>Component 1</p><p>Component 2</p>", rendered);
+        assertTrue(reads.getPropertyReads() >= COMPONENTS);
+    }
+}
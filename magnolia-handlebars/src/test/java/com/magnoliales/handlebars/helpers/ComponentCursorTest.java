@@ -0,0 +1,84 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.magnoliales.handlebars.TestRepository;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ComponentCursorTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private Session session;
+    private Node first;
+    private Node second;
+    private JcrReads reads;
+    private RenderScope scope;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        Node area = session.getRootNode().addNode("home", "mgnl:page").addNode("main", "mgnl:area");
+        first = area.addNode("first", "mgnl:component");
+        first.setProperty("text", "First");
+        second = area.addNode("second", "mgnl:component");
+        second.setProperty("text", "Second");
+        session.save();
+        reads = new JcrReads(null);
+        scope = new RenderScope(null, null, null, null, null, null, null, reads, null);
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void readsThePropertiesOfTheComponentThroughTheScope() throws RepositoryException {
+        ComponentCursor cursor = new ComponentCursor(first, scope);
+
+        assertEquals("First", cursor.get("text"));
+        assertTrue(reads.getPropertyReads() > 0);
+        assertSame(first, cursor.getJCRNode());
+        assertEquals(first.getPath(), cursor.getContentMap().getJCRNode().getPath());
+        assertNotSame(first, cursor.getContentMap().getJCRNode());
+    }
+
+    @Test
+    public void readsThePropertiesOfTheComponentDirectlyOutsideOfARender() {
+        ComponentCursor cursor = new ComponentCursor(first, null);
+
+        assertEquals("First", cursor.get("text"));
+        assertSame(first, cursor.getContentMap().getJCRNode());
+    }
+
+    @Test
+    public void forgetsTheComponentItMovesFrom() throws RepositoryException {
+        ComponentCursor cursor = new ComponentCursor(scope);
+        cursor.moveTo(first);
+        assertEquals("First", cursor.get("text"));
+        assertEquals(first.getIdentifier(), cursor.getNodeIdentifier());
+        assertEquals("/home/main/first", cursor.getNodePath());
+
+        cursor.moveTo(second);
+
+        assertEquals("Second", cursor.get("text"));
+        assertEquals(second.getIdentifier(), cursor.getNodeIdentifier());
+        assertEquals("/home/main/second", cursor.getNodePath());
+        assertEquals(TestRepository.WEBSITE, cursor.getWorkspace());
+    }
+}
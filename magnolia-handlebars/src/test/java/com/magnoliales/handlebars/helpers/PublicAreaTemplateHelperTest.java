@@ -0,0 +1,222 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.Handlebars;
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.TestRepository;
+import com.magnoliales.handlebars.renderer.ContentSnapshots;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.registry.RegistrationException;
+import info.magnolia.rendering.context.RenderingContext;
+import info.magnolia.rendering.engine.OutputProvider;
+import info.magnolia.rendering.engine.RenderException;
+import info.magnolia.rendering.engine.RenderingEngine;
+import info.magnolia.rendering.model.RenderingModel;
+import info.magnolia.rendering.template.AreaDefinition;
+import info.magnolia.rendering.template.InheritanceConfiguration;
+import info.magnolia.rendering.template.RenderableDefinition;
+import info.magnolia.rendering.template.TemplateDefinition;
+import info.magnolia.rendering.template.registry.TemplateDefinitionRegistry;
+import info.magnolia.templating.elements.AreaElement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PublicAreaTemplateHelperTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private Session session;
+    private Node page;
+    private AreaDefinition areaDefinition;
+    private RenderingEngine renderingEngine;
+    private RenderingContext renderingContext;
+    private ComponentProvider componentProvider;
+    private Map<String, Object> model;
+    private List<String> rendered;
+    private Map<String, Object> renderedObjects;
+
+    @Before
+    public void setUp() throws RepositoryException, RegistrationException, RenderException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        page = session.getRootNode().addNode("home", "mgnl:page");
+        page.setProperty("mgnl:template", "site:home");
+        Node area = page.addNode("main", "mgnl:area");
+        for (String text : Arrays.asList("First", "Second", "Third")) {
+            area.addNode(text.toLowerCase(), "mgnl:component").setProperty("text", text);
+        }
+        session.save();
+        TestContexts.install();
+
+        areaDefinition = mock(AreaDefinition.class);
+        when(areaDefinition.getEnabled()).thenReturn(Boolean.TRUE);
+        when(areaDefinition.getType()).thenReturn(AreaDefinition.TYPE_LIST);
+        TemplateDefinition templateDefinition = mock(TemplateDefinition.class);
+        when(templateDefinition.getAreas()).thenReturn(Collections.singletonMap("main", areaDefinition));
+        TemplateDefinitionRegistry registry = mock(TemplateDefinitionRegistry.class);
+        when(registry.getTemplateDefinition("site:home")).thenReturn(templateDefinition);
+
+        rendered = new ArrayList<String>();
+        renderedObjects = new HashMap<String, Object>();
+        renderingEngine = mock(RenderingEngine.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws IOException, RepositoryException {
+                Map<String, Object> contextObjects = (Map<String, Object>) invocation.getArguments()[2];
+                renderedObjects.putAll(contextObjects);
+                Object components = contextObjects.containsKey(PublicAreaTemplateHelper.COMPONENTS_ATTRIBUTE)
+                        ? contextObjects.get(PublicAreaTemplateHelper.COMPONENTS_ATTRIBUTE)
+                        : Collections.singletonList(contextObjects.get(PublicAreaTemplateHelper.COMPONENT_ATTRIBUTE));
+                for (Object component : (List<?>) components) {
+                    rendered.add(component == null ? null : (String) ((Map<?, ?>) component).get("text"));
+                }
+                Appendable out = ((OutputProvider) invocation.getArguments()[3]).getAppendable();
+                out.append(((Node) invocation.getArguments()[0]).getPath())
+                        .append(String.valueOf(MgnlContext.getAttribute("title", info.magnolia.context.Context
+                                .LOCAL_SCOPE)));
+                return null;
+            }
+        }).when(renderingEngine).render(any(Node.class), any(RenderableDefinition.class),
+                anyMapOf(String.class, Object.class), any(OutputProvider.class));
+
+        renderingContext = mock(RenderingContext.class);
+        componentProvider = mock(ComponentProvider.class);
+        when(componentProvider.getComponent(RenderingEngine.class)).thenReturn(renderingEngine);
+        when(componentProvider.getComponent(TemplateDefinitionRegistry.class)).thenReturn(registry);
+
+        RenderingModel<?> renderingModel = mock(RenderingModel.class);
+        when(renderingModel.getNode()).thenReturn(page);
+        model = new HashMap<String, Object>();
+        model.put("model", renderingModel);
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        TestContexts.uninstall();
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void rendersListAreasWithTheirComponentsAndNoTemplatingElement() throws IOException, RenderException {
+        assertEquals("/home/mainnull", render("{{cms-area name=\"main\"}}"));
+
+        verify(renderingEngine).render(any(Node.class), eq(areaDefinition), anyMapOf(String.class, Object.class),
+                any(OutputProvider.class));
+        assertEquals(Arrays.asList("First", "Second", "Third"), rendered);
+        assertTrue(renderedObjects.get(PublicAreaTemplateHelper.COMPONENTS_ATTRIBUTE) instanceof AreaComponents);
+        verify(componentProvider, never()).newInstance(any(Class.class), anyVararg());
+    }
+
+    @Test
+    public void rendersSingleAreasWithTheirFirstComponent() throws IOException, RepositoryException {
+        assertEquals("/home/mainnull", render("{{cms-area name=\"main\" type=\"single\"}}"));
+        assertEquals(Arrays.asList("First"), rendered);
+
+        for (Node component : Arrays.asList(page.getNode("main/first"), page.getNode("main/second"),
+                page.getNode("main/third"))) {
+            component.remove();
+        }
+        session.save();
+        rendered.clear();
+
+        assertEquals("/home/mainnull", render("{{cms-area name=\"main\" type=\"single\"}}"));
+        assertEquals(Collections.singletonList((String) null), rendered);
+    }
+
+    @Test
+    public void rendersAreasWithoutComponentsWithoutComponentObjects() throws IOException {
+        when(areaDefinition.getType()).thenReturn(AreaDefinition.TYPE_NO_COMPONENT);
+
+        assertEquals("/home/mainnull", render("{{cms-area name=\"main\"}}"));
+        assertTrue(renderedObjects.isEmpty());
+    }
+
+    @Test
+    public void rendersNothingForDisabledAreas() throws IOException, RenderException {
+        when(areaDefinition.getEnabled()).thenReturn(Boolean.FALSE);
+
+        assertEquals("", render("{{cms-area name=\"main\"}}"));
+        verify(renderingEngine, never()).render(any(Node.class), any(RenderableDefinition.class),
+                anyMapOf(String.class, Object.class), any(OutputProvider.class));
+    }
+
+    @Test
+    public void setsTheContextAttributesOnlyWhileRendering() throws IOException {
+        MgnlContext.setAttribute("title", "Page", info.magnolia.context.Context.LOCAL_SCOPE);
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("title", "Area");
+        attributes.put("teaser", "Teaser");
+        model.put("attributes", attributes);
+
+        assertEquals("/home/mainArea", render("{{cms-area name=\"main\" contextAttributes=attributes}}"));
+        assertEquals("Page", MgnlContext.getAttribute("title", info.magnolia.context.Context.LOCAL_SCOPE));
+        assertNull(MgnlContext.getAttribute("teaser", info.magnolia.context.Context.LOCAL_SCOPE));
+    }
+
+    @Test
+    public void leavesInheritingAreasToTheAreaElement() throws IOException, RenderException {
+        InheritanceConfiguration inheritance = mock(InheritanceConfiguration.class);
+        when(inheritance.isEnabled()).thenReturn(Boolean.TRUE);
+        when(areaDefinition.getInheritance()).thenReturn(inheritance);
+        AreaElement areaElement = mock(AreaElement.class);
+        when(componentProvider.newInstance(AreaElement.class, renderingContext)).thenReturn(areaElement);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                ((Appendable) invocation.getArguments()[0]).append("inherited");
+                return null;
+            }
+        }).when(areaElement).begin(any(Appendable.class));
+
+        assertEquals("inherited", render("{{cms-area name=\"main\"}}"));
+        verify(areaElement).setArea(areaDefinition);
+        verify(renderingEngine, never()).render(any(Node.class), any(RenderableDefinition.class),
+                anyMapOf(String.class, Object.class), any(OutputProvider.class));
+    }
+
+    @Test
+    public void isThePublicVariantOfTheAreaHelper() {
+        assertSame(PublicAreaTemplateHelper.class, new CmsAreaTemplateHelper().getPublicHelper().getClass());
+    }
+
+    private String render(String template) throws IOException {
+        Handlebars handlebars = new Handlebars();
+        handlebars.registerHelper("cms-area", new PublicAreaTemplateHelper());
+        Context context = Context.newBuilder(model).build();
+        context.data(RenderScope.DATA_KEY, new RenderScope(MgnlContext.getInstance(), renderingContext, null,
+                componentProvider, null, ContentSnapshots.getOrCreate(), null, null, null));
+        return handlebars.compileInline(template).apply(context);
+    }
+}
@@ -0,0 +1,128 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.Handlebars;
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.TestRepository;
+import com.magnoliales.handlebars.metrics.JcrReads;
+import com.magnoliales.handlebars.renderer.RenderScope;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.ContentMap;
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.rendering.engine.OutputProvider;
+import info.magnolia.rendering.engine.RenderException;
+import info.magnolia.rendering.engine.RenderingEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PublicComponentTemplateHelperTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private Session session;
+    private Node component;
+    private ComponentProvider componentProvider;
+    private List<Node> rendered;
+
+    @Before
+    public void setUp() throws RepositoryException, RenderException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        component = session.getRootNode().addNode("home", "mgnl:page").addNode("main", "mgnl:area")
+                .addNode("0", "mgnl:component");
+        session.save();
+        TestContexts.install();
+
+        rendered = new ArrayList<Node>();
+        RenderingEngine renderingEngine = mock(RenderingEngine.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws IOException, RepositoryException {
+                Node content = (Node) invocation.getArguments()[0];
+                rendered.add(content);
+                ((OutputProvider) invocation.getArguments()[1]).getAppendable().append(content.getPath())
+                        .append(String.valueOf(MgnlContext.getAttribute("title",
+                                info.magnolia.context.Context.LOCAL_SCOPE)));
+                return null;
+            }
+        }).when(renderingEngine).render(any(Node.class), any(OutputProvider.class));
+        componentProvider = mock(ComponentProvider.class);
+        when(componentProvider.getComponent(RenderingEngine.class)).thenReturn(renderingEngine);
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        TestContexts.uninstall();
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void rendersComponentsOfCursorsWithTheirTemplate() throws IOException {
+        assertEquals("/home/main/0null", renderComponent(new ComponentCursor(component, null)));
+        assertEquals(1, rendered.size());
+        verify(componentProvider, never()).newInstance(any(Class.class), anyVararg());
+    }
+
+    @Test
+    public void rendersTheUnwrappedNodeOfContentMaps() throws IOException {
+        ContentMap content = new ContentMap(new JcrReads(null).wrap(component));
+
+        assertEquals("/home/main/0null", renderComponent(content));
+        assertSame(rendered.get(0), JcrReads.unwrap(rendered.get(0)));
+    }
+
+    @Test
+    public void setsTheContextAttributesOnlyWhileRendering() throws IOException {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("component", new ComponentCursor(component, null));
+        model.put("attributes", Collections.<String, Object>singletonMap("title", "Component"));
+
+        assertEquals("/home/main/0Component", render("{{cms-component component contextAttributes=attributes}}",
+                model));
+        assertNull(MgnlContext.getAttribute("title", info.magnolia.context.Context.LOCAL_SCOPE));
+    }
+
+    @Test
+    public void isThePublicVariantOfTheComponentHelper() {
+        assertSame(PublicComponentTemplateHelper.class, new CmsComponentTemplateHelper().getPublicHelper().getClass());
+    }
+
+    private String renderComponent(Object content) throws IOException {
+        return render("{{cms-component component}}", Collections.singletonMap("component", content));
+    }
+
+    private String render(String template, Map<String, ?> model) throws IOException {
+        Handlebars handlebars = new Handlebars();
+        handlebars.registerHelper("cms-component", new PublicComponentTemplateHelper());
+        Context context = Context.newBuilder(model).build();
+        context.data(RenderScope.DATA_KEY, new RenderScope(MgnlContext.getInstance(), null, null, componentProvider,
+                null, null, null, null, null));
+        return handlebars.compileInline(template).apply(context);
+    }
+}
@@ -0,0 +1,39 @@
+package com.magnoliales.handlebars.helpers;
+
+import com.github.jknack.handlebars.Handlebars;
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.objectfactory.Components;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class PublicInitTemplateHelperTest {
+
+    @After
+    public void tearDown() {
+        Components.setComponentProvider(null);
+    }
+
+    @Test
+    public void rendersNothingWithoutATemplatingElement() throws IOException {
+        ComponentProvider componentProvider = mock(ComponentProvider.class);
+        Components.setComponentProvider(componentProvider);
+        Handlebars handlebars = new Handlebars();
+        handlebars.registerHelper("cms-init", new PublicInitTemplateHelper());
+
+        assertEquals("<head></head>", handlebars.compileInline("<head>{{cms-init dialog=\"page\"}}</head>")
+                .apply((Object) null));
+        verifyZeroInteractions(componentProvider);
+    }
+
+    @Test
+    public void isThePublicVariantOfTheInitHelper() {
+        assertSame(PublicInitTemplateHelper.class, new CmsInitTemplateHelper().getPublicHelper().getClass());
+    }
+}
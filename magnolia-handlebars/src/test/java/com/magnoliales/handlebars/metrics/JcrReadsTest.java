@@ -0,0 +1,114 @@
+package com.magnoliales.handlebars.metrics;
+
+import com.magnoliales.handlebars.TestRepository;
+import com.magnoliales.handlebars.profile.RenderProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JcrReadsTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private Session session;
+    private Node page;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        page = session.getRootNode().addNode("home", "mgnl:page");
+        page.setProperty("title", "Home");
+        Node area = page.addNode("main", "mgnl:area");
+        area.addNode("0", "mgnl:component").setProperty("text", "Text");
+        area.addNode("1", "mgnl:component");
+        session.save();
+        JcrReadMetrics.getInstance().reset();
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void countsReadsThroughWrappedNodesAndSessions() throws RepositoryException {
+        JcrReads reads = new JcrReads(null);
+        Node wrapped = reads.wrap(page);
+
+        assertSame(wrapped, reads.wrap(wrapped));
+        assertSame(page, JcrReads.unwrap(wrapped));
+        assertNull(reads.wrap(null));
+        assertEquals("Home", wrapped.getProperty("title").getString());
+        assertTrue(wrapped.hasProperty("title"));
+        NodeIterator components = wrapped.getNode("main").getNodes();
+        while (components.hasNext()) {
+            Node component = components.nextNode();
+            assertTrue(component instanceof AccountingNodeWrapper);
+            component.hasProperty("text");
+        }
+        wrapped.getSession().getNodeByIdentifier(page.getIdentifier());
+
+        assertEquals(4, reads.getNodeReads());
+        assertEquals(4, reads.getPropertyReads());
+        assertEquals(8, reads.getTotalReads());
+        assertEquals(Collections.singletonMap("/home/title", 2), reads.getRepeatedReads());
+    }
+
+    @Test
+    public void attributesReadsToTheRunningTemplateOrHelper() throws RepositoryException {
+        RenderProfile profile = new RenderProfile("1", "/home.html");
+        JcrReads reads = new JcrReads(profile);
+        Node wrapped = reads.wrap(page);
+
+        wrapped.hasProperty("title");
+        reads.enter("pages/home");
+        wrapped.getProperty("title");
+        reads.enter("cms-area main");
+        wrapped.getNode("main");
+        assertFalse(reads.exit());
+        assertTrue(reads.exit());
+
+        assertArrayEquals(new int[] {0, 1}, reads.getOwnerReads().get("(none)"));
+        assertArrayEquals(new int[] {0, 1}, reads.getOwnerReads().get("pages/home"));
+        assertArrayEquals(new int[] {1, 0}, reads.getOwnerReads().get("cms-area main"));
+        assertEquals(3, profile.getRoot().getTotalReads());
+    }
+
+    @Test
+    public void publishesTheReadsOfCompletedRenders() throws RepositoryException {
+        JcrReads reads = new JcrReads(null);
+        Node wrapped = reads.wrap(page);
+        reads.enter("pages/home");
+        for (int i = 0; i < JcrReadMetrics.REPEAT_THRESHOLD; i++) {
+            wrapped.getProperty("title");
+        }
+        reads.exit();
+
+        JcrReadMetrics metrics = JcrReadMetrics.getInstance();
+        metrics.record("/home.html", reads);
+        metrics.record("/home.html", new JcrReads(null));
+
+        assertEquals(2, metrics.getRenders());
+        assertEquals(JcrReadMetrics.REPEAT_THRESHOLD, metrics.getPropertyReads());
+        assertEquals(JcrReadMetrics.REPEAT_THRESHOLD - 1, metrics.getRepeatedReads());
+        assertEquals(JcrReadMetrics.REPEAT_THRESHOLD, metrics.getMaxReadsPerRender());
+        assertEquals(JcrReadMetrics.REPEAT_THRESHOLD / 2.0, metrics.getAverageReadsPerRender(), 0.001);
+        assertEquals("pages/home: 0 / " + JcrReadMetrics.REPEAT_THRESHOLD, metrics.getTopReaders()[0]);
+    }
+}
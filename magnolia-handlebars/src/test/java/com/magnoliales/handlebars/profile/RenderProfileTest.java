@@ -0,0 +1,110 @@
+package com.magnoliales.handlebars.profile;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RenderProfileTest {
+
+    private static final int THREADS = 4;
+    private static final int STEPS = 10000;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void buildsATreeOfNestedSteps() {
+        RenderProfile profile = new RenderProfile("1", "/home.html");
+        assertTrue(profile.isIdle());
+
+        ProfileNode template = profile.enter("template", "pages/home");
+        profile.addReads(2);
+        ProfileNode helper = profile.enter("helper", "cms-area main");
+        profile.addReads(3);
+        profile.exit(helper, 10);
+        assertFalse(profile.isIdle());
+        profile.exit(template, 25);
+        profile.setRepeatedReads(Collections.singletonMap("website:/home", 2));
+        profile.complete();
+
+        assertTrue(profile.isIdle());
+        assertSame(template, profile.getRoot().getChildren().get(0));
+        assertSame(helper, template.getChildren().get(0));
+        assertEquals(5, profile.getRoot().getTotalReads());
+        assertEquals(25, profile.getRoot().getCharacters());
+        assertTrue(profile.summary().startsWith("id=1; total="));
+        assertTrue(profile.summary().contains("reads=5; repeated=1; chars=25"));
+        assertTrue(profile.toJson().startsWith("{\"id\":\"1\",\"uri\":\"/home.html\",\"created\":"));
+        assertTrue(profile.toJson().contains("\"repeatedReads\":{\"website:/home\":2}"));
+        assertTrue(profile.toJson().contains("{\"type\":\"helper\",\"name\":\"cms-area main\""));
+    }
+
+    @Test
+    public void keepsTheCurrentStepWhenAStepIsExitedAfterItsParent() {
+        RenderProfile profile = new RenderProfile("1", "/home.html");
+        ProfileNode template = profile.enter("template", "pages/home");
+        ProfileNode abandoned = profile.enter("helper", "cms-area main");
+
+        profile.exit(template, 0);
+        assertTrue(profile.isIdle());
+        ProfileNode next = profile.enter("template", "pages/other");
+        profile.exit(abandoned, 0);
+
+        assertFalse(profile.isIdle());
+        profile.exit(next, 0);
+        assertTrue(profile.isIdle());
+        assertEquals(2, profile.getRoot().getChildren().size());
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void recordsStepsFromSeveralThreads() throws InterruptedException, ExecutionException {
+        final RenderProfile profile = new RenderProfile("1", "/home.html");
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                futures[i] = executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        start.await();
+                        for (int step = 0; step < STEPS; step++) {
+                            ProfileNode node = profile.enter("helper", "step");
+                            profile.addReads(1);
+                            profile.exit(node, 1);
+                        }
+                        return null;
+                    }
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        profile.complete();
+
+        assertTrue(profile.isIdle());
+        assertEquals(THREADS * STEPS, profile.getRoot().getTotalReads());
+        assertEquals(THREADS * STEPS + 1, count(profile.getRoot()));
+    }
+
+    private static int count(ProfileNode node) {
+        int count = 1;
+        for (ProfileNode child : node.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+}
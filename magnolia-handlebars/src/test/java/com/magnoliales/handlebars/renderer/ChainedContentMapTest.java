@@ -0,0 +1,87 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.TestRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ChainedContentMapTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private Session session;
+    private Node page;
+    private LocaleKeyTable keyTable;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        Node supplier = session.getRootNode().addNode("supplier", "mgnl:page");
+        supplier.setProperty("text", "Supplied text");
+        supplier.setProperty("title", "Supplied title");
+        page = session.getRootNode().addNode("page", "mgnl:page");
+        page.setProperty("title", "Title");
+        page.setProperty("title_de", "Titel");
+        page.setProperty("teaser_de_CH", "Anriss");
+        page.setProperty("mgnl:supplierPage", supplier.getIdentifier());
+        session.save();
+        keyTable = new LocaleFallbacks().getKeyTable(Locale.ENGLISH);
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void fallsBackToTheSupplierPage() {
+        ChainedContentMap map = new ChainedContentMap(page, keyTable, null);
+
+        assertEquals("Title", map.get("title"));
+        assertEquals("Supplied text", map.get("text"));
+        assertEquals("Supplied title", ((ChainedContentMap) map.get("supplier")).get("title"));
+        assertNull(map.get("missing"));
+    }
+
+    @Test
+    public void resolvesLocalizedPropertiesAlongTheFallbackChain() {
+        LocaleFallbacks fallbacks = new LocaleFallbacks();
+        fallbacks.setFallbacks("fr_CH", Arrays.asList("de"));
+
+        ChainedContentMap swiss = new ChainedContentMap(page, fallbacks.getKeyTable(new Locale("de", "CH")), null);
+        ChainedContentMap french = new ChainedContentMap(page, fallbacks.getKeyTable(new Locale("fr", "CH")), null);
+
+        assertEquals("Titel", swiss.get("title"));
+        assertEquals("Anriss", swiss.get("teaser"));
+        assertEquals("Supplied text", swiss.get("text"));
+        assertEquals("Titel", french.get("title"));
+        assertNull(french.get("teaser"));
+        assertEquals("Title", new ChainedContentMap(page, Locale.ENGLISH).get("title"));
+    }
+
+    @Test
+    public void prefetchesContentPathsAlongTheSupplierChain() throws RepositoryException {
+        ChainedContentMap map = new ChainedContentMap(page, keyTable, null);
+
+        map.prefetch(Arrays.asList("title", "text", "supplier.title", "@name"));
+        page.setProperty("title", "Changed");
+        page.setProperty("text", "Added");
+        session.getNode("/supplier").setProperty("text", "Changed");
+
+        assertEquals("Title", map.get("title"));
+        assertEquals("Supplied text", map.get("text"));
+        assertEquals("Supplied title", ((ChainedContentMap) map.get("supplier")).get("title"));
+    }
+}
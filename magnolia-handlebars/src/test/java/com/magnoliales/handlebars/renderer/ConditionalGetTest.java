@@ -0,0 +1,89 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.cache.PageDependencies;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConditionalGetTest {
+
+    private static final long LAST_MODIFIED = 1400000000000L;
+    private static final long TEMPLATE_VERSION = 1300000000000L;
+
+    private PageDependencies dependencies;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        dependencies = new PageDependencies(Collections.singletonList("/home"), LAST_MODIFIED, 42, 3);
+        request = mock(HttpServletRequest.class);
+        when(request.getDateHeader(ConditionalGet.IF_MODIFIED_SINCE)).thenReturn(-1L);
+        response = mock(HttpServletResponse.class);
+    }
+
+    @Test
+    public void changesTheEntityTagWithContentAndTemplates() {
+        String entityTag = ConditionalGet.getEntityTag(dependencies, TEMPLATE_VERSION);
+
+        assertFalse(entityTag.equals(ConditionalGet.getEntityTag(
+                new PageDependencies(Collections.singletonList("/home"), LAST_MODIFIED, 43, 3), TEMPLATE_VERSION)));
+        assertFalse(entityTag.equals(ConditionalGet.getEntityTag(dependencies, TEMPLATE_VERSION + 1)));
+        assertEquals(entityTag.replace("\"", "") + "-gzip",
+                ConditionalGet.getEntityTag(dependencies, TEMPLATE_VERSION, true).replace("\"", ""));
+    }
+
+    @Test
+    public void sendsValidatorsAndRendersWithoutPreconditions() {
+        assertFalse(ConditionalGet.apply(request, response, dependencies, TEMPLATE_VERSION));
+
+        verify(response).setHeader(ConditionalGet.ETAG, ConditionalGet.getEntityTag(dependencies, TEMPLATE_VERSION));
+        verify(response).setDateHeader(ConditionalGet.LAST_MODIFIED, LAST_MODIFIED);
+        verify(response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @Test
+    public void answersMatchingEntityTagsWeaklyAndForEitherEncoding() {
+        String entityTag = ConditionalGet.getEntityTag(dependencies, TEMPLATE_VERSION);
+        String gzipTag = ConditionalGet.getEntityTag(dependencies, TEMPLATE_VERSION, true);
+
+        assertTrue(ConditionalGet.isNotModified(header("\"other\", W/" + entityTag), entityTag, LAST_MODIFIED));
+        assertTrue(ConditionalGet.isNotModified(header(gzipTag), entityTag, LAST_MODIFIED));
+        assertTrue(ConditionalGet.isNotModified(header("*"), entityTag, LAST_MODIFIED));
+        assertFalse(ConditionalGet.isNotModified(header("\"other\""), entityTag, LAST_MODIFIED));
+
+        when(request.getHeader(ConditionalGet.IF_NONE_MATCH)).thenReturn(entityTag);
+        assertTrue(ConditionalGet.apply(request, response, dependencies, TEMPLATE_VERSION, true));
+        verify(response).setHeader(ConditionalGet.ETAG, gzipTag);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @Test
+    public void comparesModificationDatesInSecondsUnlessAnEntityTagIsSent() {
+        String entityTag = ConditionalGet.getEntityTag(dependencies, TEMPLATE_VERSION);
+        when(request.getDateHeader(ConditionalGet.IF_MODIFIED_SINCE)).thenReturn(LAST_MODIFIED - LAST_MODIFIED % 1000);
+
+        assertTrue(ConditionalGet.isNotModified(request, entityTag, LAST_MODIFIED + 999 - LAST_MODIFIED % 1000));
+        assertFalse(ConditionalGet.isNotModified(request, entityTag, LAST_MODIFIED + 1000));
+
+        when(request.getHeader(ConditionalGet.IF_NONE_MATCH)).thenReturn("\"other\"");
+        assertFalse(ConditionalGet.isNotModified(request, entityTag, LAST_MODIFIED));
+    }
+
+    private HttpServletRequest header(String ifNoneMatch) {
+        HttpServletRequest conditional = mock(HttpServletRequest.class);
+        when(conditional.getHeader(ConditionalGet.IF_NONE_MATCH)).thenReturn(ifNoneMatch);
+        return conditional;
+    }
+}
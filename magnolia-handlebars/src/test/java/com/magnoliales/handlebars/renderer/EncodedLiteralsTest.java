@@ -0,0 +1,81 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedLiteralsTest {
+
+    private Handlebars handlebars;
+    private EncodedLiterals encodedLiterals;
+
+    @Before
+    public void setUp() {
+        handlebars = new Handlebars();
+        encodedLiterals = new EncodedLiterals();
+    }
+
+    @Test
+    public void encodesTheLiteralsOfTemplatesAndTheirBlocks() throws IOException {
+        Template template = handlebars.compileInline("<p>{{name}}</p>{{#if price}}<b>\u20AC</b>{{/if}}");
+        encodedLiterals.register(template);
+
+        Set<String> texts = new HashSet<String>();
+        for (Map.Entry<String, byte[]> literal : encodedLiterals.getLiterals().entrySet()) {
+            assertEquals(literal.getKey(), new String(literal.getValue(), "UTF-8"));
+            texts.add(literal.getKey());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("<p>", "</p>", "<b>\u20AC</b>")), texts);
+        assertTrue(encodedLiterals.contains(template));
+    }
+
+    @Test
+    public void findsTheLiteralsHandlebarsWrites() throws IOException {
+        Template template = handlebars.compileInline("<p>{{name}}</p>");
+        encodedLiterals.register(template);
+        Map<String, byte[]> upperCased = new IdentityHashMap<String, byte[]>();
+        for (String literal : encodedLiterals.getLiterals().keySet()) {
+            upperCased.put(literal, literal.toUpperCase().getBytes("UTF-8"));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LiteralWriter writer = new LiteralWriter(out, upperCased);
+
+        template.apply(Collections.singletonMap("name", "<p>"), writer);
+        writer.close();
+
+        assertEquals("<P>&lt;p&gt;</P>", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void keepsPublishedLiteralsUnchanged() throws IOException {
+        Template first = handlebars.compileInline("<p>{{name}}</p>");
+        encodedLiterals.register(first);
+        Map<String, byte[]> published = encodedLiterals.getLiterals();
+
+        encodedLiterals.register(first);
+        assertSame(published, encodedLiterals.getLiterals());
+
+        encodedLiterals.register(handlebars.compileInline("<div>{{name}}</div>"));
+        assertEquals(2, published.size());
+        assertEquals(4, encodedLiterals.size());
+
+        encodedLiterals.clear();
+        assertEquals(0, encodedLiterals.size());
+        assertFalse(encodedLiterals.contains(first));
+    }
+}
@@ -0,0 +1,240 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.io.AbstractTemplateLoader;
+import com.github.jknack.handlebars.io.AbstractTemplateSource;
+import com.github.jknack.handlebars.io.TemplateLoader;
+import com.github.jknack.handlebars.io.TemplateSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlatteningTemplateLoaderTest {
+
+    private static final long LONG_INTERVAL = 60000;
+
+    private MapTemplateLoader templates;
+    private FlatteningTemplateLoader loader;
+    private List<String> reloaded;
+
+    @Before
+    public void setUp() {
+        templates = new MapTemplateLoader();
+        loader = new FlatteningTemplateLoader(templates);
+        loader.setCheckInterval(0);
+        reloaded = new ArrayList<String>();
+        loader.setReloadListener(new FlatteningTemplateLoader.ReloadListener() {
+            @Override
+            public void reloaded(String location) {
+                reloaded.add(location);
+            }
+        });
+    }
+
+    @Test
+    public void reportsTemplatesReloadedBecauseATemplateOfTheirChainChanged() throws IOException {
+        templates.put("page", "<main>{{> header}}</main>", 1);
+        templates.put("header", "<h1>{{title}}</h1>", 1);
+
+        assertEquals("<main><h1>{{title}}</h1></main>", loader.sourceAt("page").content());
+        loader.sourceAt("page");
+        assertTrue(reloaded.isEmpty());
+
+        templates.put("header", "<h2>{{title}}</h2>", 2);
+
+        TemplateSource source = loader.sourceAt("page");
+        assertEquals("<main><h2>{{title}}</h2></main>", source.content());
+        assertEquals(2, source.lastModified());
+        assertEquals(1, reloaded.size());
+        assertEquals("page", reloaded.get(0));
+    }
+
+    @Test
+    public void doesNotReportTemplatesLoadedAfterAClear() throws IOException {
+        templates.put("page", "<main>{{title}}</main>", 1);
+        loader.sourceAt("page");
+
+        loader.clear();
+        templates.put("page", "<main>{{text}}</main>", 2);
+
+        assertEquals("<main>{{text}}</main>", loader.sourceAt("page").content());
+        assertTrue(reloaded.isEmpty());
+    }
+
+    @Test
+    public void resolvesBlocksWithTheLastDefinitionOrTheirOwnBody() throws IOException {
+        templates.put("page", "{{#partial \"title\"}}First{{/partial}}{{#partial \"title\"}}{{title}}{{/partial}}"
+                + "{{> layout}}", 1);
+        templates.put("layout", "<h1>{{#block \"title\"}}Untitled{{/block}}</h1>"
+                + "<p>{{#block \"text\"}}No text{{/block}}</p>", 1);
+
+        assertEquals("<h1>{{title}}</h1><p>No text</p>", loader.sourceAt("page").content());
+        assertFlattenedRendersAsUnflattened("page");
+    }
+
+    @Test
+    public void resolvesBlocksAlongALayoutChain() throws IOException {
+        templates.put("page", "{{#partial \"content\"}}Page {{title}}{{/partial}}{{> details}}", 1);
+        templates.put("details", "{{#partial \"aside\"}}Details{{/partial}}{{> base}}", 2);
+        templates.put("base", "<main>{{#block \"content\"}}{{/block}}</main>"
+                + "<aside>{{#block \"aside\"}}Base{{/block}}</aside>{{> footer}}", 1);
+        templates.put("footer", "<footer>{{#each links}}{{> link}}{{/each}}</footer>", 1);
+        templates.put("link", "<a>{{this}}</a>", 1);
+
+        TemplateSource source = loader.sourceAt("page");
+        assertEquals("<main>Page {{title}}</main><aside>Details</aside>"
+                + "<footer>{{#each links}}<a>{{this}}</a>{{/each}}</footer>", source.content());
+        assertEquals(2, source.lastModified());
+        assertFlattenedRendersAsUnflattened("page");
+
+        templates.put("base", "<main>{{#block \"content\"}}{{/block}}</main>", 3);
+
+        assertEquals("<main>Page {{title}}</main>", loader.sourceAt("page").content());
+        assertEquals(Collections.singletonList("page"), reloaded);
+    }
+
+    @Test
+    public void leavesPartialsWithParametersOrAboveTheMaximumSizeAsTags() throws IOException {
+        loader.setMaxInlineSize("<h1>{{title}}</h1>".length() - 1);
+        templates.put("page", "<main>{{> header this}}{{> header}}</main>", 1);
+        templates.put("header", "<h1>{{title}}</h1>", 1);
+
+        assertEquals("<main>{{> header this}}{{> header}}</main>", loader.sourceAt("page").content());
+        assertFlattenedRendersAsUnflattened("page");
+    }
+
+    @Test
+    public void loadsTemplatesThatCannotBeFlattenedUnchanged() throws IOException {
+        templates.put("layout", "<main>{{#block \"content\"}}{{/block}}</main>", 1);
+        templates.put("header", "<h1>{{title}}</h1>", 1);
+        String[] unflattenable = {
+            "\\{{> header}}",
+            "{{~> header}}",
+            "{{=<% %>=}}<%> header%>",
+            "{{#each items}}{{#block \"content\"}}{{this}}{{/block}}{{/each}}",
+            "{{#block \"content\"}}Content{{else}}Empty{{/block}}",
+            "{{#block \"header\"}}Header{{/block}}",
+            "{{#block content}}Content{{/block}}",
+            "{{#if title}}{{#partial \"content\"}}{{title}}{{/partial}}{{/if}}{{> layout}}",
+            "{{#partial \"content\"}}{{title}}{{/partial}}{{> layout this}}",
+            "{{> header}}{{> missing}}",
+            "{{#if title}}{{> header}}",
+        };
+        for (int i = 0; i < unflattenable.length; i++) {
+            templates.put("page" + i, unflattenable[i], 1);
+            assertEquals(unflattenable[i], loader.sourceAt("page" + i).content());
+        }
+    }
+
+    @Test
+    public void checksTheChainForChangesOncePerInterval() throws IOException {
+        loader.setCheckInterval(LONG_INTERVAL);
+        templates.put("page", "<main>{{> header}}</main>", 1);
+        templates.put("header", "<h1>{{title}}</h1>", 1);
+        loader.sourceAt("page");
+        int loads = templates.getLoads("header");
+
+        templates.put("header", "<h2>{{title}}</h2>", 2);
+
+        assertEquals("<main><h1>{{title}}</h1></main>", loader.sourceAt("page").content());
+        assertEquals(loads, templates.getLoads("header"));
+
+        loader.setCheckInterval(0);
+
+        assertEquals("<main><h2>{{title}}</h2></main>", loader.sourceAt("page").content());
+        assertEquals(Collections.singletonList("page"), reloaded);
+    }
+
+    @Test
+    public void minifiesTemplatesFlattenedOrNot() throws IOException {
+        templates.put("page", "<main>\n    {{> header}}\n    <pre>  {{text}}  </pre>\n</main>", 1);
+        templates.put("header", "<h1   class=\"a  b\">   {{title}}   </h1>", 1);
+        loader.setMinify(true);
+
+        assertEquals("<main>\n<h1 class=\"a  b\"> {{title}} </h1>\n<pre>  {{text}}  </pre>\n</main>",
+                loader.sourceAt("page").content());
+
+        loader.setEnabled(false);
+        loader.clear();
+
+        assertEquals("<main>\n{{> header}}\n<pre>  {{text}}  </pre>\n</main>", loader.sourceAt("page").content());
+        assertEquals("<h1 class=\"a  b\"> {{title}} </h1>", loader.sourceAt("header").content());
+    }
+
+    private void assertFlattenedRendersAsUnflattened(String location) throws IOException {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("title", "Title");
+        model.put("links", new String[] {"One", "Two"});
+        assertEquals(render(templates, location, model), render(loader, location, model));
+    }
+
+    private static String render(TemplateLoader templateLoader, String location, Object model) throws IOException {
+        return new Handlebars(templateLoader).compile(location).apply(model);
+    }
+
+    /**
+     * Templates kept in memory with the modification dates they were put with, counting the loads of each.
+     */
+    static final class MapTemplateLoader extends AbstractTemplateLoader {
+
+        private final Map<String, TemplateSource> sources = new HashMap<String, TemplateSource>();
+        private final Map<String, Integer> loads = new HashMap<String, Integer>();
+
+        void put(String location, String content, long lastModified) {
+            sources.put(location, new MapTemplateSource(location, content, lastModified));
+        }
+
+        int getLoads(String location) {
+            Integer count = loads.get(location);
+            return count != null ? count : 0;
+        }
+
+        @Override
+        public TemplateSource sourceAt(String location) throws IOException {
+            loads.put(location, getLoads(location) + 1);
+            TemplateSource source = sources.get(location);
+            if (source == null) {
+                throw new FileNotFoundException(location);
+            }
+            return source;
+        }
+    }
+
+    private static final class MapTemplateSource extends AbstractTemplateSource {
+
+        private final String filename;
+        private final String content;
+        private final long lastModified;
+
+        private MapTemplateSource(String filename, String content, long lastModified) {
+            this.filename = filename;
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+
+        @Override
+        public String filename() {
+            return filename;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+    }
+}
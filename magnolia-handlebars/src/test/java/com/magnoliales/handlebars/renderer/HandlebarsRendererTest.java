@@ -0,0 +1,335 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.TestRepository;
+import com.magnoliales.handlebars.cache.DependencyIndex;
+import com.magnoliales.handlebars.cache.HeapPageOutputStore;
+import com.magnoliales.handlebars.cache.PageCache;
+import com.magnoliales.handlebars.cache.PageDependencies;
+import com.magnoliales.handlebars.cache.PageRecorder;
+import com.magnoliales.handlebars.cache.PageRevalidator;
+import com.magnoliales.handlebars.cluster.InvalidationBus;
+import com.magnoliales.handlebars.setup.ModuleComponents;
+import info.magnolia.cms.beans.config.ServerConfiguration;
+import info.magnolia.context.WebContext;
+import info.magnolia.module.blossom.render.RenderContext;
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.objectfactory.Components;
+import info.magnolia.rendering.context.RenderingContext;
+import info.magnolia.rendering.engine.RenderException;
+import info.magnolia.rendering.engine.RenderingEngine;
+import info.magnolia.rendering.util.AppendableWriter;
+import info.magnolia.repository.RepositoryConstants;
+import org.apache.jackrabbit.commons.JcrUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class HandlebarsRendererTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private static final String PAGE = "<h1>Home</h1>";
+    private static final String KEY = "www.example.com/home.html";
+    private static final String UTF8 = "UTF-8";
+    private static final long MAX_STALENESS = 60;
+    private static final int BUFFER_SIZE = 1024;
+
+    private Session session;
+    private Node page;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private RenderingContext renderingContext;
+    private StringWriter characters;
+    private ByteArrayOutputStream bytes;
+    private PageCache pageCache;
+    private DependencyIndex dependencyIndex;
+    private PageRevalidator pageRevalidator;
+    private TestRenderer renderer;
+
+    @Before
+    public void setUp() throws RepositoryException, RenderException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        Node rendererNode = JcrUtils.getOrCreateByPath("/modules/handlebars/renderers/handlebars", null, session);
+        rendererNode.setProperty("conditionalGet", true);
+        rendererNode.setProperty("pageCache", true);
+        rendererNode.setProperty("maxStaleness", MAX_STALENESS);
+        rendererNode.addNode("helpers");
+        page = session.getRootNode().addNode("home", "mgnl:page");
+        session.save();
+
+        WebContext context = TestContexts.installWebContext();
+        when(context.getJCRSession(RepositoryConstants.CONFIG)).thenReturn(session);
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getServerName()).thenReturn("www.example.com");
+        when(request.getRequestURI()).thenReturn("/home.html");
+        when(context.getRequest()).thenReturn(request);
+        response = mock(HttpServletResponse.class);
+        when(response.getCharacterEncoding()).thenReturn(UTF8);
+        when(context.getResponse()).thenReturn(response);
+
+        pageCache = new PageCache(new HeapPageOutputStore(), false) {
+        };
+        dependencyIndex = mock(DependencyIndex.class);
+        when(dependencyIndex.get(any(Node.class)))
+                .thenReturn(new PageDependencies(Collections.singletonList("/home"), 0, 1, 1));
+        pageRevalidator = mock(PageRevalidator.class);
+        ComponentProvider componentProvider = mock(ComponentProvider.class);
+        when(componentProvider.getComponent(ServerConfiguration.class)).thenReturn(mock(ServerConfiguration.class));
+        when(componentProvider.getComponent(InvalidationBus.class)).thenReturn(new InvalidationBus());
+        when(componentProvider.getComponent(PageCache.class)).thenReturn(pageCache);
+        when(componentProvider.getComponent(DependencyIndex.class)).thenReturn(dependencyIndex);
+        when(componentProvider.getComponent(PageRevalidator.class)).thenReturn(pageRevalidator);
+        Components.setComponentProvider(componentProvider);
+        RenderContext.push().setTemplateScript("renderer/page");
+        renderer = new TestRenderer();
+
+        renderingContext = mock(RenderingContext.class);
+        when(renderingContext.getMainContent()).thenReturn(page);
+        when(renderingContext.getCurrentContent()).thenReturn(page);
+        characters = new StringWriter();
+        when(renderingContext.getAppendable()).thenReturn(new AppendableWriter(characters));
+        bytes = new ByteArrayOutputStream();
+        when(renderingContext.getOutputStream()).thenReturn(bytes);
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        RenderContext.pop();
+        ModuleComponents.reset();
+        TestContexts.uninstall();
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void rendersRequestsThatAreNotSharedWithoutTheCache() throws RenderException {
+        when(request.getQueryString()).thenReturn("page=2");
+
+        render();
+        render();
+
+        assertEquals(2, renderer.renders);
+        assertEquals(PAGE + PAGE, characters.toString());
+        assertEquals(0, pageCache.size());
+        verifyZeroInteractions(dependencyIndex);
+    }
+
+    @Test
+    public void writesCachedPagesOfSharedRequestsAsBytes() throws RenderException, IOException {
+        render();
+        assertTrue(pageCache.contains(KEY));
+
+        render();
+
+        assertEquals(1, renderer.renders);
+        assertEquals(PAGE, characters.toString());
+        assertEquals(PAGE, bytes.toString(UTF8));
+    }
+
+    @Test
+    public void writesCachedPagesAsCharactersUnlessTheResponseTakesUtf8Bytes() throws RenderException {
+        render();
+        when(response.getCharacterEncoding()).thenReturn("ISO-8859-1");
+
+        render();
+
+        when(response.getCharacterEncoding()).thenReturn(UTF8);
+        when(renderingContext.getOutputStream()).thenThrow(new IllegalStateException("Writer in use"));
+
+        render();
+
+        assertEquals(1, renderer.renders);
+        assertEquals(PAGE + PAGE + PAGE, characters.toString());
+        assertEquals(0, bytes.size());
+    }
+
+    @Test
+    public void discardsTheRecordingWhenTheRenderFails() throws RenderException {
+        renderer.failing = true;
+        try {
+            render();
+            fail();
+        } catch (RenderException e) {
+            assertEquals(0, pageCache.size());
+        }
+
+        renderer.failing = false;
+        render();
+
+        assertEquals(2, renderer.renders);
+        assertTrue(pageCache.contains(KEY));
+    }
+
+    @Test
+    public void servesStalePagesWhileTheyAreRenderedAgain() throws RenderException {
+        render();
+        pageCache.invalidate(TestRepository.WEBSITE, "/home", true);
+
+        render();
+
+        assertEquals(1, renderer.renders);
+        assertEquals(PAGE + PAGE, characters.toString());
+        verify(pageRevalidator).revalidate(KEY, request);
+
+        when(pageRevalidator.getRevalidatedKey(request)).thenReturn(KEY);
+        render();
+
+        assertEquals(2, renderer.renders);
+        assertTrue(pageCache.contains(KEY));
+    }
+
+    @Test
+    public void rendersReRendersOfAnotherKeyWithoutStoringThem() throws RenderException {
+        when(pageRevalidator.getRevalidatedKey(request)).thenReturn("www.example.org/home.html");
+
+        render();
+
+        assertEquals(1, renderer.renders);
+        assertEquals(0, pageCache.size());
+    }
+
+    @Test
+    public void answersConditionalRequestsWithoutRendering() throws RenderException {
+        when(request.getDateHeader("If-Modified-Since"))
+                .thenReturn(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+
+        render();
+
+        assertEquals(0, renderer.renders);
+        assertEquals("", characters.toString());
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(pageRevalidator, never()).revalidate(KEY, request);
+        assertFalse(pageCache.contains(KEY));
+    }
+
+    @Test
+    public void acceptsGzipOnlyWithANonZeroQuality() {
+        assertTrue(HandlebarsRenderer.acceptsGzip("gzip"));
+        assertTrue(HandlebarsRenderer.acceptsGzip("deflate, gzip;q=0.5"));
+        assertTrue(HandlebarsRenderer.acceptsGzip("x-gzip"));
+        assertTrue(HandlebarsRenderer.acceptsGzip("GZIP"));
+        assertTrue(HandlebarsRenderer.acceptsGzip("*"));
+        assertTrue(HandlebarsRenderer.acceptsGzip("*;q=0, gzip"));
+
+        assertFalse(HandlebarsRenderer.acceptsGzip(null));
+        assertFalse(HandlebarsRenderer.acceptsGzip(""));
+        assertFalse(HandlebarsRenderer.acceptsGzip("deflate, identity"));
+        assertFalse(HandlebarsRenderer.acceptsGzip("gzip;q=0"));
+        assertFalse(HandlebarsRenderer.acceptsGzip("gzip; q=0.000"));
+        assertFalse(HandlebarsRenderer.acceptsGzip("gzip;q=0, *"));
+        assertFalse(HandlebarsRenderer.acceptsGzip("*;q=0"));
+        assertFalse(HandlebarsRenderer.acceptsGzip("gzip;q=high"));
+    }
+
+    @Test
+    public void writesCachedPagesGzipCompressedToClientsAcceptingGzip() throws RenderException, IOException {
+        pageCache.setCompress(true);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        render();
+
+        render();
+
+        assertEquals(1, renderer.renders);
+        assertEquals(PAGE, gunzip(bytes.toByteArray()));
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response, times(2)).addHeader("Vary", "Accept-Encoding");
+    }
+
+    @Test
+    public void neverEncodesResponsesThatHaveAContentEncodingAlready() throws RenderException, IOException {
+        pageCache.setCompress(true);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        when(response.containsHeader("Content-Encoding")).thenReturn(true);
+        render();
+
+        render();
+
+        assertEquals(1, renderer.renders);
+        assertEquals(PAGE, bytes.toString(UTF8));
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+    }
+
+    private void render() throws RenderException {
+        renderer.render(renderingContext, Collections.<String, Object>emptyMap());
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString(UTF8);
+    }
+
+    /**
+     * Writes the page through the recorder of the cache instead of rendering its template, failing after writing
+     * it if asked to.
+     */
+    private static final class TestRenderer extends HandlebarsRenderer {
+
+        private int renders;
+        private boolean failing;
+
+        private TestRenderer() {
+            super(mock(RenderingEngine.class));
+        }
+
+        @Override
+        void renderUncached(RenderingContext renderingContext, Map<String, Object> contextObjects)
+                throws RenderException {
+            renders++;
+            PageRecorder recorder = PageRecorder.current();
+            try {
+                Writer out = renderingContext.getAppendable();
+                if (recorder != null) {
+                    recorder.record(TestRepository.WEBSITE, "/home", true);
+                    out = recorder.capture(out);
+                }
+                out.write(PAGE);
+            } catch (IOException e) {
+                throw new RenderException(e);
+            }
+            if (failing) {
+                throw new RenderException("Cannot render " + PAGE);
+            }
+        }
+    }
+}
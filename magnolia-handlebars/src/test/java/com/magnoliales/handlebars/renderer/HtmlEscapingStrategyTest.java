@@ -0,0 +1,36 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.EscapingStrategy;
+import com.github.jknack.handlebars.Handlebars;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HtmlEscapingStrategyTest {
+
+    private static final EscapingStrategy ESCAPING = HtmlEscapingStrategy.INSTANCE;
+
+    @Test
+    public void escapesLikeTheHandlebarsHtmlEntityStrategy() {
+        for (String value : new String[] {"&", "<a href=\"x\">", "it's `code`", "a > b && c < d", "caf\u00E9 \u20AC",
+                "&amp;", "plain", "trailing&", "<<>>"}) {
+            assertEquals(value, EscapingStrategy.HTML_ENTITY.escape(value), ESCAPING.escape(value));
+        }
+    }
+
+    @Test
+    public void returnsValuesWithoutSpecialCharactersUncopied() {
+        String value = "Nothing to escape, caf\u00E9";
+
+        assertSame(value, ESCAPING.escape(value));
+        assertEquals("builder", ESCAPING.escape(new StringBuilder("builder")));
+    }
+
+    @Test
+    public void leavesSafeStringsAndEmptyValues() {
+        assertEquals("<b>safe</b>", ESCAPING.escape(new Handlebars.SafeString("<b>safe</b>")));
+        assertEquals("", ESCAPING.escape(null));
+        assertEquals("", ESCAPING.escape(""));
+    }
+}
@@ -0,0 +1,141 @@
+package com.magnoliales.handlebars.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LiteralWriterTest {
+
+    private static final int BUFFER_LENGTH = 8192;
+    private static final String PAIR = "\uD83D\uDE00";
+
+    private ByteArrayOutputStream out;
+    private Map<String, byte[]> literals;
+    private LiteralWriter writer;
+
+    @Before
+    public void setUp() {
+        out = new ByteArrayOutputStream();
+        literals = new IdentityHashMap<String, byte[]>();
+        writer = new LiteralWriter(out, literals);
+    }
+
+    @Test
+    public void encodesLikeStringGetBytes() throws IOException {
+        assertEncoded("ascii", "caf\u00E9", "\u20AC 5", PAIR, "a" + PAIR + "b\u00E9\u20AC");
+    }
+
+    @Test
+    public void replacesUnpairedSurrogates() throws IOException {
+        assertEncoded("a\uD83Db", "a\uDE00b", "\uD83D\uD83D\uDE00", "\uDE00\uD83D", "end\uD83D");
+    }
+
+    @Test
+    public void joinsSurrogatePairsSplitAcrossWrites() throws IOException {
+        writer.write("a\uD83D");
+        writer.write('\uDE00');
+        writer.write(new char[] {'\uD83D'}, 0, 1);
+        writer.write("\uDE00b", 0, 2);
+        writer.close();
+
+        assertEquals("a" + PAIR + PAIR + "b", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void replacesAHighSurrogateBeforeALiteral() throws IOException {
+        String literal = "<p>";
+        literals.put(literal, utf8(literal));
+
+        writer.write("a\uD83D");
+        writer.write(literal);
+        writer.close();
+
+        assertEquals("a?<p>", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void encodesAcrossBufferBoundaries() throws IOException {
+        StringBuilder ascii = new StringBuilder();
+        for (int i = 0; i < BUFFER_LENGTH - 1; i++) {
+            ascii.append('a');
+        }
+        StringBuilder mixed = new StringBuilder();
+        for (int i = 0; i < BUFFER_LENGTH; i++) {
+            mixed.append("x\u00E9\u20AC").append(PAIR);
+        }
+        assertEncoded(ascii + "\u20AC", ascii + PAIR, ascii.substring(2) + PAIR + "\u20AC", mixed.toString(),
+                ascii + "\uD83D", ascii + "b");
+    }
+
+    @Test
+    public void buffersUntilFlushed() throws IOException {
+        writer.write("buffered");
+        assertEquals(0, out.size());
+
+        writer.flushBuffer();
+        assertEquals("buffered", out.toString("UTF-8"));
+
+        writer.write("more");
+        writer.flush();
+        assertEquals("bufferedmore", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void copiesTheBytesOfLiteralsFoundByIdentity() throws IOException {
+        String literal = "<h1>";
+        literals.put(literal, utf8("<H1>"));
+
+        writer.write(literal);
+        writer.write(new String(literal));
+        writer.append(literal);
+        writer.append(new StringBuilder(literal));
+        writer.close();
+
+        assertEquals("<H1><h1><H1><h1>", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writesLongLiteralsInOrderWithTheBufferedOutput() throws IOException {
+        char[] chars = new char[BUFFER_LENGTH + 1];
+        Arrays.fill(chars, 'l');
+        String literal = new String(chars);
+        literals.put(literal, utf8(literal));
+        String almostFull = new String(chars, 0, BUFFER_LENGTH - 2);
+
+        writer.write("before");
+        writer.write(literal);
+        writer.write(almostFull);
+        writer.write(literal.substring(0, BUFFER_LENGTH / 2));
+        literals.put(almostFull, utf8(almostFull));
+        writer.write(almostFull);
+        writer.write("after");
+        writer.close();
+
+        assertEquals("before" + literal + almostFull + literal.substring(0, BUFFER_LENGTH / 2) + almostFull
+                + "after", out.toString("UTF-8"));
+    }
+
+    private void assertEncoded(String... strings) throws IOException {
+        for (String string : strings) {
+            out.reset();
+            writer = new LiteralWriter(out, literals);
+            writer.write(string);
+            writer.close();
+
+            assertArrayEquals(string, utf8(string), out.toByteArray());
+        }
+    }
+
+    private static byte[] utf8(String string) throws UnsupportedEncodingException {
+        return string.getBytes("UTF-8");
+    }
+}
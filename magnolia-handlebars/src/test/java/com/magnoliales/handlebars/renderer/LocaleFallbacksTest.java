@@ -0,0 +1,50 @@
+package com.magnoliales.handlebars.renderer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LocaleFallbacksTest {
+
+    private final LocaleFallbacks fallbacks = new LocaleFallbacks();
+
+    @Test
+    public void fallsBackToTheParentLocales() {
+        assertArrayEquals(new String[] {"title_de_CH_POSIX", "title_de_CH", "title_de", "title"},
+                fallbacks.getKeyTable(new Locale("de", "CH", "POSIX")).getNames("title"));
+        assertArrayEquals(new String[] {"title_de_CH", "title_de", "title"},
+                fallbacks.getKeyTable(new Locale("de", "CH")).getNames("title"));
+        assertArrayEquals(new String[] {"title_de", "title"}, fallbacks.getKeyTable(Locale.GERMAN).getNames("title"));
+        assertArrayEquals(new String[] {"title"}, fallbacks.getKeyTable(Locale.ROOT).getNames("title"));
+    }
+
+    @Test
+    public void replacesTheParentsWithAConfiguredChain() {
+        LocaleKeyTable before = fallbacks.getKeyTable(new Locale("de", "CH"));
+
+        fallbacks.setFallbacks("de_CH", Arrays.asList("de", "en"));
+        LocaleKeyTable table = fallbacks.getKeyTable(new Locale("de", "CH"));
+
+        assertNotSame(before, table);
+        assertEquals("de_CH", table.getLocaleName());
+        assertArrayEquals(new String[] {"title_de_CH", "title_de", "title_en", "title"}, table.getNames("title"));
+        assertEquals(Arrays.asList("de", "en"), fallbacks.getFallbacks("de_CH"));
+        assertNull(fallbacks.getFallbacks("fr"));
+    }
+
+    @Test
+    public void computesTheNamesOfAKeyOnce() {
+        LocaleKeyTable table = fallbacks.getKeyTable(Locale.GERMAN);
+
+        assertSame(table, fallbacks.getKeyTable(Locale.GERMAN));
+        assertSame(table.getNames("title"), table.getNames("title"));
+        assertSame("title_de", table.getNames(new String("title"))[0]);
+    }
+}
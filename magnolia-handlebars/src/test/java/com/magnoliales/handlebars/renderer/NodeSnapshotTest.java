@@ -0,0 +1,116 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.TestRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NodeSnapshotTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    private Session session;
+    private Node area;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        Node page = session.getRootNode().addNode("home", "mgnl:page");
+        area = page.addNode("main", "mgnl:area");
+        area.setProperty("title", "Main");
+        area.setProperty("count", 2L);
+        area.setProperty("tags", new String[] {"a", "b"});
+        Node component = area.addNode("0", "mgnl:component");
+        component.setProperty("text", "Text");
+        component.addNode("links", "mgnl:area").addNode("0", "mgnl:component").setProperty("href", "/a");
+        area.addNode("sub", "mgnl:page");
+        session.save();
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        TestContexts.uninstall();
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void capturesPropertiesAndChildrenUpToTheDepth() throws RepositoryException {
+        NodeSnapshot snapshot = NodeSnapshot.captureTree(area, 2, "mgnl:page");
+
+        assertEquals("main", snapshot.getName());
+        assertEquals("/home/main", snapshot.getPath());
+        assertEquals(TestRepository.WEBSITE, snapshot.getWorkspace());
+        assertEquals(area.getIdentifier(), snapshot.getIdentifier());
+        assertEquals("Main", snapshot.getProperty("title"));
+        assertEquals(2L, snapshot.getProperty("count"));
+        assertTrue(snapshot.isComplete());
+        assertEquals("Text", snapshot.getChild("0").getProperty("text"));
+        assertTrue(snapshot.getChild("0").getChild("links").hasProperty("jcr:primaryType"));
+        assertFalse(snapshot.getChild("0").getChild("links").isComplete());
+        assertTrue(snapshot.getUncaptured().contains("tags"));
+        assertTrue(snapshot.getUncaptured().contains("sub"));
+        assertFalse(snapshot.hasChild("sub"));
+    }
+
+    @Test
+    public void answersMissingKeysOnlyWhenComplete() throws RepositoryException {
+        NodeSnapshot complete = NodeSnapshot.captureTree(area, 2, "mgnl:page");
+        NodeSnapshot filtered = NodeSnapshot.capture(area, 2, Collections.singleton("title"));
+        NodeSnapshot shallow = NodeSnapshot.captureTree(area, 0, null);
+
+        assertFalse(complete.mayContain("missing"));
+        assertTrue(complete.mayContain("title"));
+        assertTrue(complete.mayContain("tags"));
+        assertTrue(complete.mayContain("0"));
+        assertFalse(filtered.isComplete());
+        assertFalse(filtered.hasProperty("count"));
+        assertTrue(filtered.mayContain("missing"));
+        assertTrue(shallow.mayContain("missing"));
+        assertTrue(shallow.getChildren().isEmpty());
+    }
+
+    @Test
+    public void registersSnapshotsAndTheirChildrenInTheRequestScope() throws RepositoryException {
+        assertNull(ContentSnapshots.current());
+        TestContexts.install();
+
+        ContentSnapshots snapshots = ContentSnapshots.getOrCreate();
+        snapshots.register(NodeSnapshot.captureTree(area, 2, "mgnl:page"));
+
+        assertSame(snapshots, ContentSnapshots.current());
+        assertEquals(3, snapshots.size());
+        assertEquals("Text", snapshots.get(area.getNode("0").getIdentifier()).getProperty("text"));
+    }
+
+    @Test
+    public void letsContentMapsAnswerFromTheSnapshot() throws RepositoryException {
+        TestContexts.install();
+        ContentSnapshots snapshots = ContentSnapshots.getOrCreate();
+        ContentSnapshots.getOrCreate().register(NodeSnapshot.captureTree(area, 2, "mgnl:page"));
+        area.setProperty("title", "Changed");
+        area.setProperty("added", "Added");
+
+        ChainedContentMap map = new ChainedContentMap(area, new LocaleFallbacks().getKeyTable(Locale.ENGLISH),
+                snapshots);
+
+        assertEquals("Main", map.get("title"));
+        assertNull(map.get("added"));
+        assertEquals(2L, map.get("count"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.TestRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageSnapshotsTest {
+
+    @ClassRule
+    public static final TestRepository REPOSITORY = new TestRepository();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Session session;
+    private Node page;
+    private Node supplier;
+    private PageSnapshots snapshots;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = REPOSITORY.login(TestRepository.WEBSITE);
+        supplier = session.getRootNode().addNode("supplier", "mgnl:page");
+        supplier.addMixin("mix:referenceable");
+        supplier.setProperty("title", "Supplier");
+        page = session.getRootNode().addNode("home", "mgnl:page");
+        page.addMixin("mix:referenceable");
+        page.setProperty("title", "Home");
+        page.addNode("main", "mgnl:area").addNode("0", "mgnl:component").setProperty("text", "Text");
+        session.save();
+        page.setProperty("mgnl:supplierPage", supplier.getIdentifier());
+        session.save();
+        snapshots = new PageSnapshots(folder.getRoot(), false);
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        snapshots.stop();
+        REPOSITORY.clean(session);
+        session.logout();
+    }
+
+    @Test
+    public void capturesThePageAndItsSuppliersOnceAndAnswersFromTheStore() throws RepositoryException {
+        List<NodeSnapshot> captured = snapshots.get(page);
+
+        assertEquals(2, captured.size());
+        assertEquals("Home", captured.get(0).getProperty("title"));
+        assertEquals("Text", captured.get(0).getChild("main").getChild("0").getProperty("text"));
+        assertEquals("Supplier", captured.get(1).getProperty("title"));
+
+        page.setProperty("title", "Changed");
+        session.save();
+
+        assertEquals("Home", snapshots.get(page).get(0).getProperty("title"));
+        assertEquals(1, snapshots.size());
+    }
+
+    @Test
+    public void dropsSnapshotsIncludingAnInvalidatedPage() throws RepositoryException {
+        snapshots.get(page);
+        page.setProperty("title", "Changed");
+        session.save();
+
+        snapshots.invalidate(PageSnapshots.WORKSPACE, "/other");
+        assertEquals("Home", snapshots.get(page).get(0).getProperty("title"));
+
+        snapshots.invalidate(PageSnapshots.WORKSPACE, "/supplier");
+        assertEquals(0, snapshots.size());
+        assertEquals("Changed", snapshots.get(page).get(0).getProperty("title"));
+    }
+
+    @Test
+    public void doesNotStoreSnapshotsBuiltAcrossAnInvalidation() throws RepositoryException, IOException {
+        long generation = snapshots.getGeneration();
+        snapshots.invalidate(PageSnapshots.WORKSPACE, "/home");
+
+        assertEquals("Home", snapshots.build(page, generation).get(0).getProperty("title"));
+        assertEquals(0, snapshots.size());
+
+        snapshots.build(page, snapshots.getGeneration());
+        assertEquals(1, snapshots.size());
+    }
+
+    @Test
+    public void capturesCorruptSnapshotsAgain() throws RepositoryException {
+        snapshots.get(page);
+        snapshots.getStore().put(page.getIdentifier(), new byte[] {1, 0, 0, 0, 1, 0, 0, 0, 9, 'h'});
+
+        assertEquals("Home", snapshots.get(page).get(0).getProperty("title"));
+        assertTrue(snapshots.getStore().contains(page.getIdentifier()));
+        assertEquals("Home", snapshots.get(page).get(0).getProperty("title"));
+    }
+
+    @Test
+    public void keepsSnapshotsApartFromInstancesSharingTheDirectory() throws RepositoryException {
+        PageSnapshots other = new PageSnapshots(folder.getRoot(), false);
+        try {
+            snapshots.get(page);
+            other.get(supplier);
+            other.clear();
+            other.stop();
+
+            assertTrue(snapshots.getStore().contains(page.getIdentifier()));
+            assertEquals("Home", snapshots.get(page).get(0).getProperty("title"));
+            assertFalse(other.getStore().contains(page.getIdentifier()));
+        } finally {
+            other.stop();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Options;
+import com.magnoliales.handlebars.TestContexts;
+import com.magnoliales.handlebars.cache.PageRecorder;
+import com.magnoliales.handlebars.cache.TestRecorders;
+import info.magnolia.cms.core.AggregationState;
+import info.magnolia.context.MgnlContext;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RenderScopeTest {
+
+    @After
+    public void tearDown() {
+        TestContexts.uninstall();
+    }
+
+    @Test
+    public void passesTheScopeToHelpersThroughTheContextData() throws IOException {
+        final RenderScope scope = scope(null);
+        Handlebars handlebars = new Handlebars();
+        handlebars.registerHelper("scope", new Helper<Object>() {
+            @Override
+            public CharSequence apply(Object context, Options options) {
+                return RenderScope.from(options) == scope ? "scoped" : "unscoped";
+            }
+        });
+        Context context = Context.newBuilder(null).build();
+        context.data(RenderScope.DATA_KEY, scope);
+
+        assertEquals("scoped", handlebars.compileInline("{{scope}}").apply(context));
+        assertEquals("unscoped", handlebars.compileInline("{{scope}}").apply((Object) null));
+    }
+
+    @Test
+    public void bindsTheMagnoliaContextOnOtherThreads() throws InterruptedException, ExecutionException {
+        final info.magnolia.context.Context mgnlContext = TestContexts.install();
+        final RenderScope scope = scope(null);
+        TestContexts.uninstall();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Callable<Object> task = new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return MgnlContext.getInstance();
+                }
+            };
+
+            assertSame(mgnlContext, executor.submit(scope.wrap(task)).get());
+            assertFalse(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return MgnlContext.hasInstance();
+                }
+            }).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void recordsDependenciesOnlyForRecordedPages() {
+        TestContexts.install();
+        PageRecorder recorder = TestRecorders.start();
+
+        scope(null).record("dam", "/images/a.jpg");
+        RenderScope recorded = scope(recorder);
+        recorded.record("dam", "/images/b.jpg");
+        recorded.record("dam", null);
+
+        assertEquals(new HashSet<String>(Arrays.asList("dam:/images/b.jpg")), TestRecorders.getItems(recorder));
+        assertNull(recorded.getJcrReads());
+        assertEquals(Locale.GERMAN, recorded.getLocale());
+    }
+
+    private static RenderScope scope(PageRecorder recorder) {
+        AggregationState aggregationState = new AggregationState();
+        aggregationState.setLocale(Locale.GERMAN);
+        return new RenderScope(MgnlContext.hasInstance() ? MgnlContext.getInstance() : null, null, aggregationState,
+                null, new LocaleFallbacks().getKeyTable(Locale.GERMAN), null, null, null, recorder);
+    }
+}
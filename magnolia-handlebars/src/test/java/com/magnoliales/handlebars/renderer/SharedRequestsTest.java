@@ -0,0 +1,71 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.magnoliales.handlebars.TestContexts;
+import info.magnolia.cms.security.User;
+import info.magnolia.cms.security.UserManager;
+import info.magnolia.context.WebContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SharedRequestsTest {
+
+    private HttpServletRequest request;
+    private User user;
+
+    @Before
+    public void setUp() {
+        WebContext context = TestContexts.installWebContext();
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getServerName()).thenReturn("www.example.com");
+        when(request.getRequestURI()).thenReturn("/home.html");
+        when(context.getRequest()).thenReturn(request);
+        user = mock(User.class);
+        when(user.getName()).thenReturn(UserManager.ANONYMOUS_USER);
+        when(context.getUser()).thenReturn(user);
+    }
+
+    @After
+    public void tearDown() {
+        TestContexts.uninstall();
+    }
+
+    @Test
+    public void sharesAnonymousGetRequestsWithoutParametersByServerAndUri() {
+        assertTrue(SharedRequests.isShared());
+        assertEquals("www.example.com/home.html", SharedRequests.getKey());
+    }
+
+    @Test
+    public void doesNotShareRequestsWithParametersOtherMethodsOrUsers() {
+        when(request.getQueryString()).thenReturn("q=1");
+        assertFalse(SharedRequests.isShared());
+
+        when(request.getQueryString()).thenReturn(null);
+        when(request.getMethod()).thenReturn("POST");
+        assertFalse(SharedRequests.isShared());
+
+        when(request.getMethod()).thenReturn("GET");
+        when(user.getName()).thenReturn("editor");
+        assertFalse(SharedRequests.isShared());
+        assertNull(SharedRequests.getKey());
+    }
+
+    @Test
+    public void sharesNothingOutsideOfRequests() {
+        TestContexts.install();
+
+        assertFalse(SharedRequests.isShared());
+        assertNull(SharedRequests.getKey());
+    }
+}
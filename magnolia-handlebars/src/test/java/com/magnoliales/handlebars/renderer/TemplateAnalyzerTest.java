@@ -0,0 +1,111 @@
+package com.magnoliales.handlebars.renderer;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Options;
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.io.ClassPathTemplateLoader;
+import com.magnoliales.handlebars.metrics.JcrReadMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TemplateAnalyzerTest {
+
+    private Handlebars handlebars;
+    private TemplateAnalyzer analyzer;
+
+    @Before
+    public void setUp() {
+        handlebars = new Handlebars(new ClassPathTemplateLoader("/templates"));
+        Helper<Object> helper = new Helper<Object>() {
+            @Override
+            public CharSequence apply(Object context, Options options) {
+                return "";
+            }
+        };
+        handlebars.registerHelper("cms-area", helper);
+        handlebars.registerHelper("upper", helper);
+        analyzer = new TemplateAnalyzer(handlebars);
+    }
+
+    @Test
+    public void collectsWhatATemplateAndItsPartialsRead() throws IOException {
+        TemplateManifest manifest = analyzer.getManifest("analyzer/page", handlebars.compile("analyzer/page"));
+
+        assertEquals("analyzer/page", manifest.getTemplateName());
+        assertEquals(new HashSet<String>(Arrays.asList("title", "supplier.text", "metaTitle", "@name", "links")),
+                manifest.getContentPaths());
+        assertEquals(new HashSet<String>(Arrays.asList("main")), manifest.getAreas());
+        assertEquals(new HashSet<String>(Arrays.asList("analyzer/header", "analyzer/page", "analyzer/missing")),
+                manifest.getPartials());
+        assertTrue(manifest.getHelpers().containsAll(Arrays.asList("cms-area", "upper", "if")));
+        assertTrue(analyzer.report().contains("analyzer/page: 5 content paths"));
+    }
+
+    @Test
+    public void skipsCommentsAndStringLiterals() throws IOException {
+        TemplateManifest manifest = analyze("{{!-- {{content.hidden}} --}}{{! content.comment }}"
+                + "{{upper \"content.literal\" 'content.char' title=content.title}}"
+                + "{{cms-area name=\"content.area\"}}");
+
+        assertEquals(Collections.singleton("title"), manifest.getContentPaths());
+        assertEquals(Collections.singleton("content.area"), manifest.getAreas());
+    }
+
+    @Test
+    public void collectsContentPathsOnlyWhereTheyResolveAgainstThePage() throws IOException {
+        TemplateManifest manifest = analyze("{{#with content.supplier}}{{content.inner}}{{../content.outer}}"
+                + "{{else}}{{content.missing}}{{/with}}"
+                + "{{#each content.links}}{{content.link}}{{#if content.active}}{{../content.active}}{{/if}}{{/each}}"
+                + "{{#if content.visible}}{{{content.text}}}{{else}}{{&content.fallback}}{{/if}}"
+                + "{{^content.hidden}}{{content.shown}}{{/content.hidden}}"
+                + "{{upper (upper content.nested)}}{{> analyzer/header content.supplier}}");
+
+        assertEquals(new HashSet<String>(Arrays.asList("supplier", "outer", "missing", "links", "active", "visible",
+                "text", "fallback", "hidden", "shown", "nested")), manifest.getContentPaths());
+        assertTrue(manifest.getPartials().contains("analyzer/header"));
+        assertTrue(manifest.getHelpers().containsAll(Arrays.asList("with", "each", "if", "upper", "cms-area")));
+    }
+
+    @Test
+    public void collectsAreasNamedByReferences() throws IOException {
+        TemplateManifest manifest = analyze("{{cms-area name='main'}}{{#each areas}}{{cms-area name=this}}{{/each}}"
+                + "{{cms-area name=content.areaName}}");
+
+        assertEquals(Collections.singleton("main"), manifest.getAreas());
+        assertEquals(new HashSet<String>(Arrays.asList("this", "content.areaName")), manifest.getAreaReferences());
+        assertEquals(Collections.singleton("areaName"), manifest.getContentPaths());
+        assertTrue(manifest.toString().contains("named by [content.areaName, this]"));
+    }
+
+    @Test
+    public void publishesTheManifestsOfAnalysedTemplates() throws IOException {
+        TemplateManifest manifest = analyzer.getManifest("analyzer/header", handlebars.compile("analyzer/header"));
+
+        assertTrue(Arrays.asList(JcrReadMetrics.getInstance().getTemplateManifests()).contains(manifest.toString()));
+    }
+
+    @Test
+    public void analysesATemplateOncePerCompilation() throws IOException {
+        Template template = handlebars.compile("analyzer/page");
+        TemplateManifest manifest = analyzer.getManifest("analyzer/page", template);
+
+        assertSame(manifest, analyzer.getManifest("analyzer/page", template));
+        assertNotSame(manifest, analyzer.getManifest("analyzer/page", handlebars.compile("analyzer/page")));
+        assertEquals(1, analyzer.getManifests().size());
+    }
+
+    private TemplateManifest analyze(String template) throws IOException {
+        return analyzer.getManifest("inline", handlebars.compileInline(template));
+    }
+}
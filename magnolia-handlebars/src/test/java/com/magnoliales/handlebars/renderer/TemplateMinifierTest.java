@@ -0,0 +1,76 @@
+package com.magnoliales.handlebars.renderer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TemplateMinifierTest {
+
+    @Test
+    public void collapsesWhitespaceBetweenTagsAndAttributes() {
+        assertMinified("<div>\n<p> a b </p>\n</div>", "<div>\n    <p>  a \t b </p>\r\n\n</div>");
+        assertMinified("<a href=\"/\"\nclass=\"link\" >It's here</a>",
+                "<a   href=\"/\"\n     class=\"link\"   >It's    here</a>");
+    }
+
+    @Test
+    public void keepsTheContentOfRawElements() {
+        assertMinified("<pre>  a\n\n  b </pre> <p>", "<pre>  a\n\n  b </pre>   <p>");
+        assertMinified("<PRE class=\"x\">  a  </Pre > <p>", "<PRE   class=\"x\">  a  </Pre   >   <p>");
+        assertMinified("<textarea>  a\n  b</textarea>", "<textarea>  a\n  b</textarea>");
+        assertMinified("<script>\n  if (a  <  b) { x = '</p>  '; }\n</script>\n<p>",
+                "<script>\n  if (a  <  b) { x = '</p>  '; }\n</script>\n\n  <p>");
+        assertMinified("<style>\n  p  >  a { margin:  0; }\n</style>", "<style>\n  p  >  a { margin:  0; }\n</style>");
+    }
+
+    @Test
+    public void treatsOnlyWholeElementNamesAsRaw() {
+        assertMinified("<prefix> a </prefix>", "<prefix>   a   </prefix>");
+        assertMinified("<scripted> a </scripted>", "<scripted>   a   </scripted>");
+    }
+
+    @Test
+    public void keepsQuotedAttributeValues() {
+        assertMinified("<p title=\"a   b\" data-x='c  \"  d'> e</p>",
+                "<p title=\"a   b\"   data-x='c  \"  d'>   e</p>");
+        assertMinified("<input value=\"a > b   c\" > d", "<input value=\"a > b   c\"  >   d");
+    }
+
+    @Test
+    public void keepsComments() {
+        assertMinified("<!--  a   <p>  b  --> <p> c</p>", "<!--  a   <p>  b  -->   <p>   c</p>");
+        assertMinified("{{!--  a   b  --}} <p>", "{{!--  a   b  --}}   <p>");
+        assertMinified("{{!  a   b  }} <p>", "{{!  a   b  }}   <p>");
+    }
+
+    @Test
+    public void keepsHandlebarsTags() {
+        assertMinified("<p> {{  title  }} {{{  body  }}} </p>", "<p>   {{  title  }}   {{{  body  }}}   </p>");
+        assertMinified("<ul>\n{{#each items}}\n<li>{{this}}</li>\n{{/each}}\n</ul>",
+                "<ul>\n    {{#each items}}\n        <li>{{this}}</li>\n    {{/each}}\n</ul>");
+        assertMinified("<p> {{ unclosed   tag", "<p>   {{ unclosed   tag");
+    }
+
+    @Test
+    public void keepsHandlebarsTagsInAttributes() {
+        assertMinified("<a href=\"{{ link }}   #top\" class=\"{{#if active}}  on  {{/if}}\">",
+                "<a   href=\"{{ link }}   #top\"    class=\"{{#if active}}  on  {{/if}}\">");
+        assertMinified("<p title=\"{{t \"a'b\"}}   c\"> d", "<p title=\"{{t \"a'b\"}}   c\">   d");
+        assertMinified("<div {{#if x}}class=\"a  b\"{{/if}} id=\"c\"> d",
+                "<div   {{#if x}}class=\"a  b\"{{/if}}    id=\"c\">   d");
+    }
+
+    @Test
+    public void keepsHandlebarsTagsInRawElements() {
+        assertMinified("<pre>  {{ text }}  \n  {{{ html }}}  </pre> <p>",
+                "<pre>  {{ text }}  \n  {{{ html }}}  </pre>  <p>");
+        assertMinified("<script>\n  var a  =  \"{{ x }}\";\n  var b  =  '{{y}}';\n</script> <p>",
+                "<script>\n  var a  =  \"{{ x }}\";\n  var b  =  '{{y}}';\n</script>   <p>");
+        assertMinified("<textarea>{{#if a}}  a  {{else}}  b  {{/if}}</textarea> <p>",
+                "<textarea>{{#if a}}  a  {{else}}  b  {{/if}}</textarea>   <p>");
+    }
+
+    private static void assertMinified(String expected, String source) {
+        assertEquals(expected, TemplateMinifier.minify(source));
+    }
+}
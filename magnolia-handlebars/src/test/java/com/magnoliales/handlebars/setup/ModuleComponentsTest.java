@@ -0,0 +1,51 @@
+package com.magnoliales.handlebars.setup;
+
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.objectfactory.Components;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ModuleComponentsTest {
+
+    private ComponentProvider componentProvider;
+
+    @Before
+    public void setUp() {
+        componentProvider = mock(ComponentProvider.class);
+        when(componentProvider.getComponent(StringBuilder.class)).thenReturn(new StringBuilder());
+        Components.setComponentProvider(componentProvider);
+        ModuleComponents.reset();
+    }
+
+    @After
+    public void tearDown() {
+        ModuleComponents.reset();
+        Components.setComponentProvider(null);
+    }
+
+    @Test
+    public void returnsOnlyComponentsThatWereCreated() {
+        assertNull(ModuleComponents.getCreated(StringBuilder.class));
+        verify(componentProvider, never()).getComponent(StringBuilder.class);
+
+        StringBuilder component = ModuleComponents.get(StringBuilder.class);
+
+        assertSame(component, ModuleComponents.getCreated(StringBuilder.class));
+    }
+
+    @Test
+    public void forgetsCreatedComponentsOnReset() {
+        ModuleComponents.get(StringBuilder.class);
+        ModuleComponents.reset();
+
+        assertNull(ModuleComponents.getCreated(StringBuilder.class));
+    }
+}